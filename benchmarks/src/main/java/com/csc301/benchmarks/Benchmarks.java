@@ -0,0 +1,64 @@
+package com.csc301.benchmarks;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.openjdk.jmh.Main;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Entry point of benchmarks.jar.
+ *
+ * Takes the usual JMH options, but results are written as JSON to "jmh-result.json" unless "-rf"/"-rff" say
+ * otherwise. With "--baseline &lt;file&gt;" results are then compared to a previous run, and the process exits with 1
+ * if any benchmark regressed by more than "--threshold &lt;percent&gt;" (10 by default), see CompareResults.
+ */
+public class Benchmarks {
+
+	public static final String DEFAULT_RESULT_FILE = "jmh-result.json";
+
+	public static void main(String[] args) throws Exception {
+		String baseline = null;
+		double threshold = CompareResults.DEFAULT_THRESHOLD_PERCENT;
+		List<String> jmhArgs = new ArrayList<String>();
+
+		for (int i = 0; i < args.length; i++) {
+			if (args[i].equals("--baseline") && i + 1 < args.length) {
+				baseline = args[++i];
+			} else if (args[i].equals("--threshold") && i + 1 < args.length) {
+				threshold = Double.parseDouble(args[++i]);
+			} else {
+				jmhArgs.add(args[i]);
+			}
+		}
+
+		CommandLineOptions cmdOptions = new CommandLineOptions(jmhArgs.toArray(new String[0]));
+		if (cmdOptions.shouldHelp() || cmdOptions.shouldList() || cmdOptions.shouldListWithParams()
+				|| cmdOptions.shouldListProfilers() || cmdOptions.shouldListResultFormats()) {
+			// nothing is run, plain JMH prints what was asked for
+			Main.main(jmhArgs.toArray(new String[0]));
+			return;
+		}
+
+		OptionsBuilder options = new OptionsBuilder();
+		options.parent(cmdOptions);
+		if (!cmdOptions.getResultFormat().hasValue()) {
+			options.resultFormat(ResultFormatType.JSON);
+		} else if (baseline != null && cmdOptions.getResultFormat().get() != ResultFormatType.JSON) {
+			throw new IllegalArgumentException("--baseline can only be compared to JSON results");
+		}
+		String resultFile = cmdOptions.getResult().orElse(DEFAULT_RESULT_FILE);
+		options.result(resultFile);
+
+		new Runner(options.build()).run();
+
+		if (baseline != null) {
+			boolean regressed = CompareResults.compare(new File(baseline), new File(resultFile), threshold, System.out);
+			System.exit(regressed ? 1 : 0);
+		}
+	}
+}
@@ -0,0 +1,114 @@
+package com.csc301.benchmarks;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * Compares two JMH runs written as JSON and reports benchmarks that got slower.
+ *
+ * Benchmarks are matched by name, mode and parameters. A benchmark regressed if its score is worse than the baseline
+ * score by more than the threshold, where worse means lower for throughput and higher for every other mode. Benchmarks
+ * present in only one of the runs are listed but never fail the comparison.
+ *
+ * Usage: java -cp benchmarks.jar com.csc301.benchmarks.CompareResults &lt;baseline.json&gt; &lt;current.json&gt;
+ * [threshold percent]
+ */
+public class CompareResults {
+
+	public static final double DEFAULT_THRESHOLD_PERCENT = 10;
+
+	private static final ObjectMapper MAPPER = new ObjectMapper();
+
+	public static void main(String[] args) throws IOException {
+		if (args.length < 2) {
+			System.err.println("Usage: CompareResults <baseline.json> <current.json> [threshold percent]");
+			System.exit(2);
+		}
+		double threshold = args.length > 2 ? Double.parseDouble(args[2]) : DEFAULT_THRESHOLD_PERCENT;
+
+		boolean regressed = compare(new File(args[0]), new File(args[1]), threshold, System.out);
+		System.exit(regressed ? 1 : 0);
+	}
+
+
+	/**
+	 * Compare two runs and print a line for every benchmark.
+	 *
+	 * @param  baseline          Results of the run to compare to.
+	 * @param  current           Results of the new run.
+	 * @param  thresholdPercent  Allowed slowdown in percent of baseline score.
+	 * @param  out               Stream the report is printed to.
+	 * @return                   True if any benchmark regressed by more than the threshold.
+	 * @throws IOException       If results could not be read.
+	 */
+	public static boolean compare(File baseline, File current, double thresholdPercent, PrintStream out)
+			throws IOException {
+		Map<String, JsonNode> baselineResults = read(baseline);
+		Map<String, JsonNode> currentResults = read(current);
+		boolean regressed = false;
+
+		for (Map.Entry<String, JsonNode> entry : currentResults.entrySet()) {
+			JsonNode before = baselineResults.get(entry.getKey());
+			if (before == null) {
+				out.println(String.format("NEW        %s", entry.getKey()));
+				continue;
+			}
+
+			JsonNode after = entry.getValue();
+			double beforeScore = before.path("primaryMetric").path("score").asDouble();
+			double afterScore = after.path("primaryMetric").path("score").asDouble();
+			String unit = after.path("primaryMetric").path("scoreUnit").asText();
+
+			// positive change is always a slowdown
+			boolean higherIsBetter = after.path("mode").asText().equals("thrpt");
+			double change = beforeScore == 0 ? 0 : (afterScore - beforeScore) / beforeScore * 100;
+			double slowdown = higherIsBetter ? -change : change;
+
+			boolean failed = slowdown > thresholdPercent;
+			regressed |= failed;
+			out.println(String.format("%-10s %s: %.3f -> %.3f %s (%+.1f%%)", failed ? "REGRESSED" : "OK",
+					entry.getKey(), beforeScore, afterScore, unit, change));
+		}
+
+		for (String key : baselineResults.keySet()) {
+			if (!currentResults.containsKey(key)) {
+				out.println(String.format("MISSING    %s", key));
+			}
+		}
+		return regressed;
+	}
+
+	/**
+	 * Read results of a run.
+	 *
+	 * @param  file         JSON written by JMH with "-rf json".
+	 * @return              Mapping from benchmark name, mode and parameters to its result.
+	 * @throws IOException  If file could not be read.
+	 */
+	private static Map<String, JsonNode> read(File file) throws IOException {
+		JsonNode root = MAPPER.readTree(file);
+		if (root == null || !root.isArray()) {
+			throw new IOException(file + " is not a JSON result of JMH");
+		}
+
+		Map<String, JsonNode> results = new LinkedHashMap<String, JsonNode>();
+		for (JsonNode result : root) {
+			// parameters are sorted, so the key doesn't depend on their order in the file
+			Map<String, String> params = new TreeMap<String, String>();
+			JsonNode paramsNode = result.path("params");
+			paramsNode.fieldNames().forEachRemaining(name -> params.put(name, paramsNode.get(name).asText()));
+
+			String key = result.path("benchmark").asText() + " [" + result.path("mode").asText() + "]"
+					+ (params.isEmpty() ? "" : " " + params);
+			results.put(key, result);
+		}
+		return results;
+	}
+}
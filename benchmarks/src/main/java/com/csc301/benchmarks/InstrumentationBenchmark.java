@@ -0,0 +1,75 @@
+package com.csc301.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.csc301.songmicroservice.OperationMetrics;
+import com.csc301.songmicroservice.Tracer;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * Cost InstrumentationPostProcessor adds to every DAL call: recording the call in OperationMetrics and, if the request
+ * is traced, a span. Runs with several threads, since every request thread records into the same operation.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@Threads(4)
+public class InstrumentationBenchmark {
+
+	private OperationMetrics metrics;
+	private OperationMetrics.Operation operation;
+	private Tracer tracer;
+
+	@Setup(Level.Trial)
+	public void setUp() {
+		metrics = new OperationMetrics();
+		operation = metrics.operation("SongDal.findSongById");
+		tracer = new Tracer(new ObjectMapper(), 4096, "");
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() {
+		tracer.shutdown();
+	}
+
+	@Benchmark
+	public long recordCall() {
+		long start = operation.begin();
+		operation.end(start, "QUERY_OK");
+		return start;
+	}
+
+	@Benchmark
+	public long recordTracedCall() {
+		Tracer.Span request = tracer.startTrace(null, null, "GET /getSongById/{songId}");
+		Tracer.Span span = tracer.startSpan(operation.getName());
+		long start = operation.begin();
+		operation.end(start, "QUERY_OK");
+		span.end("QUERY_OK");
+		request.end("200");
+		return start;
+	}
+
+	// scraped once per iteration, so scrapes don't pile up values recorded by other benchmarks
+	@TearDown(Level.Iteration)
+	public void scrape() {
+		metrics.scrape();
+	}
+}
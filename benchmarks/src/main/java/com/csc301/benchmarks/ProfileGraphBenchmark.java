@@ -0,0 +1,143 @@
+package com.csc301.benchmarks;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.csc301.profilemicroservice.FollowGraph;
+import com.csc301.profilemicroservice.LikedSongsIndex;
+import com.csc301.profilemicroservice.SongRecommender;
+
+/**
+ * Read paths of ProfileDriverImpl that are answered in memory: getMutualFriends, getFollowCounts and
+ * getSongRecommendations, and the follow graph updates done by followFriend and unfollowFriend.
+ *
+ * The driver itself can't be built without a Neo4j server, so the benchmark runs the structures it delegates to,
+ * loaded with a random graph the same way the driver loads them at startup. Users are picked in a fixed pseudo-random
+ * order, so every run sees the same sequence.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ProfileGraphBenchmark {
+
+	// number of pre-picked users cycled through, a power of 2
+	private static final int PICKS = 1 << 12;
+
+	@Param({ "10000" })
+	public int users;
+
+	@Param({ "20" })
+	public int followsPerUser;
+
+	@Param({ "5000" })
+	public int songs;
+
+	@Param({ "20" })
+	public int likesPerUser;
+
+	private FollowGraph followGraph;
+	private LikedSongsIndex likedSongs;
+	private SongRecommender songRecommender;
+
+	private String[] picks;
+	private int next;
+
+	@Setup(Level.Trial)
+	public void setUp() {
+		Random random = new Random(42);
+
+		followGraph = new FollowGraph(Integer.MAX_VALUE, 3600);
+		FollowGraph.Loader loader = followGraph.newLoader();
+		for (int i = 0; i < users; i++) {
+			loader.addUser(userName(i));
+		}
+		for (int i = 0; i < users; i++) {
+			for (int j = 0; j < followsPerUser; j++) {
+				int friend = random.nextInt(users);
+				if (friend != i) {
+					loader.addEdge(userName(i), userName(friend));
+				}
+			}
+		}
+		followGraph.install(loader);
+
+		likedSongs = new LikedSongsIndex(Integer.MAX_VALUE);
+		long loadSeq = likedSongs.beginPreload();
+		for (int i = 0; i < users; i++) {
+			List<String> songIds = new ArrayList<String>();
+			for (int j = 0; j < likesPerUser; j++) {
+				songIds.add("song" + random.nextInt(songs));
+			}
+			likedSongs.preload(userName(i), songIds, loadSeq);
+		}
+		likedSongs.endPreload(userName -> null);
+
+		songRecommender = new SongRecommender(followGraph, likedSongs, 0, 1.0f, 0.4f);
+
+		picks = new String[PICKS];
+		for (int i = 0; i < PICKS; i++) {
+			picks[i] = userName(random.nextInt(users));
+		}
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() {
+		songRecommender.shutdown();
+		followGraph.shutdown();
+	}
+
+	@Benchmark
+	public List<String> getMutualFriends() {
+		return followGraph.getMutualFollowing(pick(), pick());
+	}
+
+	@Benchmark
+	public int getFollowCounts() {
+		String userName = pick();
+		return followGraph.getFollowerCount(userName) + followGraph.getFollowingCount(userName);
+	}
+
+	@Benchmark
+	public List<Map<String, Object>> getSongRecommendations() {
+		return songRecommender.recommend(pick(), 10);
+	}
+
+	// follow is undone right away, so the delta overlay doesn't grow between iterations
+	@Benchmark
+	public List<String> followAndUnfollow() {
+		String userName = pick();
+		String frndUserName = pick();
+		followGraph.follow(userName, frndUserName);
+		List<String> mutual = followGraph.getMutualFollowing(userName, frndUserName);
+		followGraph.unfollow(userName, frndUserName);
+		return mutual;
+	}
+
+	private String pick() {
+		return picks[next++ & (PICKS - 1)];
+	}
+
+	private static String userName(int i) {
+		return "user" + i;
+	}
+}
@@ -0,0 +1,118 @@
+package com.csc301.benchmarks;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+import com.csc301.profilemicroservice.DbQueryExecResult;
+import com.csc301.profilemicroservice.DbQueryStatus;
+import com.csc301.profilemicroservice.ResponseEnvelope;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * Building and serializing responses of profile microservice, as done by ProfileController for every request.
+ *
+ * The response of getAllFriendFavouriteSongTitles is the largest one, a mapping from friends to titles of songs they
+ * like; its size is set by the parameters. "Map" variants are the baseline of a HashMap filled per request by
+ * Utils.setResponseStatus, as the controller did before ResponseEnvelope; run with "-prof gc" to compare allocations too.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ProfileResponseBenchmark {
+
+	@Param({ "10" })
+	public int friends;
+
+	@Param({ "20" })
+	public int songsPerFriend;
+
+	private ObjectMapper jsonMapper;
+	private Map<String, ArrayList<String>> friendsToSongTitles;
+
+	@Setup
+	public void setUp() {
+		jsonMapper = Jackson2ObjectMapperBuilder.json().build();
+
+		friendsToSongTitles = new HashMap<String, ArrayList<String>>();
+		for (int i = 0; i < friends; i++) {
+			ArrayList<String> titles = new ArrayList<String>();
+			for (int j = 0; j < songsPerFriend; j++) {
+				titles.add("Song title " + i + "-" + j);
+			}
+			friendsToSongTitles.put("friend" + i, titles);
+		}
+	}
+
+	@Benchmark
+	public byte[] getAllFriendFavouriteSongTitles() throws JsonProcessingException {
+		DbQueryStatus status = new DbQueryStatus("get all songs friends like", DbQueryExecResult.QUERY_OK);
+		status.setData(friendsToSongTitles);
+		return jsonMapper.writeValueAsBytes(ResponseEnvelope.of(status));
+	}
+
+	@Benchmark
+	public byte[] getAllFriendFavouriteSongTitlesMap() throws JsonProcessingException {
+		Map<String, Object> response = new HashMap<String, Object>();
+		return jsonMapper.writeValueAsBytes(setResponseStatus(response, DbQueryExecResult.QUERY_OK, friendsToSongTitles));
+	}
+
+	@Benchmark
+	public byte[] followFriend() throws JsonProcessingException {
+		return jsonMapper.writeValueAsBytes(
+				ResponseEnvelope.of(new DbQueryStatus("follow a friend", DbQueryExecResult.QUERY_OK)));
+	}
+
+	@Benchmark
+	public byte[] notFound() throws JsonProcessingException {
+		return jsonMapper.writeValueAsBytes(
+				ResponseEnvelope.of(new DbQueryStatus("follow a friend", DbQueryExecResult.QUERY_ERROR_NOT_FOUND)));
+	}
+
+	@Benchmark
+	public byte[] followFriendMap() throws JsonProcessingException {
+		Map<String, Object> response = new HashMap<String, Object>();
+		return jsonMapper.writeValueAsBytes(setResponseStatus(response, DbQueryExecResult.QUERY_OK, null));
+	}
+
+	/**
+	 * Utils.setResponseStatus as it was before ResponseEnvelope replaced it.
+	 */
+	private static Map<String, Object> setResponseStatus(Map<String, Object> response, DbQueryExecResult dbQueryExecResult,
+			Object data) {
+		switch (dbQueryExecResult) {
+		case QUERY_OK:
+			response.put("status", HttpStatus.OK);
+			if (data != null) {
+				response.put("data", data);
+			}
+			break;
+		case QUERY_ERROR_NOT_FOUND:
+			response.put("status", HttpStatus.NOT_FOUND);
+			break;
+		case QUERY_ERROR_GENERIC:
+			response.put("status", HttpStatus.INTERNAL_SERVER_ERROR);
+			break;
+		}
+		return response;
+	}
+}
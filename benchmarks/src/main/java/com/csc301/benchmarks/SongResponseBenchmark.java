@@ -0,0 +1,166 @@
+package com.csc301.benchmarks;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.bson.types.ObjectId;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+import com.csc301.songmicroservice.DbQueryExecResult;
+import com.csc301.songmicroservice.DbQueryStatus;
+import com.csc301.songmicroservice.ResponseEnvelope;
+import com.csc301.songmicroservice.Song;
+import com.csc301.songmicroservice.SongResponseCache;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * Building and serializing responses of song microservice, as done by SongController for every request.
+ *
+ * Mappers are built the way Spring Boot builds the ones of its message converters. "Cached" reads a response
+ * pre-serialized by SongResponseCache, which is what getSongById returns on a cache hit. "Map" variants are the
+ * baseline of a HashMap filled per request, as the controller did before ResponseEnvelope; run with "-prof gc" to
+ * compare allocations too.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SongResponseBenchmark {
+
+	private static final String PATH = "GET http://localhost:3001/getSongById/5d6c3f0e8b0f2a1b2c3d4e5f";
+
+	private ObjectMapper jsonMapper;
+	private ObjectMapper cborMapper;
+	private Song song;
+	private SongResponseCache songCache;
+
+	@Setup
+	public void setUp() {
+		jsonMapper = Jackson2ObjectMapperBuilder.json().build();
+		cborMapper = Jackson2ObjectMapperBuilder.cbor().build();
+
+		song = new Song("Bohemian Rhapsody", "Queen", "A Night at the Opera");
+		song.setId(new ObjectId());
+		song.setSongAmountFavourites(1234);
+		song.setVersion(7);
+
+		songCache = new SongResponseCache(jsonMapper, 10000, 0);
+		songCache.put(song.getId(), ResponseEnvelope.of(null, found(song)), song.getVersion(), songCache.beginLoad());
+	}
+
+	@Benchmark
+	public byte[] getSongByIdJson() throws JsonProcessingException {
+		return jsonMapper.writeValueAsBytes(ResponseEnvelope.of(null, found(song)));
+	}
+
+	@Benchmark
+	public byte[] getSongByIdJsonWithPath() throws JsonProcessingException {
+		return jsonMapper.writeValueAsBytes(ResponseEnvelope.of(PATH, found(song)));
+	}
+
+	@Benchmark
+	public byte[] getSongByIdJsonMap() throws JsonProcessingException {
+		return jsonMapper.writeValueAsBytes(responseMap(null, found(song)));
+	}
+
+	@Benchmark
+	public byte[] getSongByIdJsonMapWithPath() throws JsonProcessingException {
+		return jsonMapper.writeValueAsBytes(responseMap(PATH, found(song)));
+	}
+
+	@Benchmark
+	public byte[] getSongByIdCbor() throws JsonProcessingException {
+		return cborMapper.writeValueAsBytes(ResponseEnvelope.of(null, found(song)));
+	}
+
+	@Benchmark
+	public byte[] getSongByIdCached() {
+		return songCache.get(song.getId()).getBody();
+	}
+
+	@Benchmark
+	public byte[] getSongTitleByIdJson() throws JsonProcessingException {
+		return jsonMapper.writeValueAsBytes(ResponseEnvelope.of(null, found(song.getSongName())));
+	}
+
+	@Benchmark
+	public byte[] getSongTitleByIdCbor() throws JsonProcessingException {
+		return cborMapper.writeValueAsBytes(ResponseEnvelope.of(null, found(song.getSongName())));
+	}
+
+	@Benchmark
+	public byte[] notFoundJson() throws JsonProcessingException {
+		return jsonMapper.writeValueAsBytes(
+				ResponseEnvelope.of(null, new DbQueryStatus("big L", DbQueryExecResult.QUERY_ERROR_NOT_FOUND)));
+	}
+
+	@Benchmark
+	public byte[] notFoundJsonMap() throws JsonProcessingException {
+		return jsonMapper.writeValueAsBytes(
+				responseMap(null, new DbQueryStatus("big L", DbQueryExecResult.QUERY_ERROR_NOT_FOUND)));
+	}
+
+	// Song mapped by Jackson, as in responses
+	@Benchmark
+	public byte[] songJson() throws JsonProcessingException {
+		return jsonMapper.writeValueAsBytes(song);
+	}
+
+	// Song mapped through its string map representation first
+	@Benchmark
+	public byte[] songJsonRepresentation() throws JsonProcessingException {
+		return jsonMapper.writeValueAsBytes(song.getJsonRepresentation());
+	}
+
+	private static Map<String, Object> responseMap(String path, DbQueryStatus status) {
+		Map<String, Object> response = new HashMap<String, Object>();
+		if (path != null) {
+			response.put("path", path);
+		}
+		response.put("message", status.getMessage());
+		return setResponseStatus(response, status.getdbQueryExecResult(), status.getData());
+	}
+
+	/**
+	 * Utils.setResponseStatus as it was before ResponseEnvelope replaced it.
+	 */
+	private static Map<String, Object> setResponseStatus(Map<String, Object> response, DbQueryExecResult dbQueryExecResult,
+			Object data) {
+		switch (dbQueryExecResult) {
+		case QUERY_OK:
+			response.put("status", HttpStatus.OK);
+			if (data != null) {
+				response.put("data", data);
+			}
+			break;
+		case QUERY_ERROR_NOT_FOUND:
+			response.put("status", HttpStatus.NOT_FOUND);
+			break;
+		case QUERY_ERROR_GENERIC:
+			response.put("status", HttpStatus.INTERNAL_SERVER_ERROR);
+			break;
+		}
+		return response;
+	}
+
+	private static DbQueryStatus found(Object data) {
+		DbQueryStatus status = new DbQueryStatus("succ", DbQueryExecResult.QUERY_OK);
+		status.setData(data);
+		return status;
+	}
+}
@@ -0,0 +1,73 @@
+package com.csc301.benchmarks;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.json.JSONObject;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.csc301.profilemicroservice.SongTitleResponse;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+
+/**
+ * Decoding a /getSongTitleById response in profile microservice, per wire format.
+ *
+ * "orgjson" is the baseline: the body read into a String and parsed into an org.json tree, as Utils.readSongTitle did
+ * before CBOR was negotiated. "json" and "cbor" are the streaming SongTitleResponse.read used now. Size of the body
+ * on the wire is printed when the trial starts, as JMH results only hold times.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SongTitleDecodeBenchmark {
+
+	@Param({ "orgjson", "json", "cbor" })
+	public String format;
+
+	private byte[] responseBody;
+	private JsonFactory factory;
+
+	@Setup
+	public void setUp() throws IOException {
+		factory = format.equals("cbor") ? new CBORFactory() : new JsonFactory();
+
+		// same fields song microservice sends, including the echoed path
+		Map<String, Object> response = new LinkedHashMap<String, Object>();
+		response.put("path", "GET http://localhost:3001/getSongTitleById/5d6c3f0e8b0f2a1b2c3d4e5f");
+		response.put("status", "OK");
+		response.put("message", "succ");
+		response.put("data", "Bohemian Rhapsody");
+		responseBody = new ObjectMapper(factory).writeValueAsBytes(response);
+		System.out.println(String.format("%s response: %d bytes", format, responseBody.length));
+	}
+
+	@Benchmark
+	public String decode() throws IOException {
+		if (format.equals("orgjson")) {
+			JSONObject json = new JSONObject(new String(responseBody, StandardCharsets.UTF_8));
+			return json.get("status").equals("OK") ? json.getString("data") : null;
+		}
+		try (JsonParser parser = factory.createParser(responseBody)) {
+			return SongTitleResponse.read(parser).getData();
+		}
+	}
+}
@@ -0,0 +1,130 @@
+package com.csc301.benchmarks;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.core.env.StandardEnvironment;
+
+import com.csc301.profilemicroservice.OperationMetrics;
+import com.csc301.profilemicroservice.ResilientHttpClient;
+import com.csc301.profilemicroservice.Tracer;
+import com.csc301.profilemicroservice.Utils;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Title lookups of profile microservice, i.e. Utils.convertSongIdsToSongTitles, against a local stub of song
+ * microservice.
+ *
+ * The stub answers every /getSongTitleById call with the same pre-encoded body in the format given by "format", so
+ * the benchmark measures the client side: building requests, the HTTP round trip over loopback and decoding. The
+ * decoding alone, against the org.json baseline, is measured by SongTitleDecodeBenchmark.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+// without TCP_NODELAY the stub's separately written headers and body wait for delayed ACKs of the client
+@Fork(value = 1, jvmArgsAppend = "-Dsun.net.httpserver.nodelay=true")
+public class SongTitleLookupBenchmark {
+
+	@Param({ "json", "cbor" })
+	public String format;
+
+	@Param({ "4" })
+	public int friends;
+
+	@Param({ "5" })
+	public int songsPerFriend;
+
+	private HttpServer server;
+	private ExecutorService serverExecutor;
+	private String baseUrl;
+	private ResilientHttpClient client;
+	private Tracer tracer;
+	private Map<String, ArrayList<String>> friendsToSongIds;
+
+	private byte[] responseBody;
+
+	@Setup(Level.Trial)
+	public void setUp() throws IOException {
+		boolean cbor = format.equals("cbor");
+		JsonFactory factory = cbor ? new CBORFactory() : new JsonFactory();
+
+		// same fields song microservice sends, including the echoed path the client skips
+		Map<String, Object> response = new LinkedHashMap<String, Object>();
+		response.put("path", "GET http://localhost:3001/getSongTitleById/5d6c3f0e8b0f2a1b2c3d4e5f");
+		response.put("status", "OK");
+		response.put("message", "succ");
+		response.put("data", "Bohemian Rhapsody");
+		responseBody = new ObjectMapper(factory).writeValueAsBytes(response);
+
+		String contentType = cbor ? Utils.APPLICATION_CBOR : "application/json;charset=UTF-8";
+		server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+		server.createContext("/getSongTitleById/", exchange -> {
+			exchange.getResponseHeaders().set("Content-Type", contentType);
+			exchange.sendResponseHeaders(200, responseBody.length);
+			try (OutputStream body = exchange.getResponseBody()) {
+				body.write(responseBody);
+			}
+		});
+		serverExecutor = Executors.newFixedThreadPool(4);
+		server.setExecutor(serverExecutor);
+		server.start();
+		baseUrl = "http://localhost:" + server.getAddress().getPort();
+
+		tracer = new Tracer(new ObjectMapper(), 4096, "");
+		client = new ResilientHttpClient(new StandardEnvironment(), new OperationMetrics(), tracer);
+
+		friendsToSongIds = new HashMap<String, ArrayList<String>>();
+		for (int i = 0; i < friends; i++) {
+			ArrayList<String> songIds = new ArrayList<String>();
+			for (int j = 0; j < songsPerFriend; j++) {
+				songIds.add(String.format("5d6c3f0e8b0f2a1b2c3d%04x", i * songsPerFriend + j));
+			}
+			friendsToSongIds.put("friend" + i, songIds);
+		}
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() {
+		server.stop(0);
+		serverExecutor.shutdownNow();
+		tracer.shutdown();
+	}
+
+	@Benchmark
+	public Map<String, ArrayList<String>> convertSongIdsToSongTitles() throws IOException {
+		return Utils.convertSongIdsToSongTitles(client, baseUrl, friendsToSongIds);
+	}
+
+	@Benchmark
+	public String getSongTitleById() throws IOException {
+		return Utils.getSondTitleById(client, baseUrl, "5d6c3f0e8b0f2a1b2c3d4e5f");
+	}
+}
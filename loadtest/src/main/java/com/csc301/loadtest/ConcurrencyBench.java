@@ -0,0 +1,329 @@
+package com.csc301.loadtest;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+
+import okhttp3.HttpUrl;
+import okhttp3.MediaType;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.RequestBody;
+import okhttp3.Response;
+
+/**
+ * Measures how many requests song microservice holds at the same time within a memory budget, with Tomcat's
+ * platform thread pool and with virtual threads (server.virtualThreads.enabled).
+ *
+ * Every request is a deleteSongById whose playlist cleanup call goes to a stub of profile microservice that accepts
+ * the connection and doesn't answer, so each request stays blocked in I/O like a call to a slow dependency. Requests
+ * are raised step by step to the given levels; after each step the bench counts the cleanup calls that reached the
+ * stub, i.e. requests in flight in the service, and reads resident memory and thread count of the service process.
+ * A variant stops at the first level it doesn't reach or whose resident memory is over the budget. Requests are sent
+ * over raw sockets and the stub holds connections without threads, so neither side of the bench needs a thread per
+ * request.
+ *
+ * Services are started on the JVM running the bench, so run it with Java 21 or newer for the virtual variant. Every
+ * in-flight request takes a file descriptor in the service and two in the bench, so raise "ulimit -n" for high
+ * levels.
+ *
+ * Options (all optional):
+ *   --variants platform,virtual        variants to compare
+ *   --levels 250,500,1000,2000,4000    requests in flight to step through
+ *   --memoryMb 1024                    budget of resident memory of the service
+ *   --jvmArgs="-Xmx256m"               JVM arguments of the service
+ *   --platformThreads 10000            Tomcat pool size of the platform variant, large enough that memory limits it
+ *   --settleMs 3000                    a step ends once no more calls reached the stub for this long
+ *   --songPort 3001 --stubPort 3902 --mongoPort 27017
+ *   --songArgs                         extra arguments of the service
+ *   --out concurrency.json             also write the results as JSON
+ */
+public class ConcurrencyBench {
+
+	// requests sent that didn't reach the stub yet
+	private static final int MAX_UNSETTLED = 100;
+
+	private static final RequestBody EMPTY_BODY = RequestBody.create(MediaType.parse("text/plain"), "");
+	private static final byte[] STUB_RESPONSE = ("HTTP/1.1 200 OK\r\nContent-Type: application/json\r\n"
+			+ "Content-Length: 15\r\nConnection: close\r\n\r\n{\"status\":\"OK\"}").getBytes(StandardCharsets.US_ASCII);
+
+	public static void main(String[] args) throws Exception {
+		Options options = new Options(args);
+
+		List<String> variants = Arrays.asList(options.get("variants", "platform,virtual").split(","));
+		List<Integer> levels = new ArrayList<Integer>();
+		for (String level : options.get("levels", "250,500,1000,2000,4000").split(",")) {
+			levels.add(Integer.parseInt(level));
+		}
+		long memoryKb = options.getLong("memoryMb", 1024) * 1024;
+		long settleMs = options.getLong("settleMs", 3000);
+		int songPort = options.getInt("songPort", 3001);
+		int stubPort = options.getInt("stubPort", 3902);
+		int mongoPort = options.getInt("mongoPort", StandIns.MONGO_PORT);
+		List<String> jvmArgs = options.has("jvmArgs") ? options.getArgs("jvmArgs") : Arrays.asList("-Xmx256m");
+		File logDir = new File(options.get("logDir", "target/logs"));
+
+		OkHttpClient client = new OkHttpClient.Builder().readTimeout(30, TimeUnit.SECONDS).build();
+		List<Map<String, Object>> results = new ArrayList<Map<String, Object>>();
+
+		try (StandIns standIns = StandIns.start(mongoPort, StandIns.BOLT_PORT); StubServer stub = new StubServer(stubPort)) {
+			for (String variant : variants) {
+				List<String> appArgs = new ArrayList<String>(Arrays.asList("--spring.data.mongodb.host=localhost",
+						"--spring.data.mongodb.port=" + mongoPort, "--profileService.url=http://localhost:" + stubPort,
+						// nothing but memory may limit requests: no admission limit, bulkhead or deadline of cleanup calls
+						"--admission.enabled=false", "--httpClient.playlistCleanup.maxConcurrent=1000000",
+						"--httpClient.playlistCleanup.deadlineMs=600000", "--server.tomcat.max-connections=1000000",
+						"--server.tomcat.accept-count=10000"));
+				if (variant.equals("platform")) {
+					appArgs.add("--server.tomcat.max-threads=" + options.getInt("platformThreads", 10000));
+				} else if (variant.equals("virtual")) {
+					appArgs.add("--server.virtualThreads.enabled=true");
+				} else {
+					throw new IllegalArgumentException("Unknown variant " + variant);
+				}
+				appArgs.addAll(options.getArgs("songArgs"));
+
+				try (ServiceProcess song = ServiceProcess.start("concurrency-" + variant, new File(options.get(
+								"songJar", "../song-microservice/target/song-microservice-0.0.1-SNAPSHOT-exec.jar")),
+								songPort, jvmArgs, appArgs, logDir)) {
+					results.add(run(variant, client, song, stub, songPort, levels, memoryKb, settleMs));
+				}
+			}
+		}
+
+		print(results, memoryKb / 1024);
+		if (options.has("out")) {
+			new ObjectMapper().enable(SerializationFeature.INDENT_OUTPUT).writeValue(new File(options.get("out", null)),
+					results);
+		}
+	}
+
+
+	/**
+	 * Step through the levels against one started service.
+	 *
+	 * @param  variant   Name of the variant.
+	 * @param  client    Client adding songs.
+	 * @param  song      Started song microservice.
+	 * @param  stub      Stub of profile microservice the service calls.
+	 * @param  songPort  Port of song microservice.
+	 * @param  levels    Requests in flight to step through, ascending.
+	 * @param  memoryKb  Budget of resident memory.
+	 * @param  settleMs  Time without new calls at the stub that ends a step.
+	 * @return           Steps and highest level reached within the budget.
+	 * @throws IOException  If songs couldn't be added or service couldn't be reached.
+	 */
+	private static Map<String, Object> run(String variant, OkHttpClient client, ServiceProcess song, StubServer stub,
+			int songPort, List<Integer> levels, long memoryKb, long settleMs) throws IOException {
+		int maxLevel = levels.get(levels.size() - 1);
+		System.out.println(variant + ": adding " + maxLevel + " songs");
+		List<String> songIds = addSongs(client, "http://localhost:" + songPort, maxLevel);
+
+		// calls of the previous variant that reached the stub late
+		stub.answerAll();
+
+		List<Map<String, Object>> steps = new ArrayList<Map<String, Object>>();
+		List<Socket> requests = new ArrayList<Socket>();
+		Map<String, Long> idle = readStatus(song.getPid());
+		int maxReached = 0;
+		try {
+			for (int level : levels) {
+				boolean stalled = false;
+				while (requests.size() < level && !stalled) {
+					requests.add(sendDelete(songPort, songIds.get(requests.size())));
+					// Mongo driver lets at most 500 requests wait for a connection, more fail before the cleanup call
+					if (requests.size() - stub.getCalls() >= MAX_UNSETTLED) {
+						int expected = requests.size() - MAX_UNSETTLED / 2;
+						stalled = stub.awaitCalls(expected, settleMs) < expected;
+					}
+				}
+				int reached = stub.awaitCalls(level, settleMs);
+				Map<String, Long> status = readStatus(song.getPid());
+
+				Map<String, Object> step = new LinkedHashMap<String, Object>();
+				step.put("level", level);
+				step.put("inFlight", reached);
+				step.put("rssMb", status.get("VmRSS") / 1024);
+				step.put("threads", status.get("Threads"));
+				steps.add(step);
+				System.out.println(String.format("%s: %d of %d requests in flight, %d MB resident, %d threads", variant,
+						reached, level, status.get("VmRSS") / 1024, status.get("Threads")));
+
+				if (reached < level || status.get("VmRSS") > memoryKb) {
+					break;
+				}
+				maxReached = level;
+			}
+		} finally {
+			stub.answerAll();
+			for (Socket request : requests) {
+				request.close();
+			}
+		}
+
+		Map<String, Object> result = new LinkedHashMap<String, Object>();
+		result.put("variant", variant);
+		result.put("idleRssMb", idle.get("VmRSS") / 1024);
+		result.put("maxInFlightWithinBudget", maxReached);
+		result.put("steps", steps);
+		return result;
+	}
+
+	private static List<String> addSongs(OkHttpClient client, String songUrl, int count) throws IOException {
+		ObjectMapper mapper = new ObjectMapper();
+		List<String> songIds = new ArrayList<String>(count);
+		for (int i = 0; i < count; i++) {
+			HttpUrl url = HttpUrl.parse(songUrl).newBuilder().addPathSegment("addSong")
+					.addQueryParameter("songName", "concurrency-" + System.nanoTime())
+					.addQueryParameter("songArtistFullName", "concurrency artist")
+					.addQueryParameter("songAlbum", "concurrency album").build();
+			try (Response response = client.newCall(new Request.Builder().url(url).post(EMPTY_BODY).build()).execute()) {
+				JsonNode body = mapper.readTree(response.body().byteStream());
+				songIds.add(body.path("data").path("id").asText());
+			}
+		}
+		return songIds;
+	}
+
+	// request is only written, its response is never read while the step runs
+	private static Socket sendDelete(int port, String songId) throws IOException {
+		Socket socket = new Socket();
+		socket.connect(new InetSocketAddress("localhost", port), 5000);
+		OutputStream out = socket.getOutputStream();
+		out.write(("DELETE /deleteSongById/" + songId + " HTTP/1.1\r\nHost: localhost:" + port
+				+ "\r\nConnection: close\r\n\r\n").getBytes(StandardCharsets.US_ASCII));
+		out.flush();
+		return socket;
+	}
+
+
+	/**
+	 * Read resident memory and thread count of a process from /proc.
+	 *
+	 * @param  pid  Id of the process.
+	 * @return      "VmRSS" in kB and "Threads".
+	 * @throws IOException  If /proc can't be read, e.g. on a system other than Linux.
+	 */
+	private static Map<String, Long> readStatus(long pid) throws IOException {
+		Map<String, Long> status = new LinkedHashMap<String, Long>();
+		for (String line : Files.readAllLines(new File("/proc/" + pid + "/status").toPath(), StandardCharsets.US_ASCII)) {
+			if (line.startsWith("VmRSS:") || line.startsWith("Threads:")) {
+				String[] fields = line.split("\\s+");
+				status.put(fields[0].substring(0, fields[0].length() - 1), Long.parseLong(fields[1]));
+			}
+		}
+		return status;
+	}
+
+	private static void print(List<Map<String, Object>> results, long memoryMb) {
+		System.out.println("Requests held in flight by song microservice within " + memoryMb + " MB resident memory:");
+		System.out.println(String.format("%-10s %10s %14s", "variant", "idleRssMb", "maxInFlight"));
+		for (Map<String, Object> result : results) {
+			System.out.println(String.format("%-10s %10d %14d", result.get("variant"), result.get("idleRssMb"),
+					result.get("maxInFlightWithinBudget")));
+		}
+	}
+
+
+	/**
+	 * Stub of profile microservice: accepts every connection and holds it without answering until answerAll. Calls
+	 * don't share connections while they are in flight, so accepted connections are the calls in flight. One stub
+	 * serves all variants, each variant's calls are answered before the next one starts.
+	 */
+	private static class StubServer implements AutoCloseable {
+
+		private final ServerSocket server;
+		private final ConcurrentLinkedQueue<Socket> held = new ConcurrentLinkedQueue<Socket>();
+		private final Thread acceptor;
+
+		StubServer(int port) throws IOException {
+			server = new ServerSocket();
+			server.bind(new InetSocketAddress("localhost", port), 10000);
+			acceptor = new Thread(this::acceptLoop, "stub-acceptor");
+			acceptor.setDaemon(true);
+			acceptor.start();
+		}
+
+		private void acceptLoop() {
+			while (!server.isClosed()) {
+				try {
+					held.add(server.accept());
+				} catch (IOException e) {
+					// closed
+				}
+			}
+		}
+
+		int getCalls() {
+			return held.size();
+		}
+
+		int awaitCalls(int expected, long settleMs) {
+			int seen = held.size();
+			long lastChange = System.currentTimeMillis();
+			while (seen < expected && System.currentTimeMillis() - lastChange < settleMs) {
+				try {
+					Thread.sleep(50);
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					break;
+				}
+				int now = held.size();
+				if (now != seen) {
+					seen = now;
+					lastChange = System.currentTimeMillis();
+				}
+			}
+			return seen;
+		}
+
+		// reads each request before answering, so closing the connection doesn't reset it
+		void answerAll() {
+			Socket socket;
+			byte[] buffer = new byte[4096];
+			while ((socket = held.poll()) != null) {
+				try {
+					socket.setSoTimeout(1000);
+					InputStream in = socket.getInputStream();
+					String request = "";
+					int read;
+					while (!request.contains("\r\n\r\n") && (read = in.read(buffer)) > 0) {
+						request += new String(buffer, 0, read, StandardCharsets.US_ASCII);
+					}
+					socket.getOutputStream().write(STUB_RESPONSE);
+				} catch (IOException e) {
+					// service gave up on the call
+				} finally {
+					try {
+						socket.close();
+					} catch (IOException e) {
+						// already closed
+					}
+				}
+			}
+		}
+
+		@Override
+		public void close() throws IOException {
+			server.close();
+			answerAll();
+		}
+	}
+}
@@ -0,0 +1,365 @@
+package com.csc301.loadtest;
+
+import static org.neo4j.driver.v1.Values.parameters;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+import org.HdrHistogram.Recorder;
+import org.neo4j.driver.v1.AuthTokens;
+import org.neo4j.driver.v1.Config;
+import org.neo4j.driver.v1.Driver;
+import org.neo4j.driver.v1.GraphDatabase;
+import org.neo4j.driver.v1.Logging;
+import org.neo4j.driver.v1.Session;
+import org.neo4j.driver.v1.StatementResult;
+import org.neo4j.driver.v1.Transaction;
+import org.neo4j.driver.v1.Value;
+import org.neo4j.driver.v1.summary.ProfiledPlan;
+import org.neo4j.harness.ServerControls;
+import org.neo4j.harness.TestServerBuilders;
+
+import com.csc301.profilemicroservice.PlaylistDriverImpl;
+import com.csc301.profilemicroservice.ProfileDriverImpl;
+
+/**
+ * Benchmark of the Cypher statements of profile microservice's drivers against a synthetic social graph, started with
+ * "java -jar loadtest.jar cypher [options]".
+ *
+ * Statements are the drivers' own constants, so a changed query is measured as soon as loadtest is rebuilt against the
+ * changed profile microservice. Every statement is first run with PROFILE on a few sample parameters, in transactions
+ * that are rolled back, to count db hits and rows. Then it is run by closed-loop threads, one session and transaction
+ * per call like the drivers, for every thread count, recording latency and throughput.
+ *
+ * Options (all optional):
+ *   --scale 10k|1m|10m             users of the graph, songs being half as many
+ *   --users, --songs               exact size of the graph instead of a scale
+ *   --followsPerUser 20 --likesPerUser 10 --zipf 1.0 --seed 1
+ *   --threads 1,8,32               concurrency levels every statement runs at
+ *   --warmup 5 --duration 20       seconds of unrecorded and recorded calls per statement and thread count
+ *   --statements a,b               statements to run, named like the driver methods, by default all but the full
+ *                                  graph scans loadFollowGraph and preloadLikedSongs
+ *   --profileSamples 20            calls profiled per statement
+ *   --out result.json              also write the results as JSON
+ *   --boltUrl bolt://host:7687     benchmark a running server instead of an embedded one
+ *   --user neo4j --password 1234   credentials of that server
+ *   --skipGenerate                 graph of the same options was generated into that server before
+ *   --generateOnly                 only generate the graph, e.g. into a server that is benchmarked later
+ *   --workDir target/neo4j         where the embedded database is stored
+ *   --pageCache 2g                 page cache of the embedded database
+ *   --batchSize 10000              rows per transaction while generating
+ */
+public class CypherBench {
+
+	// latencies are kept in microseconds with 3 significant digits
+	private static final long MAX_MICROS = TimeUnit.HOURS.toMicros(1);
+	private static final int SIGNIFICANT_DIGITS = 3;
+
+	// full graph scans run when profile microservice starts, only benchmarked if asked for
+	private static final String[] SCANS = { "loadFollowGraph", "preloadLikedSongs" };
+
+	private final SocialGraph graph;
+	private final String runId = Long.toString(System.currentTimeMillis(), 36);
+	private final AtomicLong created = new AtomicLong();
+
+	// follows and likes made during the run, undone by unfollows and unlikes
+	private final ConcurrentLinkedQueue<String[]> follows = new ConcurrentLinkedQueue<String[]>();
+	private final ConcurrentLinkedQueue<String[]> likes = new ConcurrentLinkedQueue<String[]>();
+	private final ConcurrentLinkedQueue<String> likedSongs = new ConcurrentLinkedQueue<String>();
+	private final ConcurrentHashMap<String, Boolean> deletedSongs = new ConcurrentHashMap<String, Boolean>();
+
+	/**
+	 * One statement of a driver and how its parameters are picked.
+	 */
+	public static class Statement {
+		private final String name;
+		private final String query;
+		private final Function<SplittableRandom, Value> parameters;
+
+		Statement(String name, String query, Function<SplittableRandom, Value> parameters) {
+			this.name = name;
+			this.query = query;
+			this.parameters = parameters;
+		}
+
+		public String getName() {
+			return name;
+		}
+	}
+
+	private final Map<String, Statement> statements = new LinkedHashMap<String, Statement>();
+
+	/**
+	 * Construct CypherBench object.
+	 *
+	 * @param  graph  Graph the statements run against.
+	 */
+	public CypherBench(SocialGraph graph) {
+		this.graph = graph;
+
+		add("createUserProfile", ProfileDriverImpl.CREATE_PROFILE_QUERY, random -> {
+			String userName = "bench-" + runId + "-" + created.incrementAndGet();
+			return parameters("userName", userName, "fullName", userName, "password", "password");
+		});
+		add("followFriend", ProfileDriverImpl.FOLLOW_FRIEND_QUERY, random -> {
+			String[] pair = { graph.randomUser(random), graph.popularUser(random) };
+			follows.add(pair);
+			return parameters("userName", pair[0], "frndUserName", pair[1]);
+		});
+		add("unfollowFriend", ProfileDriverImpl.UNFOLLOW_FRIEND_QUERY, random -> {
+			String[] pair = follows.poll();
+			if (pair == null) {
+				pair = new String[] { graph.randomUser(random), graph.popularUser(random) };
+			}
+			return parameters("userName", pair[0], "frndUserName", pair[1]);
+		});
+		add("getAllSongFriendsLike", ProfileDriverImpl.SONGS_FRIENDS_LIKE_QUERY,
+				random -> parameters("userName", graph.randomUser(random)));
+		add("likeSong", PlaylistDriverImpl.LIKE_SONG_QUERY, random -> {
+			String[] pair = { graph.randomUser(random), graph.popularSong(random) };
+			likes.add(pair);
+			likedSongs.add(pair[1]);
+			return parameters("userName", pair[0], "songId", pair[1]);
+		});
+		add("unlikeSong", PlaylistDriverImpl.UNLIKE_SONG_QUERY, random -> {
+			String[] pair = likes.poll();
+			if (pair == null) {
+				pair = new String[] { graph.randomUser(random), graph.popularSong(random) };
+			}
+			return parameters("userName", pair[0], "songId", pair[1]);
+		});
+		add("getLikedSongIds", PlaylistDriverImpl.LIKED_SONG_IDS_QUERY,
+				random -> parameters("userName", graph.randomUser(random)));
+		// deletes songs liked during the run, so it goes last; once they are used up it measures missing songs
+		add("deleteSongFromDb", PlaylistDriverImpl.DELETE_SONG_QUERY, random -> {
+			String songId;
+			do {
+				songId = likedSongs.poll();
+			} while (songId != null && deletedSongs.putIfAbsent(songId, true) != null);
+			return parameters("songId", songId != null ? songId : "bench-missing-" + random.nextInt());
+		});
+		add(SCANS[0], ProfileDriverImpl.FOLLOW_GRAPH_QUERY, random -> parameters());
+		add(SCANS[1], PlaylistDriverImpl.PRELOAD_LIKED_SONGS_QUERY, random -> parameters());
+	}
+
+	private void add(String name, String query, Function<SplittableRandom, Value> parameters) {
+		statements.put(name, new Statement(name, query, parameters));
+	}
+
+
+	/**
+	 * Get statements to run.
+	 *
+	 * @param  names  Comma separated names, null for all but the full graph scans.
+	 * @return        Statements in the order they are listed.
+	 * @throws IllegalArgumentException  If a statement doesn't exist.
+	 */
+	public List<Statement> getStatements(String names) {
+		List<Statement> result = new ArrayList<Statement>();
+		if (names == null) {
+			result.addAll(statements.values());
+			for (String scan : SCANS) {
+				result.remove(statements.get(scan));
+			}
+			return result;
+		}
+		for (String name : names.split(",")) {
+			Statement statement = statements.get(name.trim());
+			if (statement == null) {
+				throw new IllegalArgumentException("Unknown statement " + name + ", expected one of "
+						+ statements.keySet());
+			}
+			result.add(statement);
+		}
+		return result;
+	}
+
+
+	/**
+	 * Run a statement with PROFILE in transactions that are rolled back.
+	 *
+	 * @param  driver     Driver of the database.
+	 * @param  statement  Statement to profile.
+	 * @param  samples    Number of calls to profile.
+	 * @param  random     Source of parameters.
+	 * @return            Mean db hits and rows of a call.
+	 */
+	public double[] profile(Driver driver, Statement statement, int samples, SplittableRandom random) {
+		long dbHits = 0;
+		long rows = 0;
+		for (int i = 0; i < samples; i++) {
+			try (Session session = driver.session()) {
+				try (Transaction trans = session.beginTransaction()) {
+					StatementResult res = trans.run("PROFILE " + statement.query, statement.parameters.apply(random));
+					ProfiledPlan plan = res.consume().profile();
+					dbHits += sumDbHits(plan);
+					rows += plan.records();
+					trans.failure();
+				}
+			}
+		}
+		return new double[] { (double) dbHits / samples, (double) rows / samples };
+	}
+
+	private static long sumDbHits(ProfiledPlan plan) {
+		long dbHits = plan.dbHits();
+		for (ProfiledPlan child : plan.children()) {
+			dbHits += sumDbHits(child);
+		}
+		return dbHits;
+	}
+
+
+	/**
+	 * Run a statement from several threads, each starting its next call once the previous one finished.
+	 *
+	 * @param  driver     Driver of the database.
+	 * @param  statement  Statement to run.
+	 * @param  threads    Number of threads.
+	 * @param  warmup     Seconds calls are made without being recorded.
+	 * @param  duration   Seconds calls are recorded.
+	 * @param  random     Source of the threads' randomness.
+	 * @return            Latencies and counts of the recorded calls.
+	 */
+	public CypherReport.Run run(Driver driver, Statement statement, int threads, long warmup, long duration,
+			SplittableRandom random) throws InterruptedException {
+		Recorder recorder = new Recorder(MAX_MICROS, SIGNIFICANT_DIGITS);
+		LongAdder errors = new LongAdder();
+		long start = System.nanoTime();
+		long recordFrom = start + TimeUnit.SECONDS.toNanos(warmup);
+		long end = recordFrom + TimeUnit.SECONDS.toNanos(duration);
+		CountDownLatch done = new CountDownLatch(threads);
+
+		for (int t = 0; t < threads; t++) {
+			SplittableRandom threadRandom = random.split();
+			Thread thread = new Thread(() -> {
+				try {
+					for (long now = System.nanoTime(); now < end; now = System.nanoTime()) {
+						try (Session session = driver.session()) {
+							try (Transaction trans = session.beginTransaction()) {
+								trans.run(statement.query, statement.parameters.apply(threadRandom)).list();
+								trans.success();
+							}
+						} catch (RuntimeException e) {
+							if (now >= recordFrom) {
+								errors.increment();
+							}
+							continue;
+						}
+						if (now >= recordFrom) {
+							recorder.recordValue(Math.min((System.nanoTime() - now) / 1000, MAX_MICROS));
+						}
+					}
+				} finally {
+					done.countDown();
+				}
+			}, "cypher-bench-" + t);
+			thread.setDaemon(true);
+			thread.start();
+		}
+		done.await();
+
+		return new CypherReport.Run(statement.getName(), threads, duration, recorder.getIntervalHistogram(),
+				errors.sum());
+	}
+
+
+	public static void main(String[] args) throws Exception {
+		Options options = new Options(args);
+
+		int users = options.getInt("users", scaleUsers(options.get("scale", "10k")));
+		int songs = options.getInt("songs", Math.max(users / 2, 1));
+		SocialGraph graph = new SocialGraph(users, songs, options.getInt("followsPerUser", 20),
+				options.getInt("likesPerUser", 10), options.getDouble("zipf", 1.0), options.getLong("seed", 1));
+		CypherBench bench = new CypherBench(graph);
+		List<Statement> statements = bench.getStatements(options.get("statements", null));
+		List<Integer> threadCounts = new ArrayList<Integer>();
+		int maxThreads = 1;
+		for (String threads : options.get("threads", "1,8,32").split(",")) {
+			threadCounts.add(Integer.parseInt(threads.trim()));
+			maxThreads = Math.max(maxThreads, Integer.parseInt(threads.trim()));
+		}
+
+		ServerControls neo4j = null;
+		String boltUrl = options.get("boltUrl", null);
+		if (boltUrl == null) {
+			int port = freePort();
+			File workDir = new File(options.get("workDir", "target/neo4j"));
+			workDir.mkdirs();
+			neo4j = TestServerBuilders.newInProcessBuilder(workDir)
+					.withConfig("dbms.connector.bolt.listen_address", "localhost:" + port)
+					.withConfig("dbms.connector.http.enabled", "false")
+					.withConfig("dbms.memory.pagecache.size", options.get("pageCache", "512m"))
+					.newServer();
+			boltUrl = "bolt://localhost:" + port;
+			System.out.println("Started embedded Neo4j in " + workDir);
+		}
+
+		Config config = Config.build().withMaxConnectionPoolSize(maxThreads + 8)
+				.withConnectionAcquisitionTimeout(1, TimeUnit.MINUTES).withLogging(Logging.none()).toConfig();
+		try (Driver driver = GraphDatabase.driver(boltUrl,
+				AuthTokens.basic(options.get("user", "neo4j"), options.get("password", "1234")), config)) {
+			if (!options.has("skipGenerate")) {
+				System.out.println("Generating " + users + " users and " + songs + " songs");
+				graph.generate(driver, options.getInt("batchSize", 10000));
+			}
+			if (options.has("generateOnly")) {
+				return;
+			}
+
+			SplittableRandom random = new SplittableRandom(options.getLong("seed", 1));
+			CypherReport report = new CypherReport(users, songs);
+			for (Statement statement : statements) {
+				double[] profiled = bench.profile(driver, statement, options.getInt("profileSamples", 20), random);
+				for (int threads : threadCounts) {
+					System.out.println("Running " + statement.getName() + " on " + threads + " threads");
+					CypherReport.Run run = bench.run(driver, statement, threads, options.getLong("warmup", 5),
+							options.getLong("duration", 20), random);
+					report.add(run, profiled[0], profiled[1]);
+				}
+			}
+
+			System.out.println("Latencies in ms, db hits and rows are means of profiled calls:");
+			report.print(System.out);
+			if (options.has("out")) {
+				report.write(new File(options.get("out", null)));
+			}
+		} finally {
+			if (neo4j != null) {
+				neo4j.close();
+			}
+		}
+	}
+
+	private static int scaleUsers(String scale) {
+		switch (scale.toLowerCase()) {
+		case "10k":
+			return 10000;
+		case "1m":
+			return 1000000;
+		case "10m":
+			return 10000000;
+		default:
+			throw new IllegalArgumentException("Unknown scale " + scale + ", expected 10k, 1m or 10m");
+		}
+	}
+
+	private static int freePort() throws IOException {
+		try (ServerSocket socket = new ServerSocket(0)) {
+			return socket.getLocalPort();
+		}
+	}
+}
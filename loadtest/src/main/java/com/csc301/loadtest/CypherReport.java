@@ -0,0 +1,125 @@
+package com.csc301.loadtest;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.HdrHistogram.Histogram;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+
+/**
+ * Latency percentiles, throughput and db hits of every statement and thread count of a Cypher benchmark, printed as a
+ * table and optionally written as JSON.
+ */
+public class CypherReport {
+
+	private static final double[] PERCENTILES = { 50, 90, 99, 99.9 };
+
+	private final List<Map<String, Object>> rows = new ArrayList<Map<String, Object>>();
+	private final Map<String, Object> result = new LinkedHashMap<String, Object>();
+
+	/**
+	 * Recorded calls of one statement at one thread count.
+	 */
+	public static class Run {
+		private final String statement;
+		private final int threads;
+		private final long durationSeconds;
+		private final Histogram histogram;
+		private final long errors;
+
+		public Run(String statement, int threads, long durationSeconds, Histogram histogram, long errors) {
+			this.statement = statement;
+			this.threads = threads;
+			this.durationSeconds = durationSeconds;
+			this.histogram = histogram;
+			this.errors = errors;
+		}
+	}
+
+
+	/**
+	 * Construct CypherReport object.
+	 *
+	 * @param  users  Number of users of the graph.
+	 * @param  songs  Number of songs of the graph.
+	 */
+	public CypherReport(int users, int songs) {
+		result.put("users", users);
+		result.put("songs", songs);
+		result.put("runs", rows);
+	}
+
+
+	/**
+	 * Add the results of a run.
+	 *
+	 * @param  run     Recorded calls.
+	 * @param  dbHits  Mean db hits of a profiled call.
+	 * @param  rows    Mean rows of a profiled call.
+	 */
+	public void add(Run run, double dbHits, double rows) {
+		Map<String, Object> row = new LinkedHashMap<String, Object>();
+		row.put("statement", run.statement);
+		row.put("threads", run.threads);
+		row.put("count", run.histogram.getTotalCount());
+		row.put("perSecond", (double) run.histogram.getTotalCount() / run.durationSeconds);
+		row.put("meanMs", run.histogram.getMean() / 1000);
+		for (double percentile : PERCENTILES) {
+			row.put("p" + format(percentile) + "Ms", run.histogram.getValueAtPercentile(percentile) / 1000.0);
+		}
+		row.put("maxMs", run.histogram.getMaxValue() / 1000.0);
+		row.put("errors", run.errors);
+		row.put("dbHits", dbHits);
+		row.put("rows", rows);
+		this.rows.add(row);
+	}
+
+	private static String format(double percentile) {
+		return percentile == Math.rint(percentile) ? String.valueOf((long) percentile) : String.valueOf(percentile);
+	}
+
+
+	/**
+	 * Print a line per statement and thread count, latencies in milliseconds.
+	 *
+	 * @param  out  Stream to print to.
+	 */
+	public void print(PrintStream out) {
+		StringBuilder header = new StringBuilder(String.format("%-24s %7s %8s %9s %9s", "statement", "threads",
+				"count", "/s", "mean"));
+		for (double percentile : PERCENTILES) {
+			header.append(String.format(" %9s", "p" + format(percentile)));
+		}
+		header.append(String.format(" %9s %7s %10s %8s", "max", "errors", "dbHits", "rows"));
+		out.println(header);
+
+		for (Map<String, Object> row : rows) {
+			StringBuilder line = new StringBuilder(String.format("%-24s %7d %8d %9.1f %9.2f", row.get("statement"),
+					row.get("threads"), row.get("count"), row.get("perSecond"), row.get("meanMs")));
+			for (double percentile : PERCENTILES) {
+				line.append(String.format(" %9.2f", row.get("p" + format(percentile) + "Ms")));
+			}
+			line.append(String.format(" %9.2f %7d %10.1f %8.1f", row.get("maxMs"), row.get("errors"),
+					row.get("dbHits"), row.get("rows")));
+			out.println(line);
+		}
+	}
+
+
+	/**
+	 * Write the report as JSON.
+	 *
+	 * @param  file         File to write to.
+	 * @throws IOException  If file could not be written.
+	 */
+	public void write(File file) throws IOException {
+		new ObjectMapper().enable(SerializationFeature.INDENT_OUTPUT).writeValue(file, result);
+	}
+}
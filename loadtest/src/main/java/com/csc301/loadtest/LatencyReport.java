@@ -0,0 +1,116 @@
+package com.csc301.loadtest;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.HdrHistogram.Histogram;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+
+/**
+ * Latency percentiles and outcome counts of a run, printed as a table and optionally written as JSON.
+ */
+public class LatencyReport {
+
+	private static final double[] PERCENTILES = { 50, 90, 99, 99.9, 99.99 };
+
+	private final List<Map<String, Object>> rows = new ArrayList<Map<String, Object>>();
+	private final Map<String, Object> run = new LinkedHashMap<String, Object>();
+
+	/**
+	 * Construct LatencyReport object.
+	 *
+	 * @param  stats            Stats of every operation.
+	 * @param  rate             Calls started per second.
+	 * @param  durationSeconds  Time calls were recorded.
+	 */
+	public LatencyReport(Map<String, LoadGenerator.OperationStats> stats, double rate, long durationSeconds) {
+		run.put("rate", rate);
+		run.put("durationSeconds", durationSeconds);
+
+		Histogram total = null;
+		for (Map.Entry<String, LoadGenerator.OperationStats> entry : stats.entrySet()) {
+			LoadGenerator.OperationStats operationStats = entry.getValue();
+			Histogram histogram = operationStats.getHistogram();
+			if (total == null) {
+				total = histogram.copy();
+			} else {
+				total.add(histogram);
+			}
+
+			Map<String, Object> row = toRow(entry.getKey(), histogram, durationSeconds);
+			row.put("ok", operationStats.getOk());
+			row.put("notOk", operationStats.getNotOk());
+			row.put("httpErrors", operationStats.getHttpErrors());
+			row.put("failures", operationStats.getFailures());
+			rows.add(row);
+		}
+		if (total != null) {
+			rows.add(toRow("all", total, durationSeconds));
+		}
+		run.put("operations", rows);
+	}
+
+	private static Map<String, Object> toRow(String operation, Histogram histogram, long durationSeconds) {
+		Map<String, Object> row = new LinkedHashMap<String, Object>();
+		row.put("operation", operation);
+		row.put("count", histogram.getTotalCount());
+		row.put("perSecond", (double) histogram.getTotalCount() / durationSeconds);
+		row.put("meanMs", histogram.getMean() / 1000);
+		for (double percentile : PERCENTILES) {
+			row.put("p" + format(percentile) + "Ms", histogram.getValueAtPercentile(percentile) / 1000.0);
+		}
+		row.put("maxMs", histogram.getMaxValue() / 1000.0);
+		return row;
+	}
+
+	private static String format(double percentile) {
+		return percentile == Math.rint(percentile) ? String.valueOf((long) percentile) : String.valueOf(percentile);
+	}
+
+
+	/**
+	 * Print a line per operation, latencies in milliseconds.
+	 *
+	 * @param  out  Stream to print to.
+	 */
+	public void print(PrintStream out) {
+		StringBuilder header = new StringBuilder(String.format("%-32s %8s %8s %9s", "operation", "count", "/s", "mean"));
+		for (double percentile : PERCENTILES) {
+			header.append(String.format(" %9s", "p" + format(percentile)));
+		}
+		header.append(String.format(" %9s %8s %8s %8s %8s", "max", "ok", "notOk", "httpErr", "failed"));
+		out.println(header);
+
+		for (Map<String, Object> row : rows) {
+			StringBuilder line = new StringBuilder(String.format("%-32s %8d %8.1f %9.2f", row.get("operation"),
+					row.get("count"), row.get("perSecond"), row.get("meanMs")));
+			for (double percentile : PERCENTILES) {
+				line.append(String.format(" %9.2f", row.get("p" + format(percentile) + "Ms")));
+			}
+			line.append(String.format(" %9.2f", row.get("maxMs")));
+			if (row.containsKey("ok")) {
+				line.append(String.format(" %8d %8d %8d %8d", row.get("ok"), row.get("notOk"), row.get("httpErrors"),
+						row.get("failures")));
+			}
+			out.println(line);
+		}
+	}
+
+
+	/**
+	 * Write the report as JSON.
+	 *
+	 * @param  file         File to write to.
+	 * @throws IOException  If file could not be written.
+	 */
+	public void write(File file) throws IOException {
+		new ObjectMapper().enable(SerializationFeature.INDENT_OUTPUT).writeValue(file, run);
+	}
+}
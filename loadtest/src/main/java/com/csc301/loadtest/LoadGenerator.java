@@ -0,0 +1,244 @@
+package com.csc301.loadtest;
+
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.SplittableRandom;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+
+import okhttp3.Call;
+import okhttp3.Callback;
+import okhttp3.Dispatcher;
+import okhttp3.OkHttpClient;
+import okhttp3.Response;
+
+/**
+ * Open-model load generator: calls are started at a constant arrival rate, whether or not earlier ones finished.
+ *
+ * Every call has an intended start time on a fixed schedule, and its latency is measured from that time rather than
+ * from when it was actually sent. If the services (or the generator itself) fall behind, the time calls spend waiting
+ * to be sent is counted as well, so percentiles don't suffer from coordinated omission. Calls started during warmup
+ * are made but not recorded. Calls still running once the drain time after the last start is over are recorded as
+ * failures at the time waited so far, so the slowest calls aren't left out of the percentiles.
+ */
+public class LoadGenerator {
+
+	// latencies are kept in microseconds with 3 significant digits
+	private static final long MAX_MICROS = TimeUnit.HOURS.toMicros(1);
+	private static final int SIGNIFICANT_DIGITS = 3;
+
+	private final OkHttpClient client;
+	private final Workload workload;
+	private final long drainNanos;
+	private final ConcurrentHashMap<String, OperationStats> stats = new ConcurrentHashMap<String, OperationStats>();
+	// calls sent and not recorded yet
+	private final Set<PendingCall> pending = ConcurrentHashMap.newKeySet();
+
+	/**
+	 * Latencies and outcomes of one operation.
+	 */
+	public static class OperationStats {
+		private final Recorder recorder = new Recorder(MAX_MICROS, SIGNIFICANT_DIGITS);
+		// HTTP 200 with status OK
+		private final LongAdder ok = new LongAdder();
+		// HTTP 200 with another status, e.g. NOT_FOUND
+		private final LongAdder notOk = new LongAdder();
+		// any other HTTP status
+		private final LongAdder httpErrors = new LongAdder();
+		// no response at all, or none before the drain time was over
+		private final LongAdder failures = new LongAdder();
+
+		public Histogram getHistogram() {
+			return recorder.getIntervalHistogram();
+		}
+
+		public long getOk() {
+			return ok.sum();
+		}
+
+		public long getNotOk() {
+			return notOk.sum();
+		}
+
+		public long getHttpErrors() {
+			return httpErrors.sum();
+		}
+
+		public long getFailures() {
+			return failures.sum();
+		}
+	}
+
+
+	private static class PendingCall {
+		final Call httpCall;
+		final long intended;
+		final OperationStats operationStats;
+
+		PendingCall(Call httpCall, long intended, OperationStats operationStats) {
+			this.httpCall = httpCall;
+			this.intended = intended;
+			this.operationStats = operationStats;
+		}
+	}
+
+
+	/**
+	 * Construct LoadGenerator object, waiting a minute for calls still running after the last one was started.
+	 *
+	 * @param  workload     Workload calls are drawn from.
+	 * @param  maxInFlight  Maximum number of calls sent at the same time; more calls wait, which counts into their
+	 *                      latency.
+	 */
+	public LoadGenerator(Workload workload, int maxInFlight) {
+		this(workload, maxInFlight, TimeUnit.MINUTES.toSeconds(1));
+	}
+
+
+	/**
+	 * Construct LoadGenerator object.
+	 *
+	 * @param  workload      Workload calls are drawn from.
+	 * @param  maxInFlight   Maximum number of calls sent at the same time; more calls wait, which counts into their
+	 *                       latency.
+	 * @param  drainSeconds  Time to wait for calls still running after the last one was started.
+	 */
+	public LoadGenerator(Workload workload, int maxInFlight, long drainSeconds) {
+		Dispatcher dispatcher = new Dispatcher();
+		dispatcher.setMaxRequests(maxInFlight);
+		dispatcher.setMaxRequestsPerHost(maxInFlight);
+		this.client = new OkHttpClient.Builder().dispatcher(dispatcher).callTimeout(30, TimeUnit.SECONDS).build();
+		this.workload = workload;
+		this.drainNanos = TimeUnit.SECONDS.toNanos(drainSeconds);
+	}
+
+	public OkHttpClient getClient() {
+		return client;
+	}
+
+
+	/**
+	 * Generate load and wait for all calls to finish.
+	 *
+	 * @param  rate            Calls started per second.
+	 * @param  warmupSeconds   Time calls are made without being recorded.
+	 * @param  durationSeconds Time calls are made and recorded, after warmup.
+	 * @param  random          Source of randomness.
+	 * @return                 Stats of every operation, in order of first call.
+	 */
+	public Map<String, OperationStats> run(double rate, long warmupSeconds, long durationSeconds,
+			SplittableRandom random) {
+		long interval = (long) (TimeUnit.SECONDS.toNanos(1) / rate);
+		long start = System.nanoTime();
+		long measureFrom = start + TimeUnit.SECONDS.toNanos(warmupSeconds);
+		long end = measureFrom + TimeUnit.SECONDS.toNanos(durationSeconds);
+		Map<String, OperationStats> ordered = new LinkedHashMap<String, OperationStats>();
+
+		long maxLag = 0;
+		for (long i = 0;; i++) {
+			long intended = start + i * interval;
+			if (intended >= end) {
+				break;
+			}
+			long wait = intended - System.nanoTime();
+			if (wait > 0) {
+				LockSupport.parkNanos(wait);
+			} else {
+				maxLag = Math.max(maxLag, -wait);
+			}
+
+			Workload.Call call = workload.next(random);
+			OperationStats operationStats = null;
+			if (intended >= measureFrom) {
+				operationStats = stats.computeIfAbsent(call.getOperation(), k -> new OperationStats());
+				ordered.putIfAbsent(call.getOperation(), operationStats);
+			}
+			send(call, intended, operationStats);
+		}
+
+		awaitInFlight();
+		if (TimeUnit.NANOSECONDS.toMillis(maxLag) > 10) {
+			System.out.println("Generator was up to " + TimeUnit.NANOSECONDS.toMillis(maxLag)
+					+ " ms behind schedule, the delay is included in latencies");
+		}
+		return ordered;
+	}
+
+	private void send(Workload.Call call, long intended, OperationStats operationStats) {
+		PendingCall pendingCall = new PendingCall(client.newCall(call.getRequest()), intended, operationStats);
+		pending.add(pendingCall);
+		pendingCall.httpCall.enqueue(new Callback() {
+			@Override
+			public void onResponse(Call httpCall, Response response) {
+				boolean ok;
+				try (Response closing = response) {
+					ok = response.code() == 200 && response.body().string().contains("\"status\":\"OK\"");
+				} catch (IOException e) {
+					onFailure(httpCall, e);
+					return;
+				}
+				if (ok) {
+					call.succeeded();
+				}
+				// calls finishing after the drain time were already recorded as failures
+				if (pending.remove(pendingCall) && operationStats != null) {
+					record(operationStats, intended);
+					(ok ? operationStats.ok : response.code() == 200 ? operationStats.notOk : operationStats.httpErrors)
+							.increment();
+				}
+			}
+
+			@Override
+			public void onFailure(Call httpCall, IOException e) {
+				if (pending.remove(pendingCall) && operationStats != null) {
+					record(operationStats, intended);
+					operationStats.failures.increment();
+				}
+			}
+		});
+	}
+
+	private static void record(OperationStats operationStats, long intended) {
+		long micros = TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - intended);
+		operationStats.recorder.recordValue(Math.min(Math.max(micros, 1), MAX_MICROS));
+	}
+
+	private void awaitInFlight() {
+		long deadline = System.nanoTime() + drainNanos;
+		while (!pending.isEmpty() && System.nanoTime() < deadline) {
+			LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(10));
+		}
+
+		// leaving them out would cut off the slowest calls, so they count as failures that took as long as waited
+		int unfinished = 0;
+		for (PendingCall pendingCall : pending) {
+			if (pending.remove(pendingCall)) {
+				if (pendingCall.operationStats != null) {
+					record(pendingCall.operationStats, pendingCall.intended);
+					pendingCall.operationStats.failures.increment();
+				}
+				pendingCall.httpCall.cancel();
+				unfinished++;
+			}
+		}
+		if (unfinished > 0) {
+			System.out.println(unfinished + " calls still running after waiting " + TimeUnit.NANOSECONDS.toSeconds(drainNanos)
+					+ " s, they are recorded as failures with the time waited so far");
+		}
+	}
+
+	/**
+	 * Stop threads and connections of the client.
+	 */
+	public void shutdown() {
+		client.dispatcher().executorService().shutdownNow();
+		client.connectionPool().evictAll();
+	}
+}
@@ -0,0 +1,126 @@
+package com.csc301.loadtest;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.SplittableRandom;
+
+/**
+ * Entry point of loadtest.jar: optionally starts database stand-ins and both services locally, populates them, runs
+ * the load and prints latency percentiles of every operation.
+ *
+ * Options (all optional):
+ *   --rate 100                 calls started per second
+ *   --warmup 10 --duration 60  seconds of unrecorded and recorded load
+ *   --mix addSong=5,...        relative weights of operations, see Workload.DEFAULT_MIX
+ *   --users 1000 --songs 2000  size of the population
+ *   --followsPerUser 10 --likesPerUser 5
+ *   --zipf 0.99                skew of song and user popularity, 0 for uniform
+ *   --maxInFlight 512          calls sent at the same time, later ones wait
+ *   --drainSeconds 60          wait for running calls after the last start, then record them as failures
+ *   --seed 1                   seed of all random choices
+ *   --out result.json          also write the report as JSON
+ *   --start                    start services from their jars, and stand-ins of databases that aren't running
+ *   --songJar, --profileJar    executable jars, by default the ones built in the sibling service directories
+ *   --songPort 3001 --profilePort 3002 --mongoPort 27017
+ *   --jvmArgs="-Xmx1g"         JVM arguments of both services
+ *   --songArgs="--a=b --c=d"   extra arguments of song microservice, e.g. --spring.profiles.active=reactive
+ *   --profileArgs="..."        extra arguments of profile microservice, e.g. --server.virtualThreads.enabled=true
+ * Without --start, services are expected at --songUrl and --profileUrl (localhost on the default ports).
+ *
+ * "java -jar loadtest.jar cypher [options]" runs CypherBench, "startup [options]" StartupBench and
+ * "concurrency [options]" ConcurrencyBench instead.
+ */
+public class LoadTest {
+
+	public static void main(String[] args) throws Exception {
+		if (args.length > 0 && args[0].equals("cypher")) {
+			// run from the same jar, which opens the JDK internals the embedded Neo4j needs
+			CypherBench.main(Arrays.copyOfRange(args, 1, args.length));
+			return;
+		}
+		if (args.length > 0 && args[0].equals("startup")) {
+			StartupBench.main(Arrays.copyOfRange(args, 1, args.length));
+			return;
+		}
+		if (args.length > 0 && args[0].equals("concurrency")) {
+			ConcurrencyBench.main(Arrays.copyOfRange(args, 1, args.length));
+			return;
+		}
+
+		Options options = new Options(args);
+
+		double rate = options.getDouble("rate", 100);
+		long warmup = options.getLong("warmup", 10);
+		long duration = options.getLong("duration", 60);
+		SplittableRandom random = new SplittableRandom(options.getLong("seed", 1));
+
+		List<AutoCloseable> started = new ArrayList<AutoCloseable>();
+		Runtime.getRuntime().addShutdownHook(new Thread(() -> closeAll(started)));
+
+		String songUrl = options.get("songUrl", "http://localhost:" + options.getInt("songPort", 3001));
+		String profileUrl = options.get("profileUrl", "http://localhost:" + options.getInt("profilePort", 3002));
+		if (options.has("start")) {
+			start(options, started);
+		}
+
+		Workload workload = new Workload(songUrl, profileUrl, options.get("mix", Workload.DEFAULT_MIX),
+				options.getInt("users", 1000), options.getInt("songs", 2000), options.getDouble("zipf", 0.99));
+		LoadGenerator generator = new LoadGenerator(workload, options.getInt("maxInFlight", 512),
+				options.getLong("drainSeconds", 60));
+		try {
+			workload.populate(generator.getClient(), options.getInt("followsPerUser", 10),
+					options.getInt("likesPerUser", 5), 16, random);
+
+			System.out.println("Running " + rate + " calls/s for " + warmup + " s warmup and " + duration + " s");
+			Map<String, LoadGenerator.OperationStats> stats = generator.run(rate, warmup, duration, random);
+
+			LatencyReport report = new LatencyReport(stats, rate, duration);
+			System.out.println("Latencies in ms, measured from intended start of every call:");
+			report.print(System.out);
+			if (options.has("out")) {
+				report.write(new File(options.get("out", null)));
+			}
+		} finally {
+			generator.shutdown();
+			closeAll(started);
+		}
+	}
+
+	private static void start(Options options, List<AutoCloseable> started) throws Exception {
+		int songPort = options.getInt("songPort", 3001);
+		int profilePort = options.getInt("profilePort", 3002);
+		int mongoPort = options.getInt("mongoPort", StandIns.MONGO_PORT);
+		File logDir = new File(options.get("logDir", "target/logs"));
+		List<String> jvmArgs = options.getArgs("jvmArgs");
+
+		started.add(StandIns.start(mongoPort, StandIns.BOLT_PORT));
+
+		List<String> songArgs = new ArrayList<String>(Arrays.asList("--spring.data.mongodb.host=localhost",
+				"--spring.data.mongodb.port=" + mongoPort, "--profileService.url=http://localhost:" + profilePort));
+		songArgs.addAll(options.getArgs("songArgs"));
+		started.add(ServiceProcess.start("song-microservice", new File(options.get("songJar",
+				"../song-microservice/target/song-microservice-0.0.1-SNAPSHOT-exec.jar")), songPort, jvmArgs, songArgs,
+				logDir));
+
+		List<String> profileArgs = new ArrayList<String>(Arrays.asList("--songService.url=http://localhost:" + songPort));
+		profileArgs.addAll(options.getArgs("profileArgs"));
+		started.add(ServiceProcess.start("profile-microservice", new File(options.get("profileJar",
+				"../profile-microservice/target/profile-microservice-0.0.1-SNAPSHOT-exec.jar")), profilePort, jvmArgs,
+				profileArgs, logDir));
+	}
+
+	// services are stopped before the stand-ins they use
+	private static synchronized void closeAll(List<AutoCloseable> started) {
+		for (int i = started.size() - 1; i >= 0; i--) {
+			try {
+				started.get(i).close();
+			} catch (Exception e) {
+				System.out.println("Could not stop: " + e.getMessage());
+			}
+		}
+		started.clear();
+	}
+}
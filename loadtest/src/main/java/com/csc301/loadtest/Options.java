@@ -0,0 +1,74 @@
+package com.csc301.loadtest;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Command line options given as "--name value", "--name=value" or just "--name" for flags.
+ */
+public class Options {
+
+	private final Map<String, String> values = new HashMap<String, String>();
+
+	/**
+	 * Construct Options object.
+	 *
+	 * @param  args  Command line arguments.
+	 * @throws IllegalArgumentException  If an argument is not an option.
+	 */
+	public Options(String[] args) {
+		for (int i = 0; i < args.length; i++) {
+			if (!args[i].startsWith("--")) {
+				throw new IllegalArgumentException("Unexpected argument " + args[i]);
+			}
+			String name = args[i].substring(2);
+			int equals = name.indexOf('=');
+			if (equals >= 0) {
+				values.put(name.substring(0, equals), name.substring(equals + 1));
+			} else if (i + 1 < args.length && !args[i + 1].startsWith("--")) {
+				values.put(name, args[++i]);
+			} else {
+				values.put(name, "true");
+			}
+		}
+	}
+
+
+	public String get(String name, String defaultValue) {
+		return values.getOrDefault(name, defaultValue);
+	}
+
+	public int getInt(String name, int defaultValue) {
+		return values.containsKey(name) ? Integer.parseInt(values.get(name)) : defaultValue;
+	}
+
+	public long getLong(String name, long defaultValue) {
+		return values.containsKey(name) ? Long.parseLong(values.get(name)) : defaultValue;
+	}
+
+	public double getDouble(String name, double defaultValue) {
+		return values.containsKey(name) ? Double.parseDouble(values.get(name)) : defaultValue;
+	}
+
+	/**
+	 * Get an option holding several arguments separated by spaces, e.g. "--jvmArgs=-Xmx1g -XX:+UseG1GC".
+	 *
+	 * @param  name  Name of the option.
+	 * @return       Arguments, empty if option is not given.
+	 */
+	public List<String> getArgs(String name) {
+		List<String> args = new ArrayList<String>();
+		for (String arg : get(name, "").trim().split("\\s+")) {
+			if (!arg.isEmpty()) {
+				args.add(arg);
+			}
+		}
+		return args;
+	}
+
+	public boolean has(String name) {
+		return values.containsKey(name);
+	}
+}
@@ -0,0 +1,132 @@
+package com.csc301.loadtest;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.Response;
+
+/**
+ * One of the services running as a child process, started from its executable jar.
+ *
+ * Output of the service goes to a log file. The service counts as started once its /metrics endpoint answers.
+ */
+public class ServiceProcess implements AutoCloseable {
+
+	private static final long START_TIMEOUT_MS = TimeUnit.MINUTES.toMillis(3);
+
+	private final String name;
+	private final Process process;
+	private final File log;
+
+	private ServiceProcess(String name, Process process, File log) {
+		this.name = name;
+		this.process = process;
+		this.log = log;
+	}
+
+
+	/**
+	 * Start a service and wait until it answers requests.
+	 *
+	 * @param  name      Name of the service, used for its log file.
+	 * @param  jar       Executable jar of the service.
+	 * @param  port      Port the service listens on.
+	 * @param  jvmArgs   Arguments of the JVM.
+	 * @param  appArgs   Arguments of the service, e.g. property overrides.
+	 * @param  logDir    Directory of log files.
+	 * @return           Started service.
+	 * @throws IOException  If service could not be started or didn't answer in time.
+	 */
+	public static ServiceProcess start(String name, File jar, int port, List<String> jvmArgs, List<String> appArgs,
+			File logDir) throws IOException {
+		if (!jar.isFile()) {
+			throw new IOException(jar + " not found, build it with \"mvn package\" first");
+		}
+
+		List<String> command = new ArrayList<String>();
+		command.add(new File(System.getProperty("java.home"), "bin/java").getPath());
+		command.addAll(jvmArgs);
+		command.add("-jar");
+		command.add(jar.getPath());
+		command.add("--server.port=" + port);
+		command.addAll(appArgs);
+
+		logDir.mkdirs();
+		File log = new File(logDir, name + ".log");
+		Process process = new ProcessBuilder(command).redirectErrorStream(true)
+				.redirectOutput(ProcessBuilder.Redirect.to(log)).start();
+		ServiceProcess service = new ServiceProcess(name, process, log);
+
+		System.out.println("Starting " + name + " on port " + port + ", log in " + log);
+		try {
+			service.awaitReady("http://localhost:" + port + "/metrics");
+		} catch (IOException e) {
+			service.close();
+			throw e;
+		}
+		return service;
+	}
+
+	private void awaitReady(String url) throws IOException {
+		OkHttpClient client = new OkHttpClient.Builder().connectTimeout(1, TimeUnit.SECONDS).build();
+		Request request = new Request.Builder().url(url).build();
+		long deadline = System.currentTimeMillis() + START_TIMEOUT_MS;
+
+		while (System.currentTimeMillis() < deadline) {
+			if (!process.isAlive()) {
+				throw new IOException(name + " exited with " + process.exitValue() + ", see " + log);
+			}
+			try (Response response = client.newCall(request).execute()) {
+				if (response.isSuccessful()) {
+					return;
+				}
+			} catch (IOException e) {
+				// not listening yet
+			}
+			try {
+				Thread.sleep(250);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new IOException("Interrupted while waiting for " + name);
+			}
+		}
+		throw new IOException(name + " didn't start in time, see " + log);
+	}
+
+
+	/**
+	 * Get id of the service process.
+	 *
+	 * @return  Process id, -1 if the JVM running the load generator can't tell (Java 8).
+	 */
+	public long getPid() {
+		try {
+			// Process.pid() exists since Java 9, this module is built for Java 8
+			return (Long) Process.class.getMethod("pid").invoke(process);
+		} catch (ReflectiveOperationException e) {
+			return -1;
+		}
+	}
+
+
+	/**
+	 * Stop the service, forcibly if it doesn't shut down within a few seconds.
+	 */
+	@Override
+	public void close() {
+		process.destroy();
+		try {
+			if (!process.waitFor(10, TimeUnit.SECONDS)) {
+				process.destroyForcibly().waitFor();
+			}
+		} catch (InterruptedException e) {
+			process.destroyForcibly();
+			Thread.currentThread().interrupt();
+		}
+	}
+}
@@ -0,0 +1,218 @@
+package com.csc301.loadtest;
+
+import static org.neo4j.driver.v1.Values.parameters;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.SplittableRandom;
+
+import org.neo4j.driver.v1.Driver;
+import org.neo4j.driver.v1.Session;
+import org.neo4j.driver.v1.Transaction;
+
+/**
+ * Synthetic social graph stored the way profile microservice stores it: profiles that created a favourites playlist,
+ * follows between profiles and songs included in favourites.
+ *
+ * Users are "user0".."user{n-1}" and songs "song0".."song{m-1}". Followed users are drawn from a Zipfian distribution
+ * over all users, so numbers of followers follow a power law, while every user follows between 0 and twice the mean
+ * number of users. Liked songs are drawn the same way over songs. Generation only depends on the seed, so a graph
+ * written to a server once can be benchmarked again without regenerating it.
+ */
+public class SocialGraph {
+
+	private static final long PROGRESS_INTERVAL_MS = 5000;
+
+	private static final String PROFILES_QUERY = "UNWIND $rows AS userName\n"
+			+ "CREATE (nProfile:profile {userName: userName, fullName: userName, password: \"password\"})\n"
+			+ "CREATE (nProfile)-[:created]->(:playlist {plName: userName + \"-favourites\"})";
+
+	private static final String SONGS_QUERY = "UNWIND $rows AS songId\n"
+			+ "CREATE (:song {songId: songId})";
+
+	private static final String FOLLOWS_QUERY = "UNWIND $rows AS row\n"
+			+ "MATCH (user:profile {userName: row.userName})\n"
+			+ "MATCH (friend:profile {userName: row.friendUserName})\n"
+			+ "CREATE (user)-[:follows]->(friend)";
+
+	private static final String LIKES_QUERY = "UNWIND $rows AS row\n"
+			+ "MATCH (:profile {userName: row.userName})-[:created]->(p:playlist {plName: row.userName + \"-favourites\"})\n"
+			+ "MATCH (s:song {songId: row.songId})\n"
+			+ "CREATE (p)-[:includes]->(s)";
+
+	private final int users;
+	private final int songs;
+	private final int followsPerUser;
+	private final int likesPerUser;
+	private final long seed;
+	private final ZipfDistribution popularUsers;
+	private final ZipfDistribution popularSongs;
+
+	/**
+	 * Construct SocialGraph object.
+	 *
+	 * @param  users           Number of profiles.
+	 * @param  songs           Number of songs.
+	 * @param  followsPerUser  Mean number of users every user follows.
+	 * @param  likesPerUser    Mean number of songs every user likes.
+	 * @param  exponent        Skew of follower counts and song popularity, 0 for uniform.
+	 * @param  seed            Seed of all random choices.
+	 */
+	public SocialGraph(int users, int songs, int followsPerUser, int likesPerUser, double exponent, long seed) {
+		this.users = users;
+		this.songs = songs;
+		this.followsPerUser = followsPerUser;
+		this.likesPerUser = likesPerUser;
+		this.seed = seed;
+		this.popularUsers = new ZipfDistribution(users, exponent);
+		this.popularSongs = new ZipfDistribution(songs, exponent);
+	}
+
+
+	public static String userName(int index) {
+		return "user" + index;
+	}
+
+	public static String songId(int index) {
+		return "song" + index;
+	}
+
+	public String randomUser(SplittableRandom random) {
+		return userName(random.nextInt(users));
+	}
+
+	public String popularUser(SplittableRandom random) {
+		return userName(popularUsers.sample(random));
+	}
+
+	public String popularSong(SplittableRandom random) {
+		return songId(popularSongs.sample(random));
+	}
+
+
+	/**
+	 * Write the graph to an empty database, with the same schema profile microservice and its importer create.
+	 *
+	 * @param  driver     Driver of the database.
+	 * @param  batchSize  Rows written per transaction.
+	 */
+	public void generate(Driver driver, int batchSize) {
+		try (Session session = driver.session()) {
+			try (Transaction trans = session.beginTransaction()) {
+				trans.run("CREATE CONSTRAINT ON (nProfile:profile) ASSERT nProfile.userName IS UNIQUE");
+				trans.run("CREATE INDEX ON :song(songId)");
+				trans.success();
+			}
+		}
+
+		Batcher profiles = new Batcher(driver, "profiles", PROFILES_QUERY, batchSize);
+		for (int i = 0; i < users; i++) {
+			profiles.add(userName(i));
+		}
+		profiles.finish();
+
+		Batcher songNodes = new Batcher(driver, "songs", SONGS_QUERY, batchSize);
+		for (int i = 0; i < songs; i++) {
+			songNodes.add(songId(i));
+		}
+		songNodes.finish();
+
+		// every user's follows and likes come from their own generator, so they don't depend on the batch size
+		Batcher follows = new Batcher(driver, "follows", FOLLOWS_QUERY, batchSize);
+		Set<Integer> picked = new HashSet<Integer>();
+		for (int i = 0; i < users; i++) {
+			SplittableRandom random = new SplittableRandom(seed * 31 + i);
+			int count = Math.min(random.nextInt(2 * followsPerUser + 1), users - 1);
+			picked.clear();
+			while (picked.size() < count) {
+				int friend = popularUsers.sample(random);
+				if (friend != i && picked.add(friend)) {
+					follows.add(row("userName", userName(i), "friendUserName", userName(friend)));
+				}
+			}
+		}
+		follows.finish();
+
+		Batcher likes = new Batcher(driver, "likes", LIKES_QUERY, batchSize);
+		for (int i = 0; i < users; i++) {
+			SplittableRandom random = new SplittableRandom(seed * 37 + i);
+			int count = Math.min(random.nextInt(2 * likesPerUser + 1), songs);
+			picked.clear();
+			while (picked.size() < count) {
+				int song = popularSongs.sample(random);
+				if (picked.add(song)) {
+					likes.add(row("userName", userName(i), "songId", songId(song)));
+				}
+			}
+		}
+		likes.finish();
+	}
+
+	private static Map<String, Object> row(String key1, String value1, String key2, String value2) {
+		Map<String, Object> row = new HashMap<String, Object>(4);
+		row.put(key1, value1);
+		row.put(key2, value2);
+		return row;
+	}
+
+
+	/**
+	 * Writes rows in batches with an UNWIND statement, printing progress.
+	 */
+	private static class Batcher {
+		private final Driver driver;
+		private final String name;
+		private final String query;
+		private final int batchSize;
+		private final List<Object> batch;
+		private final long startTime = System.currentTimeMillis();
+		private long lastReport = startTime;
+		private long written = 0;
+
+		Batcher(Driver driver, String name, String query, int batchSize) {
+			this.driver = driver;
+			this.name = name;
+			this.query = query;
+			this.batchSize = batchSize;
+			this.batch = new ArrayList<Object>(batchSize);
+		}
+
+		void add(Object row) {
+			batch.add(row);
+			if (batch.size() == batchSize) {
+				flush();
+			}
+		}
+
+		void finish() {
+			flush();
+			System.out.println(String.format("Generated %d %s in %.1f s", written, name,
+					(System.currentTimeMillis() - startTime) / 1000.0));
+		}
+
+		private void flush() {
+			if (batch.isEmpty()) {
+				return;
+			}
+			try (Session session = driver.session()) {
+				try (Transaction trans = session.beginTransaction()) {
+					trans.run(query, parameters("rows", batch)).consume();
+					trans.success();
+				}
+			}
+			written += batch.size();
+			batch.clear();
+
+			long now = System.currentTimeMillis();
+			if (now - lastReport >= PROGRESS_INTERVAL_MS) {
+				lastReport = now;
+				System.out.println(String.format("%s: %d rows, %.0f rows/s", name, written,
+						written * 1000.0 / (now - startTime)));
+			}
+		}
+	}
+}
@@ -0,0 +1,104 @@
+package com.csc301.loadtest;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+
+import org.neo4j.harness.ServerControls;
+import org.neo4j.harness.TestServerBuilders;
+
+import de.bwaldvogel.mongo.MongoServer;
+import de.bwaldvogel.mongo.backend.memory.MemoryBackend;
+
+/**
+ * Local stand-ins for the databases of the services: an in-memory MongoDB wire protocol server and an embedded
+ * Neo4j 3.5 serving Bolt.
+ *
+ * Both are only started if nothing listens on their port yet, so real local databases are used when they are
+ * running. Data lives in memory (Neo4j in a temporary directory) and is gone once the stand-ins are closed. Neo4j
+ * community edition can't create the property existence constraint of profile microservice, which then logs an error
+ * on startup and runs without it.
+ */
+public class StandIns implements AutoCloseable {
+
+	public static final int MONGO_PORT = 27017;
+	// profile microservice always connects to bolt://localhost:7687
+	public static final int BOLT_PORT = 7687;
+
+	private MongoServer mongo;
+	private ServerControls neo4j;
+
+	/**
+	 * Start stand-ins of databases that are not running.
+	 *
+	 * @param  mongoPort  Port Mongo stand-in listens on.
+	 * @param  boltPort   Port Neo4j stand-in serves Bolt on.
+	 * @return            Started stand-ins, to be closed once services are stopped.
+	 */
+	public static StandIns start(int mongoPort, int boltPort) {
+		StandIns standIns = new StandIns();
+		try {
+			if (isListening(mongoPort)) {
+				System.out.println("Using MongoDB already running on port " + mongoPort);
+			} else {
+				standIns.mongo = new MongoServer(new MemoryBackend());
+				standIns.mongo.bind(new InetSocketAddress("localhost", mongoPort));
+				System.out.println("Started in-memory MongoDB stand-in on port " + mongoPort);
+			}
+
+			if (isListening(boltPort)) {
+				System.out.println("Using Neo4j already running on port " + boltPort);
+			} else {
+				standIns.neo4j = TestServerBuilders.newInProcessBuilder()
+						.withConfig("dbms.connector.bolt.listen_address", "localhost:" + boltPort)
+						.withConfig("dbms.connector.http.enabled", "false")
+						.newServer();
+				System.out.println("Started embedded Neo4j stand-in on port " + boltPort);
+			}
+		} catch (RuntimeException e) {
+			standIns.close();
+			throw e;
+		}
+		return standIns;
+	}
+
+
+	/**
+	 * Check if a server accepts connections on a local port.
+	 *
+	 * @param  port  Port to check.
+	 * @return       True if a connection could be opened.
+	 */
+	public static boolean isListening(int port) {
+		try (Socket socket = new Socket()) {
+			socket.connect(new InetSocketAddress("localhost", port), 200);
+			return true;
+		} catch (IOException e) {
+			return false;
+		}
+	}
+
+
+	@Override
+	public void close() {
+		if (neo4j != null) {
+			neo4j.close();
+			neo4j = null;
+		}
+		if (mongo != null) {
+			mongo.shutdownNow();
+			mongo = null;
+		}
+	}
+
+
+	/**
+	 * Run stand-ins on their own, e.g. in a separate JVM from the load generator, until the process is killed.
+	 */
+	public static void main(String[] args) throws InterruptedException {
+		Options options = new Options(args);
+		StandIns standIns = start(options.getInt("mongoPort", MONGO_PORT), options.getInt("boltPort", BOLT_PORT));
+		Runtime.getRuntime().addShutdownHook(new Thread(standIns::close));
+		Thread.currentThread().join();
+	}
+}
@@ -0,0 +1,267 @@
+package com.csc301.loadtest;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.Response;
+
+/**
+ * Measures time-to-first-request of both services: every run starts a fresh JVM and measures the time from starting
+ * the process until a first request to a real endpoint is answered, which includes creating beans left to first use.
+ *
+ * Variants:
+ *   default  executable jar
+ *   lazy     executable jar with the "faststartup" profile (lazy beans, trimmed auto-configuration)
+ *   cds      launcher jar and class data sharing archive of "mvn -Pfast-startup package", "faststartup" profile
+ *
+ * Options (all optional):
+ *   --runs 5                     runs of every module and variant
+ *   --modules song,profile       modules to start
+ *   --variants default,lazy,cds  variants to compare
+ *   --songPort 3001 --profilePort 3002 --mongoPort 27017
+ *   --jvmArgs="-Xmx512m"         JVM arguments of both services
+ *   --songArgs, --profileArgs    extra arguments of either service
+ *   --out result.json            also write the results as JSON
+ * Databases that aren't running locally are replaced by stand-ins, as with "--start" of LoadTest.
+ */
+public class StartupBench {
+
+	private static final long START_TIMEOUT_MS = TimeUnit.MINUTES.toMillis(3);
+	private static final long POLL_INTERVAL_MS = 5;
+
+	// line Spring Boot logs once the context is refreshed
+	private static final Pattern STARTED = Pattern.compile("Started \\S+ in ([0-9.]+) seconds");
+
+	// ids of first requests don't exist, so this is the answer of an endpoint that ran
+	private static final String EXPECTED_STATUS = "\"status\":\"NOT_FOUND\"";
+
+	private static final Map<String, String> FIRST_REQUESTS = new LinkedHashMap<String, String>();
+	static {
+		FIRST_REQUESTS.put("song", "/getSongTitleById/000000000000000000000000");
+		FIRST_REQUESTS.put("profile", "/getFollowCounts/startupBench");
+	}
+
+	public static void main(String[] args) throws Exception {
+		Options options = new Options(args);
+
+		int runs = options.getInt("runs", 5);
+		List<String> modules = Arrays.asList(options.get("modules", "song,profile").split(","));
+		List<String> variants = Arrays.asList(options.get("variants", "default,lazy,cds").split(","));
+		int songPort = options.getInt("songPort", 3001);
+		int profilePort = options.getInt("profilePort", 3002);
+		int mongoPort = options.getInt("mongoPort", StandIns.MONGO_PORT);
+		File logDir = new File(options.get("logDir", "target/logs"));
+		logDir.mkdirs();
+
+		OkHttpClient client = new OkHttpClient.Builder().connectTimeout(1, TimeUnit.SECONDS)
+				.readTimeout(30, TimeUnit.SECONDS).build();
+		List<Map<String, Object>> results = new ArrayList<Map<String, Object>>();
+
+		try (StandIns standIns = StandIns.start(mongoPort, StandIns.BOLT_PORT)) {
+			for (String module : modules) {
+				if (!FIRST_REQUESTS.containsKey(module)) {
+					throw new IllegalArgumentException("Unknown module " + module);
+				}
+				int port = module.equals("song") ? songPort : profilePort;
+				List<String> appArgs = new ArrayList<String>();
+				if (module.equals("song")) {
+					appArgs.add("--spring.data.mongodb.port=" + mongoPort);
+					appArgs.add("--profileService.url=http://localhost:" + profilePort);
+				} else {
+					appArgs.add("--songService.url=http://localhost:" + songPort);
+				}
+				appArgs.add("--server.port=" + port);
+				appArgs.addAll(options.getArgs(module + "Args"));
+
+				for (String variant : variants) {
+					List<String> command = command(module, variant, options.getArgs("jvmArgs"), appArgs);
+					if (command == null) {
+						continue;
+					}
+
+					List<Long> firstRequestMs = new ArrayList<Long>();
+					List<Double> startedSeconds = new ArrayList<Double>();
+					for (int run = 0; run < runs; run++) {
+						File log = new File(logDir, "startup-" + module + "-" + variant + ".log");
+						firstRequestMs.add(measure(client, command, "http://localhost:" + port
+								+ FIRST_REQUESTS.get(module), log));
+						Double started = startedSeconds(log);
+						if (started != null) {
+							startedSeconds.add(started);
+						}
+						System.out.println(String.format("%s %s run %d: first request after %d ms", module, variant,
+								run + 1, firstRequestMs.get(firstRequestMs.size() - 1)));
+					}
+					results.add(result(module, variant, firstRequestMs, startedSeconds));
+				}
+			}
+		}
+
+		print(results);
+		if (options.has("out")) {
+			new ObjectMapper().enable(SerializationFeature.INDENT_OUTPUT).writeValue(new File(options.get("out", null)),
+					results);
+		}
+	}
+
+
+	/**
+	 * Build the command starting a module in a variant.
+	 *
+	 * @param  module   "song" or "profile".
+	 * @param  variant  "default", "lazy" or "cds".
+	 * @param  jvmArgs  Arguments of the JVM.
+	 * @param  appArgs  Arguments of the service.
+	 * @return          Command, null if the variant hasn't been built.
+	 */
+	private static List<String> command(String module, String variant, List<String> jvmArgs, List<String> appArgs) {
+		String artifact = module + "-microservice";
+		File jar;
+		List<String> command = new ArrayList<String>();
+		command.add(new File(System.getProperty("java.home"), "bin/java").getPath());
+		command.addAll(jvmArgs);
+
+		if (variant.equals("default") || variant.equals("lazy")) {
+			jar = new File("../" + artifact + "/target/" + artifact + "-0.0.1-SNAPSHOT-exec.jar");
+		} else if (variant.equals("cds")) {
+			jar = new File("../" + artifact + "/target/fast-startup/" + artifact + ".jar");
+			File archive = new File(jar.getParentFile(), "app.jsa");
+			if (!archive.isFile()) {
+				System.out.println("Skipping " + module + " " + variant + ", " + archive
+						+ " not found, build it with \"mvn -Pfast-startup package\" first");
+				return null;
+			}
+			command.add("-XX:SharedArchiveFile=" + archive.getPath());
+		} else {
+			throw new IllegalArgumentException("Unknown variant " + variant);
+		}
+		if (!jar.isFile()) {
+			System.out.println("Skipping " + module + " " + variant + ", " + jar + " not found");
+			return null;
+		}
+
+		command.add("-jar");
+		command.add(jar.getPath());
+		command.addAll(appArgs);
+		if (!variant.equals("default")) {
+			command.add("--spring.profiles.active=faststartup");
+		}
+		return command;
+	}
+
+
+	/**
+	 * Start a service, wait until it answers its first request and stop it again.
+	 *
+	 * @param  client   Client sending the request.
+	 * @param  command  Command starting the service.
+	 * @param  url      Url of the first request.
+	 * @param  log      File output of the service is written to.
+	 * @return          Milliseconds from starting the process until the not found answer.
+	 * @throws IOException  If service exited or didn't answer with not found in time.
+	 */
+	private static long measure(OkHttpClient client, List<String> command, String url, File log) throws IOException {
+		Request request = new Request.Builder().url(url).build();
+		long start = System.nanoTime();
+		Process process = new ProcessBuilder(command).redirectErrorStream(true)
+				.redirectOutput(ProcessBuilder.Redirect.to(log)).start();
+		try {
+			long deadline = start + TimeUnit.MILLISECONDS.toNanos(START_TIMEOUT_MS);
+			String lastAnswer = "no answer";
+			while (System.nanoTime() < deadline) {
+				if (!process.isAlive()) {
+					throw new IOException("Service exited with " + process.exitValue() + ", see " + log);
+				}
+				// only the not found status of the envelope means the endpoint ran, other answers (e.g. 503 of admission
+				// control or a 500 of a database that isn't ready) are retried
+				try (Response response = client.newCall(request).execute()) {
+					String body = response.body().string();
+					if (body.contains(EXPECTED_STATUS)) {
+						return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+					}
+					lastAnswer = "last answer " + response.code() + " " + body;
+				} catch (IOException e) {
+					// not listening yet
+				}
+				try {
+					Thread.sleep(POLL_INTERVAL_MS);
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					throw new IOException("Interrupted while waiting for service");
+				}
+			}
+			throw new IOException("Service didn't answer with not found in time, " + lastAnswer + ", see " + log);
+		} finally {
+			process.destroy();
+			try {
+				if (!process.waitFor(10, TimeUnit.SECONDS)) {
+					process.destroyForcibly().waitFor();
+				}
+			} catch (InterruptedException e) {
+				process.destroyForcibly();
+				Thread.currentThread().interrupt();
+			}
+		}
+	}
+
+	private static Double startedSeconds(File log) throws IOException {
+		Matcher matcher = STARTED.matcher(new String(Files.readAllBytes(log.toPath()), StandardCharsets.UTF_8));
+		return matcher.find() ? Double.valueOf(matcher.group(1)) : null;
+	}
+
+
+	private static Map<String, Object> result(String module, String variant, List<Long> firstRequestMs,
+			List<Double> startedSeconds) {
+		List<Long> sorted = new ArrayList<Long>(firstRequestMs);
+		Collections.sort(sorted);
+		double sum = 0;
+		for (long ms : sorted) {
+			sum += ms;
+		}
+		double startedSum = 0;
+		for (double seconds : startedSeconds) {
+			startedSum += seconds;
+		}
+
+		Map<String, Object> result = new LinkedHashMap<String, Object>();
+		result.put("module", module);
+		result.put("variant", variant);
+		result.put("runs", sorted.size());
+		result.put("firstRequestMinMs", sorted.get(0));
+		result.put("firstRequestMedianMs", sorted.get(sorted.size() / 2));
+		result.put("firstRequestMeanMs", sum / sorted.size());
+		result.put("firstRequestMaxMs", sorted.get(sorted.size() - 1));
+		result.put("springStartedMeanMs", startedSeconds.isEmpty() ? null : startedSum * 1000 / startedSeconds.size());
+		result.put("firstRequestMs", firstRequestMs);
+		return result;
+	}
+
+	private static void print(List<Map<String, Object>> results) {
+		System.out.println("Time to first request in ms, from starting the JVM:");
+		System.out.println(String.format("%-8s %-8s %5s %8s %8s %8s %8s %14s", "module", "variant", "runs", "min",
+				"median", "mean", "max", "springStarted"));
+		for (Map<String, Object> result : results) {
+			Double started = (Double) result.get("springStartedMeanMs");
+			System.out.println(String.format("%-8s %-8s %5d %8d %8d %8.0f %8d %14s", result.get("module"),
+					result.get("variant"), result.get("runs"), result.get("firstRequestMinMs"),
+					result.get("firstRequestMedianMs"), result.get("firstRequestMeanMs"),
+					result.get("firstRequestMaxMs"), started == null ? "-" : String.format("%.0f", started)));
+		}
+	}
+}
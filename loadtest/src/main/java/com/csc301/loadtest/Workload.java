@@ -0,0 +1,322 @@
+package com.csc301.loadtest;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import okhttp3.HttpUrl;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.RequestBody;
+import okhttp3.Response;
+
+/**
+ * Users, songs and the mix of calls made against them.
+ *
+ * populate creates users and a song catalog through the services' own endpoints, and adds the initial follows and
+ * likes. During the run every call is drawn from the mix: songs to like are picked from the catalog by a Zipfian
+ * distribution, and so are users to follow, so a few songs and users are far more popular than the rest. Unlikes undo
+ * likes made during the run where possible. All names carry a run id, so runs don't collide in persistent databases.
+ */
+public class Workload {
+
+	public static final String ADD_SONG = "addSong";
+	public static final String LIKE_SONG = "likeSong";
+	public static final String UNLIKE_SONG = "unlikeSong";
+	public static final String FOLLOW_FRIEND = "followFriend";
+	public static final String GET_FAVOURITE_SONG_TITLES = "getAllFriendFavouriteSongTitles";
+
+	public static final String DEFAULT_MIX = ADD_SONG + "=5," + LIKE_SONG + "=30," + UNLIKE_SONG + "=15,"
+			+ FOLLOW_FRIEND + "=20," + GET_FAVOURITE_SONG_TITLES + "=30";
+
+	// likes made during the run that unlikes can undo, older ones are forgotten past this size
+	private static final int MAX_REMEMBERED_LIKES = 100000;
+
+	private static final RequestBody EMPTY_BODY = RequestBody.create(null, new byte[0]);
+	private static final ObjectMapper MAPPER = new ObjectMapper();
+
+	private final HttpUrl songUrl;
+	private final HttpUrl profileUrl;
+	private final String runId = "lt" + Long.toString(System.currentTimeMillis(), 36);
+
+	private final String[] operations;
+	private final double[] cumulativeWeights;
+
+	private final String[] users;
+	private final String[] songIds;
+	private final ZipfDistribution songPopularity;
+	private final ZipfDistribution userPopularity;
+
+	private final ConcurrentLinkedQueue<String[]> likes = new ConcurrentLinkedQueue<String[]>();
+	private final AtomicInteger rememberedLikes = new AtomicInteger();
+	private final AtomicInteger addedSongs = new AtomicInteger();
+
+	/**
+	 * A call to make, with what to do if it succeeds.
+	 */
+	public static class Call {
+		private final String operation;
+		private final Request request;
+		private final Runnable onSuccess;
+
+		Call(String operation, Request request, Runnable onSuccess) {
+			this.operation = operation;
+			this.request = request;
+			this.onSuccess = onSuccess;
+		}
+
+		public String getOperation() {
+			return operation;
+		}
+
+		public Request getRequest() {
+			return request;
+		}
+
+		public void succeeded() {
+			if (onSuccess != null) {
+				onSuccess.run();
+			}
+		}
+	}
+
+
+	/**
+	 * Construct Workload object.
+	 *
+	 * @param  songUrl     Base url of song microservice.
+	 * @param  profileUrl  Base url of profile microservice.
+	 * @param  mix         Relative weights of calls, e.g. "likeSong=3,followFriend=1".
+	 * @param  users       Number of users.
+	 * @param  songs       Number of songs in the catalog.
+	 * @param  exponent    Skew of song and user popularity, 0 for uniform.
+	 */
+	public Workload(String songUrl, String profileUrl, String mix, int users, int songs, double exponent) {
+		this.songUrl = HttpUrl.get(songUrl);
+		this.profileUrl = HttpUrl.get(profileUrl);
+
+		Map<String, Double> weights = parseMix(mix);
+		operations = weights.keySet().toArray(new String[0]);
+		cumulativeWeights = new double[operations.length];
+		double sum = 0;
+		for (int i = 0; i < operations.length; i++) {
+			sum += weights.get(operations[i]);
+			cumulativeWeights[i] = sum;
+		}
+		for (int i = 0; i < operations.length; i++) {
+			cumulativeWeights[i] /= sum;
+		}
+
+		this.users = new String[users];
+		for (int i = 0; i < users; i++) {
+			this.users[i] = runId + "-user" + i;
+		}
+		this.songIds = new String[songs];
+		this.songPopularity = new ZipfDistribution(songs, exponent);
+		this.userPopularity = new ZipfDistribution(users, exponent);
+	}
+
+	private static Map<String, Double> parseMix(String mix) {
+		Map<String, Double> weights = new LinkedHashMap<String, Double>();
+		for (String entry : mix.split(",")) {
+			String[] parts = entry.trim().split("=");
+			if (parts.length != 2) {
+				throw new IllegalArgumentException("Mix entry " + entry + " is not operation=weight");
+			}
+			String operation = parts[0].trim();
+			if (!operation.equals(ADD_SONG) && !operation.equals(LIKE_SONG) && !operation.equals(UNLIKE_SONG)
+					&& !operation.equals(FOLLOW_FRIEND) && !operation.equals(GET_FAVOURITE_SONG_TITLES)) {
+				throw new IllegalArgumentException("Unknown operation " + operation);
+			}
+			double weight = Double.parseDouble(parts[1].trim());
+			if (weight > 0) {
+				weights.put(operation, weight);
+			}
+		}
+		if (weights.isEmpty()) {
+			throw new IllegalArgumentException("Mix has no operation with a positive weight");
+		}
+		return weights;
+	}
+
+
+	/**
+	 * Create users and songs, then make every user follow and like a few popular ones.
+	 *
+	 * @param  client          Client calls are made with.
+	 * @param  followsPerUser  Number of users every user follows.
+	 * @param  likesPerUser    Number of songs every user likes.
+	 * @param  parallelism     Number of calls made at the same time.
+	 * @param  random          Source of randomness.
+	 * @throws IOException     If any call failed.
+	 */
+	public void populate(OkHttpClient client, int followsPerUser, int likesPerUser, int parallelism,
+			SplittableRandom random) throws IOException {
+		ExecutorService executor = Executors.newFixedThreadPool(parallelism);
+		try {
+			List<Request> requests = new ArrayList<Request>();
+			for (String user : users) {
+				requests.add(createUserProfile(user));
+			}
+			run(executor, client, requests, "Creating " + users.length + " users");
+
+			List<Future<JsonNode>> added = new ArrayList<Future<JsonNode>>();
+			for (int i = 0; i < songIds.length; i++) {
+				Request request = addSong(runId + "-song" + i);
+				added.add(executor.submit(() -> call(client, request)));
+			}
+			System.out.println("Adding " + songIds.length + " songs");
+			for (int i = 0; i < songIds.length; i++) {
+				songIds[i] = await(added.get(i)).path("data").path("id").asText();
+			}
+
+			requests.clear();
+			for (String user : users) {
+				for (int i = 0; i < followsPerUser; i++) {
+					String friend = users[userPopularity.sample(random)];
+					if (!friend.equals(user)) {
+						requests.add(followFriend(user, friend));
+					}
+				}
+			}
+			run(executor, client, requests, "Adding " + requests.size() + " follows");
+
+			requests.clear();
+			for (String user : users) {
+				for (int i = 0; i < likesPerUser; i++) {
+					requests.add(likeSong(user, songIds[songPopularity.sample(random)]));
+				}
+			}
+			run(executor, client, requests, "Adding " + requests.size() + " likes");
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	private static void run(ExecutorService executor, OkHttpClient client, List<Request> requests, String what)
+			throws IOException {
+		System.out.println(what);
+		List<Future<JsonNode>> results = new ArrayList<Future<JsonNode>>();
+		for (Request request : requests) {
+			results.add(executor.submit(() -> call(client, request)));
+		}
+		for (Future<JsonNode> result : results) {
+			await(result);
+		}
+	}
+
+	private static JsonNode call(OkHttpClient client, Request request) throws IOException {
+		try (Response response = client.newCall(request).execute()) {
+			JsonNode body = MAPPER.readTree(response.body().byteStream());
+			// liking a song twice or following a friend twice is fine while populating
+			if (!response.isSuccessful() || body == null || body.path("status").asText().equals("INTERNAL_SERVER_ERROR")) {
+				throw new IOException(request.method() + " " + request.url() + " failed: " + body);
+			}
+			return body;
+		}
+	}
+
+	private static JsonNode await(Future<JsonNode> result) throws IOException {
+		try {
+			return result.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted while populating", e);
+		} catch (ExecutionException e) {
+			throw e.getCause() instanceof IOException ? (IOException) e.getCause() : new IOException(e.getCause());
+		}
+	}
+
+
+	/**
+	 * Draw the next call from the mix.
+	 *
+	 * @param  random  Source of randomness.
+	 * @return         Call to make.
+	 */
+	public Call next(SplittableRandom random) {
+		double pick = random.nextDouble();
+		int index = 0;
+		while (index < operations.length - 1 && cumulativeWeights[index] < pick) {
+			index++;
+		}
+
+		String user = users[random.nextInt(users.length)];
+		switch (operations[index]) {
+		case ADD_SONG:
+			return new Call(ADD_SONG, addSong(runId + "-added" + addedSongs.getAndIncrement()), null);
+		case LIKE_SONG:
+			String songId = songIds[songPopularity.sample(random)];
+			return new Call(LIKE_SONG, likeSong(user, songId), () -> rememberLike(user, songId));
+		case UNLIKE_SONG:
+			String[] like = likes.poll();
+			if (like != null) {
+				rememberedLikes.decrementAndGet();
+				return new Call(UNLIKE_SONG, unlikeSong(like[0], like[1]), null);
+			}
+			// nothing liked during the run yet, which mostly gives "not found"
+			return new Call(UNLIKE_SONG, unlikeSong(user, songIds[songPopularity.sample(random)]), null);
+		case FOLLOW_FRIEND:
+			return new Call(FOLLOW_FRIEND, followFriend(user, users[userPopularity.sample(random)]), null);
+		default:
+			return new Call(GET_FAVOURITE_SONG_TITLES, getAllFriendFavouriteSongTitles(user), null);
+		}
+	}
+
+	private void rememberLike(String user, String songId) {
+		if (rememberedLikes.incrementAndGet() <= MAX_REMEMBERED_LIKES) {
+			likes.add(new String[] { user, songId });
+		} else {
+			rememberedLikes.decrementAndGet();
+		}
+	}
+
+	private Request createUserProfile(String user) {
+		HttpUrl url = profileUrl.newBuilder().addPathSegment("profile").addQueryParameter("userName", user)
+				.addQueryParameter("fullName", user).addQueryParameter("password", "loadtest").build();
+		return new Request.Builder().url(url).post(EMPTY_BODY).build();
+	}
+
+	private Request addSong(String name) {
+		HttpUrl url = songUrl.newBuilder().addPathSegment("addSong").addQueryParameter("songName", name)
+				.addQueryParameter("songArtistFullName", runId + " artist").addQueryParameter("songAlbum", runId + " album")
+				.build();
+		return new Request.Builder().url(url).post(EMPTY_BODY).build();
+	}
+
+	private Request likeSong(String user, String songId) {
+		return put(profileUrl.newBuilder().addPathSegment("likeSong").addPathSegment(user).addPathSegment(songId).build());
+	}
+
+	private Request unlikeSong(String user, String songId) {
+		return put(profileUrl.newBuilder().addPathSegment("unlikeSong").addPathSegment(user).addPathSegment(songId)
+				.build());
+	}
+
+	private Request followFriend(String user, String friend) {
+		return put(profileUrl.newBuilder().addPathSegment("followFriend").addPathSegment(user).addPathSegment(friend)
+				.build());
+	}
+
+	private Request getAllFriendFavouriteSongTitles(String user) {
+		HttpUrl url = profileUrl.newBuilder().addPathSegment("getAllFriendFavouriteSongTitles").addPathSegment(user)
+				.build();
+		return new Request.Builder().url(url).get().build();
+	}
+
+	private static Request put(HttpUrl url) {
+		return new Request.Builder().url(url).put(EMPTY_BODY).build();
+	}
+}
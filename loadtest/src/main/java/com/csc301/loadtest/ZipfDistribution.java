@@ -0,0 +1,49 @@
+package com.csc301.loadtest;
+
+import java.util.Arrays;
+import java.util.SplittableRandom;
+
+/**
+ * Zipfian distribution over ranks 0..n-1, rank k being picked with probability proportional to 1 / (k + 1)^exponent.
+ *
+ * Cumulative probabilities are computed once, so sampling is a binary search. Exponent 0 gives a uniform
+ * distribution; around 1 a few items get most of the picks, which is typical for song popularity.
+ */
+public class ZipfDistribution {
+
+	private final double[] cumulative;
+
+	/**
+	 * Construct ZipfDistribution object.
+	 *
+	 * @param  n         Number of ranks.
+	 * @param  exponent  Skew of the distribution, 0 for uniform.
+	 */
+	public ZipfDistribution(int n, double exponent) {
+		if (n <= 0) {
+			throw new IllegalArgumentException("Zipf distribution needs at least one rank");
+		}
+		cumulative = new double[n];
+		double sum = 0;
+		for (int k = 0; k < n; k++) {
+			sum += 1 / Math.pow(k + 1, exponent);
+			cumulative[k] = sum;
+		}
+		for (int k = 0; k < n; k++) {
+			cumulative[k] /= sum;
+		}
+	}
+
+
+	/**
+	 * Pick a rank.
+	 *
+	 * @param  random  Source of randomness.
+	 * @return         Rank, 0 being the most popular one.
+	 */
+	public int sample(SplittableRandom random) {
+		int index = Arrays.binarySearch(cumulative, random.nextDouble());
+		// not found gives -(insertion point) - 1, i.e. the first rank with a larger cumulative probability
+		return Math.min(index >= 0 ? index : -index - 1, cumulative.length - 1);
+	}
+}
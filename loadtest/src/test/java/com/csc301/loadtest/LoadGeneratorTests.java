@@ -0,0 +1,88 @@
+package com.csc301.loadtest;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.HdrHistogram.Histogram;
+import org.junit.After;
+import org.junit.Test;
+
+import com.sun.net.httpserver.HttpServer;
+
+public class LoadGeneratorTests {
+
+	private final CountDownLatch release = new CountDownLatch(1);
+	private final ExecutorService executor = Executors.newCachedThreadPool();
+	private HttpServer server;
+	private LoadGenerator generator;
+
+	@After
+	public void tearDown() {
+		release.countDown();
+		if (generator != null) {
+			generator.shutdown();
+		}
+		server.stop(0);
+		executor.shutdownNow();
+	}
+
+	@Test
+	public void answeredCallsAreRecordedByOutcome() throws Exception {
+		LoadGenerator.OperationStats stats = run(false);
+		Histogram histogram = stats.getHistogram();
+
+		assertTrue(histogram.getTotalCount() > 0);
+		assertEquals(histogram.getTotalCount(), stats.getOk());
+		assertEquals(0, stats.getFailures());
+	}
+
+	@Test
+	public void callsRunningAfterDrainCountAsFailuresAtTimeWaited() throws Exception {
+		long started = System.nanoTime();
+		LoadGenerator.OperationStats stats = run(true);
+		long elapsedMicros = TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - started);
+		Histogram histogram = stats.getHistogram();
+
+		assertTrue(histogram.getTotalCount() > 0);
+		assertEquals(histogram.getTotalCount(), stats.getFailures());
+		assertEquals(0, stats.getOk());
+		// every call waited at least the drain time, none longer than the whole run
+		assertTrue(histogram.getMinValue() >= TimeUnit.SECONDS.toMicros(1) * 0.99);
+		assertTrue(histogram.getMaxValue() <= elapsedMicros * 1.01);
+	}
+
+	private LoadGenerator.OperationStats run(boolean hold) throws Exception {
+		server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+		server.setExecutor(executor);
+		server.createContext("/", exchange -> {
+			if (hold) {
+				try {
+					release.await();
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+			}
+			byte[] body = "{\"status\":\"OK\"}".getBytes(StandardCharsets.UTF_8);
+			exchange.sendResponseHeaders(200, body.length);
+			try (OutputStream out = exchange.getResponseBody()) {
+				out.write(body);
+			}
+		});
+		server.start();
+
+		String url = "http://localhost:" + server.getAddress().getPort();
+		generator = new LoadGenerator(new Workload(url, url, "addSong=1", 1, 1, 0), 64, 1);
+		Map<String, LoadGenerator.OperationStats> stats = generator.run(20, 0, 1, new SplittableRandom(1));
+		return stats.get(Workload.ADD_SONG);
+	}
+}
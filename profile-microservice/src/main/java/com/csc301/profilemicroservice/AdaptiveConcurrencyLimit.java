@@ -0,0 +1,108 @@
+package com.csc301.profilemicroservice;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Concurrency limit of one endpoint that adapts to measured latency (AIMD).
+ *
+ * Baseline is the lowest latency of recent requests, i.e. latency without queueing. A request slower than tolerance
+ * times the baseline, or failing with a server error, cuts the limit by backoffRatio. A fast request raises it by one,
+ * but only while the endpoint actually uses at least half of it, so an idle endpoint doesn't grow an unbounded limit.
+ */
+public class AdaptiveConcurrencyLimit {
+
+	//Baseline is the minimum of the current and previous window of this many requests, so it follows lasting changes
+	private static final int BASELINE_WINDOW = 500;
+
+	private final int minLimit;
+	private final int maxLimit;
+	private final double tolerance;
+	private final double backoffRatio;
+	private final long minSlowNanos;
+
+	private double limit;
+	private int inFlight = 0;
+	private long baselineNanos = Long.MAX_VALUE;
+	private long windowMinNanos = Long.MAX_VALUE;
+	private int windowSamples = 0;
+	private long admitted = 0;
+	private long rejected = 0;
+
+	/**
+	 * Creates concurrency limit.
+	 *
+	 * @param initialLimit: limit before any request was measured
+	 * @param minLimit: limit is never cut below this
+	 * @param maxLimit: limit never grows above this
+	 * @param tolerance: requests slower than this many times the baseline latency cut the limit
+	 * @param backoffRatio: factor the limit is multiplied by when it is cut
+	 * @param minSlowMs: requests faster than this never cut the limit, so noise of very fast endpoints is ignored
+	 */
+	public AdaptiveConcurrencyLimit(int initialLimit, int minLimit, int maxLimit, double tolerance, double backoffRatio,
+			long minSlowMs) {
+		this.minLimit = minLimit;
+		this.maxLimit = maxLimit;
+		this.tolerance = tolerance;
+		this.backoffRatio = backoffRatio;
+		this.minSlowNanos = TimeUnit.MILLISECONDS.toNanos(minSlowMs);
+		this.limit = Math.max(minLimit, Math.min(maxLimit, initialLimit));
+	}
+
+	/**
+	 * Admits a request if the endpoint is below its limit. Every admitted request has to be released.
+	 *
+	 * @return true if request is admitted; false, if it has to be rejected
+	 */
+	public synchronized boolean tryAcquire() {
+		if (inFlight >= (int) limit) {
+			rejected++;
+			return false;
+		}
+		inFlight++;
+		admitted++;
+		return true;
+	}
+
+	/**
+	 * Releases an admitted request and adapts the limit to its latency.
+	 *
+	 * @param latencyNanos: time the request took
+	 * @param failed: whether the request failed with a server error
+	 */
+	public synchronized void release(long latencyNanos, boolean failed) {
+		int used = inFlight;
+		inFlight--;
+
+		windowMinNanos = Math.min(windowMinNanos, latencyNanos);
+		baselineNanos = Math.min(baselineNanos, latencyNanos);
+		if (++windowSamples >= BASELINE_WINDOW) {
+			baselineNanos = windowMinNanos;
+			windowMinNanos = Long.MAX_VALUE;
+			windowSamples = 0;
+		}
+
+		boolean slow = latencyNanos > minSlowNanos && latencyNanos > baselineNanos * tolerance;
+		if (failed || slow) {
+			limit = Math.max(minLimit, limit * backoffRatio);
+		} else if (used * 2 >= limit) {
+			limit = Math.min(maxLimit, limit + 1);
+		}
+	}
+
+	/**
+	 * Get current state of the limit.
+	 *
+	 * @return mapping with limit, in-flight requests, baseline latency and counts of admitted and rejected requests
+	 */
+	public synchronized Map<String, Object> getStats() {
+		Map<String, Object> stats = new LinkedHashMap<String, Object>();
+		stats.put("limit", (int) limit);
+		stats.put("inFlight", inFlight);
+		stats.put("baselineMs", baselineNanos == Long.MAX_VALUE ? null : baselineNanos / 1e6);
+		stats.put("admitted", admitted);
+		stats.put("rejected", rejected);
+		return stats;
+	}
+}
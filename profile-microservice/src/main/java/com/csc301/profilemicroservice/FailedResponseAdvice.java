@@ -0,0 +1,37 @@
+package com.csc301.profilemicroservice;
+
+import org.springframework.core.MethodParameter;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.HttpMessageConverter;
+import org.springframework.http.server.ServerHttpRequest;
+import org.springframework.http.server.ServerHttpResponse;
+import org.springframework.http.server.ServletServerHttpRequest;
+import org.springframework.web.bind.annotation.ControllerAdvice;
+import org.springframework.web.servlet.mvc.method.annotation.ResponseBodyAdvice;
+
+/**
+ * Marks requests whose response reports a server error. Controllers answer errors with HTTP 200 and the real status
+ * in the envelope, so filters such as AdmissionFilter can't tell failed requests apart by the HTTP status alone.
+ */
+@ControllerAdvice
+public class FailedResponseAdvice implements ResponseBodyAdvice<Object> {
+
+	//Request attribute set on failed requests
+	public static final String FAILED_ATTRIBUTE = FailedResponseAdvice.class.getName() + ".failed";
+
+	@Override
+	public boolean supports(MethodParameter returnType, Class<? extends HttpMessageConverter<?>> converterType) {
+		return true;
+	}
+
+	@Override
+	public Object beforeBodyWrite(Object body, MethodParameter returnType, MediaType selectedContentType,
+			Class<? extends HttpMessageConverter<?>> selectedConverterType, ServerHttpRequest request,
+			ServerHttpResponse response) {
+		if (body instanceof ResponseEnvelope && ((ResponseEnvelope) body).getStatus().is5xxServerError()
+				&& request instanceof ServletServerHttpRequest) {
+			((ServletServerHttpRequest) request).getServletRequest().setAttribute(FAILED_ATTRIBUTE, Boolean.TRUE);
+		}
+		return body;
+	}
+}
@@ -0,0 +1,467 @@
+package com.csc301.profilemicroservice;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import javax.annotation.PreDestroy;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * In-memory projection of the follows relationship.
+ *
+ * Edges loaded from the database are stored in compressed sparse row form, i.e. for every user the ids of users they
+ * follow are a sorted slice of one int[] (and the same for followers). Follows and unfollows made after loading go into
+ * a small delta overlay, which is merged into new arrays once it grows past a threshold or periodically. Until the
+ * base graph is installed the overlay is never merged, as install replaces the base graph and keeps only the overlay.
+ */
+@Component
+public class FollowGraph {
+
+	private final ConcurrentHashMap<String, Integer> ids = new ConcurrentHashMap<String, Integer>();
+	private volatile String[] names = new String[1024];
+	private int nextId = 0;
+
+	private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+	//Base graph, guarded by lock
+	private Csr following = Csr.EMPTY;
+	private Csr followers = Csr.EMPTY;
+	private boolean loaded = false;
+
+	//Delta overlay, guarded by lock
+	private final Map<Integer, Set<Integer>> addedFollowing = new HashMap<Integer, Set<Integer>>();
+	private final Map<Integer, Set<Integer>> addedFollowers = new HashMap<Integer, Set<Integer>>();
+	private final Map<Integer, Set<Integer>> removedFollowing = new HashMap<Integer, Set<Integer>>();
+	private final Map<Integer, Set<Integer>> removedFollowers = new HashMap<Integer, Set<Integer>>();
+	private volatile int deltaSize = 0;
+
+	private final int compactionThreshold;
+	private final AtomicBoolean compactionScheduled = new AtomicBoolean();
+	private final ScheduledExecutorService compactor = Executors.newSingleThreadScheduledExecutor(r -> {
+		Thread thread = new Thread(r, "follow-graph-compaction");
+		thread.setDaemon(true);
+		return thread;
+	});
+
+	/**
+	 * Rows of an adjacency matrix, row i being targets[offsets[i]..offsets[i+1]) in ascending order.
+	 */
+	static class Csr {
+		static final Csr EMPTY = new Csr(new int[] {0}, new int[0]);
+
+		final int[] offsets;
+		final int[] targets;
+
+		Csr(int[] offsets, int[] targets) {
+			this.offsets = offsets;
+			this.targets = targets;
+		}
+
+		int rows() {
+			return offsets.length - 1;
+		}
+
+		int degree(int row) {
+			return row < rows() ? offsets[row + 1] - offsets[row] : 0;
+		}
+
+		boolean contains(int row, int target) {
+			return row < rows() && Arrays.binarySearch(targets, offsets[row], offsets[row + 1], target) >= 0;
+		}
+
+		/**
+		 * Builds rows from an edge list with counting sort.
+		 */
+		static Csr build(int rows, int[] from, int[] to, int edges) {
+			int[] offsets = new int[rows + 1];
+			for (int i = 0; i < edges; i++) {
+				offsets[from[i] + 1]++;
+			}
+			for (int i = 0; i < rows; i++) {
+				offsets[i + 1] += offsets[i];
+			}
+
+			int[] targets = new int[edges];
+			int[] next = Arrays.copyOf(offsets, rows);
+			for (int i = 0; i < edges; i++) {
+				targets[next[from[i]]++] = to[i];
+			}
+			for (int i = 0; i < rows; i++) {
+				Arrays.sort(targets, offsets[i], offsets[i + 1]);
+			}
+			return new Csr(offsets, targets);
+		}
+	}
+
+	/**
+	 * Collects users and edges read from the database before they are installed as the base graph.
+	 */
+	public class Loader {
+		private int[] from = new int[1024];
+		private int[] to = new int[1024];
+		private int edges = 0;
+
+		public void addUser(String userName) {
+			idOf(userName);
+		}
+
+		public void addEdge(String userName, String frndUserName) {
+			if (edges == from.length) {
+				from = Arrays.copyOf(from, edges * 2);
+				to = Arrays.copyOf(to, edges * 2);
+			}
+			from[edges] = idOf(userName);
+			to[edges] = idOf(frndUserName);
+			edges++;
+		}
+	}
+
+	public FollowGraph(@Value("${followGraph.compactionThreshold:10000}") int compactionThreshold,
+			@Value("${followGraph.compactionIntervalSeconds:60}") long compactionIntervalSeconds) {
+		this.compactionThreshold = compactionThreshold;
+		compactor.scheduleWithFixedDelay(this::compact, compactionIntervalSeconds, compactionIntervalSeconds, TimeUnit.SECONDS);
+	}
+
+	@PreDestroy
+	public void shutdown() {
+		compactor.shutdownNow();
+	}
+
+	public Loader newLoader() {
+		return new Loader();
+	}
+
+	/**
+	 * Replaces base graph with edges collected by loader. Follows and unfollows made while loading are kept.
+	 *
+	 * @param loader: loader with all users and edges
+	 */
+	public void install(Loader loader) {
+		lock.writeLock().lock();
+		try {
+			int rows = getIdCount();
+			following = Csr.build(rows, loader.from, loader.to, loader.edges);
+			followers = Csr.build(rows, loader.to, loader.from, loader.edges);
+
+			//Drop delta entries that are already reflected in the loaded graph
+			for (int user : new ArrayList<Integer>(addedFollowing.keySet())) {
+				for (int friend : new ArrayList<Integer>(addedFollowing.get(user))) {
+					if (following.contains(user, friend)) {
+						removeDelta(addedFollowing, addedFollowers, user, friend);
+					}
+				}
+			}
+			for (int user : new ArrayList<Integer>(removedFollowing.keySet())) {
+				for (int friend : new ArrayList<Integer>(removedFollowing.get(user))) {
+					if (!following.contains(user, friend)) {
+						removeDelta(removedFollowing, removedFollowers, user, friend);
+					}
+				}
+			}
+			loaded = true;
+		} finally {
+			lock.writeLock().unlock();
+		}
+		compactIfNeeded();
+	}
+
+	public boolean isLoaded() {
+		lock.readLock().lock();
+		try {
+			return loaded;
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	public void addUser(String userName) {
+		idOf(userName);
+	}
+
+	/**
+	 * Records a follow that was written to the database.
+	 *
+	 * @param userName: user name of user
+	 * @param frndUserName: user name of a friend
+	 */
+	public void follow(String userName, String frndUserName) {
+		int user = idOf(userName);
+		int friend = idOf(frndUserName);
+
+		lock.writeLock().lock();
+		try {
+			//Until the graph is loaded we can't tell if the edge is in base, so the change is always recorded
+			boolean wasRemoved = removeDelta(removedFollowing, removedFollowers, user, friend);
+			if (!loaded || (!wasRemoved && !following.contains(user, friend))) {
+				addDelta(addedFollowing, addedFollowers, user, friend);
+			}
+		} finally {
+			lock.writeLock().unlock();
+		}
+		compactIfNeeded();
+	}
+
+	/**
+	 * Records an unfollow that was written to the database.
+	 *
+	 * @param userName: user name of user
+	 * @param frndUserName: user name of a friend
+	 */
+	public void unfollow(String userName, String frndUserName) {
+		int user = idOf(userName);
+		int friend = idOf(frndUserName);
+
+		lock.writeLock().lock();
+		try {
+			//Until the graph is loaded we can't tell if the edge is in base, so the change is always recorded
+			boolean wasAdded = removeDelta(addedFollowing, addedFollowers, user, friend);
+			if (!loaded || (!wasAdded && following.contains(user, friend))) {
+				addDelta(removedFollowing, removedFollowers, user, friend);
+			}
+		} finally {
+			lock.writeLock().unlock();
+		}
+		compactIfNeeded();
+	}
+
+	/**
+	 * Get users followed by both users.
+	 *
+	 * @param userName: user name of first user
+	 * @param otherUserName: user name of second user
+	 * @return user names of users both follow; null if one of users is unknown
+	 */
+	public List<String> getMutualFollowing(String userName, String otherUserName) {
+		Integer user = ids.get(userName);
+		Integer other = ids.get(otherUserName);
+		if (user == null || other == null) {
+			return null;
+		}
+
+		int[] a;
+		int[] b;
+		lock.readLock().lock();
+		try {
+			a = row(following, addedFollowing, removedFollowing, user);
+			b = row(following, addedFollowing, removedFollowing, other);
+		} finally {
+			lock.readLock().unlock();
+		}
+
+		//Both rows are sorted, so they are intersected with a single merge pass
+		String[] userNames = names;
+		List<String> mutual = new ArrayList<String>();
+		for (int i = 0, j = 0; i < a.length && j < b.length;) {
+			if (a[i] < b[j]) {
+				i++;
+			} else if (a[i] > b[j]) {
+				j++;
+			} else {
+				mutual.add(userNames[a[i]]);
+				i++;
+				j++;
+			}
+		}
+		return mutual;
+	}
+
+	/**
+	 * Get number of users the user follows.
+	 *
+	 * @param userName: user name
+	 * @return number of followed users; -1 if user is unknown
+	 */
+	public int getFollowingCount(String userName) {
+		return degree(userName, following, addedFollowing, removedFollowing);
+	}
+
+	/**
+	 * Get number of users following the user.
+	 *
+	 * @param userName: user name
+	 * @return number of followers; -1 if user is unknown
+	 */
+	public int getFollowerCount(String userName) {
+		return degree(userName, followers, addedFollowers, removedFollowers);
+	}
+
+	/**
+	 * Returns ids of users the user follows, sorted ascending. Ids can be mapped to user names with getUserName.
+	 *
+	 * @param user: user id
+	 * @return ids of followed users
+	 */
+	int[] getFollowing(int user) {
+		lock.readLock().lock();
+		try {
+			return row(following, addedFollowing, removedFollowing, user);
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	Integer getUserId(String userName) {
+		return ids.get(userName);
+	}
+
+	String getUserName(int user) {
+		return names[user];
+	}
+
+	int getUserCount() {
+		return ids.size();
+	}
+
+	/**
+	 * Merges delta overlay into new base arrays. Does nothing before the base graph is installed.
+	 */
+	void compact() {
+		compactionScheduled.set(false);
+
+		lock.writeLock().lock();
+		try {
+			if (!loaded || deltaSize == 0) {
+				return;
+			}
+
+			int rows = getIdCount();
+			int edges = following.targets.length + deltaSize;
+			int[] from = new int[edges];
+			int[] to = new int[edges];
+			int n = 0;
+			for (int user = 0; user < rows; user++) {
+				for (int friend : row(following, addedFollowing, removedFollowing, user)) {
+					from[n] = user;
+					to[n] = friend;
+					n++;
+				}
+			}
+
+			following = Csr.build(rows, from, to, n);
+			followers = Csr.build(rows, to, from, n);
+			addedFollowing.clear();
+			addedFollowers.clear();
+			removedFollowing.clear();
+			removedFollowers.clear();
+			deltaSize = 0;
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	private void compactIfNeeded() {
+		if (deltaSize >= compactionThreshold && compactionScheduled.compareAndSet(false, true)) {
+			compactor.execute(this::compact);
+		}
+	}
+
+	/**
+	 * Returns a row of base graph with delta overlay applied. Caller must hold the lock.
+	 */
+	private static int[] row(Csr base, Map<Integer, Set<Integer>> added, Map<Integer, Set<Integer>> removed, int user) {
+		Set<Integer> addedRow = added.get(user);
+		Set<Integer> removedRow = removed.get(user);
+		int from = user < base.rows() ? base.offsets[user] : 0;
+		int to = user < base.rows() ? base.offsets[user + 1] : 0;
+
+		if (addedRow == null && removedRow == null) {
+			return Arrays.copyOfRange(base.targets, from, to);
+		}
+
+		int[] result = new int[to - from + (addedRow != null ? addedRow.size() : 0)];
+		int n = 0;
+		for (int i = from; i < to; i++) {
+			if (removedRow == null || !removedRow.contains(base.targets[i])) {
+				result[n++] = base.targets[i];
+			}
+		}
+		if (addedRow != null) {
+			for (int friend : addedRow) {
+				result[n++] = friend;
+			}
+		}
+		Arrays.sort(result, 0, n);
+		return n == result.length ? result : Arrays.copyOf(result, n);
+	}
+
+	private int degree(String userName, Csr base, Map<Integer, Set<Integer>> added, Map<Integer, Set<Integer>> removed) {
+		Integer user = ids.get(userName);
+		if (user == null) {
+			return -1;
+		}
+
+		lock.readLock().lock();
+		try {
+			Set<Integer> addedRow = added.get(user);
+			Set<Integer> removedRow = removed.get(user);
+			return base.degree(user) + (addedRow != null ? addedRow.size() : 0) - (removedRow != null ? removedRow.size() : 0);
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	private void addDelta(Map<Integer, Set<Integer>> forward, Map<Integer, Set<Integer>> backward, int user, int friend) {
+		if (forward.computeIfAbsent(user, k -> new HashSet<Integer>()).add(friend)) {
+			backward.computeIfAbsent(friend, k -> new HashSet<Integer>()).add(user);
+			deltaSize++;
+		}
+	}
+
+	private boolean removeDelta(Map<Integer, Set<Integer>> forward, Map<Integer, Set<Integer>> backward, int user, int friend) {
+		Set<Integer> row = forward.get(user);
+		if (row == null || !row.remove(friend)) {
+			return false;
+		}
+		if (row.isEmpty()) {
+			forward.remove(user);
+		}
+
+		Set<Integer> backwardRow = backward.get(friend);
+		backwardRow.remove(user);
+		if (backwardRow.isEmpty()) {
+			backward.remove(friend);
+		}
+		deltaSize--;
+		return true;
+	}
+
+	private synchronized int getIdCount() {
+		return nextId;
+	}
+
+	/**
+	 * Returns id of a user, assigning the next free one to users seen for the first time.
+	 */
+	private int idOf(String userName) {
+		Integer id = ids.get(userName);
+		if (id != null) {
+			return id;
+		}
+
+		synchronized (this) {
+			id = ids.get(userName);
+			if (id == null) {
+				id = nextId++;
+				if (id == names.length) {
+					names = Arrays.copyOf(names, names.length * 2);
+				}
+				names[id] = userName;
+				ids.put(userName, id);
+			}
+			return id;
+		}
+	}
+}
@@ -0,0 +1,338 @@
+package com.csc301.profilemicroservice;
+
+import static org.neo4j.driver.v1.Values.parameters;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+
+import org.neo4j.driver.v1.Driver;
+import org.neo4j.driver.v1.Session;
+import org.neo4j.driver.v1.StatementResult;
+import org.neo4j.driver.v1.Transaction;
+
+/**
+ * Offline bulk import of profiles, follows and likes from CSV files.
+ *
+ * Rows are streamed from disk, validated and written in batches with UNWIND, every batch being committed in its
+ * own transaction. After each commit the number of consumed rows is saved to a checkpoint file, so an interrupted
+ * import can be restarted with the same arguments and will continue after the last committed batch. All writes use
+ * MERGE, which makes replaying a batch that was committed but not yet checkpointed harmless.
+ *
+ * Expected files (first line may be a header):
+ *   profiles.csv: userName,fullName,password
+ *   follows.csv:  userName,friendUserName
+ *   likes.csv:    userName,songId
+ */
+public class GraphImporter {
+	public static final String FILE_PROFILES = "profiles.csv";
+	public static final String FILE_FOLLOWS = "follows.csv";
+	public static final String FILE_LIKES = "likes.csv";
+	public static final String CHECKPOINT_FILE = ".import-checkpoint";
+	public static final int DEFAULT_BATCH_SIZE = 10000;
+
+	private static final long PROGRESS_INTERVAL_MS = 5000;
+
+	private static final String PROFILES_QUERY = "UNWIND $rows AS row\n"
+			+ "MERGE (nProfile:profile {userName: row.userName})\n"
+			+ "ON CREATE SET nProfile.fullName = row.fullName, nProfile.password = row.password\n"
+			+ "MERGE (nProfile)-[:created]->(nPlaylist:playlist {plName: row.userName + \"-favourites\"})\n"
+			+ "RETURN COUNT(nProfile) as written";
+
+	private static final String FOLLOWS_QUERY = "UNWIND $rows AS row\n"
+			+ "MATCH(user:profile {userName: row.userName})\n"
+			+ "MATCH(friend:profile {userName: row.friendUserName})\n"
+			+ "MERGE(user)-[:follows]->(friend)\n"
+			+ "RETURN COUNT(user) as written";
+
+	private static final String LIKES_QUERY = "UNWIND $rows AS row\n"
+			+ "MATCH (u:profile {userName: row.userName})-[:created]->(p:playlist {plName: row.userName + \"-favourites\"})\n"
+			+ "MERGE(s:song {songId: row.songId})\n"
+			+ "MERGE(p)-[:includes]->(s)\n"
+			+ "RETURN COUNT(p) as written";
+
+	private final Driver driver;
+	private final File dir;
+	private final int batchSize;
+	private final File checkpointFile;
+	private final Properties checkpoint = new Properties();
+
+	public GraphImporter(Driver driver, File dir, int batchSize) {
+		this.driver = driver;
+		this.dir = dir;
+		this.batchSize = batchSize;
+		this.checkpointFile = new File(dir, CHECKPOINT_FILE);
+	}
+
+	/**
+	 * Entry point of the import mode, started with "import --dir=&lt;path&gt; [--batchSize=&lt;n&gt;]".
+	 * 
+	 * @param driver: neo4j driver to write with
+	 * @param args: command line arguments following "import"
+	 */
+	public static void run(Driver driver, String[] args) throws IOException {
+		String dirName = null;
+		int batchSize = DEFAULT_BATCH_SIZE;
+		for (String arg : args) {
+			if (arg.startsWith("--dir=")) {
+				dirName = arg.substring("--dir=".length());
+			} else if (arg.startsWith("--batchSize=")) {
+				batchSize = Integer.parseInt(arg.substring("--batchSize=".length()));
+			}
+		}
+
+		if (dirName == null || batchSize <= 0) {
+			System.out.println("Usage: import --dir=<directory with csv files> [--batchSize=<rows per commit>]");
+			return;
+		}
+
+		new GraphImporter(driver, new File(dirName), batchSize).importAll();
+	}
+
+	/**
+	 * Imports profiles, then follows, then likes, since relationships can only be created between existing nodes.
+	 */
+	public void importAll() throws IOException {
+		loadCheckpoint();
+
+		try (Session session = driver.session()) {
+			//Profiles are merged and looked up on userName, the service creates this constraint only once it runs, so
+			//a fresh database would be scanned by label for every row
+			try (Transaction trans = session.beginTransaction()) {
+				trans.run("CREATE CONSTRAINT ON (nProfile:profile) ASSERT nProfile.userName IS UNIQUE");
+				trans.success();
+			}
+			//Likes are merged on songId, so it has to be indexed for the import to stay linear
+			try (Transaction trans = session.beginTransaction()) {
+				trans.run("CREATE INDEX ON :song(songId)");
+				trans.success();
+			}
+		}
+
+		importFile(FILE_PROFILES, 3, PROFILES_QUERY);
+		importFile(FILE_FOLLOWS, 2, FOLLOWS_QUERY);
+		importFile(FILE_LIKES, 2, LIKES_QUERY);
+
+		System.out.println("Import finished");
+	}
+
+	/**
+	 * Streams one CSV file into the database, skipping rows that were committed by a previous run.
+	 *
+	 * @param fileName: name of the file inside import directory
+	 * @param columns: expected number of columns in every row
+	 * @param queryStr: UNWIND query writing one batch of rows
+	 */
+	private void importFile(String fileName, int columns, String queryStr) throws IOException {
+		File file = new File(dir, fileName);
+		if (!file.exists()) {
+			System.out.println(fileName + ": not found, skipping");
+			return;
+		}
+
+		long committedRows = Long.parseLong(checkpoint.getProperty(fileName, "0"));
+		long rowNum = 0;
+		long invalidRows = 0;
+		long skippedRows = 0;
+		long importedRows = 0;
+		long startTime = System.currentTimeMillis();
+		long lastReport = startTime;
+		List<Map<String, Object>> batch = new ArrayList<Map<String, Object>>(batchSize);
+
+		try (BufferedReader reader = Files.newBufferedReader(file.toPath(), StandardCharsets.UTF_8)) {
+			String line = reader.readLine();
+
+			//Header row is optional
+			if (line != null && isHeader(line)) {
+				line = reader.readLine();
+			}
+
+			for (; line != null; line = reader.readLine()) {
+				rowNum++;
+				if (rowNum <= committedRows) {
+					//Already imported by a previous run
+					continue;
+				}
+
+				Map<String, Object> row = parseRow(fileName, line, columns);
+				if (row == null) {
+					invalidRows++;
+					if (invalidRows <= 10) {
+						System.out.println(fileName + ": invalid row " + rowNum + ": " + line);
+					}
+				} else {
+					batch.add(row);
+				}
+
+				if (batch.size() == batchSize) {
+					long written = writeBatch(queryStr, batch);
+					importedRows += written;
+					skippedRows += batch.size() - written;
+					batch.clear();
+					saveCheckpoint(fileName, rowNum);
+
+					long now = System.currentTimeMillis();
+					if (now - lastReport >= PROGRESS_INTERVAL_MS) {
+						lastReport = now;
+						System.out.println(String.format("%s: %d rows, %.0f rows/s", fileName, rowNum - committedRows,
+								rowsPerSecond(rowNum - committedRows, now - startTime)));
+					}
+				}
+			}
+		}
+
+		if (!batch.isEmpty()) {
+			long written = writeBatch(queryStr, batch);
+			importedRows += written;
+			skippedRows += batch.size() - written;
+		}
+		saveCheckpoint(fileName, rowNum);
+
+		long elapsed = System.currentTimeMillis() - startTime;
+		System.out.println(String.format("%s: done, %d imported, %d invalid, %d referencing missing nodes, %.0f rows/s",
+				fileName, importedRows, invalidRows, skippedRows, rowsPerSecond(rowNum - committedRows, elapsed)));
+	}
+
+	/**
+	 * Writes one batch in its own transaction.
+	 *
+	 * @param queryStr: UNWIND query
+	 * @param batch: rows of the batch
+	 * @return number of rows that were written
+	 */
+	private long writeBatch(String queryStr, List<Map<String, Object>> batch) {
+		long written = 0;
+		try (Session session = driver.session()) {
+			try (Transaction trans = session.beginTransaction()) {
+				StatementResult res = trans.run(queryStr, parameters("rows", batch));
+				if (res.hasNext()) {
+					written = res.next().get("written").asLong();
+				}
+				trans.success();
+			}
+		}
+		return written;
+	}
+
+	/**
+	 * Validates one CSV line and converts it to the parameter map used by the UNWIND queries.
+	 *
+	 * @param fileName: file the line belongs to
+	 * @param line: raw line
+	 * @param columns: expected number of columns
+	 * @return row parameters; null if row is invalid
+	 */
+	private static Map<String, Object> parseRow(String fileName, String line, int columns) {
+		List<String> fields = splitCsvLine(line);
+		if (fields == null || fields.size() != columns) {
+			return null;
+		}
+		for (String field : fields) {
+			if (field.isEmpty()) {
+				return null;
+			}
+		}
+
+		Map<String, Object> row = new HashMap<String, Object>(4);
+		row.put(ProfileController.KEY_USER_NAME, fields.get(0));
+
+		if (fileName.equals(FILE_PROFILES)) {
+			row.put(ProfileController.KEY_USER_FULLNAME, fields.get(1));
+			row.put(ProfileController.KEY_USER_PASSWORD, fields.get(2));
+		} else if (fileName.equals(FILE_FOLLOWS)) {
+			if (fields.get(0).equals(fields.get(1))) {
+				//User and friend must be different
+				return null;
+			}
+			row.put("friendUserName", fields.get(1));
+		} else {
+			row.put("songId", fields.get(1));
+		}
+		return row;
+	}
+
+	/**
+	 * Splits a CSV line into fields, supporting double quoted fields with "" escapes.
+	 *
+	 * @param line: raw line
+	 * @return list of fields; null if quotes are unbalanced
+	 */
+	static List<String> splitCsvLine(String line) {
+		List<String> fields = new ArrayList<String>();
+		StringBuilder field = new StringBuilder();
+		boolean quoted = false;
+
+		for (int i = 0; i < line.length(); i++) {
+			char c = line.charAt(i);
+			if (quoted) {
+				if (c == '"') {
+					if (i + 1 < line.length() && line.charAt(i + 1) == '"') {
+						field.append('"');
+						i++;
+					} else {
+						quoted = false;
+					}
+				} else {
+					field.append(c);
+				}
+			} else if (c == '"') {
+				quoted = true;
+			} else if (c == ',') {
+				fields.add(field.toString().trim());
+				field.setLength(0);
+			} else {
+				field.append(c);
+			}
+		}
+
+		if (quoted) {
+			return null;
+		}
+		fields.add(field.toString().trim());
+		return fields;
+	}
+
+	private static boolean isHeader(String line) {
+		List<String> fields = splitCsvLine(line);
+		return fields != null && !fields.isEmpty() && fields.get(0).equals(ProfileController.KEY_USER_NAME);
+	}
+
+	private static double rowsPerSecond(long rows, long elapsedMs) {
+		return elapsedMs > 0 ? rows * 1000.0 / elapsedMs : rows;
+	}
+
+	private void loadCheckpoint() throws IOException {
+		if (checkpointFile.exists()) {
+			try (InputStream in = Files.newInputStream(checkpointFile.toPath())) {
+				checkpoint.load(in);
+			}
+			System.out.println("Resuming import from checkpoint " + checkpointFile);
+		}
+	}
+
+	/**
+	 * Saves number of consumed rows of a file, replacing checkpoint file atomically.
+	 *
+	 * @param fileName: file being imported
+	 * @param rows: number of data rows that were committed
+	 */
+	private void saveCheckpoint(String fileName, long rows) throws IOException {
+		checkpoint.setProperty(fileName, Long.toString(rows));
+
+		File tmp = new File(dir, CHECKPOINT_FILE + ".tmp");
+		try (OutputStream out = Files.newOutputStream(tmp.toPath())) {
+			checkpoint.store(out, "rows committed per file");
+		}
+		Files.move(tmp.toPath(), checkpointFile.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+	}
+}
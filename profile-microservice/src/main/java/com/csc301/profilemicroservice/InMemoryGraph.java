@@ -0,0 +1,218 @@
+package com.csc301.profilemicroservice;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.springframework.context.annotation.Profile;
+import org.springframework.stereotype.Component;
+
+/**
+ * Profiles, favourites playlists and songs kept in memory, used by the drivers of the "inmemory" profile instead of
+ * Neo4j.
+ *
+ * Every profile has created exactly one playlist, its favourites, so the created relationship is a field of the profile.
+ * Follows are a concurrent set of user names per profile and includes a concurrent set of song ids per playlist. Songs
+ * map to the users whose favourites include them; like song nodes in the database, a song stays known after its last
+ * unlike until it's deleted. All changes to a song's includes are made while holding its entry in the songs map, so a
+ * like can't bring back a song that is being deleted.
+ *
+ * Drivers also keep in-memory indexes next to the graph, so they hold the striped lock of the user or song they change
+ * while changing both, and the indexes see changes to a follow or like in the same order as the graph.
+ */
+@Component
+@Profile("inmemory")
+public class InMemoryGraph {
+
+	private final ConcurrentHashMap<String, Node> profiles = new ConcurrentHashMap<String, Node>();
+
+	private final ConcurrentHashMap<String, Set<String>> songs = new ConcurrentHashMap<String, Set<String>>();
+
+	private static final int LOCK_STRIPES = 256;
+
+	private final Object[] userLocks = newLocks();
+
+	private final Object[] songLocks = newLocks();
+
+	/**
+	 * A profile node, with its outgoing follows and the songs its favourites playlist includes.
+	 */
+	static class Node {
+		final String fullName;
+		final String password;
+		final Set<String> follows = ConcurrentHashMap.newKeySet();
+		final Set<String> favourites = ConcurrentHashMap.newKeySet();
+
+		Node(String fullName, String password) {
+			this.fullName = fullName;
+			this.password = password;
+		}
+	}
+
+	private static Object[] newLocks() {
+		Object[] locks = new Object[LOCK_STRIPES];
+		for (int i = 0; i < locks.length; i++) {
+			locks[i] = new Object();
+		}
+		return locks;
+	}
+
+	private static Object stripe(Object[] locks, String key) {
+		int hash = key.hashCode();
+		//Spread high bits into the index, like HashMap does
+		return locks[(hash ^ (hash >>> 16)) & (LOCK_STRIPES - 1)];
+	}
+
+	/**
+	 * Get the lock that drivers hold while changing follows of a user in the graph and in their indexes.
+	 *
+	 * @param userName: user name of the following user
+	 * @return lock shared by all users of the same stripe
+	 */
+	public Object getUserLock(String userName) {
+		return stripe(userLocks, userName);
+	}
+
+	/**
+	 * Get the lock that drivers hold while changing likes of a song in the graph and in their indexes.
+	 *
+	 * @param songId: song id
+	 * @return lock shared by all songs of the same stripe
+	 */
+	public Object getSongLock(String songId) {
+		return stripe(songLocks, songId);
+	}
+
+	/**
+	 * Creates a profile and its favourites playlist.
+	 *
+	 * @param userName: user name of new profile
+	 * @param fullName: full name of new profile
+	 * @param password: password of new profile
+	 * @return true if created; false if user name is taken
+	 */
+	public boolean createProfile(String userName, String fullName, String password) {
+		return profiles.putIfAbsent(userName, new Node(fullName, password)) == null;
+	}
+
+	/**
+	 * Adds a follow relation, which may already exist.
+	 *
+	 * @param userName: user name of user
+	 * @param frndUserName: user name of a friend
+	 * @return true if both profiles exist
+	 */
+	public boolean follow(String userName, String frndUserName) {
+		Node user = profiles.get(userName);
+		if (user == null || !profiles.containsKey(frndUserName)) {
+			return false;
+		}
+		user.follows.add(frndUserName);
+		return true;
+	}
+
+	/**
+	 * Removes a follow relation.
+	 *
+	 * @param userName: user name of user
+	 * @param frndUserName: user name of a friend
+	 * @return true if user followed the friend
+	 */
+	public boolean unfollow(String userName, String frndUserName) {
+		Node user = profiles.get(userName);
+		return user != null && user.follows.remove(frndUserName);
+	}
+
+	/**
+	 * Get songs in the favourites of every user that a user follows.
+	 *
+	 * @param userName: user name of user
+	 * @return mapping of user names of friends to ids of songs they like; null if user is not found
+	 */
+	public Map<String, ArrayList<String>> getSongsFriendsLike(String userName) {
+		Node user = profiles.get(userName);
+		if (user == null) {
+			return null;
+		}
+
+		Map<String, ArrayList<String>> friendsToSongs = new HashMap<String, ArrayList<String>>();
+		for (String friend : user.follows) {
+			friendsToSongs.put(friend, new ArrayList<String>(profiles.get(friend).favourites));
+		}
+		return friendsToSongs;
+	}
+
+	/**
+	 * Get ids of songs in user's favourites.
+	 *
+	 * @param userName: user name
+	 * @return ids of liked songs; null if user is not found
+	 */
+	public List<String> getLikedSongIds(String userName) {
+		Node user = profiles.get(userName);
+		return user == null ? null : new ArrayList<String>(user.favourites);
+	}
+
+	/**
+	 * Adds a song to user's favourites, creating the song if it's not known yet.
+	 *
+	 * @param userName: user that is liking the song
+	 * @param songId: song that is being liked
+	 * @return true if user exists
+	 */
+	public boolean like(String userName, String songId) {
+		Node user = profiles.get(userName);
+		if (user == null) {
+			return false;
+		}
+		songs.compute(songId, (id, likedBy) -> {
+			Set<String> users = likedBy != null ? likedBy : ConcurrentHashMap.<String>newKeySet();
+			users.add(userName);
+			user.favourites.add(songId);
+			return users;
+		});
+		return true;
+	}
+
+	/**
+	 * Removes a song from user's favourites.
+	 *
+	 * @param userName: user that is unliking the song
+	 * @param songId: song that is being unliked
+	 * @return true if song was in user's favourites
+	 */
+	public boolean unlike(String userName, String songId) {
+		Node user = profiles.get(userName);
+		if (user == null) {
+			return false;
+		}
+		boolean[] removed = new boolean[1];
+		songs.computeIfPresent(songId, (id, likedBy) -> {
+			removed[0] = user.favourites.remove(songId);
+			likedBy.remove(userName);
+			return likedBy;
+		});
+		return removed[0];
+	}
+
+	/**
+	 * Deletes a song and removes it from all favourites.
+	 *
+	 * @param songId: song that is being deleted
+	 * @return true if song was known
+	 */
+	public boolean deleteSong(String songId) {
+		boolean[] deleted = new boolean[1];
+		songs.computeIfPresent(songId, (id, likedBy) -> {
+			for (String userName : likedBy) {
+				profiles.get(userName).favourites.remove(songId);
+			}
+			deleted[0] = true;
+			return null;
+		});
+		return deleted[0];
+	}
+}
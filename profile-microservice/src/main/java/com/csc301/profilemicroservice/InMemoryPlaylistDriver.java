@@ -0,0 +1,136 @@
+package com.csc301.profilemicroservice;
+
+import java.util.List;
+
+import org.springframework.context.annotation.Profile;
+import org.springframework.stereotype.Repository;
+
+/**
+ * Playlist driver of the "inmemory" profile, answering like PlaylistDriverImpl without a database.
+ */
+@Repository
+@Profile("inmemory")
+public class InMemoryPlaylistDriver implements PlaylistDriver {
+
+	private final InMemoryGraph graph;
+
+	private final LikedSongsIndex likedSongs;
+
+	/**
+	 * Creates in-memory playlist driver.
+	 *
+	 * @param graph: favourites playlists and songs, shared with the in-memory profile driver
+	 * @param likedSongs: in-memory index of liked songs, kept up to date by this driver
+	 */
+	public InMemoryPlaylistDriver(InMemoryGraph graph, LikedSongsIndex likedSongs) {
+		this.graph = graph;
+		this.likedSongs = likedSongs;
+
+		//Graph starts out empty, so the index already holds all likes
+		likedSongs.endPreload(graph::getLikedSongIds);
+	}
+
+	/**
+	 * Like a song by a user, i.e. add a song to user's favourites.
+	 *
+	 * @param userName: user that is liking the song
+	 * @param songId: song that is being liked
+	 * @return status of the query
+	 */
+	@Override
+	public DbQueryStatus likeSong(String userName, String songId) {
+
+		//Index has to end up like the graph when the same song is liked, unliked and deleted at once
+		synchronized (graph.getSongLock(songId)) {
+			if (!graph.like(userName, songId)) {
+				//User was not found
+				return new DbQueryStatus("like a song", DbQueryExecResult.QUERY_ERROR_NOT_FOUND);
+			}
+
+			likedSongs.onLikeChanged(userName, songId, true);
+		}
+		return new DbQueryStatus("like a song", DbQueryExecResult.QUERY_OK);
+	}
+
+	/**
+	 * Unlike a song by a user, i.e. remove a to user's favourites.
+	 *
+	 * @param userName: user that is unliking the song
+	 * @param songId: song that is being unliked
+	 * @return status of the query; not found if song wasn't liked
+	 */
+	@Override
+	public DbQueryStatus unlikeSong(String userName, String songId) {
+
+		synchronized (graph.getSongLock(songId)) {
+			if (!graph.unlike(userName, songId)) {
+				//User or song were not found, or song wasn't liked
+				return new DbQueryStatus("unlike a song", DbQueryExecResult.QUERY_ERROR_NOT_FOUND);
+			}
+
+			likedSongs.onLikeChanged(userName, songId, false);
+		}
+		return new DbQueryStatus("unlike a song", DbQueryExecResult.QUERY_OK);
+	}
+
+	/**
+	 * Delete a song by its id, removing it from all favourites.
+	 *
+	 * @param songId: song that is being deleted
+	 * @return status of the query; not found if song was never liked
+	 */
+	@Override
+	public DbQueryStatus deleteSongFromDb(String songId) {
+
+		synchronized (graph.getSongLock(songId)) {
+			if (!graph.deleteSong(songId)) {
+				return new DbQueryStatus("delete a song", DbQueryExecResult.QUERY_ERROR_NOT_FOUND);
+			}
+
+			likedSongs.onSongDeleted(songId);
+		}
+		return new DbQueryStatus("delete a song", DbQueryExecResult.QUERY_OK);
+	}
+
+	/**
+	 * Method to check if song is liked by a user
+	 *
+	 * @param userName: user name
+	 * @param songId: song id
+	 * @return true if song is liked by user; false, otherwise
+	 */
+	@Override
+	public boolean ifSongLiked(String userName, String songId) {
+		return likedSongs.contains(userName, songId, graph::getLikedSongIds);
+	}
+
+	/**
+	 * Get songs that both users like.
+	 *
+	 * @param userName: user name of first user
+	 * @param otherUserName: user name of second user
+	 * @return status of the query and list of ids of songs both users like
+	 */
+	@Override
+	public DbQueryStatus getSongsLikedInCommon(String userName, String otherUserName) {
+
+		List<String> data = likedSongs.likedInCommon(userName, otherUserName, graph::getLikedSongIds);
+
+		//Null means that one of users was not found
+		DbQueryExecResult ifSuccessful = data != null ? DbQueryExecResult.QUERY_OK : DbQueryExecResult.QUERY_ERROR_NOT_FOUND;
+
+		DbQueryStatus status = new DbQueryStatus("get songs liked in common", ifSuccessful);
+		status.setData(data);
+		return status;
+	}
+
+	/**
+	 * Group commit only applies to database writes.
+	 *
+	 * @return not found status, as group commit is disabled
+	 */
+	@Override
+	public DbQueryStatus getGroupCommitStats() {
+		return new DbQueryStatus("group commit is disabled", DbQueryExecResult.QUERY_ERROR_NOT_FOUND);
+	}
+}
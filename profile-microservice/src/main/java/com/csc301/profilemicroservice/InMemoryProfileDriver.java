@@ -0,0 +1,193 @@
+package com.csc301.profilemicroservice;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.springframework.context.annotation.Profile;
+import org.springframework.stereotype.Repository;
+
+/**
+ * Profile driver of the "inmemory" profile, answering like ProfileDriverImpl without a database.
+ */
+@Repository
+@Profile("inmemory")
+public class InMemoryProfileDriver implements ProfileDriver {
+
+	private final InMemoryGraph graph;
+
+	private final LikedSongsIndex likedSongs;
+
+	private final FollowGraph followGraph;
+
+	private final SongRecommender songRecommender;
+
+	/**
+	 * Creates in-memory profile driver.
+	 *
+	 * @param graph: profiles and follows, shared with the in-memory playlist driver
+	 * @param likedSongs: in-memory index of liked songs, new profiles are registered in it
+	 * @param followGraph: in-memory projection of follows, kept up to date by this driver
+	 * @param songRecommender: recommender working over follow graph and liked songs index
+	 */
+	public InMemoryProfileDriver(InMemoryGraph graph, LikedSongsIndex likedSongs, FollowGraph followGraph,
+			SongRecommender songRecommender) {
+		this.graph = graph;
+		this.likedSongs = likedSongs;
+		this.followGraph = followGraph;
+		this.songRecommender = songRecommender;
+
+		//Graph starts out empty, so there is nothing to load
+		followGraph.install(followGraph.newLoader());
+	}
+
+	/**
+	 * Creates a user profile.
+	 *
+	 * @param userName: user name of new profile
+	 * @param fullName: full name of new profile
+	 * @param password: password of new profile
+	 * @return status of the query; error if user name is missing or taken
+	 */
+	@Override
+	public DbQueryStatus createUserProfile(String userName, String fullName, String password) {
+
+		//Same as the database constraints on profiles
+		boolean created = userName != null && password != null && graph.createProfile(userName, fullName, password);
+		if (!created) {
+			return new DbQueryStatus("create user profile", DbQueryExecResult.QUERY_ERROR_GENERIC);
+		}
+
+		likedSongs.onUserCreated(userName);
+		followGraph.addUser(userName);
+		return new DbQueryStatus("create user profile", DbQueryExecResult.QUERY_OK);
+	}
+
+	/**
+	 * Adds a follow relation between user and a friend, assuming user and friend are different.
+	 *
+	 * @param userName: user name of user
+	 * @param frndUserName: user name of a friend
+	 * @return status of the query
+	 */
+	@Override
+	public DbQueryStatus followFriend(String userName, String frndUserName) {
+
+		//Follow graph has to end up like the graph when the same user follows and unfollows at once
+		synchronized (graph.getUserLock(userName)) {
+			if (!graph.follow(userName, frndUserName)) {
+				//User or friend were not found
+				return new DbQueryStatus("follow a friend", DbQueryExecResult.QUERY_ERROR_NOT_FOUND);
+			}
+
+			followGraph.follow(userName, frndUserName);
+		}
+		return new DbQueryStatus("follow a friend", DbQueryExecResult.QUERY_OK);
+	}
+
+	/**
+	 * Removes a follow relation between user and a friend
+	 *
+	 * @param userName: user name of user
+	 * @param frndUserName: user name of a friend
+	 * @return status of the query; not found if user doesn't follow the friend
+	 */
+	@Override
+	public DbQueryStatus unfollowFriend(String userName, String frndUserName) {
+
+		synchronized (graph.getUserLock(userName)) {
+			if (!graph.unfollow(userName, frndUserName)) {
+				//User, friend or the follow were not found
+				return new DbQueryStatus("unfollow a friend", DbQueryExecResult.QUERY_ERROR_NOT_FOUND);
+			}
+
+			followGraph.unfollow(userName, frndUserName);
+		}
+		return new DbQueryStatus("unfollow a friend", DbQueryExecResult.QUERY_OK);
+	}
+
+	/**
+	 * Get all songs that friends of a user like
+	 *
+	 * @param userName: user name of user
+	 * @return status of the query and mapping of user names of friends to ids of songs they like
+	 */
+	@Override
+	public DbQueryStatus getAllSongFriendsLike(String userName) {
+
+		Map<String, ArrayList<String>> friendsToSongs = graph.getSongsFriendsLike(userName);
+
+		//Null means that user was not found
+		DbQueryExecResult ifSuccessful = friendsToSongs != null ? DbQueryExecResult.QUERY_OK : DbQueryExecResult.QUERY_ERROR_NOT_FOUND;
+
+		DbQueryStatus status = new DbQueryStatus("get all songs friends like", ifSuccessful);
+		status.setData(friendsToSongs);
+		return status;
+	}
+
+	/**
+	 * Get users that both user and a friend follow, answered from the in-memory follow graph.
+	 *
+	 * @param userName: user name of user
+	 * @param frndUserName: user name of a friend
+	 * @return status of the query and list of user names followed by both
+	 */
+	@Override
+	public DbQueryStatus getMutualFriends(String userName, String frndUserName) {
+
+		List<String> mutualFriends = followGraph.getMutualFollowing(userName, frndUserName);
+
+		//Null means that user or friend were not found
+		DbQueryExecResult ifSuccessful = mutualFriends != null ? DbQueryExecResult.QUERY_OK : DbQueryExecResult.QUERY_ERROR_NOT_FOUND;
+
+		DbQueryStatus status = new DbQueryStatus("get mutual friends", ifSuccessful);
+		status.setData(mutualFriends);
+		return status;
+	}
+
+	/**
+	 * Get number of followers and followed users, answered from the in-memory follow graph.
+	 *
+	 * @param userName: user name of user
+	 * @return status of the query and mapping with "followers" and "following" counts
+	 */
+	@Override
+	public DbQueryStatus getFollowCounts(String userName) {
+
+		int followers = followGraph.getFollowerCount(userName);
+		int following = followGraph.getFollowingCount(userName);
+		if (followers < 0 || following < 0) {
+			//User was not found
+			return new DbQueryStatus("get follow counts", DbQueryExecResult.QUERY_ERROR_NOT_FOUND);
+		}
+
+		Map<String, Integer> counts = new HashMap<String, Integer>();
+		counts.put("followers", followers);
+		counts.put("following", following);
+
+		DbQueryStatus status = new DbQueryStatus("get follow counts", DbQueryExecResult.QUERY_OK);
+		status.setData(counts);
+		return status;
+	}
+
+	/**
+	 * Get songs liked by friends and friends of friends that user doesn't like yet, best first.
+	 *
+	 * @param userName: user name of user
+	 * @param limit: maximum number of songs
+	 * @return status of the query and list of mappings with "songId" and "score"
+	 */
+	@Override
+	public DbQueryStatus getSongRecommendations(String userName, int limit) {
+
+		List<Map<String, Object>> recommendations = songRecommender.recommend(userName, limit);
+
+		//Null means that user was not found
+		DbQueryExecResult ifSuccessful = recommendations != null ? DbQueryExecResult.QUERY_OK : DbQueryExecResult.QUERY_ERROR_NOT_FOUND;
+
+		DbQueryStatus status = new DbQueryStatus("get song recommendations", ifSuccessful);
+		status.setData(recommendations);
+		return status;
+	}
+}
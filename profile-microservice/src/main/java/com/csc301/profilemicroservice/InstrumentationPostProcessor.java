@@ -0,0 +1,81 @@
+package com.csc301.profilemicroservice;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.aopalliance.intercept.MethodInterceptor;
+import org.springframework.aop.framework.ProxyFactory;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.stereotype.Component;
+
+/**
+ * Wraps drivers in proxies that record every driver operation in OperationMetrics and as a span of the current trace,
+ * named by interface and method (e.g. "PlaylistDriver.likeSong") and labelled with the DbQueryExecResult it returned.
+ */
+@Component
+public class InstrumentationPostProcessor implements BeanPostProcessor {
+
+	private static final Class<?>[] INSTRUMENTED = { ProfileDriver.class, PlaylistDriver.class };
+
+	//Marks methods that are not recorded, such as ones not in the driver interface
+	private static final OperationMetrics.Operation NOT_RECORDED = new OperationMetrics.Operation("");
+
+	private final OperationMetrics metrics;
+	private final Tracer tracer;
+
+	public InstrumentationPostProcessor(OperationMetrics metrics, Tracer tracer) {
+		this.metrics = metrics;
+		this.tracer = tracer;
+	}
+
+	@Override
+	public Object postProcessAfterInitialization(Object bean, String beanName) {
+		for (Class<?> type : INSTRUMENTED) {
+			if (type.isInstance(bean)) {
+				//Proxying the class, so event listener methods of driver implementations stay invocable
+				ProxyFactory factory = new ProxyFactory(bean);
+				factory.setProxyTargetClass(true);
+				factory.addAdvice(createInterceptor(type));
+				return factory.getProxy();
+			}
+		}
+		return bean;
+	}
+
+	private MethodInterceptor createInterceptor(Class<?> type) {
+		ConcurrentHashMap<Method, OperationMetrics.Operation> operations =
+				new ConcurrentHashMap<Method, OperationMetrics.Operation>();
+
+		return invocation -> {
+			OperationMetrics.Operation operation = operations.computeIfAbsent(invocation.getMethod(),
+					method -> method.getReturnType() == DbQueryStatus.class && isDeclaredBy(type, method)
+							? metrics.operation(type.getSimpleName() + "." + method.getName()) : NOT_RECORDED);
+			if (operation == NOT_RECORDED) {
+				return invocation.proceed();
+			}
+
+			Tracer.Span span = tracer.startSpan(operation.getName());
+			long start = operation.begin();
+			String result = "EXCEPTION";
+			try {
+				DbQueryStatus status = (DbQueryStatus) invocation.proceed();
+				result = status == null ? "NULL" : status.getdbQueryExecResult().name();
+				return status;
+			} finally {
+				operation.end(start, result);
+				if (span != null) {
+					span.end(result);
+				}
+			}
+		};
+	}
+
+	private static boolean isDeclaredBy(Class<?> type, Method method) {
+		try {
+			type.getMethod(method.getName(), method.getParameterTypes());
+			return true;
+		} catch (NoSuchMethodException e) {
+			return false;
+		}
+	}
+}
@@ -0,0 +1,291 @@
+package com.csc301.profilemicroservice;
+
+import static org.neo4j.driver.v1.Values.parameters;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import org.neo4j.driver.v1.Driver;
+import org.neo4j.driver.v1.Record;
+import org.neo4j.driver.v1.Session;
+import org.neo4j.driver.v1.Transaction;
+
+/**
+ * Group commit of like and unlike writes.
+ *
+ * Requests are queued and a single flusher thread drains them, waiting at most lingerMs for a batch to fill up.
+ * Every batch is written in one transaction, consecutive writes of the same kind sharing one UNWIND statement, and
+ * each caller's future is completed with the result for its own row.
+ *
+ * Callers wait at most submitTimeoutMs for their batch. A write that is still queued by then is cancelled, so the
+ * flusher skips it and it is never applied; one that is already being flushed may still be committed. Either way the
+ * caller's onCommitted callback runs only once a write is committed, so indexes kept next to the database follow it.
+ * Once shutdown starts, or if the flusher dies, queued and new writes fail right away instead of waiting for a flusher
+ * that won't come.
+ */
+public class LikeBatcher {
+
+	private static final String LIKE_QUERY = "UNWIND $rows AS row\n"
+			+ "OPTIONAL MATCH (u:profile {userName: row.userName})-[:created]->(p:playlist {plName: row.userName + \"-favourites\"})\n"
+			+ "FOREACH (ignored IN CASE WHEN p IS NULL THEN [] ELSE [1] END |\n"
+			+ "  MERGE(s:song {songId: row.songId})\n"
+			+ "  MERGE(p)-[:includes]->(s))\n"
+			+ "RETURN row.idx as idx, COUNT(p) as playlistCount";
+
+	private static final String UNLIKE_QUERY = "UNWIND $rows AS row\n"
+			+ "OPTIONAL MATCH (u:profile {userName: row.userName})-[:created]->(p:playlist {plName: row.userName + \"-favourites\"})-[c:includes]->(s:song {songId: row.songId})\n"
+			+ "DELETE c\n"
+			+ "RETURN row.idx as idx, COUNT(c) as songsCount";
+
+	private final Driver driver;
+	private final SlowQueryLog slowQueries;
+	private final int maxBatchSize;
+	private final long lingerNanos;
+	private final long submitTimeoutMs;
+	private final BlockingQueue<PendingWrite> queue = new LinkedBlockingQueue<PendingWrite>();
+	private final Thread flusher;
+	private volatile boolean running = true;
+
+	//Batch size distribution, bucket i counts batches of size in (2^(i-1), 2^i]
+	private final AtomicLongArray batchSizeBuckets = new AtomicLongArray(32);
+	private final AtomicLong batches = new AtomicLong();
+	private final AtomicLong writes = new AtomicLong();
+
+	private static class PendingWrite {
+		final boolean like;
+		final String userName;
+		final String songId;
+		final Runnable onCommitted;
+		final CompletableFuture<DbQueryExecResult> result = new CompletableFuture<DbQueryExecResult>();
+		//Set by the flusher when it takes the write into a batch, or by the caller when it cancels the write
+		final AtomicBoolean taken = new AtomicBoolean();
+
+		PendingWrite(boolean like, String userName, String songId, Runnable onCommitted) {
+			this.like = like;
+			this.userName = userName;
+			this.songId = songId;
+			this.onCommitted = onCommitted;
+		}
+	}
+
+	public LikeBatcher(Driver driver, SlowQueryLog slowQueries, int maxBatchSize, long lingerMs, long submitTimeoutMs) {
+		this.driver = driver;
+		this.slowQueries = slowQueries;
+		this.maxBatchSize = maxBatchSize;
+		this.lingerNanos = TimeUnit.MILLISECONDS.toNanos(lingerMs);
+		this.submitTimeoutMs = submitTimeoutMs;
+
+		this.flusher = new Thread(this::flushLoop, "like-group-commit");
+		this.flusher.setDaemon(true);
+		this.flusher.start();
+	}
+
+	/**
+	 * Queues a like or unlike and waits until the batch containing it is committed.
+	 *
+	 * @param like: true for like, false for unlike
+	 * @param userName: user that is liking the song
+	 * @param songId: song that is being liked
+	 * @param onCommitted: run by the flusher once the write is committed successfully, even after the wait timed out
+	 * @return result of the write; generic error if batch failed, batcher is shut down or wait timed out
+	 */
+	public DbQueryExecResult submit(boolean like, String userName, String songId, Runnable onCommitted) {
+		if (!running) {
+			return DbQueryExecResult.QUERY_ERROR_GENERIC;
+		}
+
+		PendingWrite write = new PendingWrite(like, userName, songId, onCommitted);
+		queue.add(write);
+		if (!running) {
+			//Flusher may have drained the queue before this write was added
+			failQueued();
+		}
+		try {
+			return write.result.get(submitTimeoutMs, TimeUnit.MILLISECONDS);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			return DbQueryExecResult.QUERY_ERROR_GENERIC;
+		} catch (Exception e) {
+			//Batch failed as a whole or wasn't committed in time. A write still queued is cancelled, one being flushed
+			//may still be committed and then runs onCommitted
+			write.taken.compareAndSet(false, true);
+			return DbQueryExecResult.QUERY_ERROR_GENERIC;
+		}
+	}
+
+	public void shutdown() {
+		running = false;
+		flusher.interrupt();
+		failQueued();
+	}
+
+	private void failQueued() {
+		PendingWrite write;
+		while ((write = queue.poll()) != null) {
+			write.result.complete(DbQueryExecResult.QUERY_ERROR_GENERIC);
+		}
+	}
+
+	/**
+	 * Returns batch size distribution and totals.
+	 *
+	 * @return mapping from bucket upper bound ("le_N") or total name to count
+	 */
+	public Map<String, Long> getStats() {
+		Map<String, Long> stats = new LinkedHashMap<String, Long>();
+		stats.put("batches", batches.get());
+		stats.put("writes", writes.get());
+		for (int i = 0; i < batchSizeBuckets.length(); i++) {
+			long count = batchSizeBuckets.get(i);
+			if (count > 0) {
+				stats.put("le_" + (1L << i), count);
+			}
+		}
+		return stats;
+	}
+
+	private void flushLoop() {
+		try {
+			flushUntilShutdown();
+		} finally {
+			//Also reached if flusher dies, later writes must not wait for it
+			running = false;
+			failQueued();
+		}
+	}
+
+	private void flushUntilShutdown() {
+		List<PendingWrite> batch = new ArrayList<PendingWrite>(maxBatchSize);
+		while (running) {
+			try {
+				take(batch, queue.take());
+
+				//Linger for the rest of the batch
+				long deadline = System.nanoTime() + lingerNanos;
+				while (batch.size() < maxBatchSize) {
+					long remaining = deadline - System.nanoTime();
+					PendingWrite next = remaining > 0 ? queue.poll(remaining, TimeUnit.NANOSECONDS) : queue.poll();
+					if (next == null) {
+						break;
+					}
+					take(batch, next);
+				}
+
+				if (!batch.isEmpty()) {
+					flush(batch);
+				}
+			} catch (InterruptedException e) {
+				//Shutting down
+			} finally {
+				for (PendingWrite write : batch) {
+					write.result.complete(DbQueryExecResult.QUERY_ERROR_GENERIC);
+				}
+				batch.clear();
+			}
+		}
+	}
+
+	private static void take(List<PendingWrite> batch, PendingWrite write) {
+		//Writes cancelled by their caller are skipped
+		if (write.taken.compareAndSet(false, true)) {
+			batch.add(write);
+		}
+	}
+
+	/**
+	 * Writes one batch in a single transaction and completes futures of its writes.
+	 *
+	 * @param batch: queued writes in arrival order
+	 */
+	private void flush(List<PendingWrite> batch) {
+		recordBatchSize(batch.size());
+
+		Map<PendingWrite, DbQueryExecResult> results = new HashMap<PendingWrite, DbQueryExecResult>();
+		try (Session session = driver.session()) {
+			try (Transaction trans = session.beginTransaction()) {
+				//Consecutive writes of the same kind and for different (user, song) pairs share one statement,
+				//so the outcome is the same as if writes were applied one by one
+				int start = 0;
+				Set<String> keys = new HashSet<String>();
+				for (int i = 0; i <= batch.size(); i++) {
+					boolean endOfRun = i == batch.size() || batch.get(i).like != batch.get(start).like
+							|| !keys.add(batch.get(i).userName + "\n" + batch.get(i).songId);
+					if (endOfRun) {
+						runStatement(trans, batch.subList(start, i), results);
+						keys.clear();
+						if (i < batch.size()) {
+							keys.add(batch.get(i).userName + "\n" + batch.get(i).songId);
+						}
+						start = i;
+					}
+				}
+				trans.success();
+			}
+		} catch (Exception e) {
+			//Transaction failed, none of the writes were applied
+			results.clear();
+		}
+
+		for (PendingWrite write : batch) {
+			DbQueryExecResult result = results.get(write);
+			if (result == DbQueryExecResult.QUERY_OK) {
+				try {
+					write.onCommitted.run();
+				} catch (RuntimeException e) {
+					//Flusher has to keep going, callback only keeps an index up to date
+					System.out.println("Callback of committed write failed: " + e.getMessage());
+				}
+			}
+			write.result.complete(result != null ? result : DbQueryExecResult.QUERY_ERROR_GENERIC);
+		}
+	}
+
+	/**
+	 * Runs one UNWIND statement for a run of writes of the same kind.
+	 *
+	 * @param trans: transaction of the batch
+	 * @param run: writes to apply
+	 * @param results: map results are put into
+	 */
+	private void runStatement(Transaction trans, List<PendingWrite> run, Map<PendingWrite, DbQueryExecResult> results) {
+		List<Map<String, Object>> rows = new ArrayList<Map<String, Object>>(run.size());
+		for (int i = 0; i < run.size(); i++) {
+			Map<String, Object> row = new HashMap<String, Object>(4);
+			row.put("idx", i);
+			row.put("userName", run.get(i).userName);
+			row.put("songId", run.get(i).songId);
+			rows.add(row);
+		}
+
+		boolean like = run.get(0).like;
+		Iterator<Record> res = slowQueries.run(trans, like ? LIKE_QUERY : UNLIKE_QUERY, parameters("rows", rows)).iterator();
+		while (res.hasNext()) {
+			Record rec = res.next();
+			PendingWrite write = run.get(rec.get("idx").asInt());
+
+			//Same 404 rules as for single writes
+			boolean not404 = rec.get(like ? "playlistCount" : "songsCount").asLong() > 0;
+			results.put(write, not404 ? DbQueryExecResult.QUERY_OK : DbQueryExecResult.QUERY_ERROR_NOT_FOUND);
+		}
+	}
+
+	private void recordBatchSize(int size) {
+		int bucket = 32 - Integer.numberOfLeadingZeros(size - 1);
+		batchSizeBuckets.incrementAndGet(Math.min(bucket, batchSizeBuckets.length() - 1));
+		batches.incrementAndGet();
+		writes.addAndGet(size);
+	}
+}
@@ -0,0 +1,441 @@
+package com.csc301.profilemicroservice;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+import java.util.function.IntConsumer;
+
+import org.roaringbitmap.IntIterator;
+import org.roaringbitmap.RoaringBitmap;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * In-memory index of songs each user likes.
+ *
+ * Every songId gets a compact int ordinal and every user a compressed bitmap of ordinals of liked songs. Bitmaps are
+ * bulk loaded at startup or lazily on first access, and then kept up to date by likes and unlikes, so membership
+ * checks and intersections are answered without a query.
+ *
+ * At most maxUsers users are kept. Above that, users not accessed recently are evicted (second chance) and loaded
+ * again on next access; once a loaded user is evicted, the index no longer counts as a snapshot of all likes.
+ */
+@Component
+public class LikedSongsIndex {
+
+	//Lock-free loads of a user skipped by preload, before loading while holding its lock
+	private static final int RELOAD_ATTEMPTS = 3;
+
+	private final ConcurrentHashMap<String, Integer> ordinals = new ConcurrentHashMap<String, Integer>();
+	private volatile String[] songIds = new String[1024];
+	private int nextOrdinal = 0;
+
+	private final ConcurrentHashMap<String, UserLikes> users = new ConcurrentHashMap<String, UserLikes>();
+	private final int maxUsers;
+	private final Object evictionLock = new Object();
+	private volatile boolean evictedLoaded = false;
+
+	//Sequence number of the last write, used to discard loads that raced with a write
+	private final AtomicLong writeSeq = new AtomicLong();
+	private volatile boolean preloaded = false;
+
+	private static class UserLikes {
+		RoaringBitmap songs = new RoaringBitmap();
+		boolean loaded = false;
+		//Set once evicted, writers then retry on the entry that replaced it
+		boolean removed = false;
+		long lastWrite = 0;
+		//Set on every access and cleared by eviction, so recently used users get a second chance
+		volatile boolean referenced = true;
+	}
+
+	/**
+	 * Creates liked songs index.
+	 *
+	 * @param maxUsers: maximum number of users kept in the index
+	 */
+	public LikedSongsIndex(@Value("${likedSongs.maxUsers:1000000}") int maxUsers) {
+		this.maxUsers = maxUsers;
+	}
+
+	/**
+	 * Check if user likes a song, loading user's likes if they are not in the index yet.
+	 *
+	 * @param userName: user name
+	 * @param songId: song id
+	 * @param loader: returns ids of songs user likes; null if user doesn't exist
+	 * @return true if song is liked by user; false, otherwise
+	 */
+	public boolean contains(String userName, String songId, Function<String, Collection<String>> loader) {
+		UserLikes entry = getEntry(userName);
+		if (entry != null) {
+			synchronized (entry) {
+				if (entry.loaded) {
+					Integer ordinal = ordinals.get(songId);
+					return ordinal != null && entry.songs.contains(ordinal);
+				}
+			}
+		}
+
+		RoaringBitmap songs = getSongs(userName, loader);
+		Integer ordinal = ordinals.get(songId);
+		return songs != null && ordinal != null && songs.contains(ordinal);
+	}
+
+	/**
+	 * Get ids of songs liked by both users.
+	 *
+	 * @param userName: user name of first user
+	 * @param otherUserName: user name of second user
+	 * @param loader: returns ids of songs user likes; null if user doesn't exist
+	 * @return ids of songs both users like; null if one of users doesn't exist
+	 */
+	public List<String> likedInCommon(String userName, String otherUserName, Function<String, Collection<String>> loader) {
+		RoaringBitmap songs = getSongs(userName, loader);
+		RoaringBitmap otherSongs = getSongs(otherUserName, loader);
+		if (songs == null || otherSongs == null) {
+			return null;
+		}
+		return toSongIds(RoaringBitmap.and(songs, otherSongs));
+	}
+
+	/**
+	 * Registers a new user, who doesn't like any songs yet.
+	 *
+	 * @param userName: user name
+	 */
+	public void onUserCreated(String userName) {
+		while (true) {
+			UserLikes entry = getOrCreateEntry(userName);
+			synchronized (entry) {
+				if (entry.removed) {
+					continue;
+				}
+				entry.lastWrite = writeSeq.incrementAndGet();
+				entry.songs = new RoaringBitmap();
+				entry.loaded = true;
+				return;
+			}
+		}
+	}
+
+	/**
+	 * Records a successful like or unlike.
+	 *
+	 * @param userName: user name
+	 * @param songId: song id
+	 * @param liked: true for like, false for unlike
+	 */
+	public void onLikeChanged(String userName, String songId, boolean liked) {
+		int ordinal = ordinalOf(songId);
+		while (true) {
+			UserLikes entry = getOrCreateEntry(userName);
+			synchronized (entry) {
+				if (entry.removed) {
+					//Evicted meanwhile, a load of the new entry must see this write as well
+					continue;
+				}
+				entry.lastWrite = writeSeq.incrementAndGet();
+				if (liked) {
+					entry.songs.add(ordinal);
+				} else {
+					entry.songs.remove(ordinal);
+				}
+				return;
+			}
+		}
+	}
+
+	/**
+	 * Removes a deleted song from all bitmaps.
+	 *
+	 * @param songId: song id
+	 */
+	public void onSongDeleted(String songId) {
+		Integer ordinal = ordinals.get(songId);
+		if (ordinal == null) {
+			return;
+		}
+		for (UserLikes entry : users.values()) {
+			synchronized (entry) {
+				entry.lastWrite = writeSeq.incrementAndGet();
+				entry.songs.remove(ordinal);
+			}
+		}
+	}
+
+	/**
+	 * Returns a copy of user's bitmap, loading it if needed.
+	 *
+	 * @param userName: user name
+	 * @param loader: returns ids of songs user likes; null if user doesn't exist
+	 * @return ordinals of songs user likes; null if user doesn't exist
+	 */
+	private RoaringBitmap getSongs(String userName, Function<String, Collection<String>> loader) {
+		UserLikes entry = getOrCreateEntry(userName);
+		synchronized (entry) {
+			if (entry.loaded) {
+				return entry.songs.clone();
+			}
+		}
+		long loadSeq = writeSeq.get();
+
+		//Loading outside of the lock, so slow queries don't block writers
+		Collection<String> loadedSongIds = loader.apply(userName);
+		if (loadedSongIds == null) {
+			users.remove(userName, entry);
+			return null;
+		}
+
+		RoaringBitmap songs = toBitmap(loadedSongIds);
+		install(entry, songs.clone(), loadSeq);
+		return songs;
+	}
+
+	/**
+	 * Starts a bulk load of all users, which is finished by calling preload for every user.
+	 *
+	 * @return sequence number to pass to preload
+	 */
+	public long beginPreload() {
+		return writeSeq.get();
+	}
+
+	/**
+	 * Installs likes of one user read by a bulk load, unless the user was written to since the load started.
+	 *
+	 * @param userName: user name
+	 * @param songIds: ids of all songs user likes
+	 * @param loadSeq: value returned by beginPreload
+	 */
+	public void preload(String userName, Collection<String> songIds, long loadSeq) {
+		install(getOrCreateEntry(userName), toBitmap(songIds), loadSeq);
+	}
+
+	/**
+	 * Finishes a bulk load. Users preload skipped because they were written to meanwhile are loaded again one by one,
+	 * so afterwards the index holds likes of every user.
+	 *
+	 * @param loader: returns ids of songs user likes; null if user doesn't exist
+	 */
+	public void endPreload(Function<String, Collection<String>> loader) {
+		for (Map.Entry<String, UserLikes> next : users.entrySet()) {
+			reload(next.getKey(), next.getValue(), loader);
+		}
+		preloaded = true;
+	}
+
+	/**
+	 * Loads a user that isn't loaded. A load racing with a write is retried, and the last attempt holds the lock of
+	 * the user, blocking its writers for one query, so the user is loaded in the end.
+	 *
+	 * @param userName: user name
+	 * @param entry: entry of the user
+	 * @param loader: returns ids of songs user likes; null if user doesn't exist
+	 */
+	private void reload(String userName, UserLikes entry, Function<String, Collection<String>> loader) {
+		for (int attempt = 0; attempt < RELOAD_ATTEMPTS; attempt++) {
+			synchronized (entry) {
+				if (entry.loaded || entry.removed) {
+					return;
+				}
+			}
+			getSongs(userName, loader);
+		}
+
+		synchronized (entry) {
+			if (entry.loaded || entry.removed) {
+				return;
+			}
+			Collection<String> loadedSongIds = loader.apply(userName);
+			if (loadedSongIds == null) {
+				entry.removed = true;
+				users.remove(userName, entry);
+				return;
+			}
+			entry.songs = toBitmap(loadedSongIds);
+			entry.loaded = true;
+		}
+	}
+
+	/**
+	 * Check if likes of all users were bulk loaded, i.e. if index can be used as a snapshot of all likes.
+	 *
+	 * @return true if bulk load finished and no loaded user was evicted since
+	 */
+	public boolean isPreloaded() {
+		return preloaded && !evictedLoaded;
+	}
+
+	/**
+	 * Get number of users in the index, loaded or not.
+	 *
+	 * @return number of users
+	 */
+	public int size() {
+		return users.size();
+	}
+
+	/**
+	 * Calls consumer with ordinal of every song a loaded user likes. Users that are not loaded are skipped.
+	 *
+	 * @param userName: user name
+	 * @param consumer: consumer of song ordinals
+	 * @return true if user is loaded
+	 */
+	public boolean forEachLikedSong(String userName, IntConsumer consumer) {
+		UserLikes entry = getEntry(userName);
+		if (entry == null) {
+			return false;
+		}
+		synchronized (entry) {
+			if (!entry.loaded) {
+				return false;
+			}
+			entry.songs.forEach((int ordinal) -> consumer.accept(ordinal));
+			return true;
+		}
+	}
+
+	/**
+	 * Get ordinals of songs a loaded user likes.
+	 *
+	 * @param userName: user name
+	 * @return copy of user's bitmap; null if user is not loaded
+	 */
+	public RoaringBitmap getLikedSongs(String userName) {
+		UserLikes entry = getEntry(userName);
+		if (entry == null) {
+			return null;
+		}
+		synchronized (entry) {
+			return entry.loaded ? entry.songs.clone() : null;
+		}
+	}
+
+	/**
+	 * Get number of songs a loaded user likes.
+	 *
+	 * @param userName: user name
+	 * @return number of liked songs; 0 if user is not loaded
+	 */
+	public int getLikeCount(String userName) {
+		UserLikes entry = getEntry(userName);
+		if (entry == null) {
+			return 0;
+		}
+		synchronized (entry) {
+			return entry.loaded ? entry.songs.getCardinality() : 0;
+		}
+	}
+
+	public String getSongId(int ordinal) {
+		return songIds[ordinal];
+	}
+
+	private UserLikes getEntry(String userName) {
+		UserLikes entry = users.get(userName);
+		if (entry != null) {
+			entry.referenced = true;
+		}
+		return entry;
+	}
+
+	private UserLikes getOrCreateEntry(String userName) {
+		UserLikes entry = users.computeIfAbsent(userName, k -> new UserLikes());
+		entry.referenced = true;
+		if (users.size() > maxUsers) {
+			evict();
+		}
+		return entry;
+	}
+
+	/**
+	 * Evicts users until a tenth of maxUsers is free again, so eviction doesn't run on every new user. First pass
+	 * only clears reference bits of recently accessed users, so they are evicted last.
+	 */
+	private void evict() {
+		synchronized (evictionLock) {
+			int target = maxUsers - maxUsers / 10;
+			for (int pass = 0; pass < 2 && users.size() > target; pass++) {
+				Iterator<Map.Entry<String, UserLikes>> it = users.entrySet().iterator();
+				while (users.size() > target && it.hasNext()) {
+					Map.Entry<String, UserLikes> next = it.next();
+					UserLikes entry = next.getValue();
+					if (entry.referenced) {
+						entry.referenced = false;
+						continue;
+					}
+					synchronized (entry) {
+						entry.removed = true;
+						if (entry.loaded && !evictedLoaded) {
+							evictedLoaded = true;
+							System.out.println("Liked songs index is full, users are evicted and recommendations are "
+									+ "disabled; raise likedSongs.maxUsers above the number of users to keep them");
+						}
+					}
+					users.remove(next.getKey(), entry);
+				}
+			}
+		}
+	}
+
+	private void install(UserLikes entry, RoaringBitmap songs, long loadSeq) {
+		synchronized (entry) {
+			if (!entry.loaded && entry.lastWrite <= loadSeq) {
+				entry.songs = songs;
+				entry.loaded = true;
+			}
+		}
+	}
+
+	private RoaringBitmap toBitmap(Collection<String> songIds) {
+		RoaringBitmap songs = new RoaringBitmap();
+		for (String songId : songIds) {
+			songs.add(ordinalOf(songId));
+		}
+		return songs;
+	}
+
+	/**
+	 * Returns ordinal of a song, assigning the next free one to songs seen for the first time.
+	 *
+	 * @param songId: song id
+	 * @return ordinal of the song
+	 */
+	private int ordinalOf(String songId) {
+		Integer ordinal = ordinals.get(songId);
+		if (ordinal != null) {
+			return ordinal;
+		}
+
+		synchronized (this) {
+			ordinal = ordinals.get(songId);
+			if (ordinal == null) {
+				ordinal = nextOrdinal++;
+				if (ordinal == songIds.length) {
+					songIds = Arrays.copyOf(songIds, songIds.length * 2);
+				}
+				songIds[ordinal] = songId;
+				ordinals.put(songId, ordinal);
+			}
+			return ordinal;
+		}
+	}
+
+	private List<String> toSongIds(RoaringBitmap songs) {
+		String[] ids = songIds;
+		List<String> result = new ArrayList<String>(songs.getCardinality());
+		IntIterator it = songs.getIntIterator();
+		while (it.hasNext()) {
+			result.add(ids[it.next()]);
+		}
+		return result;
+	}
+}
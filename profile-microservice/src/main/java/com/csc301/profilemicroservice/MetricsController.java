@@ -0,0 +1,72 @@
+package com.csc301.profilemicroservice;
+
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestMethod;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.ResponseBody;
+import org.springframework.web.bind.annotation.RestController;
+
+@RestController
+@RequestMapping("/")
+public class MetricsController {
+
+	//Content type of Prometheus text exposition format
+	public static final String PROMETHEUS_TEXT = "text/plain; version=0.0.4; charset=utf-8";
+
+	private final OperationMetrics metrics;
+
+	private final Tracer tracer;
+
+	private final SlowQueryLog slowQueries;
+
+	private final AdmissionFilter admission;
+
+	public MetricsController(OperationMetrics metrics, Tracer tracer, SlowQueryLog slowQueries,
+			AdmissionFilter admission) {
+		this.metrics = metrics;
+		this.tracer = tracer;
+		this.slowQueries = slowQueries;
+		this.admission = admission;
+	}
+
+	/**
+	 * Performs GET request at route /metrics to get latencies, results and in-flight counts of all operations.
+	 * 
+	 * @return metrics in Prometheus text format
+	 */
+	@RequestMapping(value = "/metrics", method = RequestMethod.GET, produces = PROMETHEUS_TEXT)
+	public @ResponseBody String getMetrics() {
+		return metrics.scrape();
+	}
+
+	/**
+	 * Performs GET request at route /getTraces to get most recent spans of this service.
+	 * 
+	 * @param traceId: trace to get spans of; all recent spans if not given
+	 * @return status of the request and spans ordered by start time
+	 */
+	@RequestMapping(value = "/getTraces", method = RequestMethod.GET)
+	public @ResponseBody ResponseEnvelope getTraces(@RequestParam(value = "traceId", required = false) String traceId) {
+		return ResponseEnvelope.of(DbQueryExecResult.QUERY_OK, tracer.getSpans(traceId));
+	}
+
+	/**
+	 * Performs GET request at route /getSlowQueries to get statements that exceeded the slow query threshold.
+	 * 
+	 * @return status of the request and logged statements, newest first
+	 */
+	@RequestMapping(value = "/getSlowQueries", method = RequestMethod.GET)
+	public @ResponseBody ResponseEnvelope getSlowQueries() {
+		return ResponseEnvelope.of(DbQueryExecResult.QUERY_OK, slowQueries.getEntries());
+	}
+
+	/**
+	 * Performs GET request at route /getAdmissionStats to get concurrency limits of endpoints.
+	 * 
+	 * @return status of the request and limit, in-flight and rejected requests per endpoint
+	 */
+	@RequestMapping(value = "/getAdmissionStats", method = RequestMethod.GET)
+	public @ResponseBody ResponseEnvelope getAdmissionStats() {
+		return ResponseEnvelope.of(DbQueryExecResult.QUERY_OK, admission.getStats());
+	}
+}
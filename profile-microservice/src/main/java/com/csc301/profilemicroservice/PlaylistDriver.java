@@ -4,4 +4,7 @@ public interface PlaylistDriver {
 	DbQueryStatus likeSong(String userName, String songId);
 	DbQueryStatus unlikeSong(String userName, String songId);
 	DbQueryStatus deleteSongFromDb(String songId);
+	boolean ifSongLiked(String userName, String songId);
+	DbQueryStatus getSongsLikedInCommon(String userName, String otherUserName);
+	DbQueryStatus getGroupCommitStats();
 }
\ No newline at end of file
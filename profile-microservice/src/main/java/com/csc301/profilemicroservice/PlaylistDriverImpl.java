@@ -2,22 +2,87 @@ package com.csc301.profilemicroservice;
 
 import static org.neo4j.driver.v1.Values.parameters;
 
-import org.neo4j.driver.v1.Driver;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+import javax.annotation.PreDestroy;
+
 import org.neo4j.driver.v1.Record;
 import org.neo4j.driver.v1.Session;
-import org.neo4j.driver.v1.StatementResult;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.annotation.Profile;
+import org.springframework.context.event.EventListener;
 import org.springframework.stereotype.Repository;
 import org.neo4j.driver.v1.Transaction;
 
 @Repository
+@Profile("!inmemory")
 public class PlaylistDriverImpl implements PlaylistDriver {
 
-	Driver driver = ProfileMicroserviceApplication.driver;
+	//Statements of this driver, also run by the Cypher benchmark in loadtest
+	public static final String LIKE_SONG_QUERY = "MATCH (u:profile {userName: $userName})-[:created]->(p:playlist {plName: $userName + \"-favourites\"})\n"
+			+ "MERGE(s:song {songId:$songId})\n"
+			+ "MERGE(p)-[:includes]->(s)\n"
+			+ "RETURN COUNT(u) as userCount, COUNT(p) as playlistCount";
+
+	public static final String PRELOAD_LIKED_SONGS_QUERY = "MATCH (u:profile)\n"
+			+ "OPTIONAL MATCH (u)-[:created]->(:playlist {plName: u.userName + \"-favourites\"})-[:includes]->(s:song)\n"
+			+ "RETURN u.userName as name, collect(s.songId) as songIds";
+
+	public static final String LIKED_SONG_IDS_QUERY = "MATCH (u:profile {userName: $userName})\n"
+			+ "OPTIONAL MATCH (u)-[:created]->(:playlist {plName: $userName + \"-favourites\"})-[:includes]->(s:song)\n"
+			+ "RETURN s.songId as songId";
+
+	public static final String UNLIKE_SONG_QUERY = "MATCH (u:profile {userName: $userName})-[:created]->(p:playlist {plName: $userName + \"-favourites\"})-[c:includes]->(s:song {songId: $songId})\n"
+			+ "DETACH DELETE(c)\n"
+			+ "RETURN COUNT(u) as userCount, COUNT(p) as playlistCount, COUNT(s) as songsCount";
+
+	public static final String DELETE_SONG_QUERY = "MATCH(s:song {songId: $songId})\n"
+			+ "DETACH DELETE(s)\n"
+			+ "RETURN COUNT(s) as songCount";
+
+	//Null when group commit is disabled
+	private final LikeBatcher likeBatcher;
+	
+	private final LikedSongsIndex likedSongs;
+	
+	private final SlowQueryLog slowQueries;
+
+	/**
+	 * Creates playlist driver.
+	 * 
+	 * @param likedSongs: in-memory index of liked songs, kept up to date by this driver
+	 * @param slowQueries: runs statements, logging slow ones
+	 * @param groupCommit: whether concurrent likes and unlikes are written in shared transactions
+	 * @param maxBatchSize: maximum number of writes in one group commit
+	 * @param lingerMs: how long a group commit waits for more writes to arrive
+	 */
+	@Autowired
+	public PlaylistDriverImpl(LikedSongsIndex likedSongs, SlowQueryLog slowQueries,
+			@Value("${playlist.groupCommit.enabled:false}") boolean groupCommit,
+			@Value("${playlist.groupCommit.maxBatchSize:128}") int maxBatchSize,
+			@Value("${playlist.groupCommit.lingerMs:2}") long lingerMs,
+			@Value("${playlist.groupCommit.submitTimeoutMs:5000}") long submitTimeoutMs) {
+		this.likedSongs = likedSongs;
+		this.slowQueries = slowQueries;
+		this.likeBatcher = groupCommit ? new LikeBatcher(ProfileMicroserviceApplication.getDriver(), slowQueries, maxBatchSize, lingerMs,
+				submitTimeoutMs) : null;
+	}
+
+	@PreDestroy
+	public void shutdown() {
+		if (likeBatcher != null) {
+			likeBatcher.shutdown();
+		}
+	}
 
 	public static void InitPlaylistDb() {
 		String queryStr;
 
-		try (Session session = ProfileMicroserviceApplication.driver.session()) {
+		try (Session session = ProfileMicroserviceApplication.getDriver().session()) {
 			try (Transaction trans = session.beginTransaction()) {
 				queryStr = "CREATE CONSTRAINT ON (nPlaylist:playlist) ASSERT exists(nPlaylist.plName)";
 				trans.run(queryStr);
@@ -37,17 +102,20 @@ public class PlaylistDriverImpl implements PlaylistDriver {
 	@Override
 	public DbQueryStatus likeSong(String userName, String songId) {
 
+		if (likeBatcher != null) {
+			//Index is updated once the like is committed, also if that is after the wait for it timed out
+			DbQueryExecResult result = likeBatcher.submit(true, userName, songId,
+					() -> likedSongs.onLikeChanged(userName, songId, true));
+			return new DbQueryStatus("like a song", result);
+		}
+		
 		DbQueryExecResult ifSuccessful;
-		try (Session session = ProfileMicroserviceApplication.driver.session()) {
+		try (Session session = ProfileMicroserviceApplication.getDriver().session()) {
 			try (Transaction trans = session.beginTransaction()) {
-				String queryStr = 
-						"MATCH (u:profile {userName: $userName})-[:created]->(p:playlist {plName: $userName + \"-favourites\"})\n"
-						+ "MERGE(s:song {songId:$songId})\n"
-						+ "MERGE(p)-[:includes]->(s)\n"
-						+ "RETURN COUNT(u) as userCount, COUNT(p) as playlistCount";
+				String queryStr = LIKE_SONG_QUERY;
 				
 				//Running a query
-				StatementResult res = trans.run(queryStr, parameters("userName", userName, "songId", songId));
+				Iterator<Record> res = slowQueries.run(trans, queryStr, parameters("userName", userName, "songId", songId)).iterator();
 				
 				boolean not404;
 				if (res.hasNext()) {
@@ -70,6 +138,10 @@ public class PlaylistDriverImpl implements PlaylistDriver {
 			session.close();
 		}
 		
+		if (ifSuccessful == DbQueryExecResult.QUERY_OK) {
+			likedSongs.onLikeChanged(userName, songId, true);
+		}
+		
 		DbQueryStatus status = new DbQueryStatus("like a song", ifSuccessful);
 		return status;
 	}
@@ -81,34 +153,98 @@ public class PlaylistDriverImpl implements PlaylistDriver {
 	 * @param songId: song id
 	 * @return true if song is liked by user; false, otherwise
 	 */
+	@Override
 	public boolean ifSongLiked(String userName, String songId) {
+		try {
+			//Answered from the index, user's likes are only queried on first access
+			return likedSongs.contains(userName, songId, this::getLikedSongIds);
+		}catch(Exception e) {
+			//Error occurred, something went wrong
+			return false;
+		}
+	}
+	
+	/**
+	 * Get songs that both users like.
+	 * 
+	 * @param userName: user name of first user
+	 * @param otherUserName: user name of second user
+	 * @return status of the query and list of ids of songs both users like
+	 */
+	@Override
+	public DbQueryStatus getSongsLikedInCommon(String userName, String otherUserName) {
+		DbQueryExecResult ifSuccessful;
+		List<String> data;
+		try {
+			data = likedSongs.likedInCommon(userName, otherUserName, this::getLikedSongIds);
+			
+			//Null means that one of users was not found
+			ifSuccessful = data != null ? DbQueryExecResult.QUERY_OK : DbQueryExecResult.QUERY_ERROR_NOT_FOUND;
+		}catch(Exception e) {
+			//Error occurred, which means query was unsuccessful
+			ifSuccessful = DbQueryExecResult.QUERY_ERROR_GENERIC;
+			data = null;
+		}
 		
-		boolean result;
-		try (Session session = ProfileMicroserviceApplication.driver.session()) {
+		DbQueryStatus status = new DbQueryStatus("get songs liked in common", ifSuccessful);
+		status.setData(data);
+		return status;
+	}
+	
+	/**
+	 * Loads favourites of all users into the liked songs index once the service has started.
+	 */
+	@EventListener(ApplicationReadyEvent.class)
+	public void preloadLikedSongs() {
+		try (Session session = ProfileMicroserviceApplication.getDriver().session()) {
+			try (Transaction trans = session.beginTransaction()) {
+				String queryStr = PRELOAD_LIKED_SONGS_QUERY;
+				
+				//Running a query, users are streamed into the index one by one
+				long loadSeq = likedSongs.beginPreload();
+				slowQueries.stream(trans, queryStr, null, rec ->
+						likedSongs.preload(rec.get("name").asString(), rec.get("songIds").asList(v -> v.asString()), loadSeq));
+				trans.success();
+			}
+			
+			//Users written to during the bulk load are loaded again
+			likedSongs.endPreload(this::getLikedSongIds);
+		}catch(Exception e) {
+			//Likes stay lazily loaded, recommendations will report an error
+			System.out.println("Could not preload liked songs: " + e.getMessage());
+		}
+	}
+
+	/**
+	 * Loads ids of all songs in user's favourites, used to fill the liked songs index.
+	 * 
+	 * @param userName: user name
+	 * @return ids of liked songs; null if user is not found
+	 */
+	private List<String> getLikedSongIds(String userName) {
+		try (Session session = ProfileMicroserviceApplication.getDriver().session()) {
 			try (Transaction trans = session.beginTransaction()) {
-				String queryStr = 
-						"RETURN EXISTS((:profile {userName: $userName})-[:created]->(:playlist {plName: $userName + \"-favourites\"})-[:includes]->(:song {songId: $songId})) as ifExists";
+				String queryStr = LIKED_SONG_IDS_QUERY;
 				
 				//Running a query
-				StatementResult res = trans.run(queryStr, parameters("userName", userName, "songId", songId));
+				Iterator<Record> res = slowQueries.run(trans, queryStr, parameters("userName", userName)).iterator();
 				
-				if (res.hasNext()) {
-					//Query was successful
-					result = (boolean)res.next().asMap().get("ifExists");
-				}else {
-					//Empty response shouldn't happen, means something went wrong
-					result = false;
+				if (!res.hasNext()) {
+					//Empty response means that user is not found
+					return null;
+				}
+				
+				List<String> songIds = new ArrayList<String>();
+				while (res.hasNext()) {
+					Object songId = res.next().asMap().get("songId");
+					if (songId != null) {
+						songIds.add((String)songId);
+					}
 				}
 				trans.success();
-			}catch(Exception e) {
-				//Error occurred, something went wrong
-				result = false;
+				return songIds;
 			}
-			session.close();
 		}
-		
-		return result;
-		
 	}
 
 	/**
@@ -121,15 +257,19 @@ public class PlaylistDriverImpl implements PlaylistDriver {
 	@Override
 	public DbQueryStatus unlikeSong(String userName, String songId) {
 		
+		if (likeBatcher != null) {
+			DbQueryExecResult result = likeBatcher.submit(false, userName, songId,
+					() -> likedSongs.onLikeChanged(userName, songId, false));
+			return new DbQueryStatus("unlike a song", result);
+		}
+		
 		DbQueryExecResult ifSuccessful;
-		try (Session session = ProfileMicroserviceApplication.driver.session()) {
+		try (Session session = ProfileMicroserviceApplication.getDriver().session()) {
 			try (Transaction trans = session.beginTransaction()) {
-				String queryStr = "MATCH (u:profile {userName: $userName})-[:created]->(p:playlist {plName: $userName + \"-favourites\"})-[c:includes]->(s:song {songId: $songId})\n"
-						+ "DETACH DELETE(c)\n"
-						+ "RETURN COUNT(u) as userCount, COUNT(p) as playlistCount, COUNT(s) as songsCount";
+				String queryStr = UNLIKE_SONG_QUERY;
 				
 				//Running a query
-				StatementResult res = trans.run(queryStr, parameters("userName", userName, "songId", songId));
+				Iterator<Record> res = slowQueries.run(trans, queryStr, parameters("userName", userName, "songId", songId)).iterator();
 				
 				boolean not404;
 				if (res.hasNext()) {
@@ -153,11 +293,31 @@ public class PlaylistDriverImpl implements PlaylistDriver {
 			session.close();
 		}
 		
+		if (ifSuccessful == DbQueryExecResult.QUERY_OK) {
+			likedSongs.onLikeChanged(userName, songId, false);
+		}
+		
 		DbQueryStatus status = new DbQueryStatus("unlike a song", ifSuccessful);
 		return status;
 		
 	}
 
+	/**
+	 * Get batch size distribution of group commit.
+	 * 
+	 * @return status of the query and group commit stats; not found if group commit is disabled
+	 */
+	@Override
+	public DbQueryStatus getGroupCommitStats() {
+		if (likeBatcher == null) {
+			return new DbQueryStatus("group commit is disabled", DbQueryExecResult.QUERY_ERROR_NOT_FOUND);
+		}
+		
+		DbQueryStatus status = new DbQueryStatus("group commit stats", DbQueryExecResult.QUERY_OK);
+		status.setData(likeBatcher.getStats());
+		return status;
+	}
+
 	/**
 	 * Delete a song from database by its id.
 	 * 
@@ -168,12 +328,10 @@ public class PlaylistDriverImpl implements PlaylistDriver {
 	public DbQueryStatus deleteSongFromDb(String songId) {
 		
 		DbQueryExecResult ifSuccessful;
-		try (Session session = ProfileMicroserviceApplication.driver.session()) {
+		try (Session session = ProfileMicroserviceApplication.getDriver().session()) {
 			try (Transaction trans = session.beginTransaction()) {
-				String queryStr = "MATCH(s:song {songId: $songId})\n"
-						+ "DETACH DELETE(s)\n"
-						+ "RETURN COUNT(s) as songCount";
-				StatementResult res = trans.run(queryStr, parameters("songId", songId));
+				String queryStr = DELETE_SONG_QUERY;
+				Iterator<Record> res = slowQueries.run(trans, queryStr, parameters("songId", songId)).iterator();
 				
 				boolean not404;
 				if (res.hasNext()) {
@@ -194,6 +352,10 @@ public class PlaylistDriverImpl implements PlaylistDriver {
 			session.close();
 		}
 		
+		if (ifSuccessful == DbQueryExecResult.QUERY_OK) {
+			likedSongs.onSongDeleted(songId);
+		}
+		
 		DbQueryStatus status = new DbQueryStatus("delete a song", ifSuccessful);
 		return status;
 
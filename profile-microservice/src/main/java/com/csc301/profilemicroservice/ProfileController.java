@@ -1,8 +1,7 @@
 package com.csc301.profilemicroservice;
 
-import org.json.JSONObject;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.http.HttpStatus;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestMethod;
@@ -10,20 +9,13 @@ import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.ResponseBody;
 import org.springframework.web.bind.annotation.RestController;
 
+import com.csc301.profilemicroservice.ResilientHttpClient.CallRejectedException;
+import com.csc301.profilemicroservice.ResilientHttpClient.ServerErrorException;
 import com.csc301.profilemicroservice.Utils;
-import com.csc301.profilemicroservice.ProfileDriverImpl;
-import com.fasterxml.jackson.databind.ObjectMapper;
-
-import okhttp3.Call;
-import okhttp3.OkHttpClient;
-import okhttp3.Request;
-import okhttp3.RequestBody;
-import okhttp3.Response;
 
 import java.io.IOException;
+import java.net.ConnectException;
 import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.List;
 import java.util.Map;
 
 import javax.servlet.http.HttpServletRequest;
@@ -34,19 +26,23 @@ public class ProfileController {
 	public static final String KEY_USER_NAME = "userName";
 	public static final String KEY_USER_FULLNAME = "fullName";
 	public static final String KEY_USER_PASSWORD = "password";
-	public static final String SONG_MICROSERVICE_URL = "http://localhost:3001";
 
 	@Autowired
-	private final ProfileDriverImpl profileDriver;
+	private final ProfileDriver profileDriver;
 
 	@Autowired
-	private final PlaylistDriverImpl playlistDriver;
+	private final PlaylistDriver playlistDriver;
 
-	OkHttpClient client = new OkHttpClient();
+	private final ResilientHttpClient client;
+	
+	private final String songMicroserviceUrl;
 
-	public ProfileController(ProfileDriverImpl profileDriver, PlaylistDriverImpl playlistDriver) {
+	public ProfileController(ProfileDriver profileDriver, PlaylistDriver playlistDriver, ResilientHttpClient client,
+			@Value("${songService.url:http://localhost:3001}") String songMicroserviceUrl) {
 		this.profileDriver = profileDriver;
 		this.playlistDriver = playlistDriver;
+		this.client = client;
+		this.songMicroserviceUrl = songMicroserviceUrl;
 	}
 
 	/**
@@ -57,9 +53,8 @@ public class ProfileController {
 	 * @return status of the request
 	 */
 	@RequestMapping(value = "/profile", method = RequestMethod.POST)
-	public @ResponseBody Map<String, Object> addProfile(@RequestParam Map<String, String> params,
+	public @ResponseBody ResponseEnvelope addProfile(@RequestParam Map<String, String> params,
 			HttpServletRequest request) {
-		Map<String, Object> response = new HashMap<String, Object>();
 		try {
 			//Parsing params
 			String userName = params.get(KEY_USER_NAME);
@@ -69,12 +64,10 @@ public class ProfileController {
 			DbQueryStatus status = profileDriver.createUserProfile(userName, fullName, password);
 		
 			//Adding status to the response
-			response = Utils.setResponseStatus(response, status.getdbQueryExecResult(), status.getData());
-			return response;
+			return ResponseEnvelope.of(status);
 		}catch(Exception e) {
 			//Exception occurred, request was unsuccessful 
-			response = Utils.setResponseStatus(response, DbQueryExecResult.QUERY_ERROR_GENERIC, null);
-			return response;
+			return ResponseEnvelope.of(DbQueryExecResult.QUERY_ERROR_GENERIC, null);
 		}
 	}
 
@@ -87,28 +80,22 @@ public class ProfileController {
 	 * @return status of the request
 	 */
 	@RequestMapping(value = "/followFriend/{userName}/{friendUserName}", method = RequestMethod.PUT)
-	public @ResponseBody Map<String, Object> followFriend(@PathVariable("userName") String userName,
+	public @ResponseBody ResponseEnvelope followFriend(@PathVariable("userName") String userName,
 			@PathVariable("friendUserName") String friendUserName, HttpServletRequest request) {
-
-		Map<String, Object> response = new HashMap<String, Object>();
 		try {
 			
 			if (userName.equals(friendUserName)) {
 				//User and friend must be different
-				response = Utils.setResponseStatus(response, DbQueryExecResult.QUERY_ERROR_GENERIC, null);
-				return response;
+				return ResponseEnvelope.of(DbQueryExecResult.QUERY_ERROR_GENERIC, null);
 			}
 			
 			DbQueryStatus status = profileDriver.followFriend(userName, friendUserName);
 		
 			//Adding status to the response
-			response = Utils.setResponseStatus(response, status.getdbQueryExecResult(), status.getData());
-
-			return response;
+			return ResponseEnvelope.of(status);
 		}catch(Exception e) {
 			//Exception occurred, request was unsuccessful
-			response = Utils.setResponseStatus(response, DbQueryExecResult.QUERY_ERROR_GENERIC, null);
-			return response;
+			return ResponseEnvelope.of(DbQueryExecResult.QUERY_ERROR_GENERIC, null);
 		}
 		
 	}
@@ -121,25 +108,20 @@ public class ProfileController {
 	 * @return status of the request and friends' favourite songs
 	 */
 	@RequestMapping(value = "/getAllFriendFavouriteSongTitles/{userName}", method = RequestMethod.GET)
-	public @ResponseBody Map<String, Object> getAllFriendFavouriteSongTitles(@PathVariable("userName") String userName,
+	public @ResponseBody ResponseEnvelope getAllFriendFavouriteSongTitles(@PathVariable("userName") String userName,
 			HttpServletRequest request) {
-
-		Map<String, Object> response = new HashMap<String, Object>();
 		try {
 			DbQueryStatus status = profileDriver.getAllSongFriendsLike(userName);
 			
 			//Converting ids into titles
 			if (status.getdbQueryExecResult() == DbQueryExecResult.QUERY_OK) {
-				status.setData(Utils.convertSongIdsToSongTitles(client, SONG_MICROSERVICE_URL, (Map<String, ArrayList<String>>)status.getData()));
+				status.setData(Utils.convertSongIdsToSongTitles(client, songMicroserviceUrl, (Map<String, ArrayList<String>>)status.getData()));
 			}
 			//Adding status to the response
-			response = Utils.setResponseStatus(response, status.getdbQueryExecResult(), status.getData());
-
-			return response;
+			return ResponseEnvelope.of(status);
 		}catch(Exception e) {
 			//Exception occurred, request was unsuccessful
-			response = Utils.setResponseStatus(response, DbQueryExecResult.QUERY_ERROR_GENERIC, null);
-			return response;
+			return ResponseEnvelope.of(DbQueryExecResult.QUERY_ERROR_GENERIC, null);
 		}
 		
 	}
@@ -153,21 +135,16 @@ public class ProfileController {
 	 * @return status of the request
 	 */
 	@RequestMapping(value = "/unfollowFriend/{userName}/{friendUserName}", method = RequestMethod.PUT)
-	public @ResponseBody Map<String, Object> unfollowFriend(@PathVariable("userName") String userName,
+	public @ResponseBody ResponseEnvelope unfollowFriend(@PathVariable("userName") String userName,
 			@PathVariable("friendUserName") String friendUserName, HttpServletRequest request) {
-
-		Map<String, Object> response = new HashMap<String, Object>();
 		try {
 			DbQueryStatus status = profileDriver.unfollowFriend(userName, friendUserName);
 		
 			//Adding status to the response
-			response = Utils.setResponseStatus(response, status.getdbQueryExecResult(), status.getData());
-
-			return response;
+			return ResponseEnvelope.of(status);
 		}catch(Exception e) {
 			//Exception occurred, request was unsuccessful
-			response = Utils.setResponseStatus(response, DbQueryExecResult.QUERY_ERROR_GENERIC, null);
-			return response;
+			return ResponseEnvelope.of(DbQueryExecResult.QUERY_ERROR_GENERIC, null);
 		}
 		
 	}
@@ -181,15 +158,13 @@ public class ProfileController {
 	 * @return status of the request
 	 */
 	@RequestMapping(value = "/likeSong/{userName}/{songId}", method = RequestMethod.PUT)
-	public @ResponseBody Map<String, Object> likeSong(@PathVariable("userName") String userName,
+	public @ResponseBody ResponseEnvelope likeSong(@PathVariable("userName") String userName,
 			@PathVariable("songId") String songId, HttpServletRequest request) {
-
-		Map<String, Object> response = new HashMap<String, Object>();
 		try {
 			
 			DbQueryStatus status;
 			
-			if (!Utils.checkIfSongIsInSongMicroservice(client, SONG_MICROSERVICE_URL, songId)) {
+			if (!Utils.checkIfSongIsInSongMicroservice(client, songMicroserviceUrl, songId)) {
 				//If song is not in song microservice, return 404 
 				status = new DbQueryStatus("song is not inside song-svc", DbQueryExecResult.QUERY_ERROR_NOT_FOUND);
 			}else {
@@ -198,7 +173,7 @@ public class ProfileController {
 					status = playlistDriver.likeSong(userName, songId);
 					if (status.getdbQueryExecResult() == DbQueryExecResult.QUERY_OK) {
 						//If like was successful, update favourites count
-						Utils.updateSongFavouritesCount(client, SONG_MICROSERVICE_URL, false, songId);
+						updateFavouritesCount(userName, songId, false, status);
 					}
 				}else {
 					status = playlistDriver.likeSong(userName, songId);
@@ -206,13 +181,10 @@ public class ProfileController {
 			}
 					
 			//Adding status to the response
-			response = Utils.setResponseStatus(response, status.getdbQueryExecResult(), status.getData());
-
-			return response;
+			return ResponseEnvelope.of(status);
 		}catch(Exception e) {
 			//Exception occurred, request was unsuccessful
-			response = Utils.setResponseStatus(response, DbQueryExecResult.QUERY_ERROR_GENERIC, null);
-			return response;
+			return ResponseEnvelope.of(DbQueryExecResult.QUERY_ERROR_GENERIC, null);
 		}
 	}
 
@@ -225,29 +197,108 @@ public class ProfileController {
 	 * @return status of the request
 	 */
 	@RequestMapping(value = "/unlikeSong/{userName}/{songId}", method = RequestMethod.PUT)
-	public @ResponseBody Map<String, Object> unlikeSong(@PathVariable("userName") String userName,
+	public @ResponseBody ResponseEnvelope unlikeSong(@PathVariable("userName") String userName,
 			@PathVariable("songId") String songId, HttpServletRequest request) {
-
-		Map<String, Object> response = new HashMap<String, Object>();
 		try {
 			DbQueryStatus status = playlistDriver.unlikeSong(userName, songId);
 			
 			if (status.getdbQueryExecResult() == DbQueryExecResult.QUERY_OK) {
 				//Calling song microservice to update song favourites count
-				int code = Utils.updateSongFavouritesCount(client, SONG_MICROSERVICE_URL, true, songId);
-				if (code!=200) {
-					status.setdbQueryExecResult(DbQueryExecResult.QUERY_ERROR_GENERIC);
-				}
+				updateFavouritesCount(userName, songId, true, status);
 			}
 			
 			//Adding status to the response
-			response = Utils.setResponseStatus(response, status.getdbQueryExecResult(), status.getData());
+			return ResponseEnvelope.of(status);
+		}catch(Exception e) {
+			//Exception occurred, request was unsuccessful
+			return ResponseEnvelope.of(DbQueryExecResult.QUERY_ERROR_GENERIC, null);
+		}
+	}
+
+	/**
+	 * Performs GET request at route /getSongsLikedInCommon/{userName}/{friendUserName} to get songs both users like.
+	 * 
+	 * @param userName: first user
+	 * @param friendUserName: second user
+	 * @param request: body of the request
+	 * @return status of the request and ids of songs liked by both users
+	 */
+	@RequestMapping(value = "/getSongsLikedInCommon/{userName}/{friendUserName}", method = RequestMethod.GET)
+	public @ResponseBody ResponseEnvelope getSongsLikedInCommon(@PathVariable("userName") String userName,
+			@PathVariable("friendUserName") String friendUserName, HttpServletRequest request) {
+		try {
+			DbQueryStatus status = playlistDriver.getSongsLikedInCommon(userName, friendUserName);
+			
+			//Adding status to the response
+			return ResponseEnvelope.of(status);
+		}catch(Exception e) {
+			//Exception occurred, request was unsuccessful
+			return ResponseEnvelope.of(DbQueryExecResult.QUERY_ERROR_GENERIC, null);
+		}
+	}
+
+	/**
+	 * Performs GET request at route /getMutualFriends/{userName}/{friendUserName} to get users both users follow.
+	 * 
+	 * @param userName: first user
+	 * @param friendUserName: second user
+	 * @param request: body of the request
+	 * @return status of the request and user names followed by both users
+	 */
+	@RequestMapping(value = "/getMutualFriends/{userName}/{friendUserName}", method = RequestMethod.GET)
+	public @ResponseBody ResponseEnvelope getMutualFriends(@PathVariable("userName") String userName,
+			@PathVariable("friendUserName") String friendUserName, HttpServletRequest request) {
+		try {
+			DbQueryStatus status = profileDriver.getMutualFriends(userName, friendUserName);
+			
+			//Adding status to the response
+			return ResponseEnvelope.of(status);
+		}catch(Exception e) {
+			//Exception occurred, request was unsuccessful
+			return ResponseEnvelope.of(DbQueryExecResult.QUERY_ERROR_GENERIC, null);
+		}
+	}
+
+	/**
+	 * Performs GET request at route /getFollowCounts/{userName} to get number of followers and followed users.
+	 * 
+	 * @param userName: user
+	 * @param request: body of the request
+	 * @return status of the request and follower and following counts
+	 */
+	@RequestMapping(value = "/getFollowCounts/{userName}", method = RequestMethod.GET)
+	public @ResponseBody ResponseEnvelope getFollowCounts(@PathVariable("userName") String userName,
+			HttpServletRequest request) {
+		try {
+			DbQueryStatus status = profileDriver.getFollowCounts(userName);
+			
+			//Adding status to the response
+			return ResponseEnvelope.of(status);
+		}catch(Exception e) {
+			//Exception occurred, request was unsuccessful
+			return ResponseEnvelope.of(DbQueryExecResult.QUERY_ERROR_GENERIC, null);
+		}
+	}
 
-			return response;
+	/**
+	 * Performs GET request at route /getSongRecommendations/{userName} to get songs liked in user's network.
+	 * 
+	 * @param userName: user
+	 * @param limit: maximum number of songs to return
+	 * @param request: body of the request
+	 * @return status of the request and recommended song ids with scores, best first
+	 */
+	@RequestMapping(value = "/getSongRecommendations/{userName}", method = RequestMethod.GET)
+	public @ResponseBody ResponseEnvelope getSongRecommendations(@PathVariable("userName") String userName,
+			@RequestParam(value = "limit", defaultValue = "20") int limit, HttpServletRequest request) {
+		try {
+			DbQueryStatus status = profileDriver.getSongRecommendations(userName, limit);
+			
+			//Adding status to the response
+			return ResponseEnvelope.of(status);
 		}catch(Exception e) {
 			//Exception occurred, request was unsuccessful
-			response = Utils.setResponseStatus(response, DbQueryExecResult.QUERY_ERROR_GENERIC, null);
-			return response;
+			return ResponseEnvelope.of(DbQueryExecResult.QUERY_ERROR_GENERIC, null);
 		}
 	}
 
@@ -259,21 +310,81 @@ public class ProfileController {
 	 * @return status of the request
 	 */
 	@RequestMapping(value = "/deleteAllSongsFromDb/{songId}", method = RequestMethod.PUT)
-	public @ResponseBody Map<String, Object> deleteAllSongsFromDb(@PathVariable("songId") String songId,
+	public @ResponseBody ResponseEnvelope deleteAllSongsFromDb(@PathVariable("songId") String songId,
 			HttpServletRequest request) {
-
-		Map<String, Object> response = new HashMap<String, Object>();
 		try {
 			DbQueryStatus status = playlistDriver.deleteSongFromDb(songId);
 		
 			//Adding status to the response
-			response = Utils.setResponseStatus(response, status.getdbQueryExecResult(), status.getData());
-
-			return response;
+			return ResponseEnvelope.of(status);
 		}catch(Exception e) {
 			//Exception occurred, request was unsuccessful
-			response = Utils.setResponseStatus(response, DbQueryExecResult.QUERY_ERROR_GENERIC, null);
-			return response;
+			return ResponseEnvelope.of(DbQueryExecResult.QUERY_ERROR_GENERIC, null);
+		}
+	}
+
+	/**
+	 * Performs GET request at route /getGroupCommitStats to get batch size distribution of like group commit.
+	 * 
+	 * @param request: body of the request
+	 * @return status of the request and group commit stats
+	 */
+	@RequestMapping(value = "/getGroupCommitStats", method = RequestMethod.GET)
+	public @ResponseBody ResponseEnvelope getGroupCommitStats(HttpServletRequest request) {
+
+		DbQueryStatus status = playlistDriver.getGroupCommitStats();
+		
+		//Adding status to the response
+		return ResponseEnvelope.of(status);
+	}
+
+	/**
+	 * Performs GET request at route /getClientStats to get counters of calls to song microservice.
+	 * 
+	 * @param request: body of the request
+	 * @return status of the request and counters per call group
+	 */
+	@RequestMapping(value = "/getClientStats", method = RequestMethod.GET)
+	public @ResponseBody ResponseEnvelope getClientStats(HttpServletRequest request) {
+
+		//Adding status to the response
+		return ResponseEnvelope.of(DbQueryExecResult.QUERY_OK, client.getStats());
+	}
+
+	/**
+	 * Updates favourites count of a song after a like or unlike was written. If song microservice didn't apply the
+	 * update, including calls rejected by the bulkhead or circuit breaker and errors it reports in the body (e.g. a
+	 * song deleted meanwhile or a count that can't go below zero), the like or unlike is undone. If the call timed
+	 * out or broke off, the update may still have been applied, so the like or unlike is kept and the error only says
+	 * the count may be off.
+	 * 
+	 * @param userName: user who liked or unliked the song
+	 * @param songId: id of the song
+	 * @param shouldDecrement: true after an unlike, false after a like
+	 * @param status: status of the like or unlike, set to an error if the update fails
+	 */
+	private void updateFavouritesCount(String userName, String songId, boolean shouldDecrement, DbQueryStatus status) {
+		boolean applied;
+		try {
+			applied = "OK".equals(Utils.updateSongFavouritesCount(client, songMicroserviceUrl, shouldDecrement, songId));
+		}catch(CallRejectedException | ServerErrorException | ConnectException e) {
+			//Call wasn't sent, was shed or was failed by song microservice, count wasn't changed
+			applied = false;
+		}catch(IOException e) {
+			//Outcome unknown, undoing could break a count that was updated
+			status.setMessage("favourites count update timed out, count may be off");
+			status.setdbQueryExecResult(DbQueryExecResult.QUERY_ERROR_GENERIC);
+			return;
+		}
+		
+		if (!applied) {
+			//Compensating, count and favourites playlist stay consistent
+			if (shouldDecrement) {
+				playlistDriver.likeSong(userName, songId);
+			}else {
+				playlistDriver.unlikeSong(userName, songId);
+			}
+			status.setdbQueryExecResult(DbQueryExecResult.QUERY_ERROR_GENERIC);
 		}
 	}
-}
\ No newline at end of file
+}
@@ -5,4 +5,7 @@ public interface ProfileDriver {
 	DbQueryStatus followFriend(String userName, String frndUserName);
 	DbQueryStatus unfollowFriend(String userName, String frndUserName );
 	DbQueryStatus getAllSongFriendsLike(String userName);
+	DbQueryStatus getMutualFriends(String userName, String frndUserName);
+	DbQueryStatus getFollowCounts(String userName);
+	DbQueryStatus getSongRecommendations(String userName, int limit);
 }
\ No newline at end of file
@@ -2,30 +2,81 @@ package com.csc301.profilemicroservice;
 
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 
 import org.json.JSONArray;
 import org.json.JSONObject;
-import org.neo4j.driver.v1.Driver;
 import org.neo4j.driver.v1.Record;
 import org.neo4j.driver.v1.Session;
-import org.neo4j.driver.v1.StatementResult;
 
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.annotation.Profile;
+import org.springframework.context.event.EventListener;
 import org.springframework.stereotype.Repository;
 import org.neo4j.driver.v1.Transaction;
 import static org.neo4j.driver.v1.Values.parameters;
 
 
 @Repository
+@Profile("!inmemory")
 public class ProfileDriverImpl implements ProfileDriver {
 
-	Driver driver = ProfileMicroserviceApplication.driver;
+	//Statements are public so the Cypher benchmark in loadtest runs exactly what this driver runs
+	public static final String CREATE_PROFILE_QUERY = "CREATE (nProfile:profile {userName: $userName, fullName: $fullName, password: $password})\n"
+			+ "CREATE (nPlaylist:playlist {plName: $userName + \"-favourites\"})\n"
+			+ "CREATE (nProfile)-[:created]->(nPlaylist)";
+
+	public static final String FOLLOW_FRIEND_QUERY = "MATCH(user:profile {userName: $userName})\n"
+			+ "MATCH(friend:profile {userName: $frndUserName})\n"
+			+ "MERGE(user)-[:follows]->(friend)\n"
+			+ "RETURN COUNT(user) as userCount, COUNT(friend) as friendCount";
+
+	public static final String UNFOLLOW_FRIEND_QUERY = "MATCH(user:profile {userName: $userName})\n"
+			+ "MATCH(friend:profile {userName: $frndUserName})\n"
+			+ "MATCH(user)-[f:follows]->(friend)\n"
+			+ "DELETE f \n"
+			+ "RETURN COUNT(user) as userCount, COUNT(friend) as friendCount";
+
+	public static final String SONGS_FRIENDS_LIKE_QUERY = "MATCH (p:profile {userName: $userName})\n"
+			+ "OPTIONAL MATCH (p)-[:follows]->(friend:profile)\n"
+			+ "OPTIONAL MATCH (friend)-[:created]->(list:playlist {plName: friend.userName + \"-favourites\"})-[:includes]->(s: song)\n"
+			+ "WITH friend.userName as name, s.songId as song\n"
+			+ "RETURN name, song";
+
+	public static final String FOLLOW_GRAPH_QUERY = "MATCH (p:profile)\n"
+			+ "OPTIONAL MATCH (p)-[:follows]->(friend:profile)\n"
+			+ "RETURN p.userName as name, friend.userName as friend";
+
+	private final LikedSongsIndex likedSongs;
+	
+	private final FollowGraph followGraph;
+	
+	private final SongRecommender songRecommender;
+	
+	private final SlowQueryLog slowQueries;
+
+	/**
+	 * Creates profile driver.
+	 * 
+	 * @param likedSongs: in-memory index of liked songs, new profiles are registered in it
+	 * @param followGraph: in-memory projection of follows, kept up to date by this driver
+	 * @param songRecommender: recommender working over follow graph and liked songs index
+	 * @param slowQueries: runs statements, logging slow ones
+	 */
+	public ProfileDriverImpl(LikedSongsIndex likedSongs, FollowGraph followGraph, SongRecommender songRecommender,
+			SlowQueryLog slowQueries) {
+		this.likedSongs = likedSongs;
+		this.followGraph = followGraph;
+		this.songRecommender = songRecommender;
+		this.slowQueries = slowQueries;
+	}
 
 	public static void InitProfileDb() {
 		String queryStr;
 
-		try (Session session = ProfileMicroserviceApplication.driver.session()) {
+		try (Session session = ProfileMicroserviceApplication.getDriver().session()) {
 			try (Transaction trans = session.beginTransaction()) {
 				queryStr = "CREATE CONSTRAINT ON (nProfile:profile) ASSERT exists(nProfile.userName)";
 				trans.run(queryStr);
@@ -54,14 +105,12 @@ public class ProfileDriverImpl implements ProfileDriver {
 	public DbQueryStatus createUserProfile(String userName, String fullName, String password) {
 		
 		DbQueryExecResult ifSuccessful;
-		try (Session session = ProfileMicroserviceApplication.driver.session()) {
+		try (Session session = ProfileMicroserviceApplication.getDriver().session()) {
 			try (Transaction trans = session.beginTransaction()) {
-				String queryStr = "CREATE (nProfile:profile {userName: $userName, fullName: $fullName, password: $password})\n"
-						+ "CREATE (nPlaylist:playlist {plName: $userName + \"-favourites\"})\n"
-						+ "CREATE (nProfile)-[:created]->(nPlaylist)";
+				String queryStr = CREATE_PROFILE_QUERY;
 				
 				//Running a query
-				trans.run(queryStr, parameters("userName", userName, "fullName", fullName, "password", password));
+				slowQueries.run(trans, queryStr, parameters("userName", userName, "fullName", fullName, "password", password));
 				trans.success();
 				ifSuccessful = DbQueryExecResult.QUERY_OK;
 			}catch(Exception e) {
@@ -71,6 +120,12 @@ public class ProfileDriverImpl implements ProfileDriver {
 			session.close();
 		}
 		
+		if (ifSuccessful == DbQueryExecResult.QUERY_OK) {
+			//New user has no liked songs, no need to query them later
+			likedSongs.onUserCreated(userName);
+			followGraph.addUser(userName);
+		}
+		
 		DbQueryStatus status = new DbQueryStatus("create user profile", ifSuccessful);
 		return status;
 		
@@ -87,15 +142,12 @@ public class ProfileDriverImpl implements ProfileDriver {
 	public DbQueryStatus followFriend(String userName, String frndUserName) {
 		
 		DbQueryExecResult ifSuccessful;
-		try (Session session = ProfileMicroserviceApplication.driver.session()) {
+		try (Session session = ProfileMicroserviceApplication.getDriver().session()) {
 			try (Transaction trans = session.beginTransaction()) {
-				String queryStr = "MATCH(user:profile {userName: $userName})\n"
-						+ "MATCH(friend:profile {userName: $frndUserName})\n"
-						+ "MERGE(user)-[:follows]->(friend)\n"
-						+ "RETURN COUNT(user) as userCount, COUNT(friend) as friendCount";
+				String queryStr = FOLLOW_FRIEND_QUERY;
 				
 				//Running a query
-				StatementResult res = trans.run(queryStr, parameters("userName", userName, "frndUserName", frndUserName));
+				Iterator<Record> res = slowQueries.run(trans, queryStr, parameters("userName", userName, "frndUserName", frndUserName)).iterator();
 				
 				boolean not404;
 				if (res.hasNext()) {
@@ -117,6 +169,10 @@ public class ProfileDriverImpl implements ProfileDriver {
 			session.close();
 		}
 		
+		if (ifSuccessful == DbQueryExecResult.QUERY_OK) {
+			followGraph.follow(userName, frndUserName);
+		}
+		
 		DbQueryStatus status = new DbQueryStatus("follow a friend", ifSuccessful);
 		return status;
 		
@@ -133,16 +189,12 @@ public class ProfileDriverImpl implements ProfileDriver {
 	public DbQueryStatus unfollowFriend(String userName, String frndUserName) {
 		
 		DbQueryExecResult ifSuccessful;
-		try (Session session = ProfileMicroserviceApplication.driver.session()) {
+		try (Session session = ProfileMicroserviceApplication.getDriver().session()) {
 			try (Transaction trans = session.beginTransaction()) {
-				String queryStr = "MATCH(user:profile {userName: $userName})\n"
-						+ "MATCH(friend:profile {userName: $frndUserName})\n"
-						+ "MATCH(user)-[f:follows]->(friend)\n"
-						+ "DELETE f \n"
-						+ "RETURN COUNT(user) as userCount, COUNT(friend) as friendCount";
+				String queryStr = UNFOLLOW_FRIEND_QUERY;
 				
 				//Running a query
-				StatementResult res = trans.run(queryStr, parameters("userName", userName, "frndUserName", frndUserName));
+				Iterator<Record> res = slowQueries.run(trans, queryStr, parameters("userName", userName, "frndUserName", frndUserName)).iterator();
 				
 				boolean not404;
 				if (res.hasNext()) {
@@ -164,6 +216,10 @@ public class ProfileDriverImpl implements ProfileDriver {
 			session.close();
 		}
 		
+		if (ifSuccessful == DbQueryExecResult.QUERY_OK) {
+			followGraph.unfollow(userName, frndUserName);
+		}
+		
 		DbQueryStatus status = new DbQueryStatus("unfollow a friend", ifSuccessful);
 		return status;
 		
@@ -180,16 +236,12 @@ public class ProfileDriverImpl implements ProfileDriver {
 			
 		DbQueryExecResult ifSuccessful;
 		Object data;
-		try (Session session = ProfileMicroserviceApplication.driver.session()) {
+		try (Session session = ProfileMicroserviceApplication.getDriver().session()) {
 			try (Transaction trans = session.beginTransaction()) {
-				String queryStr = "MATCH (p:profile {userName: $userName})\n"
-						+ "OPTIONAL MATCH (p)-[:follows]->(friend:profile)\n"
-						+ "OPTIONAL MATCH (friend)-[:created]->(list:playlist {plName: friend.userName + \"-favourites\"})-[:includes]->(s: song)\n"
-						+ "WITH friend.userName as name, s.songId as song\n"
-						+ "RETURN name, song";
+				String queryStr = SONGS_FRIENDS_LIKE_QUERY;
 				
 				//Running a query
-				StatementResult res = trans.run(queryStr, parameters("userName", userName));
+				Iterator<Record> res = slowQueries.run(trans, queryStr, parameters("userName", userName)).iterator();
 				
 				if (res.hasNext()) {
 					
@@ -238,4 +290,114 @@ public class ProfileDriverImpl implements ProfileDriver {
 		return status;
 		
 	}
+	
+	/**
+	 * Get users that both user and a friend follow, answered from the in-memory follow graph.
+	 * 
+	 * @param userName: user name of user
+	 * @param frndUserName: user name of a friend
+	 * @return status of the query and list of user names followed by both
+	 */
+	@Override
+	public DbQueryStatus getMutualFriends(String userName, String frndUserName) {
+		
+		if (!followGraph.isLoaded()) {
+			return new DbQueryStatus("follow graph is not loaded yet", DbQueryExecResult.QUERY_ERROR_GENERIC);
+		}
+		
+		List<String> mutualFriends = followGraph.getMutualFollowing(userName, frndUserName);
+		
+		//Null means that user or friend were not found
+		DbQueryExecResult ifSuccessful = mutualFriends != null ? DbQueryExecResult.QUERY_OK : DbQueryExecResult.QUERY_ERROR_NOT_FOUND;
+		
+		DbQueryStatus status = new DbQueryStatus("get mutual friends", ifSuccessful);
+		status.setData(mutualFriends);
+		return status;
+	}
+	
+	/**
+	 * Get number of followers and followed users, answered from the in-memory follow graph.
+	 * 
+	 * @param userName: user name of user
+	 * @return status of the query and mapping with "followers" and "following" counts
+	 */
+	@Override
+	public DbQueryStatus getFollowCounts(String userName) {
+		
+		if (!followGraph.isLoaded()) {
+			return new DbQueryStatus("follow graph is not loaded yet", DbQueryExecResult.QUERY_ERROR_GENERIC);
+		}
+		
+		int followers = followGraph.getFollowerCount(userName);
+		int following = followGraph.getFollowingCount(userName);
+		if (followers < 0 || following < 0) {
+			//User was not found
+			return new DbQueryStatus("get follow counts", DbQueryExecResult.QUERY_ERROR_NOT_FOUND);
+		}
+		
+		Map<String, Integer> counts = new HashMap<String, Integer>();
+		counts.put("followers", followers);
+		counts.put("following", following);
+		
+		DbQueryStatus status = new DbQueryStatus("get follow counts", DbQueryExecResult.QUERY_OK);
+		status.setData(counts);
+		return status;
+	}
+	
+	/**
+	 * Get songs liked by friends and friends of friends that user doesn't like yet, best first.
+	 * 
+	 * @param userName: user name of user
+	 * @param limit: maximum number of songs
+	 * @return status of the query and list of mappings with "songId" and "score"
+	 */
+	@Override
+	public DbQueryStatus getSongRecommendations(String userName, int limit) {
+		
+		if (!songRecommender.isReady()) {
+			return new DbQueryStatus("follow graph or liked songs are not loaded yet", DbQueryExecResult.QUERY_ERROR_GENERIC);
+		}
+		
+		List<Map<String, Object>> recommendations = songRecommender.recommend(userName, limit);
+		
+		//Null means that user was not found
+		DbQueryExecResult ifSuccessful = recommendations != null ? DbQueryExecResult.QUERY_OK : DbQueryExecResult.QUERY_ERROR_NOT_FOUND;
+		
+		DbQueryStatus status = new DbQueryStatus("get song recommendations", ifSuccessful);
+		status.setData(recommendations);
+		return status;
+	}
+	
+	/**
+	 * Loads all profiles and follows into the in-memory follow graph once the service has started.
+	 */
+	@EventListener(ApplicationReadyEvent.class)
+	public void loadFollowGraph() {
+		try (Session session = ProfileMicroserviceApplication.getDriver().session()) {
+			try (Transaction trans = session.beginTransaction()) {
+				String queryStr = FOLLOW_GRAPH_QUERY;
+				
+				//Running a query, records are streamed into the loader
+				FollowGraph.Loader loader = followGraph.newLoader();
+				slowQueries.stream(trans, queryStr, null, rec -> {
+					String name = rec.get("name").asString(null);
+					String friend = rec.get("friend").asString(null);
+					
+					if (name == null) {
+						return;
+					}
+					loader.addUser(name);
+					if (friend != null) {
+						loader.addEdge(name, friend);
+					}
+				});
+				trans.success();
+				
+				followGraph.install(loader);
+			}
+		}catch(Exception e) {
+			//Graph stays unloaded, endpoints served from it will report an error
+			System.out.println("Could not load follow graph: " + e.getMessage());
+		}
+	}
 }
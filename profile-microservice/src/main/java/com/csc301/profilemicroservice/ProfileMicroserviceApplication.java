@@ -1,26 +1,124 @@
 package com.csc301.profilemicroservice;
 
+import java.io.IOException;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.core.env.Profiles;
 import org.neo4j.driver.v1.AuthTokens;
 import org.neo4j.driver.v1.Driver;
 import org.neo4j.driver.v1.GraphDatabase;
 import org.neo4j.driver.v1.Session;
 import org.neo4j.driver.v1.Transaction;
+import org.neo4j.driver.v1.exceptions.ServiceUnavailableException;
 
 @SpringBootApplication
 public class ProfileMicroserviceApplication {
 	public static String dbUri = "bolt://localhost:7687";
-    public static Driver driver = GraphDatabase.driver(dbUri, AuthTokens.basic("neo4j","1234"));
+	private static final int SCHEMA_BOOTSTRAP_ATTEMPTS = 10;
+	//Requests of the training run: metrics, then reads of a user that doesn't exist through the in-memory indexes and
+	//through Cypher, which don't change data
+	private static final List<String> TRAINING_REQUESTS = Arrays.asList("/metrics", "/getFollowCounts/startupBench",
+			"/getAllFriendFavouriteSongTitles/startupBench", "/getSongsLikedInCommon/startupBench/startupBench");
+    //Connected on first use, so the "inmemory" profile runs without a database
+    private static volatile Driver driver;
 
+    public static Driver getDriver() {
+    	Driver current = driver;
+    	if (current == null) {
+    		synchronized (ProfileMicroserviceApplication.class) {
+    			if (driver == null) {
+    				driver = GraphDatabase.driver(dbUri, AuthTokens.basic("neo4j","1234"));
+    			}
+    			current = driver;
+    		}
+    	}
+    	return current;
+    }
     
-	public static void main(String[] args) {
-		SpringApplication.run(ProfileMicroserviceApplication.class, args);
+	public static void main(String[] args) throws IOException {
+		if (args.length > 0 && args[0].equals("import")) {
+			//Offline import mode, web server is not started
+			GraphImporter.run(getDriver(), Arrays.copyOfRange(args, 1, args.length));
+			getDriver().close();
+			return;
+		}
+		
+		ConfigurableApplicationContext context = SpringApplication.run(ProfileMicroserviceApplication.class, args);
+		
+		if (!context.getEnvironment().acceptsProfiles(Profiles.of("inmemory"))) {
+			//Constraints are created in the background, requests don't need them to be answered
+			Thread schemaBootstrap = new Thread(ProfileMicroserviceApplication::initDb, "schema-bootstrap");
+			schemaBootstrap.setDaemon(true);
+			schemaBootstrap.start();
+		}
 		
-		ProfileDriverImpl.InitProfileDb();
-		PlaylistDriverImpl.InitPlaylistDb();
+		//Training run of the fast-startup build, classes loaded until exit are written to its class data archive
+		if (context.getEnvironment().getProperty("startup.exitAfterStart", Boolean.class, false)) {
+			sendTrainingRequests(context);
+			System.exit(SpringApplication.exit(context));
+		}
 		
 		System.out.println("Profile service is running on port 3002");
 	}
+	
+	/**
+	 * Creates constraints of profiles and playlists, retrying while the database is not reachable.
+	 */
+	private static void initDb() {
+		long backoffMs = 1000;
+		for (int attempt = 1; attempt <= SCHEMA_BOOTSTRAP_ATTEMPTS; attempt++) {
+			try {
+				ProfileDriverImpl.InitProfileDb();
+				PlaylistDriverImpl.InitPlaylistDb();
+				return;
+			} catch (ServiceUnavailableException e) {
+				System.out.println("Could not create constraints (attempt " + attempt + "): " + e.getMessage());
+			} catch (Exception e) {
+				//Database is reachable but refused a constraint, trying again won't help
+				System.out.println("Could not create constraints: " + e.getMessage());
+				return;
+			}
+			
+			try {
+				Thread.sleep(backoffMs);
+			} catch (InterruptedException e) {
+				return;
+			}
+			backoffMs = Math.min(backoffMs * 2, 30000);
+		}
+	}
+	
+	/**
+	 * Sends requests to real endpoints of the service itself, so classes of the request and database paths are loaded
+	 * as well. Without a database the first Cypher read fails once the driver gives up, which still loads most of its
+	 * classes, and the remaining ones are skipped rather than waiting for the database again.
+	 * 
+	 * @param context: context of the started service
+	 */
+	private static void sendTrainingRequests(ConfigurableApplicationContext context) {
+		String port = context.getEnvironment().getProperty("local.server.port");
+		for (String path : TRAINING_REQUESTS) {
+			try {
+				HttpURLConnection connection = (HttpURLConnection) new URL("http://localhost:" + port + path)
+						.openConnection();
+				connection.setReadTimeout((int) TimeUnit.MINUTES.toMillis(1));
+				int status = connection.getResponseCode();
+				System.out.println("Training request " + path + " answered with " + status);
+				connection.disconnect();
+				if (status >= 500) {
+					return;
+				}
+			} catch (IOException e) {
+				System.out.println("Training request " + path + " failed: " + e.getMessage());
+			}
+		}
+	}
 }
 
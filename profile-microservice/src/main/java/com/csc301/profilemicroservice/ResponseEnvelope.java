@@ -0,0 +1,61 @@
+package com.csc301.profilemicroservice;
+
+import org.springframework.http.HttpStatus;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonInclude.Include;
+import com.fasterxml.jackson.annotation.JsonPropertyOrder;
+
+/**
+ * Immutable body of every response of the service, serialized as "status" and, on success, "data".
+ * Being a fixed type, Jackson resolves its serializer once instead of inspecting a map per response.
+ */
+@JsonPropertyOrder({ "status", "data" })
+public final class ResponseEnvelope {
+	
+	private final HttpStatus status;
+	private final Object data;
+	
+	private ResponseEnvelope(HttpStatus status, Object data) {
+		this.status = status;
+		this.data = data;
+	}
+	
+	/**
+	 * Method to build response from result of a query
+	 * 
+	 * @param status: result of the query
+	 * @return response sent to client
+	 */
+	public static ResponseEnvelope of(DbQueryStatus status) {
+		return of(status.getdbQueryExecResult(), status.getData());
+	}
+	
+	/**
+	 * Method to build response, data is only sent if query succeeded
+	 * 
+	 * @param dbQueryExecResult: result of the query
+	 * @param data: data of the query
+	 * @return response sent to client
+	 */
+	public static ResponseEnvelope of(DbQueryExecResult dbQueryExecResult, Object data) {
+		switch (dbQueryExecResult) {
+		case QUERY_OK:
+			return new ResponseEnvelope(HttpStatus.OK, data);
+		case QUERY_ERROR_NOT_FOUND:
+			return new ResponseEnvelope(HttpStatus.NOT_FOUND, null);
+		default:
+			return new ResponseEnvelope(HttpStatus.INTERNAL_SERVER_ERROR, null);
+		}
+	}
+
+	public HttpStatus getStatus() {
+		return status;
+	}
+
+	@JsonInclude(Include.NON_NULL)
+	public Object getData() {
+		return data;
+	}
+	
+}
@@ -0,0 +1,186 @@
+package com.csc301.profilemicroservice;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+import org.neo4j.driver.v1.Record;
+import org.neo4j.driver.v1.StatementResult;
+import org.neo4j.driver.v1.Transaction;
+import org.neo4j.driver.v1.summary.ProfiledPlan;
+import org.neo4j.driver.v1.summary.ResultSummary;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * Runs Cypher statements and keeps a bounded log of the ones slower than "slowQueries.thresholdMs".
+ *
+ * Time is measured until all rows are read, so it includes fetching and, for streamed statements, processing of
+ * rows. A slow statement is logged with its text, parameters (with passwords redacted and long lists cut), row count,
+ * server timings and the trace it ran in. With "slowQueries.profilePlans" every statement is run with PROFILE, which
+ * costs some server time, and the profiled plan of slow ones is logged as well.
+ */
+@Component
+public class SlowQueryLog {
+
+	private static final String REDACTED = "<redacted>";
+	private static final int MAX_LOGGED_LIST_SIZE = 10;
+
+	private final long thresholdNanos;
+	private final int maxEntries;
+	private final boolean profilePlans;
+	private final Tracer tracer;
+
+	//Newest entries last, oldest are dropped once maxEntries is reached
+	private final ArrayDeque<Map<String, Object>> entries = new ArrayDeque<Map<String, Object>>();
+
+	/**
+	 * Creates slow query log.
+	 *
+	 * @param thresholdMs: statements taking at least this long are logged
+	 * @param maxEntries: maximum number of logged statements kept
+	 * @param profilePlans: whether statements are run with PROFILE and plans of slow ones logged
+	 * @param tracer: tracer logged statements are linked to
+	 */
+	public SlowQueryLog(@Value("${slowQueries.thresholdMs:200}") long thresholdMs,
+			@Value("${slowQueries.maxEntries:256}") int maxEntries,
+			@Value("${slowQueries.profilePlans:false}") boolean profilePlans, Tracer tracer) {
+		this.thresholdNanos = TimeUnit.MILLISECONDS.toNanos(thresholdMs);
+		this.maxEntries = maxEntries;
+		this.profilePlans = profilePlans;
+		this.tracer = tracer;
+	}
+
+	/**
+	 * Runs a statement and reads all of its rows.
+	 *
+	 * @param trans: transaction to run the statement in
+	 * @param statement: Cypher statement
+	 * @param parameters: parameters of the statement; null if there are none
+	 * @return all rows returned by the statement
+	 */
+	public List<Record> run(Transaction trans, String statement, org.neo4j.driver.v1.Value parameters) {
+		long start = System.nanoTime();
+		StatementResult res = runStatement(trans, statement, parameters);
+		List<Record> records = res.list();
+		finish(statement, parameters, res, records.size(), start);
+		return records;
+	}
+
+	/**
+	 * Runs a statement and passes its rows to consumer as they arrive, for results too big to be held in memory.
+	 *
+	 * @param trans: transaction to run the statement in
+	 * @param statement: Cypher statement
+	 * @param parameters: parameters of the statement; null if there are none
+	 * @param consumer: consumer of rows
+	 */
+	public void stream(Transaction trans, String statement, org.neo4j.driver.v1.Value parameters,
+			Consumer<Record> consumer) {
+		long start = System.nanoTime();
+		StatementResult res = runStatement(trans, statement, parameters);
+		int rows = 0;
+		while (res.hasNext()) {
+			consumer.accept(res.next());
+			rows++;
+		}
+		finish(statement, parameters, res, rows, start);
+	}
+
+	/**
+	 * Get logged statements.
+	 *
+	 * @return logged statements, newest first
+	 */
+	public List<Map<String, Object>> getEntries() {
+		List<Map<String, Object>> result;
+		synchronized (entries) {
+			result = new ArrayList<Map<String, Object>>(entries);
+		}
+		Collections.reverse(result);
+		return result;
+	}
+
+	private StatementResult runStatement(Transaction trans, String statement, org.neo4j.driver.v1.Value parameters) {
+		String text = profilePlans ? "PROFILE " + statement : statement;
+		return parameters == null ? trans.run(text) : trans.run(text, parameters);
+	}
+
+	private void finish(String statement, org.neo4j.driver.v1.Value parameters, StatementResult res, int rows,
+			long start) {
+		long elapsed = System.nanoTime() - start;
+		if (elapsed < thresholdNanos) {
+			return;
+		}
+
+		ResultSummary summary = res.summary();
+		Tracer.Span span = tracer.currentSpan();
+
+		Map<String, Object> entry = new LinkedHashMap<String, Object>();
+		entry.put("timestamp", System.currentTimeMillis());
+		entry.put("traceId", span == null ? null : span.getTraceId());
+		entry.put("statement", statement);
+		entry.put("parameters", parameters == null ? Collections.emptyMap() : redact(parameters.asMap()));
+		entry.put("rows", rows);
+		entry.put("elapsedMs", TimeUnit.NANOSECONDS.toMillis(elapsed));
+		entry.put("resultAvailableAfterMs", summary.resultAvailableAfter(TimeUnit.MILLISECONDS));
+		entry.put("resultConsumedAfterMs", summary.resultConsumedAfter(TimeUnit.MILLISECONDS));
+		if (summary.hasProfile()) {
+			StringBuilder plan = new StringBuilder();
+			appendPlan(plan, summary.profile(), 0);
+			entry.put("plan", plan.toString());
+		}
+
+		synchronized (entries) {
+			if (entries.size() == maxEntries) {
+				entries.removeFirst();
+			}
+			entries.addLast(entry);
+		}
+	}
+
+	/**
+	 * Copies parameters for logging, replacing passwords and cutting long lists, e.g. rows of a batch.
+	 *
+	 * @param value: parameter value
+	 * @return value to log
+	 */
+	private static Object redact(Object value) {
+		if (value instanceof Map) {
+			Map<String, Object> redacted = new LinkedHashMap<String, Object>();
+			for (Map.Entry<?, ?> entry : ((Map<?, ?>) value).entrySet()) {
+				String key = String.valueOf(entry.getKey());
+				redacted.put(key, key.equalsIgnoreCase("password") ? REDACTED : redact(entry.getValue()));
+			}
+			return redacted;
+		}
+		if (value instanceof List) {
+			List<?> list = (List<?>) value;
+			List<Object> redacted = new ArrayList<Object>();
+			for (int i = 0; i < Math.min(list.size(), MAX_LOGGED_LIST_SIZE); i++) {
+				redacted.add(redact(list.get(i)));
+			}
+			if (list.size() > MAX_LOGGED_LIST_SIZE) {
+				redacted.add("... " + (list.size() - MAX_LOGGED_LIST_SIZE) + " more");
+			}
+			return redacted;
+		}
+		return value;
+	}
+
+	private static void appendPlan(StringBuilder plan, ProfiledPlan node, int depth) {
+		for (int i = 0; i < depth; i++) {
+			plan.append("  ");
+		}
+		plan.append(node.operatorType()).append(" rows=").append(node.records()).append(" dbHits=")
+				.append(node.dbHits()).append('\n');
+		for (ProfiledPlan child : node.children()) {
+			appendPlan(plan, child, depth + 1);
+		}
+	}
+}
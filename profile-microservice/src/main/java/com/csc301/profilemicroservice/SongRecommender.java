@@ -0,0 +1,250 @@
+package com.csc301.profilemicroservice;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+import javax.annotation.PreDestroy;
+
+import org.roaringbitmap.RoaringBitmap;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * Recommends songs liked by friends and friends of friends.
+ *
+ * Every song liked by someone in user's network gets the sum of weights of users that like it, a friend contributing
+ * friendWeight and a friend of a friend friendOfFriendWeight, so scores grow both with closeness and with popularity
+ * inside the network. Songs the user already likes are excluded. Traversal runs over the in-memory follow graph and
+ * liked songs index, with likes of the network split between fork-join tasks.
+ */
+@Component
+public class SongRecommender {
+
+	//Minimum number of users whose likes are scored by one task, smaller ranges are not worth forking
+	private static final int MIN_LEAF_SIZE = 256;
+
+	private final FollowGraph followGraph;
+	private final LikedSongsIndex likedSongs;
+	private final ForkJoinPool pool;
+	private final float friendWeight;
+	private final float friendOfFriendWeight;
+
+	public SongRecommender(FollowGraph followGraph, LikedSongsIndex likedSongs,
+			@Value("${recommendations.parallelism:0}") int parallelism,
+			@Value("${recommendations.friendWeight:1.0}") float friendWeight,
+			@Value("${recommendations.friendOfFriendWeight:0.4}") float friendOfFriendWeight) {
+		this.followGraph = followGraph;
+		this.likedSongs = likedSongs;
+		this.pool = new ForkJoinPool(parallelism > 0 ? parallelism : Runtime.getRuntime().availableProcessors());
+		this.friendWeight = friendWeight;
+		this.friendOfFriendWeight = friendOfFriendWeight;
+	}
+
+	@PreDestroy
+	public void shutdown() {
+		pool.shutdownNow();
+	}
+
+	/**
+	 * Check if snapshots recommendations are computed from are loaded.
+	 *
+	 * @return true if follow graph and liked songs are loaded
+	 */
+	public boolean isReady() {
+		return followGraph.isLoaded() && likedSongs.isPreloaded();
+	}
+
+	/**
+	 * Get best scored songs for a user.
+	 *
+	 * @param userName: user name
+	 * @param limit: maximum number of songs to return
+	 * @return list of mappings with "songId" and "score", best first; null if user is unknown
+	 */
+	public List<Map<String, Object>> recommend(String userName, int limit) {
+		Integer user = followGraph.getUserId(userName);
+		if (user == null) {
+			return null;
+		}
+
+		//Collect network by hop distance, every user is counted once at its closest distance
+		int[] friends = followGraph.getFollowing(user);
+		BitSet seen = new BitSet(followGraph.getUserCount());
+		seen.set(user);
+		for (int friend : friends) {
+			seen.set(friend);
+		}
+
+		int[] network = new int[friends.length * 2];
+		float[] weights = new float[network.length];
+		int size = 0;
+		for (int friend : friends) {
+			network[size] = friend;
+			weights[size++] = friendWeight;
+		}
+		for (int friend : friends) {
+			for (int friendOfFriend : followGraph.getFollowing(friend)) {
+				if (!seen.get(friendOfFriend)) {
+					seen.set(friendOfFriend);
+					if (size == network.length) {
+						network = Arrays.copyOf(network, size * 2);
+						weights = Arrays.copyOf(weights, size * 2);
+					}
+					network[size] = friendOfFriend;
+					weights[size++] = friendOfFriendWeight;
+				}
+			}
+		}
+
+		//One leaf task per worker, each accumulating into its own map
+		int leafSize = Math.max(MIN_LEAF_SIZE, (size + pool.getParallelism() - 1) / pool.getParallelism());
+		SongScores scores = size == 0 ? new SongScores(16) : pool.invoke(new ScoreTask(network, weights, 0, size, leafSize));
+
+		//Keep best songs in a min-heap of size limit, skipping ones the user already likes
+		RoaringBitmap ownLikes = likedSongs.getLikedSongs(userName);
+		PriorityQueue<ScoredSong> best = new PriorityQueue<ScoredSong>(Math.max(limit, 1),
+				(a, b) -> Float.compare(a.score, b.score));
+		for (int i = 0; i < scores.keys.length; i++) {
+			int song = scores.keys[i];
+			if (song == SongScores.EMPTY || (ownLikes != null && ownLikes.contains(song))) {
+				continue;
+			}
+			if (best.size() < limit) {
+				best.add(new ScoredSong(song, scores.values[i]));
+			} else if (limit > 0 && scores.values[i] > best.peek().score) {
+				best.poll();
+				best.add(new ScoredSong(song, scores.values[i]));
+			}
+		}
+
+		List<Map<String, Object>> recommendations = new ArrayList<Map<String, Object>>(best.size());
+		while (!best.isEmpty()) {
+			ScoredSong scored = best.poll();
+			Map<String, Object> recommendation = new LinkedHashMap<String, Object>();
+			recommendation.put("songId", likedSongs.getSongId(scored.song));
+			recommendation.put("score", scored.score);
+			recommendations.add(recommendation);
+		}
+		Collections.reverse(recommendations);
+		return recommendations;
+	}
+
+	private static class ScoredSong {
+		final int song;
+		final float score;
+
+		ScoredSong(int song, float score) {
+			this.song = song;
+			this.score = score;
+		}
+	}
+
+	/**
+	 * Scores likes of a range of users, splitting the range in halves until it is small enough.
+	 */
+	private class ScoreTask extends RecursiveTask<SongScores> {
+		private final int[] network;
+		private final float[] weights;
+		private final int from;
+		private final int to;
+		private final int leafSize;
+
+		ScoreTask(int[] network, float[] weights, int from, int to, int leafSize) {
+			this.network = network;
+			this.weights = weights;
+			this.from = from;
+			this.to = to;
+			this.leafSize = leafSize;
+		}
+
+		@Override
+		protected SongScores compute() {
+			if (to - from > leafSize) {
+				int mid = (from + to) >>> 1;
+				ScoreTask left = new ScoreTask(network, weights, from, mid, leafSize);
+				left.fork();
+				SongScores right = new ScoreTask(network, weights, mid, to, leafSize).compute();
+				return left.join().merge(right);
+			}
+
+			//Sized for all likes of the range up front, so the map is not rehashed while scoring
+			int likes = 0;
+			for (int i = from; i < to; i++) {
+				likes += likedSongs.getLikeCount(followGraph.getUserName(network[i]));
+			}
+			SongScores scores = new SongScores(Integer.highestOneBit(Math.max(likes, 8)) * 4);
+			for (int i = from; i < to; i++) {
+				float weight = weights[i];
+				likedSongs.forEachLikedSong(followGraph.getUserName(network[i]), song -> scores.add(song, weight));
+			}
+			return scores;
+		}
+	}
+
+	/**
+	 * Open addressing map from song ordinal to score.
+	 */
+	static class SongScores {
+		static final int EMPTY = -1;
+
+		int[] keys;
+		float[] values;
+		int size = 0;
+
+		SongScores(int capacity) {
+			keys = new int[capacity];
+			values = new float[capacity];
+			Arrays.fill(keys, EMPTY);
+		}
+
+		void add(int key, float value) {
+			if (size * 2 >= keys.length) {
+				resize();
+			}
+			int mask = keys.length - 1;
+			int hash = key * 0x9E3779B9;
+			int i = (hash ^ (hash >>> 16)) & mask;
+			while (keys[i] != EMPTY && keys[i] != key) {
+				i = (i + 1) & mask;
+			}
+			if (keys[i] == EMPTY) {
+				keys[i] = key;
+				size++;
+			}
+			values[i] += value;
+		}
+
+		SongScores merge(SongScores other) {
+			SongScores into = size >= other.size ? this : other;
+			SongScores from = into == this ? other : this;
+			for (int i = 0; i < from.keys.length; i++) {
+				if (from.keys[i] != EMPTY) {
+					into.add(from.keys[i], from.values[i]);
+				}
+			}
+			return into;
+		}
+
+		private void resize() {
+			int[] oldKeys = keys;
+			float[] oldValues = values;
+			keys = new int[oldKeys.length * 2];
+			values = new float[oldKeys.length * 2];
+			Arrays.fill(keys, EMPTY);
+			size = 0;
+			for (int i = 0; i < oldKeys.length; i++) {
+				if (oldKeys[i] != EMPTY) {
+					add(oldKeys[i], oldValues[i]);
+				}
+			}
+		}
+	}
+}
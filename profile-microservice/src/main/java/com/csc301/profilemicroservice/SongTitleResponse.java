@@ -0,0 +1,78 @@
+package com.csc301.profilemicroservice;
+
+import java.io.IOException;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+
+/**
+ * Response of /getSongTitleById of song microservice.
+ */
+public class SongTitleResponse {
+	
+	private String status;
+	private String message;
+	private String data;
+
+	public String getStatus() {
+		return status;
+	}
+
+	public void setStatus(String status) {
+		this.status = status;
+	}
+
+	public String getMessage() {
+		return message;
+	}
+
+	public void setMessage(String message) {
+		this.message = message;
+	}
+
+	public String getData() {
+		return data;
+	}
+
+	public void setData(String data) {
+		this.data = data;
+	}
+
+	/**
+	 * Method to read response with a streaming parser. Fields not needed here (e.g. path) are skipped without being
+	 * decoded, and reading stops as soon as status and title are known.
+	 * 
+	 * @param parser: parser positioned before the response object
+	 * @return decoded response; data is not read if status is not OK
+	 * @throws IOException
+	 */
+	public static SongTitleResponse read(JsonParser parser) throws IOException{
+		if (parser.nextToken() != JsonToken.START_OBJECT) {
+			throw new IOException("Unexpected response of song microservice");
+		}
+		
+		SongTitleResponse response = new SongTitleResponse();
+		while (parser.nextToken() == JsonToken.FIELD_NAME) {
+			String field = parser.getCurrentName();
+			JsonToken value = parser.nextToken();
+			
+			if (field.equals("status")) {
+				response.setStatus(parser.getText());
+				if (!response.getStatus().equals("OK")) {
+					//Song not found, title won't be there
+					return response;
+				}
+			} else if (field.equals("data") && value == JsonToken.VALUE_STRING) {
+				response.setData(parser.getText());
+			} else {
+				parser.skipChildren();
+			}
+			
+			if (response.getStatus() != null && response.getData() != null) {
+				return response;
+			}
+		}
+		return response;
+	}
+
+}
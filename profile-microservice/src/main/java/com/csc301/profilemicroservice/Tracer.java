@@ -0,0 +1,246 @@
+package com.csc301.profilemicroservice;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import javax.annotation.PreDestroy;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * Lightweight request tracing.
+ *
+ * A trace is started for every request, with the trace id sent by the caller in TRACE_ID_HEADER or a new one. Spans
+ * started while it runs on the same thread (driver calls, calls to song microservice) become its children, and the
+ * trace id is sent on with outgoing calls so the other service records its spans under the same trace. Finished
+ * spans go into a fixed size ring buffer, overwriting the oldest ones, and, if "tracing.exportDir" is set, every
+ * finished trace is also written there as a JSON file by a background thread.
+ */
+@Component
+public class Tracer {
+
+	public static final String TRACE_ID_HEADER = "X-Trace-Id";
+	public static final String PARENT_SPAN_ID_HEADER = "X-Parent-Span-Id";
+
+	//Accepted trace ids are limited to a sane length and charset, since they end up in file names
+	private static final int MAX_TRACE_ID_LENGTH = 64;
+
+	private final AtomicReferenceArray<Span> buffer;
+	private final AtomicLong nextSlot = new AtomicLong();
+	private final ThreadLocal<Span> currentSpan = new ThreadLocal<Span>();
+
+	private final ObjectMapper mapper;
+	private final File exportDir;
+	private final ExecutorService exporter;
+
+	/**
+	 * Creates tracer.
+	 *
+	 * @param mapper: mapper traces are exported with
+	 * @param bufferSize: number of most recent spans kept in memory, rounded up to a power of two
+	 * @param exportDir: directory finished traces are written to; empty to not export
+	 */
+	public Tracer(ObjectMapper mapper, @Value("${tracing.bufferSize:4096}") int bufferSize,
+			@Value("${tracing.exportDir:}") String exportDir) {
+		this.buffer = new AtomicReferenceArray<Span>(Integer.highestOneBit(Math.max(bufferSize, 2) * 2 - 1));
+		this.mapper = mapper;
+		this.exportDir = exportDir.isEmpty() ? null : new File(exportDir);
+		this.exporter = this.exportDir == null ? null : Executors.newSingleThreadExecutor(runnable -> {
+			Thread thread = new Thread(runnable, "trace-exporter");
+			thread.setDaemon(true);
+			return thread;
+		});
+	}
+
+	@PreDestroy
+	public void shutdown() {
+		if (exporter != null) {
+			exporter.shutdown();
+		}
+	}
+
+	/**
+	 * One timed unit of work of a trace.
+	 */
+	public final class Span {
+		private final String traceId;
+		private final String spanId;
+		private final String parentId;
+		private final String name;
+		private final long startMillis = System.currentTimeMillis();
+		private final long startNanos = System.nanoTime();
+		private final Span parent;
+		//Spans of the trace collected for export, null if traces aren't exported
+		private final List<Span> finished;
+		private long durationMicros;
+		private String outcome;
+
+		Span(String traceId, String parentId, String name, Span parent, List<Span> finished) {
+			this.traceId = traceId;
+			this.spanId = newId();
+			this.parentId = parentId;
+			this.name = name;
+			this.parent = parent;
+			this.finished = finished;
+		}
+
+		/**
+		 * Finishes the span and makes its parent current again.
+		 *
+		 * @param outcome: result of the work, e.g. name of a DbQueryExecResult
+		 */
+		public void end(String outcome) {
+			this.durationMicros = (System.nanoTime() - startNanos) / 1000;
+			this.outcome = outcome;
+			record(this);
+
+			if (parent != null) {
+				currentSpan.set(parent);
+			} else {
+				currentSpan.remove();
+			}
+
+			if (finished != null) {
+				synchronized (finished) {
+					finished.add(this);
+				}
+				if (parent == null) {
+					exporter.execute(() -> export(this));
+				}
+			}
+		}
+
+		public String getTraceId() {
+			return traceId;
+		}
+
+		public String getSpanId() {
+			return spanId;
+		}
+
+		public String getParentId() {
+			return parentId;
+		}
+
+		public String getName() {
+			return name;
+		}
+
+		public long getStartMillis() {
+			return startMillis;
+		}
+
+		public long getDurationMicros() {
+			return durationMicros;
+		}
+
+		public String getOutcome() {
+			return outcome;
+		}
+	}
+
+	/**
+	 * Starts a trace on current thread, replacing any trace left over on it.
+	 *
+	 * @param traceId: trace id sent by caller; null or invalid to create a new one
+	 * @param parentSpanId: id of caller's span, null if there is none
+	 * @param name: name of the root span, e.g. method and path of a request
+	 * @return root span of the trace
+	 */
+	public Span startTrace(String traceId, String parentSpanId, String name) {
+		Span span = new Span(isValidId(traceId) ? traceId : newId(), isValidId(parentSpanId) ? parentSpanId : null,
+				name, null, exporter == null ? null : new ArrayList<Span>());
+		currentSpan.set(span);
+		return span;
+	}
+
+	/**
+	 * Starts a child of the current span.
+	 *
+	 * @param name: name of the span, e.g. "ProfileDriver.followFriend"
+	 * @return new span; null if no trace is running on current thread
+	 */
+	public Span startSpan(String name) {
+		Span parent = currentSpan.get();
+		if (parent == null) {
+			return null;
+		}
+		Span span = new Span(parent.traceId, parent.spanId, name, parent, parent.finished);
+		currentSpan.set(span);
+		return span;
+	}
+
+	/**
+	 * Get span running on current thread.
+	 *
+	 * @return current span; null if no trace is running
+	 */
+	public Span currentSpan() {
+		return currentSpan.get();
+	}
+
+	/**
+	 * Get most recent spans, optionally of one trace only.
+	 *
+	 * @param traceId: trace id to filter by; null for all spans
+	 * @return spans ordered by start time
+	 */
+	public List<Span> getSpans(String traceId) {
+		List<Span> spans = new ArrayList<Span>();
+		for (int i = 0; i < buffer.length(); i++) {
+			Span span = buffer.get(i);
+			if (span != null && (traceId == null || traceId.equals(span.traceId))) {
+				spans.add(span);
+			}
+		}
+		spans.sort(Comparator.comparingLong(Span::getStartMillis));
+		return spans;
+	}
+
+	private void record(Span span) {
+		buffer.set((int) (nextSlot.getAndIncrement() & (buffer.length() - 1)), span);
+	}
+
+	private void export(Span root) {
+		List<Span> spans;
+		synchronized (root.finished) {
+			spans = new ArrayList<Span>(root.finished);
+		}
+		try {
+			exportDir.mkdirs();
+			mapper.writeValue(new File(exportDir, root.traceId + "-" + root.spanId + ".json"), spans);
+		} catch (IOException e) {
+			//Exporting is best effort, spans are still in the buffer
+			System.out.println("Could not export trace " + root.traceId + ": " + e.getMessage());
+		}
+	}
+
+	private static String newId() {
+		return Long.toHexString(ThreadLocalRandom.current().nextLong() | Long.MIN_VALUE);
+	}
+
+	private static boolean isValidId(String id) {
+		if (id == null || id.isEmpty() || id.length() > MAX_TRACE_ID_LENGTH) {
+			return false;
+		}
+		for (int i = 0; i < id.length(); i++) {
+			char c = id.charAt(i);
+			boolean valid = (c >= '0' && c <= '9') || (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || c == '-';
+			if (!valid) {
+				return false;
+			}
+		}
+		return true;
+	}
+}
@@ -2,11 +2,16 @@ package com.csc301.profilemicroservice;
 
 import javax.servlet.http.HttpServletRequest;
 
-import org.json.JSONObject;
-import org.springframework.http.HttpStatus;
+
+import com.csc301.profilemicroservice.ResilientHttpClient.CallRejectedException;
+import com.csc301.profilemicroservice.ResilientHttpClient.ServerErrorException;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
 
 import okhttp3.HttpUrl;
-import okhttp3.OkHttpClient;
+import okhttp3.MediaType;
 import okhttp3.Request;
 import okhttp3.RequestBody;
 import okhttp3.Response;
@@ -21,6 +26,15 @@ import java.util.stream.Collectors;
 public class Utils {
 
 	public static RequestBody emptyRequestBody = RequestBody.create(null, "");
+	
+	// Call groups of song microservice calls, each has its own deadline, bulkhead and circuit breaker
+	public static final String FAVOURITES_UPDATE_CALLS = "favourites";
+	public static final String TITLE_LOOKUP_CALLS = "titles";
+	
+	// Song microservice answers in CBOR when asked to, which is smaller and cheaper to decode than JSON
+	public static final String APPLICATION_CBOR = "application/cbor";
+	private static final JsonFactory CBOR_FACTORY = new CBORFactory();
+	private static final JsonFactory JSON_FACTORY = new JsonFactory();
 		
 	// Used to determine path that was called from within each REST route, you don't need to modify this
 	public static String getUrl(HttpServletRequest req) {
@@ -44,37 +58,17 @@ public class Utils {
 		}
 	}
 	
-	// Sets the response status and data for a response from the server. You will not always be able to use this function
-	public static Map<String, Object> setResponseStatus(Map<String, Object> response, DbQueryExecResult dbQueryExecResult, Object data) {	
-		switch (dbQueryExecResult) {
-		case QUERY_OK:
-			response.put("status", HttpStatus.OK);
-			if (data != null) {
-				response.put("data", data);
-			}
-			break;
-		case QUERY_ERROR_NOT_FOUND:
-			response.put("status", HttpStatus.NOT_FOUND);
-			break;
-		case QUERY_ERROR_GENERIC:
-			response.put("status", HttpStatus.INTERNAL_SERVER_ERROR);
-			break;
-		}
-		
-		return response;
-	}
-	
 	/**
 	 * Method to call song microservice to update song favourites count
 	 * 
-	 * @param client: okhttp client
+	 * @param client: http client
 	 * @param baseUrl: url of song microservice
 	 * @param shouldDecrement: should count be decremented 
 	 * @param songId: song's id
-	 * @return status of the response
+	 * @return status song microservice reported, e.g. OK or NOT_FOUND
 	 * @throws IOException
 	 */
-	public static int updateSongFavouritesCount(OkHttpClient client, String baseUrl, boolean shouldDecrement, String songId) throws IOException{
+	public static String updateSongFavouritesCount(ResilientHttpClient client, String baseUrl, boolean shouldDecrement, String songId) throws IOException{
 		//Setting up the url
 		HttpUrl.Builder urlBuilder = HttpUrl.parse(baseUrl + "/updateSongFavouritesCount").newBuilder();
 		urlBuilder.addPathSegment(songId);
@@ -88,21 +82,20 @@ public class Utils {
                 .build();
 		
 		//Calling the endpoint to upd favourite count
-        Response response = client.newCall(request).execute();
-        return response.code();
+        return client.execute(FAVOURITES_UPDATE_CALLS, request, Utils::readStatus);
 		
 	}
 	
 	/**
 	 * Method to call song microservice to get title of the song
 	 * 
-	 * @param client: okhttp client
+	 * @param client: http client
 	 * @param baseUrl: url of song microservice
 	 * @param songId: song's id
 	 * @return song's title; null if not found
 	 * @throws IOException
 	 */
-	public static String getSondTitleById(OkHttpClient client, String baseUrl, String songId) throws IOException{
+	public static String getSondTitleById(ResilientHttpClient client, String baseUrl, String songId) throws IOException{
 		//Setting up the url
 		HttpUrl.Builder urlBuilder = HttpUrl.parse(baseUrl + "/getSongTitleById").newBuilder();
 		urlBuilder.addPathSegment(songId);
@@ -111,30 +104,108 @@ public class Utils {
 		//Setting up the request
 		Request request = new Request.Builder()
                 .url(url)
+                .header("Accept", APPLICATION_CBOR + ", application/json;q=0.5")
                 .build();
 		
 		//Calling the endpoint to get song title
-        Response response = client.newCall(request).execute();        
-        JSONObject json = new JSONObject(response.body().string());
-        if (!json.get("status").equals("OK")) {
+        return client.execute(TITLE_LOOKUP_CALLS, request, Utils::readSongTitle);
+		
+	}
+	
+	/**
+	 * Method to read status from response of song microservice, which answers errors with HTTP 200 and the real
+	 * status in the body
+	 * 
+	 * @param response: response of song microservice
+	 * @return status reported in the body
+	 * @throws IOException if song microservice failed or shed the call
+	 */
+	private static String readStatus(Response response) throws IOException{
+		checkResponseCode(response);
+		
+		String status = null;
+		try (JsonParser parser = JSON_FACTORY.createParser(response.body().byteStream())) {
+			if (parser.nextToken() != JsonToken.START_OBJECT) {
+				throw new IOException("Unexpected response of song microservice");
+			}
+			while (status == null && parser.nextToken() == JsonToken.FIELD_NAME) {
+				String field = parser.getCurrentName();
+				parser.nextToken();
+				if (field.equals("status")) {
+					status = parser.getText();
+				} else {
+					parser.skipChildren();
+				}
+			}
+		}
+		
+		if (status == null || status.equals("INTERNAL_SERVER_ERROR")) {
+			throw new ServerErrorException("Song microservice failed the call: " + status);
+		}
+		return status;
+	}
+	
+	/**
+	 * Method to check HTTP status of response of song microservice before its body is read
+	 * 
+	 * @param response: response of song microservice
+	 * @throws CallRejectedException if song microservice shed the call
+	 * @throws ServerErrorException if song microservice answered with a server error
+	 */
+	private static void checkResponseCode(Response response) throws IOException{
+		if (response.code() == 503 && response.header("Retry-After") != null) {
+			throw new CallRejectedException("Song microservice shed the call");
+		}
+		if (response.code() >= 500) {
+			throw new ServerErrorException("Song microservice answered " + response.code());
+		}
+	}
+	
+	/**
+	 * Method to read song title from response of song microservice
+	 * 
+	 * @param response: response of /getSongTitleById
+	 * @return song's title; null if not found
+	 * @throws IOException if song microservice failed or shed the call, so callers can't take it for a missing song
+	 */
+	private static String readSongTitle(Response response) throws IOException{
+		checkResponseCode(response);
+		
+		//Falling back to JSON in case song microservice doesn't support CBOR
+		MediaType contentType = response.body().contentType();
+		boolean isCbor = contentType != null && APPLICATION_CBOR.equals(contentType.type() + "/" + contentType.subtype());
+		
+		//Parsing straight off the response stream, rest of the body is discarded when response is closed
+		SongTitleResponse body;
+		try (JsonParser parser = (isCbor ? CBOR_FACTORY : JSON_FACTORY).createParser(response.body().byteStream())) {
+			body = SongTitleResponse.read(parser);
+		}
+		
+        if ("NOT_FOUND".equals(body.getStatus())) {
         	//Song not found
         	return null;
         }
+        if ("INTERNAL_SERVER_ERROR".equals(body.getStatus())) {
+        	throw new ServerErrorException("Song microservice failed the call");
+        }
+        if (!"OK".equals(body.getStatus()) || body.getData() == null) {
+        	throw new IOException("Unexpected response of song microservice: " + body.getStatus());
+        }
         
-        return json.getString("data");
+        return body.getData();
 		
 	}
 	
 	/**
 	 * Method to convert mapping from friends to song's ids to mapping from friends to song's titles
 	 * 
-	 * @param client: okhttp client
+	 * @param client: http client
 	 * @param baseUrl: url of song microservice
 	 * @param friendsToSongIds: mapping from friends to song's ids
 	 * @return mapping from friends to song's titles
 	 * @throws IOException
 	 */
-	public static Map<String, ArrayList<String>> convertSongIdsToSongTitles(OkHttpClient client, String baseUrl, Map<String, ArrayList<String>> friendsToSongIds) throws IOException{
+	public static Map<String, ArrayList<String>> convertSongIdsToSongTitles(ResilientHttpClient client, String baseUrl, Map<String, ArrayList<String>> friendsToSongIds) throws IOException{
 		Map<String, ArrayList<String>> friendsToSongTitles = new HashMap<String, ArrayList<String>>();
 		
 		//Iterating over pairs (name, songId)
@@ -152,13 +223,13 @@ public class Utils {
 	/**
 	 * Method to check if song is present in song microservice db
 	 * 
-	 * @param client: okhttp client
+	 * @param client: http client
 	 * @param baseUrl: url of song microservice
 	 * @param songId: song's id
 	 * @return true if song with songId is present; false, otherwise
 	 * @throws IOException
 	 */
-	public static boolean checkIfSongIsInSongMicroservice(OkHttpClient client, String baseUrl, String songId) throws IOException{
+	public static boolean checkIfSongIsInSongMicroservice(ResilientHttpClient client, String baseUrl, String songId) throws IOException{
 		String title = getSondTitleById(client, baseUrl, songId);
 		return title != null;
 	}
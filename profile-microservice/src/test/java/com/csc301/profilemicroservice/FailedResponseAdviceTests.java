@@ -0,0 +1,36 @@
+package com.csc301.profilemicroservice;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import org.junit.Test;
+import org.springframework.http.server.ServletServerHttpRequest;
+import org.springframework.http.server.ServletServerHttpResponse;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+public class FailedResponseAdviceTests {
+
+	private final FailedResponseAdvice advice = new FailedResponseAdvice();
+
+	@Test
+	public void serverErrorInEnvelopeMarksRequestAsFailed() {
+		MockHttpServletRequest request = write(ResponseEnvelope.of(DbQueryExecResult.QUERY_ERROR_GENERIC, null));
+		assertEquals(Boolean.TRUE, request.getAttribute(FailedResponseAdvice.FAILED_ATTRIBUTE));
+	}
+
+	@Test
+	public void notFoundAndSuccessDontMarkRequest() {
+		assertNull(write(ResponseEnvelope.of(DbQueryExecResult.QUERY_ERROR_NOT_FOUND, null))
+				.getAttribute(FailedResponseAdvice.FAILED_ATTRIBUTE));
+		assertNull(write(ResponseEnvelope.of(DbQueryExecResult.QUERY_OK, "data"))
+				.getAttribute(FailedResponseAdvice.FAILED_ATTRIBUTE));
+	}
+
+	private MockHttpServletRequest write(ResponseEnvelope body) {
+		MockHttpServletRequest request = new MockHttpServletRequest();
+		assertEquals(body, advice.beforeBodyWrite(body, null, null, null, new ServletServerHttpRequest(request),
+				new ServletServerHttpResponse(new MockHttpServletResponse())));
+		return request;
+	}
+}
@@ -0,0 +1,115 @@
+package com.csc301.profilemicroservice;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class FollowGraphTests {
+
+	private FollowGraph graph;
+
+	@Before
+	public void setUp() {
+		//Compaction is only run explicitly by tests
+		graph = new FollowGraph(Integer.MAX_VALUE, 3600);
+	}
+
+	@After
+	public void tearDown() {
+		graph.shutdown();
+	}
+
+	@Test
+	public void overlayIsAppliedToBaseGraph() {
+		install("alice", "bob", "alice", "carol");
+
+		graph.follow("alice", "dave");
+		graph.unfollow("alice", "bob");
+		assertEquals(2, graph.getFollowingCount("alice"));
+		assertEquals(0, graph.getFollowerCount("bob"));
+		assertEquals(1, graph.getFollowerCount("dave"));
+
+		graph.compact();
+		assertEquals(2, graph.getFollowingCount("alice"));
+		assertEquals(0, graph.getFollowerCount("bob"));
+		assertEquals(1, graph.getFollowerCount("dave"));
+	}
+
+	@Test
+	public void mutualFollowingIsIntersectionOfBothRows() {
+		install("alice", "carol", "alice", "dave", "bob", "carol", "bob", "erin");
+		graph.follow("bob", "dave");
+
+		assertEquals(Arrays.asList("carol", "dave"), graph.getMutualFollowing("alice", "bob"));
+		assertEquals(Collections.emptyList(), graph.getMutualFollowing("carol", "bob"));
+		assertNull(graph.getMutualFollowing("alice", "nobody"));
+		assertEquals(-1, graph.getFollowingCount("nobody"));
+	}
+
+	@Test
+	public void writesWhileLoadingSurviveCompactionAndInstall() {
+		//Loader read the database before these writes, so its edges don't have them
+		FollowGraph.Loader loader = graph.newLoader();
+		loader.addEdge("alice", "bob");
+		loader.addEdge("alice", "carol");
+
+		graph.follow("alice", "dave");
+		graph.unfollow("alice", "carol");
+		graph.compact();
+		assertFalse(graph.isLoaded());
+
+		graph.install(loader);
+		assertTrue(graph.isLoaded());
+		assertEquals(2, graph.getFollowingCount("alice"));
+		assertEquals(Arrays.asList("bob", "dave"), graph.getMutualFollowing("alice", "alice"));
+	}
+
+	@Test
+	public void writesAlreadyInLoadedGraphAreNotCountedTwice() {
+		FollowGraph.Loader loader = graph.newLoader();
+		graph.follow("alice", "bob");
+		graph.unfollow("alice", "carol");
+		loader.addEdge("alice", "bob");
+
+		graph.install(loader);
+		assertEquals(1, graph.getFollowingCount("alice"));
+		assertEquals(0, graph.getFollowerCount("carol"));
+	}
+
+	@Test
+	public void thresholdCompactionWaitsForInstall() throws Exception {
+		FollowGraph small = new FollowGraph(1, 3600);
+		try {
+			FollowGraph.Loader loader = small.newLoader();
+			loader.addEdge("alice", "bob");
+			small.follow("alice", "carol");
+			small.follow("alice", "dave");
+
+			small.install(loader);
+			assertEquals(3, small.getFollowingCount("alice"));
+
+			//Compaction scheduled by install runs on the compaction thread and keeps all edges
+			Thread.sleep(100);
+			assertEquals(3, small.getFollowingCount("alice"));
+			assertEquals(1, small.getFollowerCount("dave"));
+		} finally {
+			small.shutdown();
+		}
+	}
+
+	private void install(String... edges) {
+		FollowGraph.Loader loader = graph.newLoader();
+		for (int i = 0; i < edges.length; i += 2) {
+			loader.addEdge(edges[i], edges[i + 1]);
+		}
+		graph.install(loader);
+	}
+}
@@ -0,0 +1,33 @@
+package com.csc301.profilemicroservice;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.util.Arrays;
+
+import org.junit.Test;
+
+public class GraphImporterTests {
+
+	@Test
+	public void splitsPlainFields() {
+		assertEquals(Arrays.asList("alice", "Alice A", "pw"), GraphImporter.splitCsvLine("alice,Alice A,pw"));
+	}
+
+	@Test
+	public void trimsFieldsAndKeepsEmptyOnes() {
+		assertEquals(Arrays.asList("alice", "", "pw"), GraphImporter.splitCsvLine(" alice , ,pw "));
+		assertEquals(Arrays.asList("alice", ""), GraphImporter.splitCsvLine("alice,"));
+	}
+
+	@Test
+	public void quotedFieldsMayHoldCommasAndEscapedQuotes() {
+		assertEquals(Arrays.asList("bob", "Smith, Bob", "say \"hi\""),
+				GraphImporter.splitCsvLine("bob,\"Smith, Bob\",\"say \"\"hi\"\"\""));
+	}
+
+	@Test
+	public void unbalancedQuotesAreRejected() {
+		assertNull(GraphImporter.splitCsvLine("bob,\"Smith, Bob"));
+	}
+}
@@ -0,0 +1,86 @@
+package com.csc301.profilemicroservice;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CyclicBarrier;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class InMemoryDriversTests {
+
+	private static final int ROUNDS = 500;
+
+	private InMemoryGraph graph;
+	private LikedSongsIndex likedSongs;
+	private FollowGraph followGraph;
+	private SongRecommender recommender;
+	private InMemoryProfileDriver profileDriver;
+	private InMemoryPlaylistDriver playlistDriver;
+
+	@Before
+	public void setUp() {
+		graph = new InMemoryGraph();
+		likedSongs = new LikedSongsIndex(100);
+		followGraph = new FollowGraph(10000, 60);
+		recommender = new SongRecommender(followGraph, likedSongs, 2, 1.0f, 0.4f);
+		profileDriver = new InMemoryProfileDriver(graph, likedSongs, followGraph, recommender);
+		playlistDriver = new InMemoryPlaylistDriver(graph, likedSongs);
+
+		profileDriver.createUserProfile("alice", "Alice", "pw");
+		profileDriver.createUserProfile("bob", "Bob", "pw");
+	}
+
+	@After
+	public void tearDown() {
+		recommender.shutdown();
+		followGraph.shutdown();
+	}
+
+	@Test
+	public void racingFollowsLeaveFollowGraphLikeGraph() throws Exception {
+		for (int i = 0; i < ROUNDS; i++) {
+			race(() -> profileDriver.followFriend("alice", "bob"), () -> profileDriver.unfollowFriend("alice", "bob"));
+
+			int following = graph.getSongsFriendsLike("alice").size();
+			assertEquals("round " + i, following, followGraph.getFollowingCount("alice"));
+			assertEquals("round " + i, following, followGraph.getFollowerCount("bob"));
+		}
+	}
+
+	@Test
+	public void racingLikesLeaveIndexLikeGraph() throws Exception {
+		for (int i = 0; i < ROUNDS; i++) {
+			String songId = "song" + (i % 3);
+			race(() -> playlistDriver.likeSong("alice", songId), () -> playlistDriver.unlikeSong("alice", songId),
+					() -> playlistDriver.deleteSongFromDb(songId), () -> playlistDriver.likeSong("bob", songId));
+
+			for (String userName : new String[] { "alice", "bob" }) {
+				assertEquals("round " + i, graph.getLikedSongIds(userName).size(), likedSongs.getLikeCount(userName));
+			}
+		}
+	}
+
+	private static void race(Runnable... actions) throws Exception {
+		CyclicBarrier barrier = new CyclicBarrier(actions.length);
+		List<Thread> threads = new ArrayList<Thread>();
+		for (Runnable action : actions) {
+			Thread thread = new Thread(() -> {
+				try {
+					barrier.await();
+				} catch (Exception e) {
+					throw new IllegalStateException(e);
+				}
+				action.run();
+			});
+			thread.start();
+			threads.add(thread);
+		}
+		for (Thread thread : threads) {
+			thread.join();
+		}
+	}
+}
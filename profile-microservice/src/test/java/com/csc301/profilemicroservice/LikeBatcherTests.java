@@ -0,0 +1,200 @@
+package com.csc301.profilemicroservice;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.neo4j.driver.internal.InternalRecord;
+import org.neo4j.driver.v1.Driver;
+import org.neo4j.driver.v1.Record;
+import org.neo4j.driver.v1.Session;
+import org.neo4j.driver.v1.Transaction;
+import org.neo4j.driver.v1.Value;
+import org.neo4j.driver.v1.Values;
+
+public class LikeBatcherTests {
+
+	private Driver driver;
+	private SlowQueryLog slowQueries;
+	private ExecutorService callers;
+
+	@Before
+	public void setUp() {
+		Session session = mock(Session.class);
+		driver = mock(Driver.class);
+		slowQueries = mock(SlowQueryLog.class);
+		when(driver.session()).thenReturn(session);
+		when(session.beginTransaction()).thenReturn(mock(Transaction.class));
+		callers = Executors.newCachedThreadPool();
+	}
+
+	@After
+	public void tearDown() {
+		callers.shutdownNow();
+	}
+
+	@Test
+	public void writesOfOneBatchGetTheirOwnResults() throws Exception {
+		//Every row of the statement finds the playlist except the one for "bob"
+		when(slowQueries.run(any(Transaction.class), anyString(), any(Value.class))).thenAnswer(invocation -> {
+			List<Record> records = new ArrayList<Record>();
+			for (Value row : ((Value) invocation.getArgument(2)).get("rows").values()) {
+				records.add(record(row.get("idx").asInt(), row.get("userName").asString().equals("bob") ? 0 : 1));
+			}
+			return records;
+		});
+		LikeBatcher batcher = new LikeBatcher(driver, slowQueries, 16, 200, 5000);
+
+		Future<DbQueryExecResult> alice = submit(batcher, true, "alice", "s1");
+		Future<DbQueryExecResult> bob = submit(batcher, true, "bob", "s1");
+		Future<DbQueryExecResult> carol = submit(batcher, true, "carol", "s2");
+
+		assertEquals(DbQueryExecResult.QUERY_OK, alice.get(5, TimeUnit.SECONDS));
+		assertEquals(DbQueryExecResult.QUERY_ERROR_NOT_FOUND, bob.get(5, TimeUnit.SECONDS));
+		assertEquals(DbQueryExecResult.QUERY_OK, carol.get(5, TimeUnit.SECONDS));
+		assertEquals(Long.valueOf(3), batcher.getStats().get("writes"));
+		batcher.shutdown();
+	}
+
+	@Test
+	public void failedTransactionFailsAllWritesOfTheBatch() throws Exception {
+		when(slowQueries.run(any(Transaction.class), anyString(), any(Value.class)))
+				.thenThrow(new RuntimeException("database unavailable"));
+		LikeBatcher batcher = new LikeBatcher(driver, slowQueries, 16, 1, 5000);
+
+		assertEquals(DbQueryExecResult.QUERY_ERROR_GENERIC, batcher.submit(false, "alice", "s1", () -> {}));
+		batcher.shutdown();
+	}
+
+	@Test
+	public void submitAfterShutdownFailsRightAway() {
+		LikeBatcher batcher = new LikeBatcher(driver, slowQueries, 16, 1, 60000);
+		batcher.shutdown();
+
+		long start = System.nanoTime();
+		assertEquals(DbQueryExecResult.QUERY_ERROR_GENERIC, batcher.submit(true, "alice", "s1", () -> {}));
+		assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(5));
+	}
+
+	@Test
+	public void queuedWritesFailOnShutdown() throws Exception {
+		//First batch blocks the flusher, so the second write stays queued
+		CountDownLatch flushing = new CountDownLatch(1);
+		CountDownLatch release = new CountDownLatch(1);
+		when(slowQueries.run(any(Transaction.class), anyString(), any(Value.class))).thenAnswer(invocation -> {
+			flushing.countDown();
+			release.await();
+			return Arrays.asList(record(0, 1));
+		});
+		LikeBatcher batcher = new LikeBatcher(driver, slowQueries, 1, 0, 60000);
+
+		Future<DbQueryExecResult> first = submit(batcher, true, "alice", "s1");
+		assertTrue(flushing.await(5, TimeUnit.SECONDS));
+		Future<DbQueryExecResult> queued = submit(batcher, true, "bob", "s1");
+
+		batcher.shutdown();
+		assertEquals(DbQueryExecResult.QUERY_ERROR_GENERIC, queued.get(5, TimeUnit.SECONDS));
+
+		//Write that was being flushed may or may not have been committed, but its caller is answered too
+		release.countDown();
+		first.get(5, TimeUnit.SECONDS);
+	}
+
+	@Test
+	public void waitForBatchIsBounded() throws Exception {
+		CountDownLatch release = new CountDownLatch(1);
+		when(slowQueries.run(any(Transaction.class), anyString(), any(Value.class))).thenAnswer(invocation -> {
+			release.await();
+			return Arrays.asList(record(0, 1));
+		});
+		LikeBatcher batcher = new LikeBatcher(driver, slowQueries, 1, 0, 100);
+
+		try {
+			assertEquals(DbQueryExecResult.QUERY_ERROR_GENERIC,
+					submit(batcher, true, "alice", "s1").get(5, TimeUnit.SECONDS));
+		} finally {
+			release.countDown();
+			batcher.shutdown();
+		}
+	}
+
+	@Test
+	public void writeStillQueuedWhenWaitTimesOutIsNeverApplied() throws Exception {
+		//First batch blocks the flusher until bob's wait has timed out
+		CountDownLatch flushing = new CountDownLatch(1);
+		CountDownLatch release = new CountDownLatch(1);
+		List<String> written = new CopyOnWriteArrayList<String>();
+		when(slowQueries.run(any(Transaction.class), anyString(), any(Value.class))).thenAnswer(invocation -> {
+			String userName = ((Value) invocation.getArgument(2)).get("rows").get(0).get("userName").asString();
+			written.add(userName);
+			flushing.countDown();
+			if (userName.equals("alice")) {
+				release.await();
+			}
+			return Arrays.asList(record(0, 1));
+		});
+		LikeBatcher batcher = new LikeBatcher(driver, slowQueries, 1, 0, 100);
+		CountDownLatch bobCommitted = new CountDownLatch(1);
+
+		try {
+			Future<DbQueryExecResult> alice = submit(batcher, true, "alice", "s1");
+			assertTrue(flushing.await(5, TimeUnit.SECONDS));
+			assertEquals(DbQueryExecResult.QUERY_ERROR_GENERIC, batcher.submit(true, "bob", "s1", bobCommitted::countDown));
+			release.countDown();
+			alice.get(5, TimeUnit.SECONDS);
+
+			//A later write is flushed after bob's would have been
+			assertEquals(DbQueryExecResult.QUERY_OK, batcher.submit(true, "carol", "s1", () -> {}));
+			assertEquals(Arrays.asList("alice", "carol"), written);
+			assertEquals(1, bobCommitted.getCount());
+		} finally {
+			release.countDown();
+			batcher.shutdown();
+		}
+	}
+
+	@Test
+	public void writeCommittedAfterWaitTimedOutStillRunsCallback() throws Exception {
+		CountDownLatch release = new CountDownLatch(1);
+		when(slowQueries.run(any(Transaction.class), anyString(), any(Value.class))).thenAnswer(invocation -> {
+			release.await();
+			return Arrays.asList(record(0, 1));
+		});
+		LikeBatcher batcher = new LikeBatcher(driver, slowQueries, 1, 0, 100);
+		CountDownLatch committed = new CountDownLatch(1);
+
+		try {
+			assertEquals(DbQueryExecResult.QUERY_ERROR_GENERIC, batcher.submit(true, "alice", "s1", committed::countDown));
+			release.countDown();
+			assertTrue(committed.await(5, TimeUnit.SECONDS));
+		} finally {
+			release.countDown();
+			batcher.shutdown();
+		}
+	}
+
+	private Future<DbQueryExecResult> submit(LikeBatcher batcher, boolean like, String userName, String songId) {
+		return callers.submit(() -> batcher.submit(like, userName, songId, () -> {}));
+	}
+
+	private static Record record(int idx, long count) {
+		return new InternalRecord(Arrays.asList("idx", "playlistCount", "songsCount"),
+				new Value[] { Values.value(idx), Values.value(count), Values.value(count) });
+	}
+}
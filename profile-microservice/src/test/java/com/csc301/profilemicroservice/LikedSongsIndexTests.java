@@ -0,0 +1,109 @@
+package com.csc301.profilemicroservice;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+import org.junit.Test;
+
+public class LikedSongsIndexTests {
+
+	@Test
+	public void loadsUserOnFirstAccessOnly() {
+		LikedSongsIndex index = new LikedSongsIndex(100);
+		AtomicInteger loads = new AtomicInteger();
+		Function<String, Collection<String>> loader = userName -> {
+			loads.incrementAndGet();
+			return Arrays.asList("s1", "s2");
+		};
+
+		assertTrue(index.contains("alice", "s1", loader));
+		assertFalse(index.contains("alice", "s3", loader));
+		assertEquals(1, loads.get());
+	}
+
+	@Test
+	public void unknownUserIsNotKept() {
+		LikedSongsIndex index = new LikedSongsIndex(100);
+
+		assertFalse(index.contains("nobody", "s1", userName -> null));
+		assertNull(index.likedInCommon("alice", "nobody", userName -> userName.equals("alice")
+				? Collections.singletonList("s1") : null));
+		assertEquals(1, index.size());
+	}
+
+	@Test
+	public void writesAreAppliedToLoadedUsers() {
+		LikedSongsIndex index = new LikedSongsIndex(100);
+		Map<String, Collection<String>> db = new HashMap<String, Collection<String>>();
+		db.put("alice", Arrays.asList("s1", "s2"));
+		db.put("bob", Arrays.asList("s2", "s3"));
+
+		assertEquals(Collections.singletonList("s2"), index.likedInCommon("alice", "bob", db::get));
+		index.onLikeChanged("alice", "s3", true);
+		index.onLikeChanged("bob", "s2", false);
+		assertEquals(Collections.singletonList("s3"), index.likedInCommon("alice", "bob", db::get));
+
+		index.onSongDeleted("s3");
+		assertEquals(Collections.emptyList(), index.likedInCommon("alice", "bob", db::get));
+	}
+
+	@Test
+	public void loadRacingWithWriteIsDiscarded() {
+		LikedSongsIndex index = new LikedSongsIndex(100);
+
+		//Like is written while the load is running, so loaded songs may miss it
+		assertTrue(index.contains("alice", "s2", userName -> {
+			index.onLikeChanged("alice", "s2", true);
+			return Arrays.asList("s1", "s2");
+		}));
+		assertNull(index.getLikedSongs("alice"));
+		assertTrue(index.contains("alice", "s1", userName -> Arrays.asList("s1", "s2")));
+		assertEquals(2, index.getLikeCount("alice"));
+	}
+
+	@Test
+	public void preloadSkipsUsersWrittenSinceItStarted() {
+		LikedSongsIndex index = new LikedSongsIndex(100);
+		long loadSeq = index.beginPreload();
+		index.onUserCreated("bob");
+		index.preload("alice", Arrays.asList("s1"), loadSeq);
+		index.preload("bob", Arrays.asList("s1"), loadSeq);
+		index.endPreload(userName -> null);
+
+		assertTrue(index.isPreloaded());
+		assertEquals(1, index.getLikeCount("alice"));
+		assertEquals(0, index.getLikeCount("bob"));
+	}
+
+	@Test
+	public void evictsUsersNotAccessedRecently() {
+		LikedSongsIndex index = new LikedSongsIndex(10);
+		long loadSeq = index.beginPreload();
+		for (int i = 0; i < 10; i++) {
+			index.preload("user" + i, Arrays.asList("s" + i), loadSeq);
+		}
+		index.endPreload(userName -> null);
+		assertTrue(index.isPreloaded());
+
+		index.onUserCreated("user10");
+		assertTrue(index.size() <= 10);
+		assertFalse(index.isPreloaded());
+
+		//Evicted users are loaded again on next access
+		for (int i = 0; i < 10; i++) {
+			String songId = "s" + i;
+			assertTrue(index.contains("user" + i, songId, userName -> Collections.singletonList(songId)));
+		}
+		assertTrue(index.size() <= 10);
+	}
+}
@@ -0,0 +1,90 @@
+package com.csc301.profilemicroservice;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.net.SocketTimeoutException;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.http.HttpStatus;
+
+import okhttp3.Request;
+
+public class ProfileControllerTests {
+
+	private PlaylistDriver playlistDriver;
+	private ResilientHttpClient client;
+	private ProfileController controller;
+
+	@Before
+	public void setUp() throws Exception {
+		playlistDriver = mock(PlaylistDriver.class);
+		client = mock(ResilientHttpClient.class);
+		controller = new ProfileController(mock(ProfileDriver.class), playlistDriver, client, "http://localhost:3001");
+
+		when(client.<String>execute(eq(Utils.TITLE_LOOKUP_CALLS), any(Request.class), any())).thenReturn("title");
+		when(playlistDriver.likeSong("alice", "s1")).thenReturn(new DbQueryStatus("like", DbQueryExecResult.QUERY_OK));
+		when(playlistDriver.unlikeSong("alice", "s1")).thenReturn(new DbQueryStatus("unlike", DbQueryExecResult.QUERY_OK));
+	}
+
+	@Test
+	public void likeUpdatesFavouritesCount() throws Exception {
+		when(client.<String>execute(eq(Utils.FAVOURITES_UPDATE_CALLS), any(Request.class), any())).thenReturn("OK");
+
+		assertEquals(HttpStatus.OK, controller.likeSong("alice", "s1", null).getStatus());
+		verify(playlistDriver, never()).unlikeSong("alice", "s1");
+	}
+
+	@Test
+	public void likeFailsIfSongMicroserviceShedsTitleLookup() throws Exception {
+		when(client.<String>execute(eq(Utils.TITLE_LOOKUP_CALLS), any(Request.class), any()))
+				.thenThrow(new ResilientHttpClient.CallRejectedException("Song microservice shed the call"));
+
+		//Not a missing song, so it's an error rather than NOT_FOUND, and nothing is written
+		assertEquals(HttpStatus.INTERNAL_SERVER_ERROR, controller.likeSong("alice", "s1", null).getStatus());
+		verify(playlistDriver, never()).likeSong("alice", "s1");
+	}
+
+	@Test
+	public void likeIsUndoneIfCountUpdateIsRejected() throws Exception {
+		when(client.<String>execute(eq(Utils.FAVOURITES_UPDATE_CALLS), any(Request.class), any()))
+				.thenThrow(new ResilientHttpClient.CallRejectedException("favourites: circuit breaker is open"));
+
+		assertEquals(HttpStatus.INTERNAL_SERVER_ERROR, controller.likeSong("alice", "s1", null).getStatus());
+		verify(playlistDriver).unlikeSong("alice", "s1");
+	}
+
+	@Test
+	public void unlikeIsUndoneIfCountUpdateFails() throws Exception {
+		when(client.<String>execute(eq(Utils.FAVOURITES_UPDATE_CALLS), any(Request.class), any()))
+				.thenThrow(new ResilientHttpClient.ServerErrorException("Song microservice failed the call"));
+
+		assertEquals(HttpStatus.INTERNAL_SERVER_ERROR, controller.unlikeSong("alice", "s1", null).getStatus());
+		verify(playlistDriver).likeSong("alice", "s1");
+	}
+
+	@Test
+	public void likeIsUndoneIfSongIsGoneFromSongMicroservice() throws Exception {
+		//Song microservice answers with HTTP 200, status is only in the body
+		when(client.<String>execute(eq(Utils.FAVOURITES_UPDATE_CALLS), any(Request.class), any())).thenReturn("NOT_FOUND");
+
+		assertEquals(HttpStatus.INTERNAL_SERVER_ERROR, controller.likeSong("alice", "s1", null).getStatus());
+		verify(playlistDriver).unlikeSong("alice", "s1");
+	}
+
+	@Test
+	public void likeIsKeptIfCountUpdateTimesOut() throws Exception {
+		when(client.<String>execute(eq(Utils.FAVOURITES_UPDATE_CALLS), any(Request.class), any()))
+				.thenThrow(new SocketTimeoutException("timeout"));
+
+		//Count may have been updated, so the like isn't undone, but the outcome is reported as unknown
+		assertEquals(HttpStatus.INTERNAL_SERVER_ERROR, controller.likeSong("alice", "s1", null).getStatus());
+		verify(playlistDriver, never()).unlikeSong("alice", "s1");
+	}
+}
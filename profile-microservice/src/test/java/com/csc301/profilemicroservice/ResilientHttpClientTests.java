@@ -0,0 +1,266 @@
+package com.csc301.profilemicroservice;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.mock.env.MockEnvironment;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sun.net.httpserver.HttpServer;
+
+import okhttp3.Request;
+
+public class ResilientHttpClientTests {
+
+	private HttpServer server;
+	private volatile int responseCode = 200;
+	private volatile String retryAfter = null;
+	private volatile String body = "{}";
+	private volatile CountDownLatch release = new CountDownLatch(0);
+	private ExecutorService callers;
+	private ResilientHttpClient client;
+
+	@Before
+	public void setUp() throws IOException {
+		server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+		server.setExecutor(Executors.newCachedThreadPool());
+		server.createContext("/", exchange -> {
+			try {
+				release.await(10, TimeUnit.SECONDS);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+			if (retryAfter != null) {
+				exchange.getResponseHeaders().add("Retry-After", retryAfter);
+			}
+			exchange.sendResponseHeaders(responseCode, bytes.length);
+			exchange.getResponseBody().write(bytes);
+			exchange.close();
+		});
+		server.start();
+		callers = Executors.newCachedThreadPool();
+
+		MockEnvironment env = new MockEnvironment()
+				.withProperty("httpClient.test.maxConcurrent", "1")
+				.withProperty("httpClient.test.failureThreshold", "2")
+				.withProperty("httpClient.test.openMs", "200");
+		client = new ResilientHttpClient(env, new OperationMetrics(), new Tracer(new ObjectMapper(), 16, ""));
+	}
+
+	@After
+	public void tearDown() {
+		release.countDown();
+		callers.shutdownNow();
+		server.stop(0);
+	}
+
+	@Test
+	public void breakerOpensAfterConsecutiveServerErrorsAndClosesAfterTrial() throws Exception {
+		responseCode = 500;
+		assertEquals(500, call());
+		assertEquals(500, call());
+		assertEquals("OPEN", state());
+		assertRejected();
+
+		//After openMs one trial call is sent, its success closes the breaker
+		Thread.sleep(250);
+		responseCode = 200;
+		assertEquals(200, call());
+		assertEquals("CLOSED", state());
+	}
+
+	@Test
+	public void failedTrialOpensBreakerAgain() throws Exception {
+		responseCode = 500;
+		call();
+		call();
+		Thread.sleep(250);
+		assertEquals(500, call());
+		assertEquals("OPEN", state());
+		assertRejected();
+	}
+
+	@Test
+	public void clientErrorsDontOpenBreaker() throws Exception {
+		responseCode = 404;
+		for (int i = 0; i < 5; i++) {
+			assertEquals(404, call());
+		}
+		assertEquals("CLOSED", state());
+	}
+
+	@Test
+	public void loadShedByDependencyDoesntOpenBreaker() throws Exception {
+		responseCode = 503;
+		retryAfter = "1";
+		for (int i = 0; i < 5; i++) {
+			assertEquals(503, call());
+		}
+		assertEquals("CLOSED", state());
+		assertEquals(5L, client.getStats().get("test").get("rejected"));
+		assertEquals(0L, client.getStats().get("test").get("failures"));
+
+		//Without Retry-After it's a server error
+		retryAfter = null;
+		call();
+		call();
+		assertEquals("OPEN", state());
+	}
+
+	@Test
+	public void serverErrorsReportedInBodyOpenBreaker() throws Exception {
+		//Dependency answers with HTTP 200, only the handler sees the failure
+		body = "{\"status\":\"INTERNAL_SERVER_ERROR\"}";
+		for (int i = 0; i < 2; i++) {
+			try {
+				callReadingStatus();
+				fail("Server error was not thrown");
+			} catch (ResilientHttpClient.ServerErrorException e) {
+				//Expected
+			}
+		}
+		assertEquals("OPEN", state());
+		assertEquals(2L, client.getStats().get("test").get("failures"));
+		assertEquals(0L, client.getStats().get("test").get("successes"));
+	}
+
+	@Test
+	public void titleLookupOnlyReportsMissingSongForNotFound() throws Exception {
+		String baseUrl = "http://localhost:" + server.getAddress().getPort();
+		body = "{\"status\":\"NOT_FOUND\"}";
+		assertNull(Utils.getSondTitleById(client, baseUrl, "s1"));
+
+		body = "{\"status\":\"OK\",\"data\":\"title\"}";
+		assertEquals("title", Utils.getSondTitleById(client, baseUrl, "s1"));
+	}
+
+	@Test
+	public void titleLookupFailsIfSongMicroserviceIsUnavailable() throws Exception {
+		String baseUrl = "http://localhost:" + server.getAddress().getPort();
+		responseCode = 503;
+		retryAfter = "1";
+		body = "{\"status\":\"SERVICE_UNAVAILABLE\"}";
+		try {
+			Utils.checkIfSongIsInSongMicroservice(client, baseUrl, "s1");
+			fail("Shed call was taken for a missing song");
+		} catch (ResilientHttpClient.CallRejectedException e) {
+			//Expected
+		}
+
+		//Server errors, in HTTP status or in body, aren't a missing song either
+		retryAfter = null;
+		try {
+			Utils.getSondTitleById(client, baseUrl, "s1");
+			fail("Server error was taken for a missing song");
+		} catch (ResilientHttpClient.ServerErrorException e) {
+			//Expected
+		}
+		responseCode = 200;
+		body = "{\"status\":\"INTERNAL_SERVER_ERROR\"}";
+		try {
+			Utils.getSondTitleById(client, baseUrl, "s1");
+			fail("Server error was taken for a missing song");
+		} catch (ResilientHttpClient.ServerErrorException e) {
+			//Expected
+		}
+	}
+
+	@Test
+	public void fullBulkheadRejectsCallsWithoutSendingThem() throws Exception {
+		release = new CountDownLatch(1);
+		Future<Integer> first = callers.submit(this::call);
+		for (int i = 0; i < 100 && inFlight() == 0; i++) {
+			Thread.sleep(10);
+		}
+		assertEquals(1, inFlight());
+
+		assertRejected();
+		release.countDown();
+		assertEquals(Integer.valueOf(200), first.get(5, TimeUnit.SECONDS));
+		assertEquals(1L, client.getStats().get("test").get("rejected"));
+		assertEquals("CLOSED", state());
+	}
+
+	@Test
+	public void circuitBreakerAllowsOneTrialAtATime() throws Exception {
+		ResilientHttpClient.CircuitBreaker breaker = new ResilientHttpClient.CircuitBreaker(1, 0);
+		breaker.onFailure(breaker.allowRequest());
+		ResilientHttpClient.CircuitBreaker.Permit trial = breaker.allowRequest();
+		assertEquals(ResilientHttpClient.CircuitBreaker.Permit.TRIAL, trial);
+		assertNull(breaker.allowRequest());
+
+		//Trial that wasn't sent gives its permit back
+		breaker.release(trial);
+		trial = breaker.allowRequest();
+		assertEquals(ResilientHttpClient.CircuitBreaker.Permit.TRIAL, trial);
+		breaker.onSuccess(trial);
+		assertEquals(ResilientHttpClient.CircuitBreaker.Permit.NORMAL, breaker.allowRequest());
+		assertEquals(ResilientHttpClient.CircuitBreaker.Permit.NORMAL, breaker.allowRequest());
+	}
+
+	@Test
+	public void onlyTrialDecidesHowBreakerLeavesHalfOpen() throws Exception {
+		ResilientHttpClient.CircuitBreaker breaker = new ResilientHttpClient.CircuitBreaker(1, 0);
+		ResilientHttpClient.CircuitBreaker.Permit late = breaker.allowRequest();
+		breaker.onFailure(breaker.allowRequest());
+		ResilientHttpClient.CircuitBreaker.Permit trial = breaker.allowRequest();
+
+		//Results of a call let through while the breaker was closed neither close it nor free the trial
+		breaker.onSuccess(late);
+		breaker.release(late);
+		assertEquals(ResilientHttpClient.CircuitBreaker.State.HALF_OPEN, breaker.getState());
+		assertNull(breaker.allowRequest());
+		breaker.onFailure(late);
+		assertEquals(ResilientHttpClient.CircuitBreaker.State.HALF_OPEN, breaker.getState());
+
+		breaker.onSuccess(trial);
+		assertEquals(ResilientHttpClient.CircuitBreaker.State.CLOSED, breaker.getState());
+	}
+
+	private int call() throws IOException {
+		Request request = new Request.Builder().url("http://localhost:" + server.getAddress().getPort() + "/").build();
+		return client.execute("test", request, response -> response.code());
+	}
+
+	private String callReadingStatus() throws IOException {
+		Request request = new Request.Builder().url("http://localhost:" + server.getAddress().getPort() + "/").build();
+		return client.execute("test", request, response -> {
+			String status = response.body().string();
+			if (status.contains("INTERNAL_SERVER_ERROR")) {
+				throw new ResilientHttpClient.ServerErrorException(status);
+			}
+			return status;
+		});
+	}
+
+	private void assertRejected() throws IOException {
+		try {
+			call();
+			fail("Call was not rejected");
+		} catch (ResilientHttpClient.CallRejectedException e) {
+			//Expected
+		}
+	}
+
+	private String state() {
+		return String.valueOf(client.getStats().get("test").get("breakerState"));
+	}
+
+	private int inFlight() {
+		return client.getStats().containsKey("test") ? (Integer) client.getStats().get("test").get("inFlight") : 0;
+	}
+}
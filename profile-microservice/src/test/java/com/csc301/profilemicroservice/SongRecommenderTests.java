@@ -0,0 +1,126 @@
+package com.csc301.profilemicroservice;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class SongRecommenderTests {
+
+	private FollowGraph followGraph;
+	private LikedSongsIndex likedSongs;
+	private SongRecommender recommender;
+	private Map<String, List<String>> likes;
+
+	@Before
+	public void setUp() {
+		//alice follows bob and carol, bob follows dave
+		followGraph = new FollowGraph(10000, 60);
+		FollowGraph.Loader loader = followGraph.newLoader();
+		for (String userName : Arrays.asList("alice", "bob", "carol", "dave")) {
+			loader.addUser(userName);
+		}
+		loader.addEdge("alice", "bob");
+		loader.addEdge("alice", "carol");
+		loader.addEdge("bob", "dave");
+		followGraph.install(loader);
+
+		likes = new HashMap<String, List<String>>();
+		likes.put("alice", Arrays.asList("s1"));
+		likes.put("bob", Arrays.asList("s1", "s2", "s3"));
+		likes.put("carol", Arrays.asList("s2"));
+		likes.put("dave", Arrays.asList("s3", "s4"));
+
+		likedSongs = new LikedSongsIndex(100);
+		recommender = new SongRecommender(followGraph, likedSongs, 2, 1.0f, 0.4f);
+	}
+
+	@After
+	public void tearDown() {
+		recommender.shutdown();
+		followGraph.shutdown();
+	}
+
+	@Test
+	public void scoresSongsByClosenessAndPopularity() {
+		preloadAll();
+
+		List<Map<String, Object>> recommendations = recommender.recommend("alice", 10);
+		assertEquals(Arrays.asList("s2", "s3", "s4"), songIds(recommendations));
+		assertEquals(2.0f, (Float) recommendations.get(0).get("score"), 1e-6);
+		assertEquals(1.4f, (Float) recommendations.get(1).get("score"), 1e-6);
+		assertEquals(0.4f, (Float) recommendations.get(2).get("score"), 1e-6);
+	}
+
+	@Test
+	public void limitKeepsBestSongs() {
+		preloadAll();
+
+		assertEquals(Arrays.asList("s2", "s3"), songIds(recommender.recommend("alice", 2)));
+		assertEquals(Collections.emptyList(), recommender.recommend("alice", 0));
+	}
+
+	@Test
+	public void unknownUserHasNoRecommendations() {
+		preloadAll();
+
+		assertNull(recommender.recommend("nobody", 10));
+		assertEquals(Collections.emptyList(), recommender.recommend("dave", 10));
+	}
+
+	@Test
+	public void notReadyBeforePreload() {
+		assertFalse(recommender.isReady());
+		preloadAll();
+		assertTrue(recommender.isReady());
+	}
+
+	@Test
+	public void userWrittenDuringPreloadIsLoadedAgain() {
+		long loadSeq = likedSongs.beginPreload();
+		for (Map.Entry<String, List<String>> entry : likes.entrySet()) {
+			if (entry.getKey().equals("dave")) {
+				//Like written while the bulk load runs, its result for dave is discarded
+				likedSongs.onLikeChanged("dave", "s5", true);
+				likes.put("dave", Arrays.asList("s3", "s4", "s5"));
+			}
+			likedSongs.preload(entry.getKey(), entry.getValue(), loadSeq);
+		}
+		likedSongs.endPreload(likes::get);
+
+		assertTrue(recommender.isReady());
+		assertEquals(Arrays.asList("s2", "s3", "s4", "s5"), sorted(songIds(recommender.recommend("alice", 10))));
+	}
+
+	private void preloadAll() {
+		long loadSeq = likedSongs.beginPreload();
+		for (Map.Entry<String, List<String>> entry : likes.entrySet()) {
+			likedSongs.preload(entry.getKey(), entry.getValue(), loadSeq);
+		}
+		likedSongs.endPreload(likes::get);
+	}
+
+	private static List<String> songIds(List<Map<String, Object>> recommendations) {
+		List<String> songIds = new ArrayList<String>();
+		for (Map<String, Object> recommendation : recommendations) {
+			songIds.add((String) recommendation.get("songId"));
+		}
+		return songIds;
+	}
+
+	private static List<String> sorted(List<String> songIds) {
+		Collections.sort(songIds);
+		return songIds;
+	}
+}
@@ -0,0 +1,165 @@
+package com.csc301.songmicroservice;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.springframework.context.ApplicationContext;
+import org.springframework.context.annotation.Profile;
+import org.springframework.core.env.Environment;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+import org.springframework.web.servlet.mvc.method.RequestMappingInfo;
+import org.springframework.web.servlet.mvc.method.annotation.RequestMappingHandlerMapping;
+
+/**
+ * Admission control: every endpoint (first segment of the path, e.g. "getSongById") has its own adaptive concurrency
+ * limit. The filter runs on the worker that already took the request, so a request over the limit is answered with
+ * 503 and Retry-After right there and gives its worker back, instead of holding it while queued behind slow calls.
+ * A slow endpoint such as deleteSongById, which waits on profile microservice, then only sheds its own requests,
+ * while cheap ones such as getSongTitleById keep the remaining workers. Servlet stack only, the "reactive" profile
+ * is not limited.
+ *
+ * Settings are read from "admission.*" and "admission.&lt;endpoint&gt;.*" properties. Endpoints listed in
+ * "admission.excludedEndpoints" (e.g. metrics) are never limited, and paths no controller maps aren't either, so
+ * unknown paths can't create limits.
+ */
+@Component
+@Profile("!reactive")
+public class AdmissionFilter extends OncePerRequestFilter {
+
+	private static final byte[] REJECTED_BODY = "{\"status\":\"SERVICE_UNAVAILABLE\",\"message\":\"overloaded\"}"
+			.getBytes(StandardCharsets.UTF_8);
+
+	private final Environment env;
+	private final ApplicationContext context;
+	private final boolean enabled;
+	private final String retryAfterSeconds;
+	private final Set<String> excluded;
+	private final ConcurrentHashMap<String, AdaptiveConcurrencyLimit> limits =
+			new ConcurrentHashMap<String, AdaptiveConcurrencyLimit>();
+
+	// endpoints mapped by controllers, looked up on first request as handler mappings are created after filters
+	private volatile Set<String> endpoints;
+
+	/**
+	 * Construct AdmissionFilter object.
+	 *
+	 * @param  env      Environment settings are read from.
+	 * @param  context  Context holding the handler mappings of controllers.
+	 */
+	public AdmissionFilter(Environment env, ApplicationContext context) {
+		this.env = env;
+		this.context = context;
+		this.enabled = env.getProperty("admission.enabled", Boolean.class, true);
+		this.retryAfterSeconds = env.getProperty("admission.retryAfterSeconds", "1");
+		this.excluded = new HashSet<String>(Arrays.asList(env.getProperty("admission.excludedEndpoints", String[].class,
+				new String[0])));
+	}
+
+	@Override
+	protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+			throws ServletException, IOException {
+		AdaptiveConcurrencyLimit limit = enabled ? getLimit(getEndpoint(request)) : null;
+		if (limit == null) {
+			chain.doFilter(request, response);
+			return;
+		}
+
+		if (!limit.tryAcquire()) {
+			response.setStatus(HttpStatus.SERVICE_UNAVAILABLE.value());
+			response.setHeader(HttpHeaders.RETRY_AFTER, retryAfterSeconds);
+			response.setContentType(MediaType.APPLICATION_JSON_UTF8_VALUE);
+			response.setContentLength(REJECTED_BODY.length);
+			response.getOutputStream().write(REJECTED_BODY);
+			return;
+		}
+
+		long start = System.nanoTime();
+		boolean failed = true;
+		try {
+			chain.doFilter(request, response);
+			// errors are answered with HTTP 200, FailedResponseAdvice marks them
+			failed = response.getStatus() >= 500 || request.getAttribute(FailedResponseAdvice.FAILED_ATTRIBUTE) != null;
+		} finally {
+			limit.release(System.nanoTime() - start, failed);
+		}
+	}
+
+	/**
+	 * Get current limits of all endpoints that were called.
+	 *
+	 * @return  Mapping from endpoint to its limit, in-flight requests and counts of admitted and rejected requests.
+	 */
+	public Map<String, Map<String, Object>> getStats() {
+		Map<String, Map<String, Object>> stats = new LinkedHashMap<String, Map<String, Object>>();
+		for (Map.Entry<String, AdaptiveConcurrencyLimit> entry : limits.entrySet()) {
+			stats.put(entry.getKey(), entry.getValue().getStats());
+		}
+		return stats;
+	}
+
+	private static String getEndpoint(HttpServletRequest request) {
+		String path = request.getRequestURI().substring(request.getContextPath().length());
+		int start = path.startsWith("/") ? 1 : 0;
+		int end = path.indexOf('/', start);
+		return path.substring(start, end < 0 ? path.length() : end);
+	}
+
+	private AdaptiveConcurrencyLimit getLimit(String endpoint) {
+		AdaptiveConcurrencyLimit limit = limits.get(endpoint);
+		if (limit != null) {
+			return limit;
+		}
+		if (excluded.contains(endpoint) || !getEndpoints().contains(endpoint)) {
+			return null;
+		}
+		return limits.computeIfAbsent(endpoint, this::createLimit);
+	}
+
+	private Set<String> getEndpoints() {
+		Set<String> current = endpoints;
+		if (current == null) {
+			current = new HashSet<String>();
+			RequestMappingHandlerMapping mapping = context.getBean("requestMappingHandlerMapping",
+					RequestMappingHandlerMapping.class);
+			for (RequestMappingInfo info : mapping.getHandlerMethods().keySet()) {
+				for (String pattern : info.getPatternsCondition().getPatterns()) {
+					int start = pattern.startsWith("/") ? 1 : 0;
+					int end = pattern.indexOf('/', start);
+					current.add(pattern.substring(start, end < 0 ? pattern.length() : end));
+				}
+			}
+			endpoints = current;
+		}
+		return current;
+	}
+
+	private AdaptiveConcurrencyLimit createLimit(String endpoint) {
+		return new AdaptiveConcurrencyLimit(getSetting(endpoint, "initialLimit", Integer.class, 20),
+				getSetting(endpoint, "minLimit", Integer.class, 2),
+				getSetting(endpoint, "maxLimit", Integer.class, 100),
+				getSetting(endpoint, "tolerance", Double.class, 2.0),
+				getSetting(endpoint, "backoffRatio", Double.class, 0.9),
+				getSetting(endpoint, "minSlowMs", Long.class, 20L));
+	}
+
+	// setting of the endpoint if it has one, otherwise the one shared by all endpoints
+	private <T> T getSetting(String endpoint, String name, Class<T> type, T defaultValue) {
+		T value = env.getProperty("admission." + endpoint + "." + name, type);
+		return value != null ? value : env.getProperty("admission." + name, type, defaultValue);
+	}
+}
@@ -0,0 +1,219 @@
+package com.csc301.songmicroservice;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+import org.bson.types.ObjectId;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.context.annotation.Profile;
+import org.springframework.stereotype.Repository;
+
+/**
+ * SongDal keeping songs in memory instead of MongoDB, used with the "inmemory" profile for benchmarks and
+ * deployments without a database.
+ *
+ * Answers are the same as SongDalImpl's, including not found for ids that aren't valid ObjectIds. With
+ * "songStore.snapshotFile" set, songs are loaded from that file on startup and written back to it periodically and
+ * on shutdown.
+ */
+@Repository
+@Lazy(false)
+@Profile("inmemory")
+public class InMemorySongDal implements SongDal {
+
+	private final SongStore store;
+
+	private final Path snapshotFile;
+
+	private final long snapshotIntervalSeconds;
+
+	private ScheduledExecutorService snapshotter;
+
+
+	/**
+	 * Construct InMemorySongDal object.
+	 *
+	 * @param  expectedSongs            Number of songs space is reserved for up front.
+	 * @param  offHeap                  Whether song records are kept outside the Java heap.
+	 * @param  snapshotFile             File songs are loaded from and saved to; empty to keep songs only in memory.
+	 * @param  snapshotIntervalSeconds  Seconds between snapshots; 0 to only save on shutdown.
+	 */
+	@Autowired
+	public InMemorySongDal(@Value("${songStore.expectedSongs:100000}") int expectedSongs,
+			@Value("${songStore.offHeap:false}") boolean offHeap,
+			@Value("${songStore.snapshotFile:}") String snapshotFile,
+			@Value("${songStore.snapshotIntervalSeconds:60}") long snapshotIntervalSeconds) {
+		this.store = new SongStore(expectedSongs, offHeap);
+		this.snapshotFile = snapshotFile.isEmpty() ? null : Paths.get(snapshotFile);
+		this.snapshotIntervalSeconds = snapshotIntervalSeconds;
+	}
+
+	@PostConstruct
+	public void loadSnapshot() throws IOException {
+		if (snapshotFile == null) {
+			return;
+		}
+		if (Files.exists(snapshotFile)) {
+			// a corrupt snapshot fails startup rather than silently starting empty
+			int count = store.readSnapshot(snapshotFile);
+			System.out.println("Loaded " + count + " songs from " + snapshotFile);
+		}
+		if (snapshotIntervalSeconds > 0) {
+			snapshotter = Executors.newSingleThreadScheduledExecutor(runnable -> {
+				Thread thread = new Thread(runnable, "song-snapshotter");
+				thread.setDaemon(true);
+				return thread;
+			});
+			snapshotter.scheduleWithFixedDelay(this::saveSnapshot, snapshotIntervalSeconds, snapshotIntervalSeconds,
+					TimeUnit.SECONDS);
+		}
+	}
+
+	@PreDestroy
+	public void shutdown() {
+		if (snapshotFile == null) {
+			return;
+		}
+		if (snapshotter != null) {
+			snapshotter.shutdown();
+			try {
+				snapshotter.awaitTermination(30, TimeUnit.SECONDS);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+		saveSnapshot();
+	}
+
+	private void saveSnapshot() {
+		try {
+			store.writeSnapshot(snapshotFile);
+		} catch (IOException | RuntimeException e) {
+			// previous snapshot is left in place
+			System.out.println("Could not write song snapshot " + snapshotFile + ": " + e.getMessage());
+		}
+	}
+
+
+	/**
+	 * Add a song to memory (duplicates are fine).
+	 *
+	 * @param  songToAdd  Song that is to be added.
+	 * @return            DbQueryStatus with the added song.
+	 */
+	@Override
+	public DbQueryStatus addSong(Song songToAdd) {
+		ObjectId id = new ObjectId();
+		store.put(id.toByteArray(), songToAdd.getVersion(), songToAdd.getSongAmountFavourites(),
+				songToAdd.getSongName(), songToAdd.getSongArtistFullName(), songToAdd.getSongAlbum());
+
+		// same as MongoTemplate.insert, which sets the id of the inserted song
+		songToAdd.setId(id);
+		DbQueryStatus dbQueryStatus = new DbQueryStatus("succ", DbQueryExecResult.QUERY_OK);
+		dbQueryStatus.setData(songToAdd);
+		return dbQueryStatus;
+	}
+
+
+	/**
+	 * Find song that has songId.
+	 *
+	 * @param  songId  Id of song which we want to find.
+	 * @return         Return success and song data if found, else returns not found status.
+	 */
+	@Override
+	public DbQueryStatus findSongById(String songId) {
+		Song foundSong = ObjectId.isValid(songId) ? store.get(new ObjectId(songId).toByteArray()) : null;
+		if (foundSong == null) {
+			return new DbQueryStatus("big L", DbQueryExecResult.QUERY_ERROR_NOT_FOUND);
+		}
+
+		DbQueryStatus dbQueryStatus = new DbQueryStatus("succ", DbQueryExecResult.QUERY_OK);
+		dbQueryStatus.setData(foundSong);
+		return dbQueryStatus;
+	}
+
+
+	/**
+	 * Find song title that has songId.
+	 *
+	 * @param  songId  Id of song for which we want to get its title
+	 * @return         Return success and song title if found, else returns not found status.
+	 */
+	@Override
+	public DbQueryStatus getSongTitleById(String songId) {
+		String title = ObjectId.isValid(songId) ? store.getName(new ObjectId(songId).toByteArray()) : null;
+		if (title == null) {
+			return new DbQueryStatus("big L", DbQueryExecResult.QUERY_ERROR_NOT_FOUND);
+		}
+
+		DbQueryStatus dbQueryStatus = new DbQueryStatus("succ", DbQueryExecResult.QUERY_OK);
+		dbQueryStatus.setData(title);
+		return dbQueryStatus;
+	}
+
+
+	/**
+	 * Delete song.
+	 *
+	 * @param  songId   Id of song which we want to delete.
+	 * @return          Return success and if found and deleted, else returns not found status.
+	 */
+	@Override
+	public DbQueryStatus deleteSongById(String songId) {
+		if (!ObjectId.isValid(songId) || !store.remove(new ObjectId(songId).toByteArray())) {
+			return new DbQueryStatus("big L", DbQueryExecResult.QUERY_ERROR_NOT_FOUND);
+		}
+		return new DbQueryStatus("succ", DbQueryExecResult.QUERY_OK);
+	}
+
+
+	/**
+	 * Update song's AmountFavourites.
+	 *
+	 * @param  songId           Id of song which we want to update amount favourites.
+	 * @param  shouldDecrement  Update song's AmountFavourites by decrementing if true, else by incrementing.
+	 * @return                  Return success and if found and updated, return error if trying to decrement below zero or
+	 *                          returns not found status if song doesn't exist.
+	 */
+	@Override
+	public DbQueryStatus updateSongFavouritesCount(String songId, boolean shouldDecrement) {
+		long result = ObjectId.isValid(songId) ? store.updateFavourites(new ObjectId(songId).toByteArray(), shouldDecrement)
+				: SongStore.NOT_FOUND;
+		if (result == SongStore.BELOW_ZERO) {
+			return new DbQueryStatus("big L - youre trying to decrement below 0", DbQueryExecResult.QUERY_ERROR_GENERIC);
+		} else if (result == SongStore.NOT_FOUND) {
+			return new DbQueryStatus("big L", DbQueryExecResult.QUERY_ERROR_NOT_FOUND);
+		}
+		return new DbQueryStatus("succ", DbQueryExecResult.QUERY_OK);
+	}
+
+
+	/**
+	 * Get version of song, which changes on every write.
+	 *
+	 * @param  songId  Id of song for which we want to get its version.
+	 * @return         Return success and version if found, else returns not found status.
+	 */
+	@Override
+	public DbQueryStatus getSongVersion(String songId) {
+		Long version = ObjectId.isValid(songId) ? store.getVersion(new ObjectId(songId).toByteArray()) : null;
+		if (version == null) {
+			return new DbQueryStatus("big L", DbQueryExecResult.QUERY_ERROR_NOT_FOUND);
+		}
+
+		DbQueryStatus dbQueryStatus = new DbQueryStatus("succ", DbQueryExecResult.QUERY_OK);
+		dbQueryStatus.setData(version);
+		return dbQueryStatus;
+	}
+}
@@ -0,0 +1,68 @@
+package com.csc301.songmicroservice;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.aopalliance.intercept.MethodInterceptor;
+import org.springframework.aop.framework.ProxyFactory;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.stereotype.Component;
+
+/**
+ * Wraps the SongDal in a proxy that records every operation in OperationMetrics and as a span of the current trace,
+ * named by method (e.g. "SongDal.findSongById") and labelled with the DbQueryExecResult it returned.
+ */
+@Component
+public class InstrumentationPostProcessor implements BeanPostProcessor {
+
+	private final OperationMetrics metrics;
+	
+	private final Tracer tracer;
+
+	/**
+	 * Construct InstrumentationPostProcessor object.
+	 *
+	 * @param  metrics  Metrics operations are recorded in.
+	 * @param  tracer   Tracer spans of operations are recorded with.
+	 */
+	public InstrumentationPostProcessor(OperationMetrics metrics, Tracer tracer) {
+		this.metrics = metrics;
+		this.tracer = tracer;
+	}
+
+	@Override
+	public Object postProcessAfterInitialization(Object bean, String beanName) {
+		if (!(bean instanceof SongDal)) {
+			return bean;
+		}
+
+		// operations are created on first call, so only methods that are used show up in metrics
+		ConcurrentHashMap<Method, OperationMetrics.Operation> operations =
+				new ConcurrentHashMap<Method, OperationMetrics.Operation>();
+
+		ProxyFactory factory = new ProxyFactory(bean);
+		factory.addAdvice((MethodInterceptor) invocation -> {
+			Method method = invocation.getMethod();
+			if (method.getDeclaringClass() != SongDal.class) {
+				return invocation.proceed();
+			}
+
+			OperationMetrics.Operation operation = operations.computeIfAbsent(method,
+					m -> metrics.operation("SongDal." + m.getName()));
+			Tracer.Span span = tracer.startSpan(operation.getName());
+			long start = operation.begin();
+			String result = "EXCEPTION";
+			try {
+				DbQueryStatus status = (DbQueryStatus) invocation.proceed();
+				result = status == null ? "NULL" : status.getdbQueryExecResult().name();
+				return status;
+			} finally {
+				operation.end(start, result);
+				if (span != null) {
+					span.end(result);
+				}
+			}
+		});
+		return factory.getProxy();
+	}
+}
@@ -0,0 +1,54 @@
+package com.csc301.songmicroservice;
+
+import org.springframework.beans.factory.annotation.AnnotatedBeanDefinition;
+import org.springframework.beans.factory.config.BeanDefinition;
+import org.springframework.beans.factory.config.BeanFactoryPostProcessor;
+import org.springframework.beans.factory.config.ConfigurableListableBeanFactory;
+import org.springframework.context.EnvironmentAware;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.core.env.Environment;
+import org.springframework.core.type.MethodMetadata;
+import org.springframework.stereotype.Component;
+
+/**
+ * Opt-in lazy creation of all beans, enabled with "startup.lazyInit=true" (set by the "faststartup" profile), so
+ * beans are only created once a request needs them. This Boot version has no "spring.main.lazy-initialization" yet.
+ *
+ * Beans annotated with @Lazy keep their setting, e.g. SongDalImpl has to fill its caches before requests arrive.
+ */
+@Component
+public class LazyInitBeanFactoryPostProcessor implements BeanFactoryPostProcessor, EnvironmentAware {
+
+	private boolean enabled;
+
+	@Override
+	public void setEnvironment(Environment environment) {
+		this.enabled = environment.getProperty("startup.lazyInit", Boolean.class, false);
+	}
+
+	@Override
+	public void postProcessBeanFactory(ConfigurableListableBeanFactory beanFactory) {
+		if (!enabled) {
+			return;
+		}
+
+		for (String beanName : beanFactory.getBeanDefinitionNames()) {
+			BeanDefinition definition = beanFactory.getBeanDefinition(beanName);
+			if (!hasLazyAnnotation(definition)) {
+				definition.setLazyInit(true);
+			}
+		}
+	}
+
+	private static boolean hasLazyAnnotation(BeanDefinition definition) {
+		if (!(definition instanceof AnnotatedBeanDefinition)) {
+			return false;
+		}
+
+		// @Lazy either on the class of a component or on the @Bean method
+		AnnotatedBeanDefinition annotated = (AnnotatedBeanDefinition) definition;
+		MethodMetadata factoryMethod = annotated.getFactoryMethodMetadata();
+		return annotated.getMetadata().hasAnnotation(Lazy.class.getName())
+				|| (factoryMethod != null && factoryMethod.isAnnotated(Lazy.class.getName()));
+	}
+}
@@ -0,0 +1,91 @@
+package com.csc301.songmicroservice;
+
+import java.util.Collections;
+import java.util.Optional;
+
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestMethod;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.ResponseBody;
+import org.springframework.web.bind.annotation.RestController;
+
+/**
+ * Serves metrics and traces, with both the servlet and the "reactive" stack.
+ */
+@RestController
+@RequestMapping("/")
+public class MetricsController {
+
+	// content type of Prometheus text exposition format
+	public static final String PROMETHEUS_TEXT = "text/plain; version=0.0.4; charset=utf-8";
+
+	private final OperationMetrics metrics;
+	
+	private final Tracer tracer;
+	
+	private final SlowQueryLog slowQueries;
+	
+	private final Optional<AdmissionFilter> admission;
+
+	/**
+	 * Construct MetricsController object.
+	 *
+	 * @param  metrics      Metrics of all operations.
+	 * @param  tracer       Tracer holding recent spans.
+	 * @param  slowQueries  Log of slow DB calls.
+	 * @param  admission    Concurrency limits of endpoints, absent with the "reactive" profile.
+	 */
+	public MetricsController(OperationMetrics metrics, Tracer tracer, SlowQueryLog slowQueries,
+			Optional<AdmissionFilter> admission) {
+		this.metrics = metrics;
+		this.tracer = tracer;
+		this.slowQueries = slowQueries;
+		this.admission = admission;
+	}
+
+
+	/**
+	 * Get latencies, results and in-flight counts of all operations.
+	 *
+	 * @return  Metrics in Prometheus text format.
+	 */
+	@RequestMapping(value = "/metrics", method = RequestMethod.GET, produces = PROMETHEUS_TEXT)
+	public @ResponseBody String getMetrics() {
+		return metrics.scrape();
+	}
+
+
+	/**
+	 * Get most recent spans of this service.
+	 *
+	 * @param  traceId  Trace to get spans of; all recent spans if not given.
+	 * @return          Response sent to client, with spans ordered by start time.
+	 */
+	@RequestMapping(value = "/getTraces", method = RequestMethod.GET)
+	public @ResponseBody ResponseEnvelope getTraces(@RequestParam(value = "traceId", required = false) String traceId) {
+		return ResponseEnvelope.of(null, DbQueryExecResult.QUERY_OK, null, tracer.getSpans(traceId));
+	}
+
+
+	/**
+	 * Get DB calls that exceeded the slow query threshold.
+	 *
+	 * @return  Response sent to client, with logged calls, newest first.
+	 */
+	@RequestMapping(value = "/getSlowQueries", method = RequestMethod.GET)
+	public @ResponseBody ResponseEnvelope getSlowQueries() {
+		return ResponseEnvelope.of(null, DbQueryExecResult.QUERY_OK, null, slowQueries.getEntries());
+	}
+
+
+	/**
+	 * Get concurrency limits of endpoints.
+	 *
+	 * @return  Response sent to client, with limit, in-flight and rejected requests per endpoint.
+	 */
+	@RequestMapping(value = "/getAdmissionStats", method = RequestMethod.GET)
+	public @ResponseBody ResponseEnvelope getAdmissionStats() {
+		return ResponseEnvelope.of(null, DbQueryExecResult.QUERY_OK, null,
+				admission.isPresent() ? admission.get().getStats() : Collections.emptyMap());
+	}
+}
@@ -0,0 +1,53 @@
+package com.csc301.songmicroservice;
+
+import org.bson.BsonDocument;
+import org.bson.RawBsonDocument;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import com.mongodb.MongoClientOptions;
+import com.mongodb.event.CommandFailedEvent;
+import com.mongodb.event.CommandListener;
+import com.mongodb.event.CommandStartedEvent;
+import com.mongodb.event.CommandSucceededEvent;
+
+/**
+ * Options of the blocking Mongo client, host and port still come from spring.data.mongodb properties.
+ */
+@Configuration
+public class MongoConfig {
+
+	@Bean
+	public MongoClientOptions mongoClientOptions(OperationMetrics metrics) {
+		return MongoClientOptions.builder().addCommandListener(new ReplySizeListener(metrics)).build();
+	}
+
+	
+	/**
+	 * Adds size of every reply to the operation running on the calling thread, which is where the blocking client
+	 * notifies listeners.
+	 */
+	private static class ReplySizeListener implements CommandListener {
+		private final OperationMetrics metrics;
+
+		ReplySizeListener(OperationMetrics metrics) {
+			this.metrics = metrics;
+		}
+
+		@Override
+		public void commandSucceeded(CommandSucceededEvent event) {
+			BsonDocument response = event.getResponse();
+			if (response instanceof RawBsonDocument) {
+				metrics.addReplyBytes(((RawBsonDocument) response).getByteBuffer().remaining());
+			}
+		}
+
+		@Override
+		public void commandStarted(CommandStartedEvent event) {
+		}
+
+		@Override
+		public void commandFailed(CommandFailedEvent event) {
+		}
+	}
+}
@@ -0,0 +1,210 @@
+package com.csc301.songmicroservice;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+import org.springframework.stereotype.Component;
+
+/**
+ * Latency histograms, result counts and in-flight gauges of SongDal operations and calls to other services.
+ *
+ * Latencies are recorded into HdrHistogram recorders, which writers update without locks or allocation; on every
+ * scrape the values recorded since the previous one are added to the current slice of a sliding window, so quantiles
+ * cover the last minute rather than the whole uptime, while sum and count still add up since start. Operation
+ * running on a thread is tracked as well, so bytes read from Mongo can be attributed to it. Everything is rendered in
+ * Prometheus text format.
+ */
+@Component
+public class OperationMetrics {
+
+	// latencies are kept in microseconds with 2 significant digits, i.e. within 1%
+	private static final int SIGNIFICANT_DIGITS = 2;
+	private static final long MAX_MICROS = TimeUnit.MINUTES.toMicros(10);
+	private static final double[] QUANTILES = { 0.5, 0.99, 0.999 };
+	// quantiles cover the last WINDOW_SLICES slices; values land in the slice of the scrape that collects them
+	private static final int WINDOW_SLICES = 6;
+	private static final long SLICE_NANOS = TimeUnit.SECONDS.toNanos(10);
+
+	private final ConcurrentHashMap<String, Operation> operations = new ConcurrentHashMap<String, Operation>();
+
+	private final ThreadLocal<Operation> currentOperation = new ThreadLocal<Operation>();
+
+	/**
+	 * Metrics of one operation. Handles are meant to be looked up once and kept by the caller.
+	 */
+	public class Operation {
+		private final String name;
+		private final Recorder recorder = new Recorder(MAX_MICROS, SIGNIFICANT_DIGITS);
+		private final LongAdder inFlight = new LongAdder();
+		private final LongAdder totalNanos = new LongAdder();
+		private final LongAdder replyBytes = new LongAdder();
+		private final ConcurrentHashMap<String, LongAdder> results = new ConcurrentHashMap<String, LongAdder>();
+
+		// only touched while scraping, under lock of the operation
+		private final Histogram[] slices = new Histogram[WINDOW_SLICES];
+		private int currentSlice = 0;
+		private long sliceStart = System.nanoTime();
+		private long count = 0;
+		private Histogram interval;
+
+		Operation(String name) {
+			this.name = name;
+			for (int i = 0; i < slices.length; i++) {
+				slices[i] = new Histogram(MAX_MICROS, SIGNIFICANT_DIGITS);
+			}
+		}
+
+		/**
+		 * Mark start of a call on current thread.
+		 *
+		 * @return  Start time to pass to end.
+		 */
+		public long begin() {
+			inFlight.increment();
+			currentOperation.set(this);
+			return System.nanoTime();
+		}
+
+		/**
+		 * Record a finished call.
+		 *
+		 * @param  start   Value returned by begin.
+		 * @param  result  Outcome of the call, e.g. name of a DbQueryExecResult.
+		 */
+		public void end(long start, String result) {
+			long elapsed = System.nanoTime() - start;
+			currentOperation.remove();
+			inFlight.decrement();
+			totalNanos.add(elapsed);
+			recorder.recordValue(Math.min(Math.max(TimeUnit.NANOSECONDS.toMicros(elapsed), 1), MAX_MICROS));
+			results.computeIfAbsent(result, k -> new LongAdder()).increment();
+		}
+
+		public String getName() {
+			return name;
+		}
+
+		/**
+		 * Add values recorded since the previous scrape to the window.
+		 *
+		 * @param  now  Current System.nanoTime().
+		 * @return      Values of the window.
+		 */
+		private synchronized Histogram collect(long now) {
+			interval = recorder.getIntervalHistogram(interval);
+			count += interval.getTotalCount();
+
+			// start a new slice for every slice length passed, dropping the oldest ones
+			long passed = (now - sliceStart) / SLICE_NANOS;
+			for (long i = 0; i < Math.min(passed, WINDOW_SLICES); i++) {
+				currentSlice = (currentSlice + 1) % WINDOW_SLICES;
+				slices[currentSlice].reset();
+			}
+			sliceStart += passed * SLICE_NANOS;
+			slices[currentSlice].add(interval);
+
+			Histogram window = new Histogram(MAX_MICROS, SIGNIFICANT_DIGITS);
+			for (Histogram slice : slices) {
+				window.add(slice);
+			}
+			return window;
+		}
+
+		private synchronized long getCount() {
+			return count;
+		}
+	}
+
+
+	/**
+	 * Get handle of an operation, creating it on first use.
+	 *
+	 * @param  name  Name of the operation, e.g. "SongDal.findSongById".
+	 * @return       Metrics of the operation.
+	 */
+	public Operation operation(String name) {
+		return operations.computeIfAbsent(name, Operation::new);
+	}
+
+
+	/**
+	 * Add bytes read from DB to operation running on current thread, if there is one.
+	 *
+	 * @param  bytes  Size of a reply.
+	 */
+	public void addReplyBytes(long bytes) {
+		Operation operation = currentOperation.get();
+		if (operation != null) {
+			operation.replyBytes.add(bytes);
+		}
+	}
+
+
+	/**
+	 * Render all metrics in Prometheus text exposition format.
+	 *
+	 * @return  Metrics text.
+	 */
+	public String scrape() {
+		return scrape(System.nanoTime());
+	}
+
+
+	// scrape as of a given System.nanoTime(), so tests can move the window
+	String scrape(long now) {
+		Map<String, Operation> sorted = new TreeMap<String, Operation>(operations);
+		StringBuilder durations = new StringBuilder();
+		StringBuilder results = new StringBuilder();
+		StringBuilder inFlight = new StringBuilder();
+		StringBuilder replyBytes = new StringBuilder();
+
+		for (Operation operation : sorted.values()) {
+			String label = "operation=\"" + escape(operation.name) + "\"";
+
+			Histogram window = operation.collect(now);
+			for (double quantile : QUANTILES) {
+				// no calls in the window, as Prometheus clients render it
+				double seconds = window.getTotalCount() == 0 ? Double.NaN
+						: toSeconds(window.getValueAtPercentile(quantile * 100));
+				durations.append("operation_duration_seconds{").append(label).append(",quantile=\"").append(quantile)
+						.append("\"} ").append(seconds).append('\n');
+			}
+			durations.append("operation_duration_seconds_sum{").append(label).append("} ")
+					.append(operation.totalNanos.sum() / 1e9).append('\n');
+			durations.append("operation_duration_seconds_count{").append(label).append("} ")
+					.append(operation.getCount()).append('\n');
+
+			for (Map.Entry<String, LongAdder> result : new TreeMap<String, LongAdder>(operation.results).entrySet()) {
+				results.append("operation_results_total{").append(label).append(",result=\"")
+						.append(escape(result.getKey())).append("\"} ").append(result.getValue().sum()).append('\n');
+			}
+
+			inFlight.append("operation_in_flight{").append(label).append("} ").append(operation.inFlight.sum())
+					.append('\n');
+			replyBytes.append("operation_db_reply_bytes_total{").append(label).append("} ")
+					.append(operation.replyBytes.sum()).append('\n');
+		}
+
+		return "# HELP operation_duration_seconds Latency of operations, quantiles over the last minute.\n"
+				+ "# TYPE operation_duration_seconds summary\n" + durations
+				+ "# HELP operation_results_total Finished operations by result.\n"
+				+ "# TYPE operation_results_total counter\n" + results
+				+ "# HELP operation_in_flight Operations currently running.\n"
+				+ "# TYPE operation_in_flight gauge\n" + inFlight
+				+ "# HELP operation_db_reply_bytes_total Bytes of Mongo replies read by operations.\n"
+				+ "# TYPE operation_db_reply_bytes_total counter\n" + replyBytes;
+	}
+
+	private static double toSeconds(long micros) {
+		return micros / 1e6;
+	}
+
+	private static String escape(String value) {
+		return value.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+	}
+}
@@ -0,0 +1,22 @@
+package com.csc301.songmicroservice;
+
+import org.springframework.boot.web.embedded.netty.NettyReactiveWebServerFactory;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Profile;
+
+/**
+ * Server of the "reactive" profile.
+ * 
+ * Tomcat is on the classpath for the servlet stack, and Spring Boot would otherwise prefer it for WebFlux too, so
+ * Netty is picked explicitly.
+ */
+@Configuration
+@Profile("reactive")
+public class ReactiveServerConfig {
+
+	@Bean
+	public NettyReactiveWebServerFactory nettyReactiveWebServerFactory() {
+		return new NettyReactiveWebServerFactory();
+	}
+}
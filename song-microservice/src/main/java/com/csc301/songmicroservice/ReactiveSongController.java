@@ -0,0 +1,232 @@
+package com.csc301.songmicroservice;
+
+import java.util.Map;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Profile;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.http.server.reactive.ServerHttpRequest;
+import org.springframework.util.LinkedMultiValueMap;
+import org.springframework.util.MultiValueMap;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestMethod;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.server.ServerWebExchange;
+
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+/**
+ * Non-blocking counterpart of SongController, serving the same endpoints on WebFlux with the "reactive" profile.
+ * 
+ * Responses are always JSON, as WebFlux of this Spring version has no CBOR codec; clients asking for CBOR fall back
+ * to JSON.
+ */
+@RestController
+@RequestMapping("/")
+@Profile("reactive")
+public class ReactiveSongController {
+
+	private final ReactiveSongDal songDal;
+
+	private final ResilientHttpClient client;
+	
+	private final String profileMicroserviceUrl;
+	
+	private final boolean includePath;
+	
+	private final SongResponses responses;
+
+	/**
+	 * Construct ReactiveSongController object.
+	 * 
+	 * @param  songDal                 Data Access Layer object, used to interact with DB.  
+	 * @param  client                  Client used for calls to profile microservice.
+	 * @param  profileMicroserviceUrl  Url of profile microservice.
+	 * @param  includePath             Whether responses echo the request path.
+	 * @param  responses               Builder of song responses, holding the response cache.
+	 */
+	public ReactiveSongController(ReactiveSongDal songDal, ResilientHttpClient client,
+			@Value("${profileService.url:http://localhost:3002}") String profileMicroserviceUrl,
+			@Value("${response.includePath:false}") boolean includePath, SongResponses responses) {
+		this.songDal = songDal;
+		this.client = client;
+		this.profileMicroserviceUrl = profileMicroserviceUrl;
+		this.includePath = includePath;
+		this.responses = responses;
+	}
+
+	
+	/**
+	 * Get path echoed in response, if echoing is enabled.
+	 * 
+	 * @param  request  Request sent to server.
+	 * @return          Method and url of request, null if path is not echoed.
+	 */
+	private String getPath(ServerHttpRequest request) {
+		return includePath ? request.getMethodValue() + " " + request.getURI() : null;
+	}
+
+	
+	/**
+	 * Get all song data in database, which has id of songId.
+	 * 
+	 * @param songId   Id of song to find.
+	 * @param request  Request sent to server.
+	 * @return         Response sent to client.
+	 */
+	@RequestMapping(value = "/getSongById/{songId}", method = RequestMethod.GET, produces = MediaType.APPLICATION_JSON_VALUE)
+	public Mono<ResponseEntity<?>> getSongById(@PathVariable("songId") String songId, ServerHttpRequest request) {
+
+		String path = getPath(request);
+		String ifNoneMatch = request.getHeaders().getFirst(HttpHeaders.IF_NONE_MATCH);
+		
+		// client already has current version
+		Mono<String> matchingETag = ifNoneMatch == null ? Mono.empty() : songDal.getSongVersion(songId)
+				.flatMap(versionStatus -> Mono.justOrEmpty(SongResponses.getMatchingETag(versionStatus, false, ifNoneMatch)));
+		
+		return matchingETag
+				.<ResponseEntity<?>>map(SongResponses::notModified)
+				.switchIfEmpty(Mono.defer(() -> {
+					// JSON responses without a path echo are the same for every request, so they are cached pre-serialized
+					boolean cacheable = path == null;
+					ResponseEntity<?> cached = responses.getCached(songId, cacheable);
+					if (cached != null) {
+						return Mono.just(cached);
+					}
+					
+					long loadSeq = responses.beginLoad();
+					return songDal.findSongById(songId).map(dbQueryStatus ->
+							responses.songResponse(songId, path, dbQueryStatus, false, cacheable, loadSeq));
+				}));
+	}
+
+	
+	/**
+	 * Get all song title in database, which has id of songId.
+	 * 
+	 * @param songId   Id of song to find.
+	 * @param request  Request sent to server.
+	 * @return         Response sent to client.
+	 */
+	@RequestMapping(value = "/getSongTitleById/{songId}", method = RequestMethod.GET, produces = MediaType.APPLICATION_JSON_VALUE)
+	public Mono<ResponseEntity<ResponseEnvelope>> getSongTitleById(@PathVariable("songId") String songId,
+			ServerHttpRequest request) {
+
+		String path = getPath(request);
+		String ifNoneMatch = request.getHeaders().getFirst(HttpHeaders.IF_NONE_MATCH);
+		
+		// version is read before title, so a concurrent write can only make the ETag older than the body
+		return songDal.getSongVersion(songId).flatMap(versionStatus -> {
+			String etag = SongResponses.getETag(versionStatus, false);
+			if (etag != null && Utils.matchesETag(ifNoneMatch, etag)) {
+				return Mono.just(SongResponses.<ResponseEnvelope>notModified(etag));
+			}
+			
+			return songDal.getSongTitleById(songId).map(dbQueryStatus -> SongResponses.titleResponse(path, dbQueryStatus, etag));
+		});
+	}
+
+	
+	/**
+	 * Delete song in database, which has id of songId.
+	 * 
+	 * @param songId   Id of song to delete.
+	 * @param request  Request sent to server.
+	 * @return         Response sent to client.
+	 */
+	@RequestMapping(value = "/deleteSongById/{songId}", method = RequestMethod.DELETE)
+	public Mono<ResponseEnvelope> deleteSongById(@PathVariable("songId") String songId, ServerHttpRequest request) {
+
+		String path = getPath(request);
+		
+		return songDal.deleteSongById(songId).flatMap(dbQueryStatus -> {
+			if (dbQueryStatus.getdbQueryExecResult() != DbQueryExecResult.QUERY_OK) {
+				return Mono.just(ResponseEnvelope.of(path, dbQueryStatus));
+			}
+			
+			// if we deleted a song - remove it from all playlists as well, off the event loop as the client blocks
+			responses.invalidate(songId);
+			return Mono.fromCallable(() -> Utils.deleteSongFromPlaylist(songId, client, profileMicroserviceUrl))
+					.subscribeOn(Schedulers.elastic())
+					.thenReturn(ResponseEnvelope.of(path, dbQueryStatus));
+		});
+	}
+
+	
+	/**
+	 * Add song to database.
+	 * 
+	 * @param exchange  Request and response, params are read from query and form data.
+	 * @return          Response sent to client.
+	 */
+	@RequestMapping(value = "/addSong", method = RequestMethod.POST)
+	public Mono<ResponseEnvelope> addSong(ServerWebExchange exchange) {
+
+		String path = getPath(exchange.getRequest());
+
+		return exchange.getFormData().flatMap(formData -> {
+			// same params as @RequestParam map of servlet stack, query params first
+			MultiValueMap<String, String> allParams = new LinkedMultiValueMap<String, String>(exchange.getRequest().getQueryParams());
+			formData.forEach((key, values) -> values.forEach(value -> allParams.add(key, value)));
+			Map<String, String> params = allParams.toSingleValueMap();
+			
+			// ensure "songName", "songArtistFullName", "songAlbum" are only fields and they arent emprty
+			if (params.size() != 3) {
+				return Mono.just(new DbQueryStatus("big L - not the right num of params", DbQueryExecResult.QUERY_ERROR_GENERIC));
+			} else if (params.get(Song.KEY_SONG_NAME) == null || params.get(Song.KEY_SONG_ARTIST_FULL_NAME) == null || params.get(Song.KEY_SONG_ALBUM) == null) {
+				return Mono.just(new DbQueryStatus("big L - missing required param", DbQueryExecResult.QUERY_ERROR_GENERIC));
+			} else if (params.get(Song.KEY_SONG_NAME).isEmpty() || params.get(Song.KEY_SONG_ARTIST_FULL_NAME).isEmpty() || params.get(Song.KEY_SONG_ALBUM).isEmpty()) {
+				return Mono.just(new DbQueryStatus("big L - required param is empty", DbQueryExecResult.QUERY_ERROR_GENERIC));
+			}
+			
+			// call DAL class to insert song into DB
+			Song songToAdd = new Song(params.get(Song.KEY_SONG_NAME), params.get(Song.KEY_SONG_ARTIST_FULL_NAME), params.get(Song.KEY_SONG_ALBUM));
+			return songDal.addSong(songToAdd);
+		}).map(dbQueryStatus -> ResponseEnvelope.of(path, dbQueryStatus));
+	}
+
+	
+	/**
+	 * Update a song's favourite count, whose id is songId.
+	 * 
+	 * @param songId           Id of song for which to update.
+	 * @param shouldDecrement  Determines whether to increment or decrement.
+	 * @param request          Request sent to server.
+	 * @return                 Response sent to client.
+	 */
+	@RequestMapping(value = "/updateSongFavouritesCount/{songId}", method = RequestMethod.PUT)
+	public Mono<ResponseEnvelope> updateFavouritesCount(@PathVariable("songId") String songId,
+			@RequestParam("shouldDecrement") String shouldDecrement, ServerHttpRequest request) {
+
+		String path = getPath(request);
+		
+		// validate that "shouldDecrement" is T/F only
+		if (!shouldDecrement.contentEquals("true") && !shouldDecrement.contentEquals("false")) {
+			return Mono.just(ResponseEnvelope.of(path, new DbQueryStatus("big L - shouldDecrement can only be true or false", DbQueryExecResult.QUERY_ERROR_GENERIC)));
+		}
+		
+		return songDal.updateSongFavouritesCount(songId, Boolean.parseBoolean(shouldDecrement)).map(dbQueryStatus -> {
+			if (dbQueryStatus.getdbQueryExecResult() == DbQueryExecResult.QUERY_OK) {
+				responses.invalidate(songId);
+			}
+			return ResponseEnvelope.of(path, dbQueryStatus);
+		});
+	}
+
+	
+	/**
+	 * Get counters of calls to profile microservice.
+	 * 
+	 * @param  request  Request received by server.
+	 * @return          Response sent to client.
+	 */
+	@RequestMapping(value = "/getClientStats", method = RequestMethod.GET)
+	public Mono<ResponseEnvelope> getClientStats(ServerHttpRequest request) {
+		return Mono.just(ResponseEnvelope.of(getPath(request), DbQueryExecResult.QUERY_OK, null, client.getStats()));
+	}
+}
@@ -0,0 +1,12 @@
+package com.csc301.songmicroservice;
+
+import reactor.core.publisher.Mono;
+
+public interface ReactiveSongDal {
+	Mono<DbQueryStatus> addSong(Song songToAdd);
+	Mono<DbQueryStatus> findSongById(String songId);
+	Mono<DbQueryStatus> getSongTitleById(String songId);
+	Mono<DbQueryStatus> deleteSongById(String songId);
+	Mono<DbQueryStatus> updateSongFavouritesCount(String songId, boolean shouldDecrement);
+	Mono<DbQueryStatus> getSongVersion(String songId);
+}
@@ -0,0 +1,193 @@
+package com.csc301.songmicroservice;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Profile;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.stereotype.Repository;
+
+import reactor.core.publisher.Mono;
+
+/**
+ * Non-blocking counterpart of SongDalImpl, used with the "reactive" profile. Queries and results are the same.
+ */
+@Repository
+@Profile("reactive")
+public class ReactiveSongDalImpl implements ReactiveSongDal {
+
+	private final ReactiveMongoTemplate db;
+	
+	private final SongVersionCache versions;
+
+
+	/**
+	 * Constructs ReactiveSongDalImpl object.
+	 * 
+	 * @param  reactiveMongoTemplate  Spring's built in class for non-blocking mongoDB operations 
+	 * @param  versionCacheSize       Maximum number of song versions kept in memory.
+	 * @param  versionMaxAgeMs        Time a cached version is used before it is read again; 0 to never expire.
+	 */
+	@Autowired
+	public ReactiveSongDalImpl(ReactiveMongoTemplate reactiveMongoTemplate,
+			@Value("${songVersionCache.maxEntries:100000}") int versionCacheSize,
+			@Value("${songVersionCache.maxAgeMs:1000}") long versionMaxAgeMs) {
+		this.db = reactiveMongoTemplate;
+		this.versions = new SongVersionCache(versionCacheSize, versionMaxAgeMs);
+	}
+
+	
+	/**
+	 * Add a song to the database (duplicates are fine).
+	 * 
+	 * @param  songToAdd  Song that is to be added to DB.
+	 * @return            DbQueryStatus with data about success or failure of add operation.
+	 */
+	@Override
+	public Mono<DbQueryStatus> addSong(Song songToAdd) {
+		return db.insert(songToAdd, "songs")
+				.map(addedSong -> {
+					DbQueryStatus dbQueryStatus = new DbQueryStatus("succ", DbQueryExecResult.QUERY_OK);
+					dbQueryStatus.setData(addedSong);
+					return dbQueryStatus;
+				})
+				.defaultIfEmpty(new DbQueryStatus("big L", DbQueryExecResult.QUERY_ERROR_GENERIC));
+	}
+
+	
+	/**
+	 * Find Song in database that has songId.
+	 * 
+	 * @param  songId  Id of song which we want to find.
+	 * @return         Return success and song data if found, else returns not found status.
+	 */
+	@Override
+	public Mono<DbQueryStatus> findSongById(String songId) {
+		return Mono.defer(() -> {
+			long loadSeq = versions.beginLoad();
+			return db.findById(songId, Song.class, "songs")
+					.map(foundSong -> {
+						versions.load(songId, foundSong.getVersion(), loadSeq);
+						DbQueryStatus dbQueryStatus = new DbQueryStatus("succ", DbQueryExecResult.QUERY_OK);
+						dbQueryStatus.setData(foundSong);
+						return dbQueryStatus;
+					});
+		}).defaultIfEmpty(new DbQueryStatus("big L", DbQueryExecResult.QUERY_ERROR_NOT_FOUND));
+	}
+
+	
+	/**
+	 * Find song title in database that has songId.
+	 * 
+	 * @param  songId  Id of song for which we want to get its title
+	 * @return         Return success and song title if found, else returns not found status.
+	 */
+	@Override
+	public Mono<DbQueryStatus> getSongTitleById(String songId) {
+		// only read title and version of the song
+		return Mono.defer(() -> {
+			long loadSeq = versions.beginLoad();
+			Query query = new Query(Criteria.where("_id").is(songId));
+			query.fields().include(Song.KEY_SONG_NAME).include(Song.KEY_VERSION);
+			return db.findOne(query, Song.class, "songs")
+					.map(foundSong -> {
+						versions.load(songId, foundSong.getVersion(), loadSeq);
+						DbQueryStatus dbQueryStatus = new DbQueryStatus("succ", DbQueryExecResult.QUERY_OK);
+						dbQueryStatus.setData(foundSong.getSongName());
+						return dbQueryStatus;
+					});
+		}).defaultIfEmpty(new DbQueryStatus("big L", DbQueryExecResult.QUERY_ERROR_NOT_FOUND));
+	}
+
+	
+	/**
+	 * Delete song from database.
+	 * 
+	 * @param  songId   Id of song which we want to delete.
+	 * @return          Return success and if found and deleted, else returns not found status.
+	 */
+	@Override
+	public Mono<DbQueryStatus> deleteSongById(String songId) {
+		// delete by id, without loading the song first
+		return db.remove(new Query(Criteria.where("_id").is(songId)), Song.class, "songs")
+				.map(deleteResult -> {
+					if (deleteResult.getDeletedCount() == 0) {
+						return new DbQueryStatus("big L", DbQueryExecResult.QUERY_ERROR_NOT_FOUND);
+					}
+					versions.delete(songId);
+					return new DbQueryStatus("succ", DbQueryExecResult.QUERY_OK);
+				});
+	}
+
+
+	/**
+	 * Update song's AmountFavourites in database.
+	 * 
+	 * @param  songId           Id of song which we want to update amount favourites.
+	 * @param  shouldDecrement  Update song's AmountFavourites by decrementing if true, else by incrementing.
+	 * @return                  Return success and if found and updated, return error if trying to decrement below zero or
+	 *                          returns not found status if song not in DB.
+	 */
+	@Override
+	public Mono<DbQueryStatus> updateSongFavouritesCount(String songId, boolean shouldDecrement) {
+		// update count and version in one atomic operation, so concurrent updates aren't lost
+		Query query = new Query(Criteria.where("_id").is(songId));
+		if (shouldDecrement) {
+			query.addCriteria(Criteria.where(Song.KEY_SONG_AMOUNT_FAVOURITES).gt(0));
+		}
+		query.fields().include(Song.KEY_VERSION);
+		Update update = new Update().inc(Song.KEY_SONG_AMOUNT_FAVOURITES, shouldDecrement ? -1 : 1).inc(Song.KEY_VERSION, 1);
+		
+		return db.findAndModify(query, update, FindAndModifyOptions.options().returnNew(true), Song.class, "songs")
+				.map(updatedSong -> {
+					versions.update(songId, updatedSong.getVersion());
+					return new DbQueryStatus("succ", DbQueryExecResult.QUERY_OK);
+				})
+				.switchIfEmpty(Mono.defer(() -> {
+					// either song isnt in DB or its count is already 0
+					if (!shouldDecrement) {
+						return Mono.just(new DbQueryStatus("big L", DbQueryExecResult.QUERY_ERROR_NOT_FOUND));
+					}
+					return db.exists(new Query(Criteria.where("_id").is(songId)), Song.class, "songs")
+							.map(exists -> exists
+									? new DbQueryStatus("big L - youre trying to decrement below 0", DbQueryExecResult.QUERY_ERROR_GENERIC)
+									: new DbQueryStatus("big L", DbQueryExecResult.QUERY_ERROR_NOT_FOUND));
+				}));
+	}
+
+	
+	/**
+	 * Get version of song, which changes on every write.
+	 * 
+	 * @param  songId  Id of song for which we want to get its version.
+	 * @return         Return success and version if found, else returns not found status.
+	 */
+	@Override
+	public Mono<DbQueryStatus> getSongVersion(String songId) {
+		return Mono.defer(() -> {
+			// answer from cache if possible
+			Long version = versions.get(songId);
+			if (version != null) {
+				return Mono.just(version);
+			}
+			
+			// only read version field of the song
+			long loadSeq = versions.beginLoad();
+			Query query = new Query(Criteria.where("_id").is(songId));
+			query.fields().include(Song.KEY_VERSION);
+			return db.findOne(query, Song.class, "songs").map(foundSong -> {
+				versions.load(songId, foundSong.getVersion(), loadSeq);
+				return foundSong.getVersion();
+			});
+		}).filter(version -> version != SongVersionCache.DELETED)
+				.map(version -> {
+					DbQueryStatus dbQueryStatus = new DbQueryStatus("succ", DbQueryExecResult.QUERY_OK);
+					dbQueryStatus.setData(version);
+					return dbQueryStatus;
+				})
+				.defaultIfEmpty(new DbQueryStatus("big L", DbQueryExecResult.QUERY_ERROR_NOT_FOUND));
+	}
+}
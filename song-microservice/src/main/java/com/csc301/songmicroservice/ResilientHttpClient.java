@@ -0,0 +1,317 @@
+package com.csc301.songmicroservice;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.springframework.core.env.Environment;
+import org.springframework.stereotype.Component;
+
+import okhttp3.ConnectionPool;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.Response;
+
+/**
+ * HTTP client for calls to other services.
+ *
+ * All calls share one connection pool, but every call group (e.g. playlist cleanup) has its own
+ * deadline, bulkhead limiting concurrent calls and circuit breaker, so a slow or failing endpoint only ties up its
+ * own group. Settings are read from "httpClient.*" and "httpClient.&lt;group&gt;.*" properties. Every group is
+ * also recorded in OperationMetrics as operation "http.&lt;group&gt;", and every call as a span of the current trace,
+ * whose ids are sent with the request so the called service continues the trace.
+ */
+@Component
+public class ResilientHttpClient {
+
+	private final Environment env;
+	private final OperationMetrics metrics;
+	private final Tracer tracer;
+	private final OkHttpClient client;
+	private final ConcurrentHashMap<String, CallGroup> groups = new ConcurrentHashMap<String, CallGroup>();
+
+	/**
+	 * Reads response of a call. Response is closed once handler returns.
+	 */
+	public interface ResponseHandler<T> {
+		T handle(Response response) throws IOException;
+	}
+
+	/**
+	 * Thrown when a call is rejected without being sent, because its bulkhead is full or its breaker is open.
+	 */
+	public static class CallRejectedException extends IOException {
+		private static final long serialVersionUID = 1L;
+
+		public CallRejectedException(String message) {
+			super(message);
+		}
+	}
+
+	/**
+	 * Thrown by a handler when the response reports a server error. Services answer errors with HTTP 200 and the
+	 * real status in the body, which only the handler reads, so this is how it tells the breaker the call failed.
+	 */
+	public static class ServerErrorException extends IOException {
+		private static final long serialVersionUID = 1L;
+
+		public ServerErrorException(String message) {
+			super(message);
+		}
+	}
+
+	public ResilientHttpClient(Environment env, OperationMetrics metrics, Tracer tracer) {
+		this.env = env;
+		this.metrics = metrics;
+		this.tracer = tracer;
+
+		this.client = new OkHttpClient.Builder()
+				.connectionPool(new ConnectionPool(env.getProperty("httpClient.maxIdleConnections", Integer.class, 32),
+						env.getProperty("httpClient.keepAliveSeconds", Long.class, 300L), TimeUnit.SECONDS))
+				.connectTimeout(env.getProperty("httpClient.connectTimeoutMs", Long.class, 500L), TimeUnit.MILLISECONDS)
+				.retryOnConnectionFailure(false)
+				.build();
+	}
+
+	/**
+	 * Execute a call in a call group.
+	 * 
+	 * @param  groupName  Call group, used to pick deadline, bulkhead and breaker.
+	 * @param  request    Request to send.
+	 * @param  handler    Reads the response.
+	 * @return            Value returned by handler.
+	 * @throws IOException  If call was rejected, failed, reported a server error or its deadline expired.
+	 */
+	public <T> T execute(String groupName, Request request, ResponseHandler<T> handler) throws IOException {
+		CallGroup group = groups.computeIfAbsent(groupName, this::createGroup);
+		group.calls.increment();
+		Tracer.Span span = tracer.startSpan(group.operation.getName());
+		long start = group.operation.begin();
+
+		CircuitBreaker.Permit permit = group.breaker.allowRequest();
+		if (permit == null) {
+			group.shortCircuited.increment();
+			finish(group, span, start, "SHORT_CIRCUITED");
+			throw new CallRejectedException(groupName + ": circuit breaker is open");
+		}
+
+		boolean acquired;
+		try {
+			acquired = group.bulkhead.tryAcquire(group.maxWaitMs, TimeUnit.MILLISECONDS);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			acquired = false;
+		}
+		if (!acquired) {
+			group.rejected.increment();
+			group.breaker.release(permit);
+			finish(group, span, start, "REJECTED");
+			throw new CallRejectedException(groupName + ": bulkhead is full");
+		}
+
+		if (span != null) {
+			request = request.newBuilder()
+					.header(Tracer.TRACE_ID_HEADER, span.getTraceId())
+					.header(Tracer.PARENT_SPAN_ID_HEADER, span.getSpanId())
+					.build();
+		}
+
+		String outcome = "FAILED";
+		try (Response response = group.client.newCall(request).execute()) {
+			T result = handler.handle(response);
+
+			//Server errors count as failures, client errors (e.g. 404) mean the dependency is healthy. A 503 with
+			//Retry-After is the dependency's admission control shedding load, which is neither
+			if (response.code() == 503 && response.header("Retry-After") != null) {
+				outcome = "REJECTED";
+				group.rejected.increment();
+				group.breaker.release(permit);
+			} else if (response.code() >= 500) {
+				outcome = "SERVER_ERROR";
+				group.failures.increment();
+				group.breaker.onFailure(permit);
+			} else {
+				outcome = "OK";
+				group.successes.increment();
+				group.breaker.onSuccess(permit);
+			}
+			return result;
+		} catch (CallRejectedException e) {
+			//Handler found the call shed by the dependency
+			outcome = "REJECTED";
+			group.rejected.increment();
+			group.breaker.release(permit);
+			throw e;
+		} catch (IOException e) {
+			if (e instanceof InterruptedIOException) {
+				group.timeouts.increment();
+				outcome = "TIMEOUT";
+			} else if (e instanceof ServerErrorException) {
+				outcome = "SERVER_ERROR";
+			}
+			group.failures.increment();
+			group.breaker.onFailure(permit);
+			throw e;
+		} catch (RuntimeException e) {
+			//Handler failed on a response, which says nothing about health of the dependency
+			group.breaker.release(permit);
+			throw e;
+		} finally {
+			group.bulkhead.release();
+			finish(group, span, start, outcome);
+		}
+	}
+
+	private void finish(CallGroup group, Tracer.Span span, long start, String outcome) {
+		group.operation.end(start, outcome);
+		if (span != null) {
+			span.end(outcome);
+		}
+	}
+
+	/**
+	 * Get counters of every call group.
+	 * 
+	 * @return  Mapping from group name to its counters and breaker state.
+	 */
+	public Map<String, Map<String, Object>> getStats() {
+		Map<String, Map<String, Object>> stats = new LinkedHashMap<String, Map<String, Object>>();
+		for (Map.Entry<String, CallGroup> entry : groups.entrySet()) {
+			CallGroup group = entry.getValue();
+			Map<String, Object> groupStats = new LinkedHashMap<String, Object>();
+			groupStats.put("calls", group.calls.sum());
+			groupStats.put("successes", group.successes.sum());
+			groupStats.put("failures", group.failures.sum());
+			groupStats.put("timeouts", group.timeouts.sum());
+			groupStats.put("rejected", group.rejected.sum());
+			groupStats.put("shortCircuited", group.shortCircuited.sum());
+			groupStats.put("inFlight", group.maxConcurrent - group.bulkhead.availablePermits());
+			groupStats.put("breakerState", group.breaker.getState());
+			stats.put(entry.getKey(), groupStats);
+		}
+		return stats;
+	}
+
+	private CallGroup createGroup(String name) {
+		String prefix = "httpClient." + name + ".";
+		return new CallGroup(client, metrics.operation("http." + name), env.getProperty(prefix + "deadlineMs", Long.class, 2000L),
+				env.getProperty(prefix + "maxConcurrent", Integer.class, 32),
+				env.getProperty(prefix + "maxWaitMs", Long.class, 0L),
+				new CircuitBreaker(env.getProperty(prefix + "failureThreshold", Integer.class, 5),
+						env.getProperty(prefix + "openMs", Long.class, 5000L)));
+	}
+
+	private static class CallGroup {
+		final OkHttpClient client;
+		final int maxConcurrent;
+		final long maxWaitMs;
+		final Semaphore bulkhead;
+		final CircuitBreaker breaker;
+		final OperationMetrics.Operation operation;
+
+		final LongAdder calls = new LongAdder();
+		final LongAdder successes = new LongAdder();
+		final LongAdder failures = new LongAdder();
+		final LongAdder timeouts = new LongAdder();
+		final LongAdder rejected = new LongAdder();
+		final LongAdder shortCircuited = new LongAdder();
+
+		CallGroup(OkHttpClient shared, OperationMetrics.Operation operation, long deadlineMs, int maxConcurrent,
+				long maxWaitMs, CircuitBreaker breaker) {
+			//Derived client shares the connection pool, only the deadline differs
+			this.client = shared.newBuilder()
+					.callTimeout(deadlineMs, TimeUnit.MILLISECONDS)
+					.readTimeout(deadlineMs, TimeUnit.MILLISECONDS)
+					.build();
+			this.maxConcurrent = maxConcurrent;
+			this.maxWaitMs = maxWaitMs;
+			this.bulkhead = new Semaphore(maxConcurrent);
+			this.breaker = breaker;
+			this.operation = operation;
+		}
+	}
+
+	/**
+	 * Breaker that opens after failureThreshold consecutive failures and rejects calls for openMs. After that one
+	 * trial call is let through: success closes the breaker, failure opens it again. Every allowed call gets a permit
+	 * saying whether it is the trial, and only the trial decides how the breaker leaves HALF_OPEN, so a late result of
+	 * a call let through while the breaker was closed can't.
+	 */
+	static class CircuitBreaker {
+		enum State { CLOSED, OPEN, HALF_OPEN }
+
+		enum Permit { NORMAL, TRIAL }
+
+		private final int failureThreshold;
+		private final long openNanos;
+
+		private State state = State.CLOSED;
+		private int consecutiveFailures = 0;
+		private long openedAt;
+		private boolean trialInFlight = false;
+
+		CircuitBreaker(int failureThreshold, long openMs) {
+			this.failureThreshold = failureThreshold;
+			this.openNanos = TimeUnit.MILLISECONDS.toNanos(openMs);
+		}
+
+		/**
+		 * Permit of a call, null if the call is rejected.
+		 */
+		synchronized Permit allowRequest() {
+			if (state == State.OPEN && System.nanoTime() - openedAt >= openNanos) {
+				state = State.HALF_OPEN;
+			}
+			if (state == State.HALF_OPEN) {
+				if (trialInFlight) {
+					return null;
+				}
+				trialInFlight = true;
+				return Permit.TRIAL;
+			}
+			return state == State.CLOSED ? Permit.NORMAL : null;
+		}
+
+		/**
+		 * Gives back permit of a call that was allowed but whose result says nothing about the dependency.
+		 */
+		synchronized void release(Permit permit) {
+			if (permit == Permit.TRIAL) {
+				trialInFlight = false;
+			}
+		}
+
+		synchronized void onSuccess(Permit permit) {
+			if (permit == Permit.TRIAL) {
+				trialInFlight = false;
+				state = State.CLOSED;
+			}
+			if (state == State.CLOSED) {
+				consecutiveFailures = 0;
+			}
+		}
+
+		synchronized void onFailure(Permit permit) {
+			if (permit == Permit.TRIAL) {
+				trialInFlight = false;
+				open();
+			} else if (state == State.CLOSED && ++consecutiveFailures >= failureThreshold) {
+				open();
+			}
+		}
+
+		private void open() {
+			state = State.OPEN;
+			openedAt = System.nanoTime();
+		}
+
+		synchronized State getState() {
+			return state;
+		}
+	}
+}
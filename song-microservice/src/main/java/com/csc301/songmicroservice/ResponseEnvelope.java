@@ -0,0 +1,78 @@
+package com.csc301.songmicroservice;
+
+import org.springframework.http.HttpStatus;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonInclude.Include;
+import com.fasterxml.jackson.annotation.JsonPropertyOrder;
+
+/**
+ * Immutable body of every response of the service.
+ * 
+ * Serializes to the same fields the handlers used to put in a map: "path" (only if echoed), "status", "message" and
+ * "data" (only on success). Being a fixed type, Jackson resolves its serializer once instead of inspecting every map.
+ */
+@JsonPropertyOrder({ "path", "status", "message", "data" })
+public final class ResponseEnvelope {
+
+	private final String path;
+	private final HttpStatus status;
+	private final String message;
+	private final Object data;
+
+	private ResponseEnvelope(String path, HttpStatus status, String message, Object data) {
+		this.path = path;
+		this.status = status;
+		this.message = message;
+		this.data = data;
+	}
+
+	/**
+	 * Build response from result of a query.
+	 * 
+	 * @param  path           Echoed request path, null to leave it out.
+	 * @param  dbQueryStatus  Result of the query.
+	 * @return                Response sent to client.
+	 */
+	public static ResponseEnvelope of(String path, DbQueryStatus dbQueryStatus) {
+		return of(path, dbQueryStatus.getdbQueryExecResult(), dbQueryStatus.getMessage(), dbQueryStatus.getData());
+	}
+
+	/**
+	 * Build response, data is only sent if query succeeded.
+	 * 
+	 * @param  path               Echoed request path, null to leave it out.
+	 * @param  dbQueryExecResult  Result of the query.
+	 * @param  message            Message of the query.
+	 * @param  data               Data of the query, only sent if query succeeded.
+	 * @return                    Response sent to client.
+	 */
+	public static ResponseEnvelope of(String path, DbQueryExecResult dbQueryExecResult, String message, Object data) {
+		switch (dbQueryExecResult) {
+		case QUERY_OK:
+			return new ResponseEnvelope(path, HttpStatus.OK, message, data);
+		case QUERY_ERROR_NOT_FOUND:
+			return new ResponseEnvelope(path, HttpStatus.NOT_FOUND, message, null);
+		default:
+			return new ResponseEnvelope(path, HttpStatus.INTERNAL_SERVER_ERROR, message, null);
+		}
+	}
+
+	@JsonInclude(Include.NON_NULL)
+	public String getPath() {
+		return path;
+	}
+
+	public HttpStatus getStatus() {
+		return status;
+	}
+
+	public String getMessage() {
+		return message;
+	}
+
+	@JsonInclude(Include.NON_NULL)
+	public Object getData() {
+		return data;
+	}
+}
@@ -0,0 +1,181 @@
+package com.csc301.songmicroservice;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+import org.bson.Document;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.stereotype.Component;
+
+import com.mongodb.client.result.DeleteResult;
+
+/**
+ * Times MongoTemplate calls and keeps a bounded log of the ones slower than "slowQueries.thresholdMs".
+ *
+ * A slow call is logged with its command, filter, projection and update (with passwords redacted), number of
+ * documents returned or changed, time taken and the trace it ran in. With "slowQueries.explainPlans" the query
+ * planner's winning plan of a slow call's filter is looked up and logged as well, which is an extra round trip but
+ * doesn't run the query again.
+ */
+@Component
+public class SlowQueryLog {
+
+	private static final String REDACTED = "<redacted>";
+
+	private final long thresholdNanos;
+	private final int maxEntries;
+	private final boolean explainPlans;
+	private final ObjectProvider<MongoTemplate> mongoTemplate;
+	private final Tracer tracer;
+
+	// newest entries last, oldest are dropped once maxEntries is reached
+	private final ArrayDeque<Map<String, Object>> entries = new ArrayDeque<Map<String, Object>>();
+
+	/**
+	 * Construct SlowQueryLog object.
+	 *
+	 * @param  thresholdMs    Calls taking at least this long are logged.
+	 * @param  maxEntries     Maximum number of logged calls kept.
+	 * @param  explainPlans   Whether plans of slow calls are looked up and logged.
+	 * @param  mongoTemplate  Template plans are looked up with, only used if explainPlans is set.
+	 * @param  tracer         Tracer logged calls are linked to.
+	 */
+	public SlowQueryLog(@Value("${slowQueries.thresholdMs:200}") long thresholdMs,
+			@Value("${slowQueries.maxEntries:256}") int maxEntries,
+			@Value("${slowQueries.explainPlans:false}") boolean explainPlans,
+			ObjectProvider<MongoTemplate> mongoTemplate, Tracer tracer) {
+		this.thresholdNanos = TimeUnit.MILLISECONDS.toNanos(thresholdMs);
+		this.maxEntries = maxEntries;
+		this.explainPlans = explainPlans;
+		this.mongoTemplate = mongoTemplate;
+		this.tracer = tracer;
+	}
+
+
+	/**
+	 * Run a MongoTemplate call, logging it if it was slow.
+	 *
+	 * @param  command     Name of the command, e.g. "find".
+	 * @param  collection  Collection the call runs against.
+	 * @param  query       Query of the call, null if it has none.
+	 * @param  update      Update of the call, null if it has none.
+	 * @param  call        The call.
+	 * @return             Value returned by the call.
+	 */
+	public <T> T run(String command, String collection, Query query, Update update, Supplier<T> call) {
+		long start = System.nanoTime();
+		T result = call.get();
+		long elapsed = System.nanoTime() - start;
+
+		if (elapsed >= thresholdNanos) {
+			log(command, collection, query, update, result, elapsed);
+		}
+		return result;
+	}
+
+
+	/**
+	 * Get logged calls.
+	 *
+	 * @return  Logged calls, newest first.
+	 */
+	public List<Map<String, Object>> getEntries() {
+		List<Map<String, Object>> result;
+		synchronized (entries) {
+			result = new ArrayList<Map<String, Object>>(entries);
+		}
+		Collections.reverse(result);
+		return result;
+	}
+
+	private void log(String command, String collection, Query query, Update update, Object result, long elapsed) {
+		Tracer.Span span = tracer.currentSpan();
+
+		Map<String, Object> entry = new LinkedHashMap<String, Object>();
+		entry.put("timestamp", System.currentTimeMillis());
+		entry.put("traceId", span == null ? null : span.getTraceId());
+		entry.put("command", command);
+		entry.put("collection", collection);
+		if (query != null) {
+			entry.put("filter", toJson(query.getQueryObject()));
+			entry.put("projection", query.getFieldsObject().toJson());
+		}
+		if (update != null) {
+			entry.put("update", toJson(update.getUpdateObject()));
+		}
+		entry.put("documents", countDocuments(result));
+		entry.put("elapsedMs", TimeUnit.NANOSECONDS.toMillis(elapsed));
+		if (explainPlans && query != null) {
+			entry.put("plan", explain(collection, query));
+		}
+
+		synchronized (entries) {
+			if (entries.size() == maxEntries) {
+				entries.removeFirst();
+			}
+			entries.addLast(entry);
+		}
+	}
+
+	private Object explain(String collection, Query query) {
+		try {
+			Document find = new Document("find", collection).append("filter", query.getQueryObject());
+			Document explained = mongoTemplate.getObject().getDb()
+					.runCommand(new Document("explain", find).append("verbosity", "queryPlanner"));
+			Object planner = explained.get("queryPlanner");
+			return planner instanceof Document ? ((Document) ((Document) planner).get("winningPlan")).toJson() : null;
+		} catch (RuntimeException e) {
+			// plan is best effort, the call itself is still logged
+			return "could not explain: " + e.getMessage();
+		}
+	}
+
+	private static long countDocuments(Object result) {
+		if (result == null) {
+			return 0;
+		} else if (result instanceof DeleteResult) {
+			return ((DeleteResult) result).getDeletedCount();
+		} else if (result instanceof Collection) {
+			return ((Collection<?>) result).size();
+		} else if (result instanceof Boolean) {
+			return (Boolean) result ? 1 : 0;
+		}
+		return 1;
+	}
+
+	// rendered as extended JSON, since Jackson doesn't know BSON types such as ObjectId
+	@SuppressWarnings("unchecked")
+	private static String toJson(Document document) {
+		return new Document((Map<String, Object>) redact(document)).toJson();
+	}
+
+	private static Object redact(Object value) {
+		if (value instanceof Map) {
+			Map<String, Object> redacted = new LinkedHashMap<String, Object>();
+			for (Map.Entry<?, ?> entry : ((Map<?, ?>) value).entrySet()) {
+				String key = String.valueOf(entry.getKey());
+				redacted.put(key, key.equalsIgnoreCase("password") ? REDACTED : redact(entry.getValue()));
+			}
+			return redacted;
+		}
+		if (value instanceof List) {
+			List<Object> redacted = new ArrayList<Object>();
+			for (Object element : (List<?>) value) {
+				redacted.add(redact(element));
+			}
+			return redacted;
+		}
+		return value;
+	}
+}
@@ -20,9 +20,15 @@ public class Song {
 	private String songAlbum;
 	private long songAmountFavourites;
 	
+	// bumped on every write, used for ETags
+	@JsonIgnore
+	private long version;
+	
 	public static final String KEY_SONG_NAME = "songName";
 	public static final String KEY_SONG_ARTIST_FULL_NAME = "songArtistFullName";
 	public static final String KEY_SONG_ALBUM = "songAlbum";	
+	public static final String KEY_SONG_AMOUNT_FAVOURITES = "songAmountFavourites";
+	public static final String KEY_VERSION = "version";
 
 
 	public Song(String songName, String songArtistFullName, String songAlbum) {
@@ -64,6 +70,14 @@ public class Song {
 		this.songAmountFavourites = songAmountFavourites;
 	}
 
+	public long getVersion() {
+		return version;
+	}
+
+	public void setVersion(long version) {
+		this.version = version;
+	}
+
 	// ObjectId needs to be converted to string
 	public String getId() {
 		return _id.toHexString();
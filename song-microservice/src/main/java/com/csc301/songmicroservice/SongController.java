@@ -1,7 +1,11 @@
 package com.csc301.songmicroservice;
 
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.http.HttpStatus;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Profile;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestMethod;
@@ -9,35 +13,73 @@ import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.ResponseBody;
 import org.springframework.web.bind.annotation.RestController;
 
-import com.fasterxml.jackson.databind.ObjectMapper;
-
-import java.io.IOException;
-import java.util.HashMap;
 import java.util.Map;
 
-import okhttp3.Call;
-import okhttp3.OkHttpClient;
-import okhttp3.Request;
-import okhttp3.Response;
-
 import javax.servlet.http.HttpServletRequest;
 
 @RestController
 @RequestMapping("/")
+@Profile("!reactive")
 public class SongController {
 
 	@Autowired
 	private final SongDal songDal;
 
-	private OkHttpClient client = new OkHttpClient();
+	private final ResilientHttpClient client;
+	
+	private final String profileMicroserviceUrl;
+	
+	private final boolean includePath;
+	
+	private final SongResponses responses;
 
 	/**
 	 * Construct SongController object.
 	 * 
-	 * @param  songDal  Data Access Layer object, used to interact with DB.  
+	 * @param  songDal                 Data Access Layer object, used to interact with DB.  
+	 * @param  client                  Client used for calls to profile microservice.
+	 * @param  profileMicroserviceUrl  Url of profile microservice.
+	 * @param  includePath             Whether responses echo the request path.
+	 * @param  responses               Builder of song responses, holding the response cache.
 	 */
-	public SongController(SongDal songDal) {
+	public SongController(SongDal songDal, ResilientHttpClient client,
+			@Value("${profileService.url:http://localhost:3002}") String profileMicroserviceUrl,
+			@Value("${response.includePath:false}") boolean includePath, SongResponses responses) {
 		this.songDal = songDal;
+		this.client = client;
+		this.profileMicroserviceUrl = profileMicroserviceUrl;
+		this.includePath = includePath;
+		this.responses = responses;
+	}
+
+	
+	/**
+	 * Get path echoed in response, if echoing is enabled.
+	 * 
+	 * @param  method   HTTP method of request.
+	 * @param  request  Request sent to server.
+	 * @return          Method and url of request, null if path is not echoed.
+	 */
+	private String getPath(String method, HttpServletRequest request) {
+		return includePath ? method + " " + Utils.getUrl(request) : null;
+	}
+
+	
+	/**
+	 * Check If-None-Match of a request against current version of a song, without loading the song.
+	 * 
+	 * @param songId   Id of song.
+	 * @param cbor     Whether response would be CBOR.
+	 * @param request  Request sent to server.
+	 * @return         ETag to answer 304 with, null if song has to be sent.
+	 */
+	private String getMatchingETag(String songId, boolean cbor, HttpServletRequest request) {
+		if (request.getHeader(HttpHeaders.IF_NONE_MATCH) == null) {
+			return null;
+		}
+		
+		return SongResponses.getMatchingETag(songDal.getSongVersion(songId), cbor,
+				request.getHeader(HttpHeaders.IF_NONE_MATCH));
 	}
 
 	
@@ -48,19 +90,30 @@ public class SongController {
 	 * @param request  Request sent to server.
 	 * @return         Response sent to client.
 	 */
-	@RequestMapping(value = "/getSongById/{songId}", method = RequestMethod.GET)
-	public @ResponseBody Map<String, Object> getSongById(@PathVariable("songId") String songId,
+	@RequestMapping(value = "/getSongById/{songId}", method = RequestMethod.GET,
+			produces = { MediaType.APPLICATION_JSON_VALUE, WireFormatConfig.APPLICATION_CBOR_VALUE })
+	public @ResponseBody ResponseEntity<?> getSongById(@PathVariable("songId") String songId,
 			HttpServletRequest request) {
 
-		Map<String, Object> response = new HashMap<String, Object>();
-		response.put("path", String.format("GET %s", Utils.getUrl(request)));
+		String path = getPath("GET", request);
+		boolean cbor = Utils.prefersCbor(request);
+		
+		// client already has current version
+		String matchingETag = getMatchingETag(songId, cbor, request);
+		if (matchingETag != null) {
+			return SongResponses.notModified(matchingETag);
+		}
+		
+		// JSON responses without a path echo are the same for every request, so they are cached pre-serialized
+		boolean cacheable = path == null && !cbor;
+		ResponseEntity<?> cached = responses.getCached(songId, cacheable);
+		if (cached != null) {
+			return cached;
+		}
 
+		long loadSeq = responses.beginLoad();
 		DbQueryStatus dbQueryStatus = songDal.findSongById(songId);
-
-		response.put("message", dbQueryStatus.getMessage());
-		response = Utils.setResponseStatus(response, dbQueryStatus.getdbQueryExecResult(), dbQueryStatus.getData());
-
-		return response;
+		return responses.songResponse(songId, path, dbQueryStatus, cbor, cacheable, loadSeq);
 	}
 
 	
@@ -71,20 +124,22 @@ public class SongController {
 	 * @param request  Request sent to server.
 	 * @return         Response sent to client.
 	 */
-	@RequestMapping(value = "/getSongTitleById/{songId}", method = RequestMethod.GET)
-	public @ResponseBody Map<String, Object> getSongTitleById(@PathVariable("songId") String songId,
+	@RequestMapping(value = "/getSongTitleById/{songId}", method = RequestMethod.GET,
+			produces = { MediaType.APPLICATION_JSON_VALUE, WireFormatConfig.APPLICATION_CBOR_VALUE })
+	public @ResponseBody ResponseEntity<ResponseEnvelope> getSongTitleById(@PathVariable("songId") String songId,
 			HttpServletRequest request) {
 
-		Map<String, Object> response = new HashMap<String, Object>();
-		response.put("path", String.format("GET %s", Utils.getUrl(request)));
+		String path = getPath("GET", request);
+		boolean cbor = Utils.prefersCbor(request);
 		
-		DbQueryStatus dbQueryStatus = songDal.getSongTitleById(songId);
-
+		// version is read before title, so a concurrent write can only make the ETag older than the body
+		String etag = SongResponses.getETag(songDal.getSongVersion(songId), cbor);
+		if (etag != null && Utils.matchesETag(request, etag)) {
+			return SongResponses.notModified(etag);
+		}
 		
-		response.put("message", dbQueryStatus.getMessage());
-		response = Utils.setResponseStatus(response, dbQueryStatus.getdbQueryExecResult(), dbQueryStatus.getData());
-
-		return response;
+		DbQueryStatus dbQueryStatus = songDal.getSongTitleById(songId);
+		return SongResponses.titleResponse(path, dbQueryStatus, etag);
 	}
 
 	
@@ -96,23 +151,20 @@ public class SongController {
 	 * @return         Response sent to client.
 	 */
 	@RequestMapping(value = "/deleteSongById/{songId}", method = RequestMethod.DELETE)
-	public @ResponseBody Map<String, Object> deleteSongById(@PathVariable("songId") String songId,
+	public @ResponseBody ResponseEnvelope deleteSongById(@PathVariable("songId") String songId,
 			HttpServletRequest request) {
 
-		Map<String, Object> response = new HashMap<String, Object>();
-		response.put("path", String.format("DELETE %s", Utils.getUrl(request)));
+		String path = getPath("DELETE", request);
 		
 		DbQueryStatus dbQueryStatus = songDal.deleteSongById(songId);
 		
 		// if we deleted a song - remove it from all playlists as well
 		if (dbQueryStatus.getdbQueryExecResult() == DbQueryExecResult.QUERY_OK) {
-			Utils.deleteSongFromPlaylist(songId, client);
+			responses.invalidate(songId);
+			Utils.deleteSongFromPlaylist(songId, client, profileMicroserviceUrl);
 		}
 
-		response.put("message", dbQueryStatus.getMessage());
-		response = Utils.setResponseStatus(response, dbQueryStatus.getdbQueryExecResult(), dbQueryStatus.getData());
-
-		return response;
+		return ResponseEnvelope.of(path, dbQueryStatus);
 	}
 
 	
@@ -124,11 +176,10 @@ public class SongController {
 	 * @return         Response sent to client.
 	 */
 	@RequestMapping(value = "/addSong", method = RequestMethod.POST)
-	public @ResponseBody Map<String, Object> addSong(@RequestParam Map<String, String> params,
+	public @ResponseBody ResponseEnvelope addSong(@RequestParam Map<String, String> params,
 			HttpServletRequest request) {
 
-		Map<String, Object> response = new HashMap<String, Object>();
-		response.put("path", String.format("POST %s", Utils.getUrl(request)));
+		String path = getPath("POST", request);
 
 		DbQueryStatus dbQueryStatus; 
 		
@@ -148,10 +199,7 @@ public class SongController {
 			dbQueryStatus = songDal.addSong(songToAdd);
 		}
 		
-		response.put("message", dbQueryStatus.getMessage());
-		response = Utils.setResponseStatus(response, dbQueryStatus.getdbQueryExecResult(), dbQueryStatus.getData());
-
-		return response;
+		return ResponseEnvelope.of(path, dbQueryStatus);
 	}
 
 	
@@ -164,11 +212,10 @@ public class SongController {
 	 * @return                 Response sent to client.
 	 */
 	@RequestMapping(value = "/updateSongFavouritesCount/{songId}", method = RequestMethod.PUT)
-	public @ResponseBody Map<String, Object> updateFavouritesCount(@PathVariable("songId") String songId,
+	public @ResponseBody ResponseEnvelope updateFavouritesCount(@PathVariable("songId") String songId,
 			@RequestParam("shouldDecrement") String shouldDecrement, HttpServletRequest request) {
 
-		Map<String, Object> response = new HashMap<String, Object>();
-		response.put("data", String.format("PUT %s", Utils.getUrl(request)));
+		String path = getPath("PUT", request);
 		
 		DbQueryStatus dbQueryStatus; 
 		
@@ -178,13 +225,28 @@ public class SongController {
 			
 			// call DB tell them to update it
 			dbQueryStatus = songDal.updateSongFavouritesCount(songId, boolShouldDecrement);
+			if (dbQueryStatus.getdbQueryExecResult() == DbQueryExecResult.QUERY_OK) {
+				responses.invalidate(songId);
+			}
 		} else {
 			dbQueryStatus = new DbQueryStatus("big L - shouldDecrement can only be true or false", DbQueryExecResult.QUERY_ERROR_GENERIC);
 		}
 		
-		response.put("message", dbQueryStatus.getMessage());
-		response = Utils.setResponseStatus(response, dbQueryStatus.getdbQueryExecResult(), dbQueryStatus.getData());
+		return ResponseEnvelope.of(path, dbQueryStatus);
+	}
+
+	
+	/**
+	 * Get counters of calls to profile microservice.
+	 * 
+	 * @param  request  Request received by server.
+	 * @return          Response sent to client.
+	 */
+	@RequestMapping(value = "/getClientStats", method = RequestMethod.GET)
+	public @ResponseBody ResponseEnvelope getClientStats(HttpServletRequest request) {
+
+		String path = getPath("GET", request);
 
-		return response;
+		return ResponseEnvelope.of(path, DbQueryExecResult.QUERY_OK, null, client.getStats());
 	}
-}
\ No newline at end of file
+}
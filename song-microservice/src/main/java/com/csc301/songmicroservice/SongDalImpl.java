@@ -1,26 +1,259 @@
 package com.csc301.songmicroservice;
 
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
 import org.bson.types.ObjectId;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.context.annotation.Profile;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
 import org.springframework.data.mongodb.core.MongoTemplate;
 import org.springframework.data.mongodb.core.query.Criteria;
 import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
 import org.springframework.stereotype.Repository;
 
+import com.mongodb.client.result.DeleteResult;
+
+/**
+ * SongDal backed by MongoDB, with versions and titles of recently used songs cached in memory.
+ * 
+ * With "songSnapshot.file" set, the songs behind these caches and the cache of getSongById responses are written to
+ * that file periodically and on shutdown. On startup the file is read back and all three caches are filled before
+ * the server accepts requests, so a restarted service doesn't send every request of its working set to DB.
+ */
 @Repository
+@Lazy(false)
+@Profile("!reactive & !inmemory")
 public class SongDalImpl implements SongDal {
 
+	// Songs read from DB per query when saving or loading a snapshot
+	private static final int SNAPSHOT_BATCH_SIZE = 1000;
+
 	private final MongoTemplate db;
+	
+	private final SongVersionCache versions;
+	
+	private final SongTitleCache titles;
+	
+	private final SlowQueryLog slowQueries;
+	
+	private final SongResponseCache songCache;
+	
+	private final Path snapshotFile;
+	
+	private final long snapshotIntervalSeconds;
+	
+	private final int snapshotMaxSongs;
+	
+	private final long snapshotMaxAgeSeconds;
+	
+	private ScheduledExecutorService snapshotter;
 
 
 	/**
 	 * Constructs SongDalImpl object.
 	 * 
-	 * @param  mongoTemplate  Spring's built in class for mongoDB operations 
+	 * @param  mongoTemplate            Spring's built in class for mongoDB operations 
+	 * @param  versionCacheSize         Maximum number of song versions kept in memory.
+	 * @param  versionMaxAgeMs          Time a cached version is used before it is read again; 0 to never expire.
+	 * @param  titleCacheSize           Maximum number of song titles kept in memory.
+	 * @param  titleMaxAgeMs            Time a cached title is used before it is read again; 0 to never expire.
+	 * @param  slowQueries              Times DB calls, logging slow ones.
+	 * @param  songCache                Cache of serialized song responses, saved to and filled from the snapshot.
+	 * @param  snapshotFile             File hot songs are saved to and loaded from on startup; empty to disable.
+	 * @param  snapshotIntervalSeconds  Seconds between snapshots; 0 to only save on shutdown.
+	 * @param  snapshotMaxSongs         Maximum number of songs saved, most recently used ones are kept.
+	 * @param  snapshotMaxAgeSeconds    Snapshots older than this are ignored on startup; 0 to always load.
 	 */
 	@Autowired
-	public SongDalImpl(MongoTemplate mongoTemplate) {
+	public SongDalImpl(MongoTemplate mongoTemplate, @Value("${songVersionCache.maxEntries:100000}") int versionCacheSize,
+			@Value("${songVersionCache.maxAgeMs:1000}") long versionMaxAgeMs,
+			@Value("${songTitleCache.maxEntries:100000}") int titleCacheSize,
+			@Value("${songTitleCache.maxAgeMs:10000}") long titleMaxAgeMs, SlowQueryLog slowQueries,
+			SongResponseCache songCache, @Value("${songSnapshot.file:}") String snapshotFile,
+			@Value("${songSnapshot.intervalSeconds:300}") long snapshotIntervalSeconds,
+			@Value("${songSnapshot.maxSongs:50000}") int snapshotMaxSongs,
+			@Value("${songSnapshot.maxAgeSeconds:86400}") long snapshotMaxAgeSeconds) {
 		this.db = mongoTemplate;
+		this.versions = new SongVersionCache(versionCacheSize, versionMaxAgeMs);
+		this.titles = new SongTitleCache(titleCacheSize, titleMaxAgeMs);
+		this.slowQueries = slowQueries;
+		this.songCache = songCache;
+		this.snapshotFile = snapshotFile.isEmpty() ? null : Paths.get(snapshotFile);
+		this.snapshotIntervalSeconds = snapshotIntervalSeconds;
+		this.snapshotMaxSongs = snapshotMaxSongs;
+		this.snapshotMaxAgeSeconds = snapshotMaxAgeSeconds;
+	}
+
+	@PostConstruct
+	public void loadSnapshot() {
+		if (snapshotFile == null) {
+			return;
+		}
+		try {
+			warmCaches();
+		} catch (IOException | RuntimeException e) {
+			// caches are only an optimization, so a bad snapshot just means starting cold
+			System.out.println("Could not load song snapshot " + snapshotFile + ": " + e.getMessage());
+		}
+		if (snapshotIntervalSeconds > 0) {
+			snapshotter = Executors.newSingleThreadScheduledExecutor(runnable -> {
+				Thread thread = new Thread(runnable, "song-snapshotter");
+				thread.setDaemon(true);
+				return thread;
+			});
+			snapshotter.scheduleWithFixedDelay(this::saveSnapshot, snapshotIntervalSeconds, snapshotIntervalSeconds,
+					TimeUnit.SECONDS);
+		}
+	}
+
+	@PreDestroy
+	public void shutdown() {
+		if (snapshotFile == null) {
+			return;
+		}
+		if (snapshotter != null) {
+			snapshotter.shutdown();
+			try {
+				snapshotter.awaitTermination(30, TimeUnit.SECONDS);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+		saveSnapshot();
+	}
+
+	private void warmCaches() throws IOException {
+		if (!Files.exists(snapshotFile)) {
+			return;
+		}
+		long ageMs = System.currentTimeMillis() - Files.getLastModifiedTime(snapshotFile).toMillis();
+		if (snapshotMaxAgeSeconds > 0 && ageMs > TimeUnit.SECONDS.toMillis(snapshotMaxAgeSeconds)) {
+			System.out.println("Ignoring song snapshot " + snapshotFile + ", it is " + ageMs / 1000 + " s old");
+			return;
+		}
+		
+		// songs are saved least recently used first, so filling the caches in file order keeps their LRU order
+		long start = System.currentTimeMillis();
+		List<Song> saved = new ArrayList<Song>();
+		SongSnapshot.read(snapshotFile, (id, version, favourites, name, artist, album) -> {
+			Song song = new Song(name, artist, album);
+			song.setId(new ObjectId(id));
+			song.setSongAmountFavourites(favourites);
+			song.setVersion(version);
+			saved.add(song);
+		});
+		
+		// songs may have been written by other instances since the snapshot was saved, so check their versions first;
+		// loads started before that check are dropped for songs written meanwhile
+		long versionSeq = versions.beginLoad();
+		long titleSeq = titles.beginLoad();
+		long responseSeq = songCache.beginLoad();
+		Map<String, Long> currentVersions = readVersions(saved);
+		
+		int count = 0;
+		for (Song song : saved) {
+			String songId = song.getId();
+			Long version = currentVersions.get(songId);
+			if (version == null) {
+				// deleted since
+				continue;
+			}
+			versions.load(songId, version, versionSeq);
+			// titles never change
+			titles.load(songId, song.getSongName(), titleSeq);
+			if (version != song.getVersion()) {
+				continue;
+			}
+			
+			// same response getSongById caches when paths aren't echoed
+			DbQueryStatus dbQueryStatus = new DbQueryStatus("succ", DbQueryExecResult.QUERY_OK);
+			dbQueryStatus.setData(song);
+			songCache.put(songId, ResponseEnvelope.of(null, dbQueryStatus), version, responseSeq);
+			count++;
+		}
+		System.out.println("Loaded " + count + " of " + saved.size() + " songs from " + snapshotFile + " in "
+				+ (System.currentTimeMillis() - start) + " ms, the others were changed or deleted since");
+	}
+	
+	// current versions of songs still in DB, read in batches of one query that only returns ids and versions
+	private Map<String, Long> readVersions(List<Song> songs) {
+		Map<String, Long> currentVersions = new HashMap<String, Long>();
+		for (int from = 0; from < songs.size(); from += SNAPSHOT_BATCH_SIZE) {
+			List<ObjectId> batch = new ArrayList<ObjectId>();
+			for (Song song : songs.subList(from, Math.min(from + SNAPSHOT_BATCH_SIZE, songs.size()))) {
+				batch.add(new ObjectId(song.getId()));
+			}
+			Query query = new Query(Criteria.where("_id").in(batch));
+			query.fields().include(Song.KEY_VERSION);
+			for (Song song : slowQueries.run("find", "songs", query, null, () -> db.find(query, Song.class, "songs"))) {
+				currentVersions.put(song.getId(), song.getVersion());
+			}
+		}
+		return currentVersions;
+	}
+
+	private void saveSnapshot() {
+		try {
+			writeSnapshot();
+		} catch (IOException | RuntimeException e) {
+			// previous snapshot is left in place
+			System.out.println("Could not write song snapshot " + snapshotFile + ": " + e.getMessage());
+		}
+	}
+
+	private void writeSnapshot() throws IOException {
+		// hot songs are those with a cached title or response, ordered from least to most recently used
+		Set<String> hotIds = new LinkedHashSet<String>(titles.getSongIds());
+		for (String songId : songCache.getSongIds()) {
+			hotIds.remove(songId);
+			hotIds.add(songId);
+		}
+		List<String> songIds = new ArrayList<String>(hotIds);
+		songIds = songIds.subList(Math.max(0, songIds.size() - snapshotMaxSongs), songIds.size());
+		
+		// songs are read again rather than taken from caches, so counts are current and all fields are known
+		Map<String, Song> songs = new HashMap<String, Song>();
+		for (int from = 0; from < songIds.size(); from += SNAPSHOT_BATCH_SIZE) {
+			List<ObjectId> batch = new ArrayList<ObjectId>();
+			for (String songId : songIds.subList(from, Math.min(from + SNAPSHOT_BATCH_SIZE, songIds.size()))) {
+				if (ObjectId.isValid(songId)) {
+					batch.add(new ObjectId(songId));
+				}
+			}
+			Query query = new Query(Criteria.where("_id").in(batch));
+			for (Song song : slowQueries.run("find", "songs", query, null, () -> db.find(query, Song.class, "songs"))) {
+				songs.put(song.getId(), song);
+			}
+		}
+		
+		try (SongSnapshot.Writer writer = new SongSnapshot.Writer(snapshotFile)) {
+			for (String songId : songIds) {
+				Song song = songs.get(songId);
+				if (song != null) {
+					writer.write(new ObjectId(songId).toByteArray(), song.getVersion(), song.getSongAmountFavourites(),
+							song.getSongName(), song.getSongArtistFullName(), song.getSongAlbum());
+				}
+			}
+			writer.commit();
+		}
 	}
 
 	
@@ -34,7 +267,7 @@ public class SongDalImpl implements SongDal {
 	public DbQueryStatus addSong(Song songToAdd) {
 		// assume songToAdd is properly formatted
 		// add song to songs collection
-		Song addedSong = db.insert(songToAdd, "songs");
+		Song addedSong = slowQueries.run("insert", "songs", null, null, () -> db.insert(songToAdd, "songs"));
 		
 		// validate query result by checking if song was added properly
 		DbQueryStatus dbQueryStatus;
@@ -58,11 +291,16 @@ public class SongDalImpl implements SongDal {
 	@Override
 	public DbQueryStatus findSongById(String songId) {
 		// find song
-		Song foundSong = db.findById(songId, Song.class, "songs");
+		long loadSeq = versions.beginLoad();
+		long titleSeq = titles.beginLoad();
+		Song foundSong = slowQueries.run("find", "songs", new Query(Criteria.where("_id").is(songId)), null,
+				() -> db.findById(songId, Song.class, "songs"));
 		
 		// validate query result by checking if there was a result
 		DbQueryStatus dbQueryStatus;
 		if (foundSong != null) {
+			versions.load(songId, foundSong.getVersion(), loadSeq);
+			titles.load(songId, foundSong.getSongName(), titleSeq);
 			dbQueryStatus = new DbQueryStatus("succ", DbQueryExecResult.QUERY_OK);
 			dbQueryStatus.setData(foundSong);
 		} else {
@@ -81,11 +319,30 @@ public class SongDalImpl implements SongDal {
 	 */
 	@Override
 	public DbQueryStatus getSongTitleById(String songId) {
-		DbQueryStatus dbQueryStatus = findSongById(songId);
+		DbQueryStatus dbQueryStatus;
 		
-		if (dbQueryStatus.getData() != null && dbQueryStatus.getdbQueryExecResult() == DbQueryExecResult.QUERY_OK) {
-			Song foundSong = (Song) dbQueryStatus.getData();
+		// titles never change, so a cached one is current until song is deleted or it expires
+		String title = titles.get(songId);
+		if (title != null) {
+			dbQueryStatus = new DbQueryStatus("succ", DbQueryExecResult.QUERY_OK);
+			dbQueryStatus.setData(title);
+			return dbQueryStatus;
+		}
+		
+		// only read title and version of the song
+		long loadSeq = versions.beginLoad();
+		long titleSeq = titles.beginLoad();
+		Query query = new Query(Criteria.where("_id").is(songId));
+		query.fields().include(Song.KEY_SONG_NAME).include(Song.KEY_VERSION);
+		Song foundSong = slowQueries.run("find", "songs", query, null, () -> db.findOne(query, Song.class, "songs"));
+		
+		if (foundSong != null) {
+			versions.load(songId, foundSong.getVersion(), loadSeq);
+			titles.load(songId, foundSong.getSongName(), titleSeq);
+			dbQueryStatus = new DbQueryStatus("succ", DbQueryExecResult.QUERY_OK);
 			dbQueryStatus.setData(foundSong.getSongName());
+		} else {
+			dbQueryStatus = new DbQueryStatus("big L", DbQueryExecResult.QUERY_ERROR_NOT_FOUND);
 		}
 		
 		return dbQueryStatus;
@@ -100,20 +357,17 @@ public class SongDalImpl implements SongDal {
 	 */
 	@Override
 	public DbQueryStatus deleteSongById(String songId) {
-		DbQueryStatus dbQueryStatus;
-		
-		// get Song for id
-		DbQueryStatus dbFindStatus = findSongById(songId);
-		if (dbFindStatus.getData() == null || dbFindStatus.getdbQueryExecResult() != DbQueryExecResult.QUERY_OK) {
+		// delete by id, without loading the song first
+		Query query = new Query(Criteria.where("_id").is(songId));
+		DeleteResult deleteResult = slowQueries.run("delete", "songs", query, null,
+				() -> db.remove(query, Song.class, "songs"));
+		if (deleteResult.getDeletedCount() == 0) {
 			// handle if id isnt valid
-			dbQueryStatus = new DbQueryStatus("big L", DbQueryExecResult.QUERY_ERROR_NOT_FOUND);
-			return dbQueryStatus;
+			return new DbQueryStatus("big L", DbQueryExecResult.QUERY_ERROR_NOT_FOUND);
 		}
 		
-		// once we have object - delete
-		Song foundSong = (Song) dbFindStatus.getData();
-		db.remove(foundSong, "songs");
-		
+		versions.delete(songId);
+		titles.delete(songId);
 		return new DbQueryStatus("succ", DbQueryExecResult.QUERY_OK);
 	}
 
@@ -128,34 +382,60 @@ public class SongDalImpl implements SongDal {
 	 */
 	@Override
 	public DbQueryStatus updateSongFavouritesCount(String songId, boolean shouldDecrement) {
-		// find song
-		DbQueryStatus dbQueryStatus = findSongById(songId);
+		// update count and version in one atomic operation, so concurrent updates aren't lost
+		Query query = new Query(Criteria.where("_id").is(songId));
+		if (shouldDecrement) {
+			query.addCriteria(Criteria.where(Song.KEY_SONG_AMOUNT_FAVOURITES).gt(0));
+		}
+		query.fields().include(Song.KEY_VERSION);
+		Update update = new Update().inc(Song.KEY_SONG_AMOUNT_FAVOURITES, shouldDecrement ? -1 : 1).inc(Song.KEY_VERSION, 1);
 		
-		if (dbQueryStatus.getData() != null && dbQueryStatus.getdbQueryExecResult() == DbQueryExecResult.QUERY_OK) {
-			Song foundSong = (Song) dbQueryStatus.getData();
-			
-			// update amountFav
-			long newAmountFav = foundSong.getSongAmountFavourites();
-			if (shouldDecrement) {
-				if (newAmountFav > 0) {
-					newAmountFav--;
-				} else {
-					dbQueryStatus = new DbQueryStatus("big L - youre trying to decrement below 0", DbQueryExecResult.QUERY_ERROR_GENERIC);
-					return dbQueryStatus;
-				}
-			} else {
-				newAmountFav++;
+		Song updatedSong = slowQueries.run("findAndModify", "songs", query, update,
+				() -> db.findAndModify(query, update, FindAndModifyOptions.options().returnNew(true), Song.class, "songs"));
+		if (updatedSong == null) {
+			// either song isnt in DB or its count is already 0
+			Query byId = new Query(Criteria.where("_id").is(songId));
+			if (shouldDecrement && slowQueries.run("count", "songs", byId, null, () -> db.exists(byId, Song.class, "songs"))) {
+				return new DbQueryStatus("big L - youre trying to decrement below 0", DbQueryExecResult.QUERY_ERROR_GENERIC);
 			}
+			return new DbQueryStatus("big L", DbQueryExecResult.QUERY_ERROR_NOT_FOUND);
+		}
+		
+		versions.update(songId, updatedSong.getVersion());
+		return new DbQueryStatus("succ", DbQueryExecResult.QUERY_OK);
+	}
+
+	
+	/**
+	 * Get version of song, which changes on every write.
+	 * 
+	 * @param  songId  Id of song for which we want to get its version.
+	 * @return         Return success and version if found, else returns not found status.
+	 */
+	@Override
+	public DbQueryStatus getSongVersion(String songId) {
+		DbQueryStatus dbQueryStatus;
+		
+		// answer from cache if possible
+		Long version = versions.get(songId);
+		if (version == null) {
+			// only read version field of the song
+			long loadSeq = versions.beginLoad();
+			Query query = new Query(Criteria.where("_id").is(songId));
+			query.fields().include(Song.KEY_VERSION);
+			Song foundSong = slowQueries.run("find", "songs", query, null, () -> db.findOne(query, Song.class, "songs"));
 			
-			// update song
-			foundSong.setSongAmountFavourites(newAmountFav);
-			
-			// save it in DB
-			db.save(foundSong, "songs");
-			
-			dbQueryStatus.setData(null);
+			if (foundSong == null) {
+				return new DbQueryStatus("big L", DbQueryExecResult.QUERY_ERROR_NOT_FOUND);
+			}
+			version = foundSong.getVersion();
+			versions.load(songId, version, loadSeq);
+		} else if (version == SongVersionCache.DELETED) {
+			return new DbQueryStatus("big L", DbQueryExecResult.QUERY_ERROR_NOT_FOUND);
 		}
 		
+		dbQueryStatus = new DbQueryStatus("succ", DbQueryExecResult.QUERY_OK);
+		dbQueryStatus.setData(version);
 		return dbQueryStatus;
 	}
 }
\ No newline at end of file
@@ -1,13 +1,60 @@
 package com.csc301.songmicroservice;
 
+import java.io.IOException;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.context.ConfigurableApplicationContext;
 
 @SpringBootApplication
 public class SongMicroserviceApplication {
 
+	// requests of the training run: metrics, then reads of a song that doesn't exist, which go through the
+	// controllers, caches, DAL and Mongo driver without changing data
+	private static final List<String> TRAINING_REQUESTS = Arrays.asList("/metrics",
+			"/getSongTitleById/000000000000000000000000", "/getSongById/000000000000000000000000");
+
 	public static void main(String[] args) {
-		SpringApplication.run(SongMicroserviceApplication.class, args);
+		ConfigurableApplicationContext context = SpringApplication.run(SongMicroserviceApplication.class, args);
+
+		// training run of the fast-startup build, classes loaded until exit are written to its class data archive
+		if (context.getEnvironment().getProperty("startup.exitAfterStart", Boolean.class, false)) {
+			sendTrainingRequests(context);
+			System.exit(SpringApplication.exit(context));
+		}
+
 		System.out.println("Song Microservice is running on port 3001");
 	}
+
+
+	/**
+	 * Send requests to real endpoints of the service itself, so classes of the request and database paths are loaded
+	 * as well. Without a database the first read fails once the driver gives up, which still loads most of its
+	 * classes, and the remaining ones are skipped rather than waiting for the database again.
+	 *
+	 * @param  context  Context of the started service.
+	 */
+	private static void sendTrainingRequests(ConfigurableApplicationContext context) {
+		String port = context.getEnvironment().getProperty("local.server.port");
+		for (String path : TRAINING_REQUESTS) {
+			try {
+				HttpURLConnection connection = (HttpURLConnection) new URL("http://localhost:" + port + path)
+						.openConnection();
+				connection.setReadTimeout((int) TimeUnit.MINUTES.toMillis(1));
+				int status = connection.getResponseCode();
+				System.out.println("Training request " + path + " answered with " + status);
+				connection.disconnect();
+				if (status >= 500) {
+					return;
+				}
+			} catch (IOException e) {
+				System.out.println("Training request " + path + " failed: " + e.getMessage());
+			}
+		}
+	}
 }
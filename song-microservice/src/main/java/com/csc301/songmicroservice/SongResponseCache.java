@@ -0,0 +1,152 @@
+package com.csc301.songmicroservice;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * Bounded cache of serialized JSON responses of getSongById, least recently used songs are evicted first.
+ * 
+ * Hits are written to the client as they are, skipping both the DB query and Jackson. Entries are invalidated
+ * whenever a song is updated or deleted. Writes through other instances aren't seen here, so entries also expire
+ * maxAgeMs after they were loaded.
+ */
+@Component
+public class SongResponseCache {
+
+	private final ObjectMapper objectMapper;
+	private final Map<String, CachedResponse> entries;
+	
+	private final long maxAgeNanos;
+
+	// Invalidations of every song, used to drop entries loaded before a concurrent write of the same song
+	private final WriteSequence writes;
+
+	/**
+	 * Construct SongResponseCache object.
+	 * 
+	 * @param  objectMapper  Mapper used for all JSON responses, so cached bytes match uncached ones.
+	 * @param  maxEntries    Maximum number of cached songs.
+	 * @param  maxAgeMs      Time a response is used before the song is loaded again; 0 to never expire.
+	 */
+	public SongResponseCache(ObjectMapper objectMapper, @Value("${songCache.maxEntries:10000}") int maxEntries,
+			@Value("${songCache.maxAgeMs:1000}") long maxAgeMs) {
+		this.objectMapper = objectMapper;
+		this.maxAgeNanos = TimeUnit.MILLISECONDS.toNanos(maxAgeMs);
+		this.writes = new WriteSequence(maxEntries);
+		this.entries = new LinkedHashMap<String, CachedResponse>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String, CachedResponse> eldest) {
+				return size() > maxEntries;
+			}
+		};
+	}
+
+	
+	/**
+	 * Serialized response together with version of the song it was built from.
+	 */
+	public static class CachedResponse {
+		private final byte[] body;
+		private final long version;
+		private final long cachedAt = System.nanoTime();
+
+		CachedResponse(byte[] body, long version) {
+			this.body = body;
+			this.version = version;
+		}
+
+		public byte[] getBody() {
+			return body;
+		}
+
+		public long getVersion() {
+			return version;
+		}
+	}
+
+	
+	/**
+	 * Get cached response of a song.
+	 * 
+	 * @param  songId  Id of song.
+	 * @return         Cached response, null if song is not cached or expired.
+	 */
+	public synchronized CachedResponse get(String songId) {
+		CachedResponse cached = entries.get(songId);
+		if (cached != null && maxAgeNanos > 0 && System.nanoTime() - cached.cachedAt >= maxAgeNanos) {
+			entries.remove(songId);
+			return null;
+		}
+		return cached;
+	}
+
+	
+	/**
+	 * Start loading a song, which is finished by calling put.
+	 * 
+	 * @return  Sequence number to pass to put.
+	 */
+	public long beginLoad() {
+		return writes.beginLoad();
+	}
+
+	
+	/**
+	 * Serialize a response and cache it, unless the song was invalidated since the load started.
+	 * 
+	 * @param  songId    Id of song.
+	 * @param  response  Response of getSongById.
+	 * @param  version   Version of song response was built from.
+	 * @param  loadSeq   Value returned by beginLoad before song was read from DB.
+	 * @return           Serialized response, null if it could not be serialized.
+	 */
+	public CachedResponse put(String songId, ResponseEnvelope response, long version, long loadSeq) {
+		CachedResponse cached;
+		try {
+			cached = new CachedResponse(objectMapper.writeValueAsBytes(response), version);
+		} catch (JsonProcessingException e) {
+			return null;
+		}
+
+		synchronized (this) {
+			if (!writes.isWrittenSince(songId, loadSeq)) {
+				entries.put(songId, cached);
+			}
+		}
+		return cached;
+	}
+
+	
+	/**
+	 * Drop cached response of a song after it was updated or deleted.
+	 * 
+	 * @param  songId  Id of song.
+	 */
+	public void invalidate(String songId) {
+		writes.write(songId);
+		synchronized (this) {
+			entries.remove(songId);
+		}
+	}
+
+	
+	/**
+	 * Get ids of all cached songs.
+	 * 
+	 * @return  Ids of songs, least recently used first.
+	 */
+	public synchronized List<String> getSongIds() {
+		return new ArrayList<String>(entries.keySet());
+	}
+}
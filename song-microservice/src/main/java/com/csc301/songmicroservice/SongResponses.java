@@ -0,0 +1,157 @@
+package com.csc301.songmicroservice;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Component;
+
+/**
+ * Builds song responses of SongController and ReactiveSongController: ETags, 304 answers and responses of
+ * getSongById served from and put into the cache of serialized responses. Controllers only differ in how they get
+ * the data, so both stacks answer with the same headers and bodies.
+ */
+@Component
+public class SongResponses {
+
+	private final SongResponseCache songCache;
+
+	/**
+	 * Construct SongResponses object.
+	 * 
+	 * @param  songCache  Cache of serialized song responses.
+	 */
+	public SongResponses(SongResponseCache songCache) {
+		this.songCache = songCache;
+	}
+
+	
+	/**
+	 * Get ETag of a song from the result of a version lookup.
+	 * 
+	 * @param  versionStatus  Result of getSongVersion.
+	 * @param  cbor           Whether response is CBOR.
+	 * @return                Quoted ETag, null if version wasn't found.
+	 */
+	public static String getETag(DbQueryStatus versionStatus, boolean cbor) {
+		if (versionStatus.getdbQueryExecResult() != DbQueryExecResult.QUERY_OK) {
+			return null;
+		}
+		return Utils.getETag((Long) versionStatus.getData(), cbor);
+	}
+
+	
+	/**
+	 * Get ETag to answer 304 with, if client already has the current version.
+	 * 
+	 * @param  versionStatus  Result of getSongVersion.
+	 * @param  cbor           Whether response would be CBOR.
+	 * @param  ifNoneMatch    If-None-Match header of request, may be null.
+	 * @return                Matching ETag, null if song has to be sent.
+	 */
+	public static String getMatchingETag(DbQueryStatus versionStatus, boolean cbor, String ifNoneMatch) {
+		String etag = getETag(versionStatus, cbor);
+		return etag != null && Utils.matchesETag(ifNoneMatch, etag) ? etag : null;
+	}
+
+	
+	/**
+	 * Build 304 response.
+	 * 
+	 * @param  etag  ETag that matched.
+	 * @return       Response without body.
+	 */
+	public static <T> ResponseEntity<T> notModified(String etag) {
+		return ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(etag).build();
+	}
+
+	
+	/**
+	 * Build getSongTitleById response. ETag is only sent with a title, as errors have no version.
+	 * 
+	 * @param  path           Path echoed in response, may be null.
+	 * @param  dbQueryStatus  Result of getSongTitleById.
+	 * @param  etag           ETag read before the title, may be null.
+	 * @return                Response sent to client.
+	 */
+	public static ResponseEntity<ResponseEnvelope> titleResponse(String path, DbQueryStatus dbQueryStatus, String etag) {
+		if (etag != null && dbQueryStatus.getdbQueryExecResult() == DbQueryExecResult.QUERY_OK) {
+			return ResponseEntity.ok().eTag(etag).body(ResponseEnvelope.of(path, dbQueryStatus));
+		}
+		return ResponseEntity.ok(ResponseEnvelope.of(path, dbQueryStatus));
+	}
+
+	
+	/**
+	 * Get cached getSongById response of a song. Only JSON responses without a path echo are cached, as they are the
+	 * same for every request.
+	 * 
+	 * @param  songId     Id of song.
+	 * @param  cacheable  Whether the response of this request may come from the cache.
+	 * @return            Pre-serialized JSON response, null if it has to be loaded.
+	 */
+	public ResponseEntity<?> getCached(String songId, boolean cacheable) {
+		if (!cacheable) {
+			return null;
+		}
+		SongResponseCache.CachedResponse cached = songCache.get(songId);
+		if (cached == null) {
+			return null;
+		}
+		return jsonResponse(Utils.getETag(cached.getVersion(), false), cached);
+	}
+
+	
+	/**
+	 * Start loading a song whose response may be cached.
+	 * 
+	 * @return  Sequence number to pass to songResponse.
+	 */
+	public long beginLoad() {
+		return songCache.beginLoad();
+	}
+
+	
+	/**
+	 * Build getSongById response of a loaded song, and cache it if allowed.
+	 * 
+	 * @param  songId         Id of song.
+	 * @param  path           Path echoed in response, may be null.
+	 * @param  dbQueryStatus  Result of findSongById.
+	 * @param  cbor           Whether response is CBOR.
+	 * @param  cacheable      Whether the response may be cached.
+	 * @param  loadSeq        Sequence number of beginLoad, called before the song was read.
+	 * @return                Response sent to client.
+	 */
+	public ResponseEntity<?> songResponse(String songId, String path, DbQueryStatus dbQueryStatus, boolean cbor,
+			boolean cacheable, long loadSeq) {
+		ResponseEnvelope response = ResponseEnvelope.of(path, dbQueryStatus);
+		if (dbQueryStatus.getdbQueryExecResult() != DbQueryExecResult.QUERY_OK) {
+			return ResponseEntity.ok(response);
+		}
+
+		long version = ((Song) dbQueryStatus.getData()).getVersion();
+		String etag = Utils.getETag(version, cbor);
+		if (cacheable) {
+			SongResponseCache.CachedResponse cached = songCache.put(songId, response, version, loadSeq);
+			if (cached != null) {
+				return jsonResponse(etag, cached);
+			}
+		}
+		return ResponseEntity.ok().eTag(etag).body(response);
+	}
+
+	
+	/**
+	 * Drop cached response of a song after it was changed.
+	 * 
+	 * @param  songId  Id of song.
+	 */
+	public void invalidate(String songId) {
+		songCache.invalidate(songId);
+	}
+
+	
+	private static ResponseEntity<?> jsonResponse(String etag, SongResponseCache.CachedResponse cached) {
+		return ResponseEntity.ok().eTag(etag).contentType(MediaType.APPLICATION_JSON_UTF8).body(cached.getBody());
+	}
+}
@@ -0,0 +1,186 @@
+package com.csc301.songmicroservice;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * Binary snapshot file of songs.
+ *
+ * Layout, all numbers big-endian: magic "SNGS", format version, then every song as 12-byte id, version, favourites
+ * count and name, artist and album (each as length and UTF-8 bytes), then number of songs and CRC32 of everything
+ * before it. Files are written to a temporary file that replaces the old one only once complete, and are read through
+ * a memory mapping.
+ */
+public final class SongSnapshot {
+
+	private static final int MAGIC = 0x534e4753;
+	public static final int FORMAT_VERSION = 1;
+
+	// number of songs and checksum
+	private static final int TRAILER_BYTES = 4 + 8;
+	private static final int HEADER_BYTES = 4 + 4;
+
+	private SongSnapshot() {
+	}
+
+
+	/**
+	 * Receives songs read from a snapshot.
+	 */
+	public interface SongConsumer {
+		void accept(byte[] id, long version, long favourites, String name, String artist, String album);
+	}
+
+
+	/**
+	 * Writes a snapshot, which only replaces the target file once commit is called.
+	 */
+	public static class Writer implements Closeable {
+		private final Path target;
+		private final Path temp;
+		private final FileOutputStream file;
+		private final CheckedOutputStream checked;
+		private final DataOutputStream out;
+		private int count = 0;
+		private boolean committed = false;
+
+		/**
+		 * Construct Writer object.
+		 *
+		 * @param  target       File the snapshot is written to.
+		 * @throws IOException  If temporary file could not be created.
+		 */
+		public Writer(Path target) throws IOException {
+			this.target = target;
+			Path dir = target.toAbsolutePath().getParent();
+			Files.createDirectories(dir);
+			this.temp = Files.createTempFile(dir, target.getFileName().toString(), ".tmp");
+			this.file = new FileOutputStream(temp.toFile());
+			this.checked = new CheckedOutputStream(new BufferedOutputStream(file, 1 << 16), new CRC32());
+			this.out = new DataOutputStream(checked);
+			out.writeInt(MAGIC);
+			out.writeInt(FORMAT_VERSION);
+		}
+
+		/**
+		 * Append a song.
+		 *
+		 * @param  id           12-byte ObjectId of the song.
+		 * @param  version      Version of the song.
+		 * @param  favourites   Favourites count of the song.
+		 * @param  name         Name of the song.
+		 * @param  artist       Artist full name of the song.
+		 * @param  album        Album of the song.
+		 * @throws IOException  If song could not be written.
+		 */
+		public void write(byte[] id, long version, long favourites, String name, String artist, String album)
+				throws IOException {
+			out.write(id, 0, 12);
+			out.writeLong(version);
+			out.writeLong(favourites);
+			writeString(name);
+			writeString(artist);
+			writeString(album);
+			count++;
+		}
+
+		private void writeString(String value) throws IOException {
+			byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+			out.writeInt(bytes.length);
+			out.write(bytes);
+		}
+
+		/**
+		 * Finish the snapshot and replace the target file with it.
+		 *
+		 * @throws IOException  If snapshot could not be written.
+		 */
+		public void commit() throws IOException {
+			out.writeInt(count);
+			out.flush();
+			// checksum covers everything but itself
+			long crc = checked.getChecksum().getValue();
+			out.writeLong(crc);
+			out.flush();
+			file.getFD().sync();
+			out.close();
+			Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+			committed = true;
+		}
+
+		@Override
+		public void close() throws IOException {
+			if (!committed) {
+				out.close();
+				Files.deleteIfExists(temp);
+			}
+		}
+	}
+
+
+	/**
+	 * Read all songs of a snapshot, after checking its format version and checksum.
+	 *
+	 * @param  file         Snapshot file.
+	 * @param  consumer     Receives every song.
+	 * @return              Number of songs read.
+	 * @throws IOException  If file could not be read, is not a snapshot of this format version or is corrupt.
+	 */
+	public static int read(Path file, SongConsumer consumer) throws IOException {
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+			long size = channel.size();
+			if (size < HEADER_BYTES + TRAILER_BYTES || size > Integer.MAX_VALUE) {
+				throw new IOException(file + " is not a song snapshot");
+			}
+			MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+
+			if (buffer.getInt(0) != MAGIC) {
+				throw new IOException(file + " is not a song snapshot");
+			}
+			if (buffer.getInt(4) != FORMAT_VERSION) {
+				throw new IOException(file + " has snapshot format version " + buffer.getInt(4) + ", expected "
+						+ FORMAT_VERSION);
+			}
+
+			int end = (int) size - 8;
+			CRC32 crc = new CRC32();
+			ByteBuffer checked = buffer.duplicate();
+			checked.limit(end);
+			crc.update(checked);
+			if (crc.getValue() != buffer.getLong(end)) {
+				throw new IOException(file + " is corrupt, checksum doesn't match");
+			}
+
+			int count = buffer.getInt(end - 4);
+			buffer.position(HEADER_BYTES);
+			byte[] id = new byte[12];
+			for (int i = 0; i < count; i++) {
+				buffer.get(id);
+				long version = buffer.getLong();
+				long favourites = buffer.getLong();
+				consumer.accept(id.clone(), version, favourites, readString(buffer), readString(buffer),
+						readString(buffer));
+			}
+			return count;
+		}
+	}
+
+	private static String readString(ByteBuffer buffer) {
+		byte[] bytes = new byte[buffer.getInt()];
+		buffer.get(bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+}
@@ -0,0 +1,424 @@
+package com.csc301.songmicroservice;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import org.bson.types.ObjectId;
+
+/**
+ * Songs kept in memory as compact records, indexed by the 12 bytes of their ObjectId.
+ *
+ * Records live in one buffer, on or off heap: version, favourites count, then name, artist and album as length and
+ * UTF-8 bytes. The index is an open addressing hash table of ids and record offsets, so a song costs about the size of
+ * its strings plus 40 bytes and no objects. Deleted and replaced records are left as garbage until the buffer is full,
+ * at which point it's compacted instead of grown if at least half of it is garbage.
+ */
+public class SongStore {
+
+	// Result of updateFavourites if song doesn't exist
+	public static final long NOT_FOUND = -1;
+	// Result of updateFavourites if count would go below 0
+	public static final long BELOW_ZERO = -2;
+
+	private static final int EMPTY = -1;
+	private static final int VERSION = 0;
+	private static final int FAVOURITES = 8;
+	private static final int STRINGS = 16;
+	private static final int MAX_CAPACITY = Integer.MAX_VALUE - 8;
+
+	private final boolean offHeap;
+	private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+	// index, slot is free if its offset is EMPTY
+	private long[] idHigh;
+	private int[] idLow;
+	private int[] offsets;
+	private int size = 0;
+
+	// records, appended at used
+	private ByteBuffer records;
+	private int used = 0;
+	private int garbage = 0;
+
+	/**
+	 * Construct SongStore object.
+	 *
+	 * @param  expectedSongs  Number of songs space is reserved for.
+	 * @param  offHeap        Whether records are kept in a direct buffer outside the Java heap.
+	 */
+	public SongStore(int expectedSongs, boolean offHeap) {
+		this.offHeap = offHeap;
+		int slots = Integer.highestOneBit(Math.max(expectedSongs, 8) * 2 - 1) * 2;
+		this.idHigh = new long[slots];
+		this.idLow = new int[slots];
+		this.offsets = new int[slots];
+		Arrays.fill(offsets, EMPTY);
+		this.records = allocate((int) Math.min(MAX_CAPACITY, Math.max(expectedSongs, 8) * 64L));
+	}
+
+	private ByteBuffer allocate(int capacity) {
+		return offHeap ? ByteBuffer.allocateDirect(capacity) : ByteBuffer.allocate(capacity);
+	}
+
+
+	/**
+	 * Add a song, replacing any song with the same id.
+	 *
+	 * @param  id          12 bytes of song's ObjectId.
+	 * @param  version     Version of song.
+	 * @param  favourites  Favourites count of song.
+	 * @param  name        Name of song.
+	 * @param  artist      Artist full name of song.
+	 * @param  album       Album of song.
+	 */
+	public void put(byte[] id, long version, long favourites, String name, String artist, String album) {
+		byte[] nameBytes = name.getBytes(StandardCharsets.UTF_8);
+		byte[] artistBytes = artist.getBytes(StandardCharsets.UTF_8);
+		byte[] albumBytes = album.getBytes(StandardCharsets.UTF_8);
+		int length = STRINGS + 12 + nameBytes.length + artistBytes.length + albumBytes.length;
+		long high = high(id);
+		int low = low(id);
+
+		lock.writeLock().lock();
+		try {
+			reserve(length);
+			int offset = used;
+			records.putLong(offset + VERSION, version);
+			records.putLong(offset + FAVOURITES, favourites);
+			int position = putBytes(offset + STRINGS, nameBytes);
+			position = putBytes(position, artistBytes);
+			putBytes(position, albumBytes);
+			used += length;
+
+			int slot = find(high, low);
+			if (offsets[slot] != EMPTY) {
+				garbage += recordLength(offsets[slot]);
+			} else {
+				idHigh[slot] = high;
+				idLow[slot] = low;
+				size++;
+			}
+			offsets[slot] = offset;
+
+			if (size * 2 > offsets.length) {
+				rehash(offsets.length * 2);
+			}
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+
+	/**
+	 * Get a copy of a song.
+	 *
+	 * @param  id  12 bytes of song's ObjectId.
+	 * @return     Song, null if not found.
+	 */
+	public Song get(byte[] id) {
+		lock.readLock().lock();
+		try {
+			int offset = offsets[find(high(id), low(id))];
+			if (offset == EMPTY) {
+				return null;
+			}
+			int position = offset + STRINGS;
+			String name = getString(position);
+			position += 4 + records.getInt(position);
+			String artist = getString(position);
+			position += 4 + records.getInt(position);
+			Song song = new Song(name, artist, getString(position));
+			song.setId(new ObjectId(id));
+			song.setSongAmountFavourites(records.getLong(offset + FAVOURITES));
+			song.setVersion(records.getLong(offset + VERSION));
+			return song;
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+
+	/**
+	 * Get name of a song, without decoding the rest of it.
+	 *
+	 * @param  id  12 bytes of song's ObjectId.
+	 * @return     Name of song, null if not found.
+	 */
+	public String getName(byte[] id) {
+		lock.readLock().lock();
+		try {
+			int offset = offsets[find(high(id), low(id))];
+			return offset == EMPTY ? null : getString(offset + STRINGS);
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+
+	/**
+	 * Get version of a song.
+	 *
+	 * @param  id  12 bytes of song's ObjectId.
+	 * @return     Version of song, null if not found.
+	 */
+	public Long getVersion(byte[] id) {
+		lock.readLock().lock();
+		try {
+			int offset = offsets[find(high(id), low(id))];
+			return offset == EMPTY ? null : records.getLong(offset + VERSION);
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+
+	/**
+	 * Change favourites count of a song by one and bump its version.
+	 *
+	 * @param  id         12 bytes of song's ObjectId.
+	 * @param  decrement  Decrement count if true, else increment it.
+	 * @return            New version of song, NOT_FOUND if song doesn't exist or BELOW_ZERO if count is already 0.
+	 */
+	public long updateFavourites(byte[] id, boolean decrement) {
+		lock.writeLock().lock();
+		try {
+			int offset = offsets[find(high(id), low(id))];
+			if (offset == EMPTY) {
+				return NOT_FOUND;
+			}
+			long favourites = records.getLong(offset + FAVOURITES);
+			if (decrement && favourites <= 0) {
+				return BELOW_ZERO;
+			}
+			long version = records.getLong(offset + VERSION) + 1;
+			records.putLong(offset + FAVOURITES, favourites + (decrement ? -1 : 1));
+			records.putLong(offset + VERSION, version);
+			return version;
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+
+	/**
+	 * Delete a song.
+	 *
+	 * @param  id  12 bytes of song's ObjectId.
+	 * @return     Whether song existed.
+	 */
+	public boolean remove(byte[] id) {
+		lock.writeLock().lock();
+		try {
+			int slot = find(high(id), low(id));
+			if (offsets[slot] == EMPTY) {
+				return false;
+			}
+			garbage += recordLength(offsets[slot]);
+			offsets[slot] = EMPTY;
+			size--;
+
+			// shift following entries of the probe sequence back, so lookups don't stop at the hole
+			int mask = offsets.length - 1;
+			int hole = slot;
+			for (int next = (hole + 1) & mask; offsets[next] != EMPTY; next = (next + 1) & mask) {
+				int home = home(idHigh[next], idLow[next]);
+				boolean reachable = hole <= next ? hole < home && home <= next : hole < home || home <= next;
+				if (!reachable) {
+					idHigh[hole] = idHigh[next];
+					idLow[hole] = idLow[next];
+					offsets[hole] = offsets[next];
+					offsets[next] = EMPTY;
+					hole = next;
+				}
+			}
+			return true;
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+
+	public int size() {
+		lock.readLock().lock();
+		try {
+			return size;
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+
+	/**
+	 * Write all songs to a snapshot file, replacing it once complete.
+	 *
+	 * Songs are copied out under the lock and written without it, so writes only wait for the copy.
+	 *
+	 * @param  file         Snapshot file.
+	 * @return              Number of songs written.
+	 * @throws IOException  If snapshot could not be written.
+	 */
+	public int writeSnapshot(Path file) throws IOException {
+		long[] highs;
+		int[] lows;
+		int[] starts;
+		byte[] copy;
+		lock.readLock().lock();
+		try {
+			highs = new long[size];
+			lows = new int[size];
+			starts = new int[size];
+			int count = 0;
+			for (int slot = 0; slot < offsets.length; slot++) {
+				if (offsets[slot] != EMPTY) {
+					highs[count] = idHigh[slot];
+					lows[count] = idLow[slot];
+					starts[count] = offsets[slot];
+					count++;
+				}
+			}
+			copy = new byte[used];
+			ByteBuffer source = records.duplicate();
+			source.position(0);
+			source.get(copy);
+		} finally {
+			lock.readLock().unlock();
+		}
+
+		ByteBuffer copied = ByteBuffer.wrap(copy);
+		try (SongSnapshot.Writer writer = new SongSnapshot.Writer(file)) {
+			for (int i = 0; i < starts.length; i++) {
+				int position = starts[i] + STRINGS;
+				String name = getString(copied, position);
+				position += 4 + copied.getInt(position);
+				String artist = getString(copied, position);
+				position += 4 + copied.getInt(position);
+				writer.write(toBytes(highs[i], lows[i]), copied.getLong(starts[i] + VERSION),
+						copied.getLong(starts[i] + FAVOURITES), name, artist, getString(copied, position));
+			}
+			writer.commit();
+		}
+		return starts.length;
+	}
+
+
+	/**
+	 * Add all songs of a snapshot file.
+	 *
+	 * @param  file         Snapshot file.
+	 * @return              Number of songs read.
+	 * @throws IOException  If snapshot could not be read or is corrupt.
+	 */
+	public int readSnapshot(Path file) throws IOException {
+		return SongSnapshot.read(file, this::put);
+	}
+
+
+	// slot of id, or the free slot it would go in
+	private int find(long high, int low) {
+		int mask = offsets.length - 1;
+		int slot = home(high, low);
+		while (offsets[slot] != EMPTY && (idHigh[slot] != high || idLow[slot] != low)) {
+			slot = (slot + 1) & mask;
+		}
+		return slot;
+	}
+
+	private int home(long high, int low) {
+		long hash = (high ^ ((long) low << 17)) * 0x9E3779B97F4A7C15L;
+		return (int) (hash ^ (hash >>> 32)) & (offsets.length - 1);
+	}
+
+	private void rehash(int slots) {
+		long[] oldHigh = idHigh;
+		int[] oldLow = idLow;
+		int[] oldOffsets = offsets;
+		idHigh = new long[slots];
+		idLow = new int[slots];
+		offsets = new int[slots];
+		Arrays.fill(offsets, EMPTY);
+		for (int slot = 0; slot < oldOffsets.length; slot++) {
+			if (oldOffsets[slot] != EMPTY) {
+				int newSlot = find(oldHigh[slot], oldLow[slot]);
+				idHigh[newSlot] = oldHigh[slot];
+				idLow[newSlot] = oldLow[slot];
+				offsets[newSlot] = oldOffsets[slot];
+			}
+		}
+	}
+
+	// make room for a record of length bytes, by compacting or growing the buffer
+	private void reserve(int length) {
+		if ((long) used + length <= records.capacity()) {
+			return;
+		}
+		long live = (long) used - garbage + length;
+		if (live > MAX_CAPACITY) {
+			throw new IllegalStateException("Song store is full");
+		}
+		int capacity = records.capacity();
+		if (garbage * 2 < capacity || live > capacity) {
+			capacity = (int) Math.min(MAX_CAPACITY, Math.max(live, (long) capacity * 2));
+		}
+
+		ByteBuffer compacted = allocate(capacity);
+		int position = 0;
+		for (int slot = 0; slot < offsets.length; slot++) {
+			if (offsets[slot] != EMPTY) {
+				int recordLength = recordLength(offsets[slot]);
+				ByteBuffer record = records.duplicate();
+				record.position(offsets[slot]).limit(offsets[slot] + recordLength);
+				compacted.position(position);
+				compacted.put(record);
+				offsets[slot] = position;
+				position += recordLength;
+			}
+		}
+		records = compacted;
+		used = position;
+		garbage = 0;
+	}
+
+	private int recordLength(int offset) {
+		int position = offset + STRINGS;
+		for (int i = 0; i < 3; i++) {
+			position += 4 + records.getInt(position);
+		}
+		return position - offset;
+	}
+
+	private int putBytes(int position, byte[] bytes) {
+		records.putInt(position, bytes.length);
+		ByteBuffer target = records.duplicate();
+		target.position(position + 4);
+		target.put(bytes);
+		return position + 4 + bytes.length;
+	}
+
+	private String getString(int position) {
+		return getString(records, position);
+	}
+
+	private static String getString(ByteBuffer buffer, int position) {
+		byte[] bytes = new byte[buffer.getInt(position)];
+		ByteBuffer source = buffer.duplicate();
+		source.position(position + 4);
+		source.get(bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+	private static long high(byte[] id) {
+		return ByteBuffer.wrap(id).getLong(0);
+	}
+
+	private static int low(byte[] id) {
+		return ByteBuffer.wrap(id).getInt(8);
+	}
+
+	private static byte[] toBytes(long high, int low) {
+		return ByteBuffer.allocate(12).putLong(high).putInt(low).array();
+	}
+}
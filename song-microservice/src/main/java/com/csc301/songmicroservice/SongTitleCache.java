@@ -0,0 +1,120 @@
+package com.csc301.songmicroservice;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Bounded cache of song titles, least recently used songs are evicted first.
+ *
+ * Titles never change once a song is added, so entries only have to be dropped when a song is deleted. Titles read
+ * before a concurrent delete of the same song are not cached, so a deleted song can't be brought back by a read that
+ * raced with it, while deletes of other songs don't discard reads. Deletes through other instances aren't seen here,
+ * so titles expire maxAgeMs after they were read and are then read from DB again.
+ */
+public class SongTitleCache {
+
+	private final Map<String, Entry> titles;
+
+	private final long maxAgeNanos;
+
+	// Deletes of every song, used to drop titles loaded before a concurrent delete of the same song
+	private final WriteSequence deletes;
+
+	/**
+	 * Construct SongTitleCache object.
+	 *
+	 * @param  maxEntries  Maximum number of cached titles.
+	 * @param  maxAgeMs    Time a title is used before it is read again; 0 to never expire.
+	 */
+	public SongTitleCache(int maxEntries, long maxAgeMs) {
+		this.deletes = new WriteSequence(maxEntries);
+		this.maxAgeNanos = TimeUnit.MILLISECONDS.toNanos(maxAgeMs);
+		this.titles = new LinkedHashMap<String, Entry>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+				return size() > maxEntries;
+			}
+		};
+	}
+
+
+	// Title together with the time it was read
+	private static class Entry {
+		final String title;
+		final long cachedAt;
+
+		Entry(String title, long cachedAt) {
+			this.title = title;
+			this.cachedAt = cachedAt;
+		}
+	}
+
+
+	/**
+	 * Get cached title of a song.
+	 *
+	 * @param  songId  Id of song.
+	 * @return         Title of song, null if not cached or expired.
+	 */
+	public synchronized String get(String songId) {
+		Entry entry = titles.get(songId);
+		if (entry == null) {
+			return null;
+		}
+		if (maxAgeNanos > 0 && System.nanoTime() - entry.cachedAt >= maxAgeNanos) {
+			titles.remove(songId);
+			return null;
+		}
+		return entry.title;
+	}
+
+
+	/**
+	 * Start reading a title from DB, which is finished by calling load.
+	 *
+	 * @return  Sequence number to pass to load.
+	 */
+	public long beginLoad() {
+		return deletes.beginLoad();
+	}
+
+
+	/**
+	 * Cache title read from DB, unless the song was deleted since the read started.
+	 *
+	 * @param  songId   Id of song.
+	 * @param  title    Title read from DB.
+	 * @param  loadSeq  Value returned by beginLoad before title was read.
+	 */
+	public synchronized void load(String songId, String title, long loadSeq) {
+		if (!deletes.isWrittenSince(songId, loadSeq)) {
+			titles.put(songId, new Entry(title, System.nanoTime()));
+		}
+	}
+
+
+	/**
+	 * Drop title of a deleted song.
+	 *
+	 * @param  songId  Id of song.
+	 */
+	public synchronized void delete(String songId) {
+		deletes.write(songId);
+		titles.remove(songId);
+	}
+
+
+	/**
+	 * Get ids of all cached songs.
+	 *
+	 * @return  Ids of songs, least recently used first.
+	 */
+	public synchronized List<String> getSongIds() {
+		return new ArrayList<String>(titles.keySet());
+	}
+}
@@ -0,0 +1,136 @@
+package com.csc301.songmicroservice;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Bounded cache of song versions, least recently used songs are evicted first.
+ * 
+ * Lets conditional requests be answered without loading songs from DB. Versions only grow, so a write never gets
+ * overwritten by an older version, and deleted songs are kept as tombstones so they can't be brought back by a
+ * read that raced with the delete. Writes through other instances aren't seen here, so versions expire maxAgeMs
+ * after they were read or written and are then read from DB again.
+ */
+public class SongVersionCache {
+
+	// Version of deleted songs, higher than any real version
+	public static final long DELETED = Long.MAX_VALUE;
+
+	private final Map<String, Entry> versions;
+	
+	private final long maxAgeNanos;
+
+	// Writes of every song, used to drop versions loaded before a concurrent write of the same song
+	private final WriteSequence writes;
+
+	/**
+	 * Construct SongVersionCache object.
+	 * 
+	 * @param  maxEntries  Maximum number of cached versions.
+	 * @param  maxAgeMs    Time a version is used before it is read again; 0 to never expire.
+	 */
+	public SongVersionCache(int maxEntries, long maxAgeMs) {
+		this.writes = new WriteSequence(maxEntries);
+		this.maxAgeNanos = TimeUnit.MILLISECONDS.toNanos(maxAgeMs);
+		this.versions = new LinkedHashMap<String, Entry>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+				return size() > maxEntries;
+			}
+		};
+	}
+
+	
+	// Version together with the time it was cached
+	private static class Entry {
+		final long version;
+		final long cachedAt;
+
+		Entry(long version, long cachedAt) {
+			this.version = version;
+			this.cachedAt = cachedAt;
+		}
+	}
+
+	
+	/**
+	 * Get cached version of a song.
+	 * 
+	 * @param  songId  Id of song.
+	 * @return         Version of song, DELETED if song was deleted, null if not cached or expired.
+	 */
+	public synchronized Long get(String songId) {
+		Entry entry = versions.get(songId);
+		if (entry == null) {
+			return null;
+		}
+		if (isExpired(entry, System.nanoTime())) {
+			versions.remove(songId);
+			return null;
+		}
+		return entry.version;
+	}
+
+	
+	/**
+	 * Start reading a song from DB, which is finished by calling load.
+	 * 
+	 * @return  Sequence number to pass to load.
+	 */
+	public long beginLoad() {
+		return writes.beginLoad();
+	}
+
+	
+	/**
+	 * Cache version read from DB, unless the song was written since the read started.
+	 * 
+	 * @param  songId   Id of song.
+	 * @param  version  Version read from DB.
+	 * @param  loadSeq  Value returned by beginLoad before song was read.
+	 */
+	public synchronized void load(String songId, long version, long loadSeq) {
+		if (!writes.isWrittenSince(songId, loadSeq)) {
+			put(songId, version);
+		}
+	}
+
+	
+	/**
+	 * Cache version returned by a write.
+	 * 
+	 * @param  songId   Id of song.
+	 * @param  version  Version after the write.
+	 */
+	public synchronized void update(String songId, long version) {
+		writes.write(songId);
+		put(songId, version);
+	}
+
+	
+	/**
+	 * Mark song as deleted.
+	 * 
+	 * @param  songId  Id of song.
+	 */
+	public synchronized void delete(String songId) {
+		writes.write(songId);
+		versions.put(songId, new Entry(DELETED, System.nanoTime()));
+	}
+
+	
+	// versions only grow, reading the cached version again restarts its age
+	private void put(String songId, long version) {
+		Entry cached = versions.get(songId);
+		if (cached == null || version >= cached.version) {
+			versions.put(songId, new Entry(version, System.nanoTime()));
+		}
+	}
+
+	private boolean isExpired(Entry entry, long now) {
+		return maxAgeNanos > 0 && now - entry.cachedAt >= maxAgeNanos;
+	}
+}
@@ -0,0 +1,38 @@
+package com.csc301.songmicroservice;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.springframework.boot.autoconfigure.AutoConfigurationImportFilter;
+import org.springframework.boot.autoconfigure.AutoConfigurationMetadata;
+import org.springframework.context.EnvironmentAware;
+import org.springframework.core.env.Environment;
+import org.springframework.util.StringUtils;
+
+/**
+ * Skips the auto-configurations listed in "startup.trimmedAutoConfigurations" (set by the "faststartup" profile),
+ * i.e. ones that match but configure something the service doesn't use, such as JMX or multipart uploads.
+ *
+ * Unlike "spring.autoconfigure.exclude", the list doesn't replace exclusions of other profiles such as "inmemory".
+ * Registered in META-INF/spring.factories, as filters run before any bean is created.
+ */
+public class StartupAutoConfigurationFilter implements AutoConfigurationImportFilter, EnvironmentAware {
+
+	private Set<String> trimmed = Collections.emptySet();
+
+	@Override
+	public void setEnvironment(Environment environment) {
+		String classNames = environment.getProperty("startup.trimmedAutoConfigurations", "");
+		this.trimmed = new HashSet<String>(StringUtils.commaDelimitedListToSet(StringUtils.trimAllWhitespace(classNames)));
+	}
+
+	@Override
+	public boolean[] match(String[] autoConfigurationClasses, AutoConfigurationMetadata autoConfigurationMetadata) {
+		boolean[] matches = new boolean[autoConfigurationClasses.length];
+		for (int i = 0; i < autoConfigurationClasses.length; i++) {
+			matches[i] = autoConfigurationClasses[i] == null || !trimmed.contains(autoConfigurationClasses[i]);
+		}
+		return matches;
+	}
+}
@@ -0,0 +1,48 @@
+package com.csc301.songmicroservice;
+
+import java.io.IOException;
+
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.springframework.context.annotation.Profile;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+/**
+ * Runs every request in a trace, continuing the caller's trace if it sent one. Trace id is echoed in the response,
+ * so a slow response can be looked up in /getTraces. Servlet stack only, the "reactive" profile is not traced.
+ */
+@Component
+@Profile("!reactive")
+public class TraceFilter extends OncePerRequestFilter {
+
+	private final Tracer tracer;
+
+	/**
+	 * Construct TraceFilter object.
+	 *
+	 * @param  tracer  Tracer requests are traced with.
+	 */
+	public TraceFilter(Tracer tracer) {
+		this.tracer = tracer;
+	}
+
+	@Override
+	protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+			throws ServletException, IOException {
+		Tracer.Span span = tracer.startTrace(request.getHeader(Tracer.TRACE_ID_HEADER),
+				request.getHeader(Tracer.PARENT_SPAN_ID_HEADER), request.getMethod() + " " + request.getRequestURI());
+		response.setHeader(Tracer.TRACE_ID_HEADER, span.getTraceId());
+
+		String outcome = "EXCEPTION";
+		try {
+			chain.doFilter(request, response);
+			outcome = Integer.toString(response.getStatus());
+		} finally {
+			span.end(outcome);
+		}
+	}
+}
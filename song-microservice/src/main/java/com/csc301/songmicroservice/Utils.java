@@ -2,21 +2,29 @@ package com.csc301.songmicroservice;
 
 import javax.servlet.http.HttpServletRequest;
 
-import org.springframework.http.HttpStatus;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.InvalidMediaTypeException;
+import org.springframework.http.MediaType;
+
+import com.csc301.songmicroservice.ResilientHttpClient.CallRejectedException;
+import com.csc301.songmicroservice.ResilientHttpClient.ServerErrorException;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
 
-import okhttp3.OkHttpClient;
 import okhttp3.Request;
 import okhttp3.RequestBody;
 import okhttp3.Response;
 
 import java.io.IOException;
-import java.util.Map;
+import java.util.List;
 
 public class Utils {
 
 	public static RequestBody emptyRequestBody = RequestBody.create(null, "");
-	public static String PLAYLIST_MICROSERVICE_URL = "http://localhost:3002";
 	public static String DELETE_ALL_SONGS_ENDPOINT = "/deleteAllSongsFromDb";
+	public static final String PLAYLIST_CLEANUP_CALLS = "playlistCleanup";
+	private static final JsonFactory JSON_FACTORY = new JsonFactory();
 	
 	// Used to determine path that was called from within each REST route, you don't need to modify this
 	public static String getUrl(HttpServletRequest req) {
@@ -29,51 +37,155 @@ public class Utils {
 		return requestUrl;
 	}
 	
-	// Sets the response status and data for a response from the server. You will not always be able to use this function
-	public static Map<String, Object> setResponseStatus(Map<String, Object> response, DbQueryExecResult dbQueryExecResult, Object data) {	
-		switch (dbQueryExecResult) {
-		case QUERY_OK:
-			response.put("status", HttpStatus.OK);
-			if (data != null) {
-				response.put("data", data);
-			}
-			break;
-		case QUERY_ERROR_NOT_FOUND:
-			response.put("status", HttpStatus.NOT_FOUND);
-			break;
-		case QUERY_ERROR_GENERIC:
-			response.put("status", HttpStatus.INTERNAL_SERVER_ERROR);
-			break;
+	
+	/**
+	 * Check if client would rather get CBOR than JSON.
+	 * 
+	 * @param req  Request sent to server.
+	 * @return     True if CBOR is acceptable and ranked above JSON, false otherwise.
+	 */
+	public static boolean prefersCbor(HttpServletRequest req) {
+		return prefersCbor(req.getHeader(HttpHeaders.ACCEPT));
+	}
+	
+	
+	/**
+	 * Check if client would rather get CBOR than JSON.
+	 * 
+	 * @param accept  Accept header of request, may be null.
+	 * @return        True if CBOR is acceptable and ranked above JSON, false otherwise.
+	 */
+	public static boolean prefersCbor(String accept) {
+		if (accept == null) {
+			return false;
 		}
 		
-		return response;
+		List<MediaType> mediaTypes;
+		try {
+			mediaTypes = MediaType.parseMediaTypes(accept);
+		} catch (InvalidMediaTypeException e) {
+			return false;
+		}
+		
+		MediaType.sortBySpecificityAndQuality(mediaTypes);
+		for (MediaType mediaType : mediaTypes) {
+			if (mediaType.includes(MediaType.APPLICATION_JSON)) {
+				return false;
+			} else if (mediaType.includes(MediaType.valueOf(WireFormatConfig.APPLICATION_CBOR_VALUE))) {
+				return true;
+			}
+		}
+		return false;
+	}	
+	
+	/**
+	 * Build strong ETag of a song response. Format is part of it, as JSON and CBOR bodies differ.
+	 * 
+	 * @param version  Version of song.
+	 * @param cbor     Whether response is CBOR.
+	 * @return         Quoted ETag.
+	 */
+	public static String getETag(long version, boolean cbor) {
+		return "\"" + version + (cbor ? "-cbor\"" : "-json\"");
+	}
+	
+	
+	/**
+	 * Check if If-None-Match header of a request matches an ETag.
+	 * 
+	 * @param req   Request sent to server.
+	 * @param etag  Current ETag of resource.
+	 * @return      True if client already has the current version, false otherwise.
+	 */
+	public static boolean matchesETag(HttpServletRequest req, String etag) {
+		return matchesETag(req.getHeader(HttpHeaders.IF_NONE_MATCH), etag);
 	}
 	
 	
+	/**
+	 * Check if If-None-Match header matches an ETag.
+	 * 
+	 * @param ifNoneMatch  If-None-Match header of request, may be null.
+	 * @param etag         Current ETag of resource.
+	 * @return             True if client already has the current version, false otherwise.
+	 */
+	public static boolean matchesETag(String ifNoneMatch, String etag) {
+		if (ifNoneMatch == null) {
+			return false;
+		}
+		
+		for (String candidate : ifNoneMatch.split(",")) {
+			candidate = candidate.trim();
+			// If-None-Match uses weak comparison
+			if (candidate.startsWith("W/")) {
+				candidate = candidate.substring(2);
+			}
+			if (candidate.equals("*") || candidate.equals(etag)) {
+				return true;
+			}
+		}
+		return false;
+	}	
+	
 	/**
 	 * Delete song from user's favourite playlist.
 	 * 
-	 * @param songId  Id of song to delete.
-	 * @param client  Client used for HTTP requests.
-	 * @return        True if operation is successful, false otherwise.
+	 * @param songId   Id of song to delete.
+	 * @param client   Client used for HTTP requests.
+	 * @param baseUrl  Url of profile microservice.
+	 * @return         True if operation is successful, false otherwise.
 	 */
-	public static boolean deleteSongFromPlaylist(String songId, OkHttpClient client) {
+	public static boolean deleteSongFromPlaylist(String songId, ResilientHttpClient client, String baseUrl) {
 		Request playlistRequest = new Request.Builder()
-                .url(PLAYLIST_MICROSERVICE_URL + DELETE_ALL_SONGS_ENDPOINT + "/" + songId)
+                .url(baseUrl + DELETE_ALL_SONGS_ENDPOINT + "/" + songId)
                 .put(emptyRequestBody)
                 .build();
 		
 		try {
-			Response response = client.newCall(playlistRequest).execute();
-			if (response.code() == 200) {
-				return true;
-			} else {
-				return false;
-			}
+			return client.execute(PLAYLIST_CLEANUP_CALLS, playlistRequest, response -> "OK".equals(readStatus(response)));
 		} catch (Exception e) {
 			return false;
 		}
 
 		
 	}
+	
+	/**
+	 * Read status from response of profile microservice, which answers errors with HTTP 200 and the real status in
+	 * the body.
+	 * 
+	 * @param response  Response of profile microservice.
+	 * @return          Status reported in the body.
+	 * @throws IOException  If profile microservice failed or shed the call.
+	 */
+	static String readStatus(Response response) throws IOException {
+		// 503 with Retry-After is load shedding, body isn't an answer to the call
+		if (response.code() == 503 && response.header("Retry-After") != null) {
+			throw new CallRejectedException("Profile microservice shed the call");
+		}
+		if (response.code() >= 500) {
+			throw new ServerErrorException("Profile microservice answered " + response.code());
+		}
+		
+		String status = null;
+		try (JsonParser parser = JSON_FACTORY.createParser(response.body().byteStream())) {
+			if (parser.nextToken() != JsonToken.START_OBJECT) {
+				throw new IOException("Unexpected response of profile microservice");
+			}
+			while (status == null && parser.nextToken() == JsonToken.FIELD_NAME) {
+				String field = parser.getCurrentName();
+				parser.nextToken();
+				if (field.equals("status")) {
+					status = parser.getText();
+				} else {
+					parser.skipChildren();
+				}
+			}
+		}
+		
+		if (status == null || status.equals("INTERNAL_SERVER_ERROR")) {
+			throw new ServerErrorException("Profile microservice failed the call: " + status);
+		}
+		return status;
+	}
 }
\ No newline at end of file
@@ -0,0 +1,59 @@
+package com.csc301.songmicroservice;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.web.embedded.tomcat.TomcatServletWebServerFactory;
+import org.springframework.boot.web.server.WebServerFactoryCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * Opt-in mode running every request on its own virtual thread instead of Tomcat's worker pool, enabled with
+ * "server.virtualThreads.enabled=true". Mongo and HTTP calls block the request thread, so they run on virtual
+ * threads as well.
+ * 
+ * The service is still built for Java 8, as Spring of this Boot version can't read newer class files, so virtual
+ * threads are looked up reflectively and the mode needs a Java 21 or newer runtime; on older runtimes Tomcat keeps
+ * its pool.
+ */
+@Configuration
+@ConditionalOnProperty(name = "server.virtualThreads.enabled", havingValue = "true")
+public class VirtualThreadConfig {
+
+	@Bean
+	public WebServerFactoryCustomizer<TomcatServletWebServerFactory> virtualThreadCustomizer() {
+		return factory -> {
+			ExecutorService executor = newVirtualThreadExecutor("http-vt-");
+			if (executor == null) {
+				System.out.println("Virtual threads need Java 21 or newer, requests run on platform threads");
+				return;
+			}
+			factory.addConnectorCustomizers(connector -> connector.getProtocolHandler().setExecutor(executor));
+		};
+	}
+
+	
+	/**
+	 * Create executor starting a new virtual thread for every task.
+	 * 
+	 * @param  namePrefix  Prefix of thread names, followed by a counter.
+	 * @return             Executor, null if runtime has no virtual threads.
+	 */
+	static ExecutorService newVirtualThreadExecutor(String namePrefix) {
+		try {
+			// Thread.ofVirtual().name(namePrefix, 0).factory(), through the public Thread.Builder interface
+			Class<?> builderClass = Class.forName("java.lang.Thread$Builder");
+			Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+			builder = builderClass.getMethod("name", String.class, long.class).invoke(builder, namePrefix, 0L);
+			ThreadFactory threadFactory = (ThreadFactory) builderClass.getMethod("factory").invoke(builder);
+			
+			return (ExecutorService) Executors.class.getMethod("newThreadPerTaskExecutor", ThreadFactory.class)
+					.invoke(null, threadFactory);
+		} catch (ReflectiveOperationException e) {
+			return null;
+		}
+	}
+}
@@ -0,0 +1,28 @@
+package com.csc301.songmicroservice;
+
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.http.converter.cbor.MappingJackson2CborHttpMessageConverter;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+/**
+ * Registers CBOR as an additional wire format.
+ * 
+ * Clients that send "Accept: application/cbor" get the same response as JSON clients, encoded in binary, which is
+ * smaller and cheaper to decode. Requests without that header still get JSON.
+ */
+@Configuration
+public class WireFormatConfig {
+
+	public static final String APPLICATION_CBOR_VALUE = "application/cbor";
+
+	/**
+	 * Converter picked up by Spring Boot in addition to the default ones.
+	 * 
+	 * @return  Converter writing responses as CBOR.
+	 */
+	@Bean
+	public MappingJackson2CborHttpMessageConverter cborHttpMessageConverter() {
+		return new MappingJackson2CborHttpMessageConverter(Jackson2ObjectMapperBuilder.cbor().build());
+	}
+}
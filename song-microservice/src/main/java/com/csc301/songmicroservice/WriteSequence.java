@@ -0,0 +1,75 @@
+package com.csc301.songmicroservice;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Sequence of writes to songs, used by caches to drop values read from DB before a concurrent write of the same song.
+ * 
+ * Every write takes the next number of one sequence, which is remembered for its song. A value read after beginLoad
+ * returned s may be cached if its song wasn't written since s, so writes of other songs don't discard it. Only the
+ * most recent writes are remembered; a song whose write was forgotten counts as written by the newest forgotten
+ * write, so a stale value is never cached, only loads overlapping that write are dropped.
+ */
+public class WriteSequence {
+
+	private final AtomicLong seq = new AtomicLong();
+	private final Map<String, Long> lastWrites;
+	private long forgottenSeq = 0;
+
+	/**
+	 * Construct WriteSequence object.
+	 * 
+	 * @param  maxEntries  Maximum number of songs whose last write is remembered.
+	 */
+	public WriteSequence(int maxEntries) {
+		// insertion order, as a rewritten song is removed and put again, eldest entry is the oldest write
+		this.lastWrites = new LinkedHashMap<String, Long>() {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String, Long> eldest) {
+				if (size() > maxEntries) {
+					forgottenSeq = eldest.getValue();
+					return true;
+				}
+				return false;
+			}
+		};
+	}
+
+	
+	/**
+	 * Start reading a song from DB.
+	 * 
+	 * @return  Sequence number to pass to isWrittenSince once the read is done.
+	 */
+	public long beginLoad() {
+		return seq.get();
+	}
+
+	
+	/**
+	 * Record a write of a song.
+	 * 
+	 * @param  songId  Id of song.
+	 */
+	public synchronized void write(String songId) {
+		lastWrites.remove(songId);
+		lastWrites.put(songId, seq.incrementAndGet());
+	}
+
+	
+	/**
+	 * Check if a song may have been written since a read started.
+	 * 
+	 * @param  songId   Id of song.
+	 * @param  loadSeq  Value returned by beginLoad before song was read.
+	 * @return          True if value read may be stale.
+	 */
+	public synchronized boolean isWrittenSince(String songId, long loadSeq) {
+		Long lastWrite = lastWrites.get(songId);
+		return (lastWrite != null ? lastWrite : forgottenSeq) > loadSeq;
+	}
+}
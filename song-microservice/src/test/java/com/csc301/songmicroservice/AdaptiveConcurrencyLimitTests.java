@@ -0,0 +1,79 @@
+package com.csc301.songmicroservice;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+public class AdaptiveConcurrencyLimitTests {
+
+	private static final long FAST = TimeUnit.MILLISECONDS.toNanos(10);
+	private static final long SLOW = TimeUnit.MILLISECONDS.toNanos(100);
+
+	@Test
+	public void requestsOverLimitAreRejected() {
+		AdaptiveConcurrencyLimit limit = new AdaptiveConcurrencyLimit(2, 1, 10, 2.0, 0.5, 0);
+		assertTrue(limit.tryAcquire());
+		assertTrue(limit.tryAcquire());
+		assertFalse(limit.tryAcquire());
+
+		limit.release(FAST, false);
+		assertTrue(limit.tryAcquire());
+		assertEquals(3L, limit.getStats().get("admitted"));
+		assertEquals(1L, limit.getStats().get("rejected"));
+	}
+
+	@Test
+	public void slowOrFailedRequestsCutLimit() {
+		AdaptiveConcurrencyLimit limit = new AdaptiveConcurrencyLimit(8, 2, 10, 2.0, 0.5, 0);
+		acquireAndRelease(limit, FAST, false);
+		assertEquals(8, limit.getStats().get("limit"));
+
+		// slower than twice the baseline
+		acquireAndRelease(limit, SLOW, false);
+		assertEquals(4, limit.getStats().get("limit"));
+
+		// never below minimum
+		acquireAndRelease(limit, FAST, true);
+		acquireAndRelease(limit, FAST, true);
+		assertEquals(2, limit.getStats().get("limit"));
+	}
+
+	@Test
+	public void fastRequestsOnlyGrowLimitWhileHalfOfItIsUsed() {
+		AdaptiveConcurrencyLimit limit = new AdaptiveConcurrencyLimit(4, 1, 5, 2.0, 0.5, 0);
+		acquireAndRelease(limit, FAST, false);
+		assertEquals(4, limit.getStats().get("limit"));
+
+		limit.tryAcquire();
+		limit.tryAcquire();
+		limit.release(FAST, false);
+		limit.release(FAST, false);
+		assertEquals(5, limit.getStats().get("limit"));
+
+		// never above maximum
+		for (int i = 0; i < 3; i++) {
+			limit.tryAcquire();
+		}
+		for (int i = 0; i < 3; i++) {
+			limit.release(FAST, false);
+		}
+		assertEquals(5, limit.getStats().get("limit"));
+	}
+
+	@Test
+	public void requestsFasterThanMinSlowNeverCutLimit() {
+		AdaptiveConcurrencyLimit limit = new AdaptiveConcurrencyLimit(4, 1, 4, 2.0, 0.5, 200);
+		acquireAndRelease(limit, TimeUnit.MICROSECONDS.toNanos(100), false);
+		acquireAndRelease(limit, SLOW, false);
+		assertEquals(4, limit.getStats().get("limit"));
+	}
+
+	private static void acquireAndRelease(AdaptiveConcurrencyLimit limit, long latencyNanos, boolean failed) {
+		assertTrue(limit.tryAcquire());
+		limit.release(latencyNanos, failed);
+	}
+}
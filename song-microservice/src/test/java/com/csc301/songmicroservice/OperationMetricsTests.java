@@ -0,0 +1,66 @@
+package com.csc301.songmicroservice;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class OperationMetricsTests {
+
+	private static final String LABEL = "operation=\"SongDal.findSongById\"";
+
+	private OperationMetrics metrics;
+	private OperationMetrics.Operation operation;
+	private long start;
+
+	@Before
+	public void setUp() {
+		metrics = new OperationMetrics();
+		operation = metrics.operation("SongDal.findSongById");
+		start = System.nanoTime();
+	}
+
+	@Test
+	public void quantilesForgetCallsOlderThanWindow() {
+		record(TimeUnit.SECONDS.toNanos(2));
+		assertEquals(2.0, quantile(scrapeAfter(0), "0.99"), 0.05);
+
+		// still within the last minute
+		record(TimeUnit.MILLISECONDS.toNanos(1));
+		assertEquals(2.0, quantile(scrapeAfter(50), "0.99"), 0.05);
+
+		// slow call slid out of the window, fast one is still in it
+		record(TimeUnit.MILLISECONDS.toNanos(1));
+		String text = scrapeAfter(75);
+		assertEquals(0.001, quantile(text, "0.99"), 0.0001);
+		assertTrue(text.contains("operation_duration_seconds_count{" + LABEL + "} 3\n"));
+	}
+
+	@Test
+	public void emptyWindowHasNoQuantiles() {
+		record(TimeUnit.MILLISECONDS.toNanos(1));
+		scrapeAfter(0);
+
+		String text = scrapeAfter(120);
+		assertTrue(Double.isNaN(quantile(text, "0.5")));
+		assertTrue(text.contains("operation_duration_seconds_count{" + LABEL + "} 1\n"));
+	}
+
+	private void record(long nanos) {
+		long begin = operation.begin();
+		operation.end(begin - nanos, "QUERY_OK");
+	}
+
+	private String scrapeAfter(long seconds) {
+		return metrics.scrape(start + TimeUnit.SECONDS.toNanos(seconds));
+	}
+
+	private static double quantile(String text, String quantile) {
+		String prefix = "operation_duration_seconds{" + LABEL + ",quantile=\"" + quantile + "\"} ";
+		int index = text.indexOf(prefix) + prefix.length();
+		return Double.parseDouble(text.substring(index, text.indexOf('\n', index)));
+	}
+}
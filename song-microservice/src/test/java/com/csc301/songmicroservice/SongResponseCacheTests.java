@@ -0,0 +1,96 @@
+package com.csc301.songmicroservice;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+import java.util.Arrays;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+public class SongResponseCacheTests {
+
+	private ObjectMapper mapper;
+	private SongResponseCache cache;
+
+	@Before
+	public void setUp() {
+		mapper = new ObjectMapper();
+		cache = new SongResponseCache(mapper, 2, 0);
+	}
+
+	@Test
+	public void cachedBodyMatchesSerializedResponse() throws Exception {
+		ResponseEnvelope response = found("title");
+		cache.put("a", response, 3, cache.beginLoad());
+
+		SongResponseCache.CachedResponse cached = cache.get("a");
+		assertArrayEquals(mapper.writeValueAsBytes(response), cached.getBody());
+		assertEquals(3, cached.getVersion());
+	}
+
+	@Test
+	public void loadRacingWithWriteOfSameSongIsDropped() {
+		long loadSeq = cache.beginLoad();
+		cache.invalidate("a");
+
+		assertNotNull(cache.put("a", found("old title"), 1, loadSeq));
+		assertNull(cache.get("a"));
+	}
+
+	@Test
+	public void responsesExpireSoWritesOfOtherInstancesAreSeen() throws Exception {
+		SongResponseCache expiring = new SongResponseCache(mapper, 2, 50);
+		expiring.put("a", found("title"), 1, expiring.beginLoad());
+		assertNotNull(expiring.get("a"));
+
+		Thread.sleep(60);
+		assertNull(expiring.get("a"));
+	}
+
+	@Test
+	public void writesOfOtherSongsDontDropLoad() {
+		long loadSeq = cache.beginLoad();
+		cache.invalidate("b");
+		cache.invalidate("c");
+
+		cache.put("a", found("title"), 1, loadSeq);
+		assertNotNull(cache.get("a"));
+	}
+
+	@Test
+	public void forgottenWriteStillDropsOverlappingLoad() {
+		//Only two writes are remembered, so the write of "a" is forgotten by the time the load finishes
+		long loadSeq = cache.beginLoad();
+		cache.invalidate("a");
+		cache.invalidate("b");
+		cache.invalidate("c");
+
+		cache.put("a", found("old title"), 1, loadSeq);
+		assertNull(cache.get("a"));
+
+		cache.put("a", found("new title"), 2, cache.beginLoad());
+		assertNotNull(cache.get("a"));
+	}
+
+	@Test
+	public void leastRecentlyUsedSongIsEvicted() {
+		cache.put("a", found("a"), 1, cache.beginLoad());
+		cache.put("b", found("b"), 1, cache.beginLoad());
+		cache.get("a");
+		cache.put("c", found("c"), 1, cache.beginLoad());
+
+		assertNull(cache.get("b"));
+		assertEquals(Arrays.asList("a", "c"), cache.getSongIds());
+	}
+
+	private static ResponseEnvelope found(Object data) {
+		DbQueryStatus status = new DbQueryStatus("succ", DbQueryExecResult.QUERY_OK);
+		status.setData(data);
+		return ResponseEnvelope.of(null, status);
+	}
+}
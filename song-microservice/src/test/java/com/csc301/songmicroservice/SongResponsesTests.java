@@ -0,0 +1,107 @@
+package com.csc301.songmicroservice;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import org.bson.types.ObjectId;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+public class SongResponsesTests {
+
+	private ObjectMapper mapper;
+	private SongResponses responses;
+
+	@Before
+	public void setUp() {
+		mapper = new ObjectMapper();
+		responses = new SongResponses(new SongResponseCache(mapper, 10, 0));
+	}
+
+	@Test
+	public void matchingETagOnlyForFoundVersion() {
+		assertEquals("\"3-json\"", SongResponses.getMatchingETag(version(3), false, "\"3-json\""));
+		assertNull(SongResponses.getMatchingETag(version(3), true, "\"3-json\""));
+		assertNull(SongResponses.getMatchingETag(version(3), false, null));
+		assertNull(SongResponses.getMatchingETag(new DbQueryStatus("big L", DbQueryExecResult.QUERY_ERROR_NOT_FOUND),
+				false, "*"));
+	}
+
+	@Test
+	public void notModifiedHasETagAndNoBody() {
+		ResponseEntity<Object> response = SongResponses.notModified("\"3-json\"");
+		assertEquals(HttpStatus.NOT_MODIFIED, response.getStatusCode());
+		assertEquals("\"3-json\"", response.getHeaders().getETag());
+		assertNull(response.getBody());
+	}
+
+	@Test
+	public void cacheableResponseIsServedFromCacheAfterwards() throws Exception {
+		assertNull(responses.getCached("a", true));
+
+		DbQueryStatus status = found(song(4));
+		ResponseEntity<?> loaded = responses.songResponse("a", null, status, false, true, responses.beginLoad());
+		ResponseEntity<?> cached = responses.getCached("a", true);
+
+		byte[] expected = mapper.writeValueAsBytes(ResponseEnvelope.of(null, status));
+		assertArrayEquals(expected, (byte[]) loaded.getBody());
+		assertArrayEquals(expected, (byte[]) cached.getBody());
+		assertEquals("\"4-json\"", loaded.getHeaders().getETag());
+		assertEquals("\"4-json\"", cached.getHeaders().getETag());
+		assertEquals(MediaType.APPLICATION_JSON_UTF8, cached.getHeaders().getContentType());
+
+		assertNull(responses.getCached("a", false));
+		responses.invalidate("a");
+		assertNull(responses.getCached("a", true));
+	}
+
+	@Test
+	public void uncacheableResponseKeepsEnvelopeAndFormatETag() {
+		DbQueryStatus status = found(song(4));
+		ResponseEntity<?> response = responses.songResponse("a", "GET /getSongById/a", status, true, false,
+				responses.beginLoad());
+
+		assertEquals("\"4-cbor\"", response.getHeaders().getETag());
+		assertEquals("GET /getSongById/a", ((ResponseEnvelope) response.getBody()).getPath());
+		assertNull(responses.getCached("a", true));
+	}
+
+	@Test
+	public void errorsHaveNoETag() {
+		DbQueryStatus status = new DbQueryStatus("big L", DbQueryExecResult.QUERY_ERROR_NOT_FOUND);
+		assertNull(responses.songResponse("a", null, status, false, true, responses.beginLoad()).getHeaders().getETag());
+		assertNull(responses.getCached("a", true));
+		assertNull(SongResponses.titleResponse(null, status, "\"3-json\"").getHeaders().getETag());
+	}
+
+	@Test
+	public void titleResponseCarriesETagReadBeforeTitle() {
+		ResponseEntity<ResponseEnvelope> response = SongResponses.titleResponse(null, found("title"), "\"3-json\"");
+		assertEquals("\"3-json\"", response.getHeaders().getETag());
+		assertSame("title", response.getBody().getData());
+	}
+
+	private static DbQueryStatus version(long version) {
+		return found(version);
+	}
+
+	private static DbQueryStatus found(Object data) {
+		DbQueryStatus status = new DbQueryStatus("succ", DbQueryExecResult.QUERY_OK);
+		status.setData(data);
+		return status;
+	}
+
+	private static Song song(long version) {
+		Song song = new Song("name", "artist", "album");
+		song.setId(new ObjectId());
+		song.setVersion(version);
+		return song;
+	}
+}
@@ -0,0 +1,110 @@
+package com.csc301.songmicroservice;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Stream;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class SongSnapshotTests {
+
+	private static final byte[] ID = { 1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11, 12 };
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private Path file;
+
+	@Before
+	public void setUp() throws IOException {
+		file = folder.getRoot().toPath().resolve("songs.snap");
+		try (SongSnapshot.Writer writer = new SongSnapshot.Writer(file)) {
+			writer.write(ID, 3, 7, "name", "ärtist", "");
+			writer.commit();
+		}
+	}
+
+	@Test
+	public void readsWhatWasWritten() throws IOException {
+		List<Object[]> songs = new ArrayList<Object[]>();
+		assertEquals(1, SongSnapshot.read(file, (id, version, favourites, name, artist, album) -> songs
+				.add(new Object[] { id, version, favourites, name, artist, album })));
+
+		assertEquals(1, songs.size());
+		assertArrayEquals(ID, (byte[]) songs.get(0)[0]);
+		assertEquals(Arrays.asList(3L, 7L, "name", "ärtist", ""), Arrays.asList(songs.get(0)).subList(1, 6));
+	}
+
+	@Test
+	public void flippedByteFailsChecksum() throws IOException {
+		byte[] bytes = Files.readAllBytes(file);
+		// inside the song's name
+		bytes[8 + 12 + 8 + 8 + 4] ^= 1;
+		Files.write(file, bytes);
+
+		assertRejected("checksum doesn't match");
+	}
+
+	@Test
+	public void otherFormatVersionIsRejected() throws IOException {
+		byte[] bytes = Files.readAllBytes(file);
+		ByteBuffer.wrap(bytes).putInt(4, SongSnapshot.FORMAT_VERSION + 1);
+		Files.write(file, bytes);
+
+		assertRejected("has snapshot format version " + (SongSnapshot.FORMAT_VERSION + 1));
+	}
+
+	@Test
+	public void otherFileIsRejected() throws IOException {
+		byte[] bytes = Files.readAllBytes(file);
+		bytes[0] = 'X';
+		Files.write(file, bytes);
+		assertRejected("is not a song snapshot");
+
+		Files.write(file, Arrays.copyOf(bytes, 10));
+		assertRejected("is not a song snapshot");
+	}
+
+	@Test
+	public void truncatedFileIsRejected() throws IOException {
+		byte[] bytes = Files.readAllBytes(file);
+		Files.write(file, Arrays.copyOf(bytes, bytes.length - 3));
+
+		assertRejected("checksum doesn't match");
+	}
+
+	@Test
+	public void uncommittedWriterLeavesTargetAlone() throws IOException {
+		byte[] before = Files.readAllBytes(file);
+		try (SongSnapshot.Writer writer = new SongSnapshot.Writer(file)) {
+			writer.write(ID, 4, 0, "other", "artist", "album");
+		}
+
+		assertArrayEquals(before, Files.readAllBytes(file));
+		try (Stream<Path> files = Files.list(folder.getRoot().toPath())) {
+			assertEquals(1, files.count());
+		}
+	}
+
+	private void assertRejected(String message) {
+		try {
+			SongSnapshot.read(file, (id, version, favourites, name, artist, album) -> fail("read a song"));
+			fail("accepted damaged snapshot");
+		} catch (IOException e) {
+			assertTrue(e.getMessage(), e.getMessage().contains(message));
+		}
+	}
+}
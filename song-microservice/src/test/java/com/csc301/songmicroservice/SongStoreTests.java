@@ -0,0 +1,163 @@
+package com.csc301.songmicroservice;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.lang.reflect.Field;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import org.bson.types.ObjectId;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class SongStoreTests {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void songsStayReachableWhileIndexGrows() {
+		SongStore store = new SongStore(8, false);
+		List<byte[]> ids = ids(1000, 1);
+		for (int i = 0; i < ids.size(); i++) {
+			store.put(ids.get(i), i, i * 2, "name" + i, "artist" + i, "album" + i);
+		}
+
+		assertEquals(1000, store.size());
+		for (int i = 0; i < ids.size(); i++) {
+			Song song = store.get(ids.get(i));
+			assertEquals("name" + i, song.getSongName());
+			assertEquals("album" + i, song.getSongAlbum());
+			assertEquals(i, song.getVersion());
+			assertEquals(i * 2, song.getSongAmountFavourites());
+			assertEquals(new ObjectId(ids.get(i)).toHexString(), song.getId());
+		}
+		assertNull(store.get(ids(1, 2).get(0)));
+	}
+
+	@Test
+	public void deletesKeepProbeSequencesIntact() {
+		// small table at half load has long probe runs, so deletes have to shift entries back
+		SongStore store = new SongStore(8, false);
+		List<byte[]> ids = ids(2000, 3);
+		for (byte[] id : ids) {
+			store.put(id, 1, 0, "n", "a", "b");
+		}
+		List<byte[]> shuffled = new ArrayList<byte[]>(ids);
+		Collections.shuffle(shuffled, new Random(4));
+		List<byte[]> removed = shuffled.subList(0, 1000);
+		List<byte[]> kept = shuffled.subList(1000, 2000);
+
+		for (byte[] id : removed) {
+			assertTrue(store.remove(id));
+		}
+		assertEquals(1000, store.size());
+		for (byte[] id : removed) {
+			assertNull(store.getVersion(id));
+			assertFalse(store.remove(id));
+		}
+		for (byte[] id : kept) {
+			assertEquals(Long.valueOf(1), store.getVersion(id));
+		}
+
+		// freed slots are reused without losing the rest
+		for (byte[] id : removed) {
+			store.put(id, 2, 0, "n", "a", "b");
+		}
+		for (byte[] id : removed) {
+			assertEquals(Long.valueOf(2), store.getVersion(id));
+		}
+		for (byte[] id : kept) {
+			assertEquals(Long.valueOf(1), store.getVersion(id));
+		}
+		assertEquals(2000, store.size());
+	}
+
+	@Test
+	public void replacedRecordsAreCompactedInsteadOfGrowingBuffer() throws Exception {
+		for (boolean offHeap : new boolean[] { false, true }) {
+			SongStore store = new SongStore(8, offHeap);
+			List<byte[]> ids = ids(8, 5);
+			int capacity = 0;
+
+			for (int round = 0; round < 1000; round++) {
+				for (int i = 0; i < ids.size(); i++) {
+					store.put(ids.get(i), round, i, "name" + round, "artist", "album");
+				}
+				if (round == 0) {
+					capacity = records(store).capacity();
+				}
+			}
+
+			// replaced records are garbage, so buffer settles at twice the live records instead of growing every round
+			assertTrue(records(store).capacity() <= capacity * 2);
+			for (int i = 0; i < ids.size(); i++) {
+				Song song = store.get(ids.get(i));
+				assertEquals("name999", song.getSongName());
+				assertEquals(999, song.getVersion());
+				assertEquals(i, song.getSongAmountFavourites());
+			}
+		}
+	}
+
+	@Test
+	public void favouritesUpdateBumpsVersionAndStopsAtZero() {
+		SongStore store = new SongStore(8, false);
+		byte[] id = ids(1, 6).get(0);
+		store.put(id, 1, 0, "n", "a", "b");
+
+		assertEquals(SongStore.BELOW_ZERO, store.updateFavourites(id, true));
+		assertEquals(2, store.updateFavourites(id, false));
+		assertEquals(3, store.updateFavourites(id, true));
+		assertEquals(0, store.get(id).getSongAmountFavourites());
+		assertEquals(SongStore.NOT_FOUND, store.updateFavourites(ids(1, 7).get(0), false));
+	}
+
+	@Test
+	public void snapshotRestoresLiveSongsOnly() throws Exception {
+		SongStore store = new SongStore(8, true);
+		List<byte[]> ids = ids(100, 8);
+		for (int i = 0; i < ids.size(); i++) {
+			store.put(ids.get(i), i, i, "näme" + i, "artist", "album");
+		}
+		store.remove(ids.get(0));
+		store.updateFavourites(ids.get(1), false);
+
+		Path file = folder.getRoot().toPath().resolve("songs.snap");
+		assertEquals(99, store.writeSnapshot(file));
+
+		SongStore restored = new SongStore(8, false);
+		assertEquals(99, restored.readSnapshot(file));
+		assertNull(restored.get(ids.get(0)));
+		assertEquals(2, restored.get(ids.get(1)).getSongAmountFavourites());
+		assertEquals(2, restored.get(ids.get(1)).getVersion());
+		for (int i = 2; i < ids.size(); i++) {
+			assertEquals("näme" + i, restored.getName(ids.get(i)));
+		}
+	}
+
+	private static List<byte[]> ids(int count, long seed) {
+		Random random = new Random(seed);
+		List<byte[]> ids = new ArrayList<byte[]>(count);
+		for (int i = 0; i < count; i++) {
+			byte[] id = new byte[12];
+			random.nextBytes(id);
+			ids.add(id);
+		}
+		return ids;
+	}
+
+	private static ByteBuffer records(SongStore store) throws Exception {
+		Field field = SongStore.class.getDeclaredField("records");
+		field.setAccessible(true);
+		return (ByteBuffer) field.get(store);
+	}
+}
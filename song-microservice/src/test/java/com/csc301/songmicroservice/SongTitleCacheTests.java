@@ -0,0 +1,57 @@
+package com.csc301.songmicroservice;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.util.Arrays;
+
+import org.junit.Test;
+
+public class SongTitleCacheTests {
+
+	@Test
+	public void loadRacingWithDeleteOfSameSongIsDropped() {
+		SongTitleCache cache = new SongTitleCache(10, 0);
+		long loadSeq = cache.beginLoad();
+		cache.delete("a");
+		cache.load("a", "title", loadSeq);
+
+		assertNull(cache.get("a"));
+	}
+
+	@Test
+	public void deletesOfOtherSongsDontDropLoad() {
+		SongTitleCache cache = new SongTitleCache(10, 0);
+		long loadSeq = cache.beginLoad();
+		cache.delete("b");
+		cache.load("a", "title", loadSeq);
+
+		assertEquals("title", cache.get("a"));
+	}
+
+	@Test
+	public void forgottenDeleteStillDropsOverlappingLoad() {
+		//Delete of a is pushed out by later deletes, so it counts as written by the newest forgotten delete
+		SongTitleCache cache = new SongTitleCache(1, 0);
+		long loadSeq = cache.beginLoad();
+		cache.delete("a");
+		cache.delete("b");
+		cache.load("a", "title", loadSeq);
+		cache.load("c", "other", cache.beginLoad());
+
+		assertNull(cache.get("a"));
+		assertEquals("other", cache.get("c"));
+	}
+
+	@Test
+	public void leastRecentlyUsedTitleIsEvicted() {
+		SongTitleCache cache = new SongTitleCache(2, 0);
+		cache.load("a", "A", cache.beginLoad());
+		cache.load("b", "B", cache.beginLoad());
+		cache.get("a");
+		cache.load("c", "C", cache.beginLoad());
+
+		assertNull(cache.get("b"));
+		assertEquals(Arrays.asList("a", "c"), cache.getSongIds());
+	}
+}
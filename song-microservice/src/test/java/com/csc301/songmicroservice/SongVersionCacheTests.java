@@ -0,0 +1,81 @@
+package com.csc301.songmicroservice;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import org.junit.Test;
+
+public class SongVersionCacheTests {
+
+	@Test
+	public void versionsOnlyGrow() {
+		SongVersionCache cache = new SongVersionCache(10, 0);
+		cache.update("a", 5);
+		cache.load("a", 3, cache.beginLoad());
+		cache.update("a", 4);
+
+		assertEquals(Long.valueOf(5), cache.get("a"));
+	}
+
+	@Test
+	public void deletedSongIsNotBroughtBackByLoad() {
+		SongVersionCache cache = new SongVersionCache(10, 0);
+		long loadSeq = cache.beginLoad();
+		cache.delete("a");
+		cache.load("a", 7, loadSeq);
+		cache.load("a", 7, cache.beginLoad());
+
+		assertEquals(Long.valueOf(SongVersionCache.DELETED), cache.get("a"));
+	}
+
+	@Test
+	public void loadRacingWithWriteOfSameSongIsDropped() {
+		//Version written is evicted before the load finishes, so only the sequence keeps the old version out
+		SongVersionCache cache = new SongVersionCache(1, 0);
+		long loadSeq = cache.beginLoad();
+		cache.update("a", 2);
+		cache.load("b", 1, cache.beginLoad());
+		cache.load("a", 1, loadSeq);
+
+		assertNull(cache.get("a"));
+	}
+
+	@Test
+	public void writesOfOtherSongsDontDropLoad() {
+		SongVersionCache cache = new SongVersionCache(10, 0);
+		long loadSeq = cache.beginLoad();
+		cache.update("b", 2);
+		cache.delete("c");
+		cache.load("a", 1, loadSeq);
+
+		assertEquals(Long.valueOf(1), cache.get("a"));
+	}
+
+	@Test
+	public void leastRecentlyUsedVersionIsEvicted() {
+		SongVersionCache cache = new SongVersionCache(2, 0);
+		cache.update("a", 1);
+		cache.update("b", 1);
+		cache.get("a");
+		cache.update("c", 1);
+
+		assertNull(cache.get("b"));
+		assertEquals(Long.valueOf(1), cache.get("a"));
+	}
+
+	@Test
+	public void versionsExpireSoWritesOfOtherInstancesAreSeen() throws Exception {
+		SongVersionCache cache = new SongVersionCache(10, 50);
+		cache.update("a", 1);
+		cache.delete("b");
+		assertEquals(Long.valueOf(1), cache.get("a"));
+
+		Thread.sleep(60);
+		assertNull(cache.get("a"));
+		assertNull(cache.get("b"));
+
+		//Version read from DB again is cached again
+		cache.load("a", 2, cache.beginLoad());
+		assertEquals(Long.valueOf(2), cache.get("a"));
+	}
+}